@@ -7,6 +7,7 @@ import edu.harvard.iq.dataverse.dataaccess.ImageThumbConverter;
 import edu.harvard.iq.dataverse.dataaccess.StorageIO;
 import edu.harvard.iq.dataverse.harvest.client.HarvestingClient;
 import edu.harvard.iq.dataverse.ingest.IngestServiceBean;
+import edu.harvard.iq.dataverse.ingest.IngestUtil;
 import edu.harvard.iq.dataverse.search.SolrSearchResult;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.util.FileSortFieldAndOrder;
@@ -955,6 +956,30 @@ public class DataFileServiceBean implements java.io.Serializable {
         } 
     }
     
+    /**
+     * Saves a file that was just ingested as tabular, in a transaction of its
+     * own, renamed to {@code newFilename} - made unique among the files of
+     * the latest version of its dataset while the dataset row is locked, and
+     * checked against the labels as they are in the database then. So two
+     * files of a dataset ingested at the same time (say, foo.dta and foo.sav)
+     * can't both end up as foo.tab.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public DataFile saveIngestedInTransaction(DataFile dataFile, String newFilename) {
+
+        if (!dataFile.isMergeable()) {
+            throw new IllegalArgumentException("This DataFile object has been set to NOT MERGEABLE; please ensure a MERGEABLE object is passed to the save method.");
+        }
+        Long datasetId = dataFile.getOwner().getId();
+        // held until the commit: the renames of the files of the dataset are made one at a time
+        em.createNativeQuery("SELECT id FROM dvobject WHERE id = ? FOR UPDATE")
+                .setParameter(1, datasetId)
+                .getSingleResult();
+        DatasetVersion latestVersion = em.find(Dataset.class, datasetId).getLatestVersion();
+        IngestUtil.modifyExistingFilename(latestVersion, dataFile.getFileMetadata(), newFilename);
+        return em.merge(dataFile);
+    }
+    
     private void msg(String m){
         System.out.println(m);
     }
@@ -1876,6 +1876,8 @@ public class DatasetPage implements java.io.Serializable {
                 // This will default to all the files in the version, if the search term
                 // parameter hasn't been specified yet:
                 fileMetadatasSearch = selectFileMetadatasForDisplay();
+                // (the download permissions of all the restricted files, at once)
+                fileDownloadHelper.checkDownloadPermissions(workingVersion.getFileMetadatas());
                 ownerId = dataset.getOwner().getId();
                 datasetNextMajorVersion = this.dataset.getNextMajorVersionString();
                 datasetNextMinorVersion = this.dataset.getNextMinorVersionString();
@@ -0,0 +1,129 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.util.LruCache;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches the chain of owners of a dataverse, as ids, so that the Solr path
+ * fields of the objects in a dataverse do not have to be recomputed (walking
+ * the owners through JPA) for every dataverse, dataset and file indexed.
+ * Permission checks do not use it, see
+ * {@link PermissionServiceBean#getPermissionAncestorIds(DvObject)}.
+ *
+ * The chain of a dataverse is built from the (cached) chain of its owner, so
+ * every dataverse is only walked once. When a dataverse is saved (which is
+ * how dataverses are moved) or deleted, the chains that go through it are
+ * invalidated - again once the transaction is over, see
+ * {@link DataverseServiceBean#ancestorsChanged(Dataverse)}. A chain computed
+ * while the cache was being invalidated may be out of date, and is not kept.
+ *
+ * A chain is only used for {@link #MAX_AGE_MILLIS} after it was computed
+ * (from its oldest part), which bounds how long a move made on another
+ * server of a cluster takes to show in the paths indexed here.
+ */
+public class DataverseAncestorCache {
+
+    static final long MAX_AGE_MILLIS = 60 * 1000L;
+
+    private final LruCache<Long, Ancestors> cache = new LruCache<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    // incremented whenever the cache is invalidated
+    private final AtomicLong generation = new AtomicLong();
+    private final long maxAgeMillis;
+    private final LongSupplier clock;
+
+    public DataverseAncestorCache() {
+        this(MAX_AGE_MILLIS, System::currentTimeMillis);
+    }
+
+    DataverseAncestorCache(long maxAgeMillis, LongSupplier clock) {
+        this.maxAgeMillis = maxAgeMillis;
+        this.clock = clock;
+        cache.setMaxSize(10000);
+    }
+
+    /**
+     * @return the ids of the dataverse and all of its owners, starting with
+     * the root dataverse and ending with {@code dataverse} itself.
+     */
+    public List<Long> getAncestorIds(Dataverse dataverse) {
+        return Collections.unmodifiableList(get(dataverse).ids);
+    }
+
+    private Ancestors get(Dataverse dataverse) {
+        return get(dataverse, generation.get(), clock.getAsLong());
+    }
+
+    private Ancestors get(Dataverse dataverse, long startGeneration, long now) {
+        Long id = dataverse.getId();
+        if (id != null) {
+            Ancestors cached = cache.get(id);
+            if (cached != null && now - cached.computedAt <= maxAgeMillis) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+        Ancestors ancestors;
+        Dataverse owner = dataverse.getOwner();
+        if (owner == null) {
+            ancestors = new Ancestors(Collections.singletonList(id), now);
+        } else {
+            Ancestors ownerAncestors = get(owner, startGeneration, now);
+            List<Long> ids = new ArrayList<>(ownerAncestors.ids.size() + 1);
+            ids.addAll(ownerAncestors.ids);
+            ids.add(id);
+            // (as old as the chain of the owner it was built from)
+            ancestors = new Ancestors(ids, ownerAncestors.computedAt);
+        }
+        if (id != null && generation.get() == startGeneration) {
+            cache.put(id, ancestors);
+        }
+        return ancestors;
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+        cache.invalidate();
+    }
+
+    /**
+     * Invalidates the chains of a dataverse and of everything under it.
+     */
+    public void invalidateSubtree(Long dataverseId) {
+        generation.incrementAndGet();
+        cache.invalidateIf((id, ancestors) -> ancestors.ids.contains(dataverseId));
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public double getHitRate() {
+        long lookups = hits.get() + misses.get();
+        return lookups > 0 ? (double) hits.get() / lookups : 0.0;
+    }
+
+    private static final class Ancestors {
+        final List<Long> ids;
+        final long computedAt;
+
+        Ancestors(List<Long> ids, long computedAt) {
+            this.ids = ids;
+            this.computedAt = computedAt;
+        }
+    }
+}
@@ -48,6 +48,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
     IndexAsync indexAsync;
 
     public DataverseRole save(DataverseRole aRole) {
+        PermissionMemo.assignmentsChanged();
         if (aRole.getId() == null) {
             em.persist(aRole);
             /**
@@ -71,6 +72,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
     }
     
     public RoleAssignment save(RoleAssignment assignment, boolean createIndex) {
+        PermissionMemo.assignmentsChanged();
         if (assignment.getId() == null) {
             em.persist(assignment);
         } else {
@@ -103,6 +105,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
     }
 
     public void delete(Long id) {
+        PermissionMemo.assignmentsChanged();
         em.createNamedQuery("DataverseRole.deleteById", DataverseRole.class)
             .setParameter("id", id)
             .executeUpdate();
@@ -133,6 +136,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
     }
 
     public void revoke(Set<DataverseRole> roles, RoleAssignee assignee, DvObject defPoint) {
+        PermissionMemo.assignmentsChanged();
         for (DataverseRole role : roles) {
             em.createNamedQuery("RoleAssignment.deleteByAssigneeIdentifier_RoleIdDefinition_PointId")
                 .setParameter("assigneeIdentifier", assignee.getIdentifier())
@@ -145,6 +149,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
     }
 
     public void revoke(RoleAssignment ra) {
+        PermissionMemo.assignmentsChanged();
         if (!em.contains(ra)) {
             ra = em.merge(ra);
         }
@@ -160,6 +165,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
     // on which the roles were assigned - need to be reindexed for permissions
     // once the role assignments are removed!
     public void revokeAll(RoleAssignee assignee) {
+        PermissionMemo.assignmentsChanged();
         Set<DvObject> reindexSet = new HashSet<>();
 
         for (RoleAssignment ra : roleAssigneeService.getAssignmentsFor(assignee.getIdentifier())) {
@@ -264,9 +270,26 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
             return new ArrayList<>();
         }
         
-        List<String> raIds = roleAssignees.stream().map(roas -> roas.getIdentifier()).collect(Collectors.toList());
         List<Long> dvoIds = dvos.stream().filter(dvo -> !(dvo.getId() == null)).map(dvo -> dvo.getId()).collect(Collectors.toList());
         
+        return directRoleAssignmentsByDefinitionPointIds(roleAssignees, dvoIds);
+    }
+
+    /**
+     * Same as {@link #directRoleAssignments(java.util.Set, java.util.Collection)},
+     * for callers that only have the ids of the objects.
+     *
+     * @param roleAssignees the user whose roles are given
+     * @param dvoIds the ids of the objects where the roles are defined.
+     * @return the role assignments of {@code roleAssignees} on {@code dvoIds}.
+     */
+    public List<RoleAssignment> directRoleAssignmentsByDefinitionPointIds(Set<? extends RoleAssignee> roleAssignees, Collection<Long> dvoIds) {
+        if (dvoIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        
+        List<String> raIds = roleAssignees.stream().map(roas -> roas.getIdentifier()).collect(Collectors.toList());
+        
         return em.createNamedQuery("RoleAssignment.listByAssigneeIdentifiers", RoleAssignment.class)
                         .setParameter("assigneeIdentifiers", raIds)
                         .setParameter("definitionPointIds", dvoIds)
@@ -31,6 +31,7 @@ import java.util.Map;
 import java.util.logging.Logger;
 import java.util.Properties;
 import java.util.concurrent.Future;
+import javax.annotation.Resource;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.inject.Inject;
@@ -42,6 +43,8 @@ import javax.persistence.NoResultException;
 import javax.persistence.NonUniqueResultException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.TypedQuery;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 import org.apache.solr.client.solrj.SolrServerException;
 
 /**
@@ -53,6 +56,8 @@ import org.apache.solr.client.solrj.SolrServerException;
 public class DataverseServiceBean implements java.io.Serializable {
 
     private static final Logger logger = Logger.getLogger(DataverseServiceBean.class.getCanonicalName());
+    
+    public static final DataverseAncestorCache ancestorCache = new DataverseAncestorCache();
     @EJB
     IndexServiceBean indexService;
     
@@ -89,13 +94,47 @@ public class DataverseServiceBean implements java.io.Serializable {
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     private EntityManager em;
 
+    @Resource
+    TransactionSynchronizationRegistry transactionRegistry;
+
     public Dataverse save(Dataverse dataverse) {
        
         dataverse.setModificationTime(new Timestamp(new Date().getTime()));
         Dataverse savedDataverse = em.merge(dataverse);
+        // the owner or the permission root flag may have changed
+        ancestorsChanged(savedDataverse);
         return savedDataverse;
     }
     
+    /**
+     * Invalidates the chains of the {@link #ancestorCache} that go through a
+     * dataverse, and makes the permission memos forget, as the owner or the
+     * permission root flag of the dataverse is being changed - right away,
+     * and again once the transaction is over (a chain computed by another
+     * transaction in between is the one from before the change, and so is
+     * one after a rollback of what was invalidated for).
+     */
+    public void ancestorsChanged(Dataverse dataverse) {
+        Long dataverseId = dataverse.getId();
+        if (dataverseId == null) {
+            // (not saved yet: nothing can be cached under it)
+            return;
+        }
+        ancestorCache.invalidateSubtree(dataverseId);
+        PermissionMemo.assignmentsChanged();
+        transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                ancestorCache.invalidateSubtree(dataverseId);
+                PermissionMemo.assignmentsChanged();
+            }
+        });
+    }
+    
     public boolean index(Dataverse dataverse) {
         return index(dataverse, false);
 
@@ -157,6 +157,27 @@ public class DvObjectServiceBean implements java.io.Serializable {
         return savedDvObject;
     }
 
+    /**
+     * Sets the index times of objects indexed by a bulk (re)index, once their
+     * documents are committed; see
+     * {@link edu.harvard.iq.dataverse.search.SolrBulkIndexer}.
+     */
+    @TransactionAttribute(REQUIRES_NEW)
+    public void updateIndexTimes(List<Long> indexedIds, List<Long> permissionsIndexedIds, Timestamp indexTime) {
+        if (!indexedIds.isEmpty()) {
+            em.createQuery("UPDATE DvObject o SET o.indexTime = :indexTime WHERE o.id IN :ids")
+                    .setParameter("indexTime", indexTime)
+                    .setParameter("ids", indexedIds)
+                    .executeUpdate();
+        }
+        if (!permissionsIndexedIds.isEmpty()) {
+            em.createQuery("UPDATE DvObject o SET o.permissionIndexTime = :indexTime WHERE o.id IN :ids")
+                    .setParameter("indexTime", indexTime)
+                    .setParameter("ids", permissionsIndexedIds)
+                    .executeUpdate();
+        }
+    }
+
     @TransactionAttribute(REQUIRES_NEW)
     public int clearAllIndexTimes() {
         Query clearIndexTimes = em.createQuery("UPDATE DvObject o SET o.indexTime = NULL, o.permissionIndexTime = NULL");
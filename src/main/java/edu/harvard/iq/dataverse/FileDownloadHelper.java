@@ -13,9 +13,13 @@ import edu.harvard.iq.dataverse.util.BundleUtil;
 import edu.harvard.iq.dataverse.util.FileUtil;
 import static edu.harvard.iq.dataverse.util.JsfHelper.JH;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 import javax.ejb.EJB;
 import javax.faces.application.FacesMessage;
@@ -241,6 +245,38 @@ public class FileDownloadHelper implements java.io.Serializable {
         return false;
     }
 
+    /**
+     * Checks whether the request can download each of the restricted files
+     * in the list - with one query for all of them, instead of one (or
+     * more) per file - and remembers the answers for
+     * {@link #canDownloadFile(FileMetadata)}; for the pages that list many
+     * files.
+     *
+     * @param fileMetadatas the files about to be listed
+     */
+    public void checkDownloadPermissions(List<FileMetadata> fileMetadatas) {
+        List<FileMetadata> restrictedFiles = new ArrayList<>();
+        for (FileMetadata fileMetadata : fileMetadatas) {
+            if (fileMetadata.getId() != null && fileMetadata.getDataFile().getId() != null
+                    && !fileDownloadPermissionMap.containsKey(fileMetadata.getId())
+                    && !fileMetadata.getDatasetVersion().isDeaccessioned()
+                    && (fileMetadata.isRestricted() || fileMetadata.getDataFile().isRestricted())) {
+                restrictedFiles.add(fileMetadata);
+            }
+        }
+        if (restrictedFiles.isEmpty()) {
+            return;
+        }
+
+        List<DataFile> dataFiles = new ArrayList<>();
+        restrictedFiles.forEach(fileMetadata -> dataFiles.add(fileMetadata.getDataFile()));
+        Set<DataFile> downloadable = Collections.newSetFromMap(new IdentityHashMap<>());
+        downloadable.addAll(permissionService.whichHavePermissionsFor(dvRequestService.getDataverseRequest(), dataFiles, EnumSet.of(Permission.DownloadFile)));
+        for (FileMetadata fileMetadata : restrictedFiles) {
+            fileDownloadPermissionMap.put(fileMetadata.getId(), downloadable.contains(fileMetadata.getDataFile()));
+        }
+    }
+
      /**
       * In Dataverse 4.19 and below file preview was determined by
       * canDownloadFile. Now we always allow a PrivateUrlUser to preview files.
@@ -0,0 +1,140 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.util.StringUtil;
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Writes guestbook responses as CSV, one line per response, as they are read
+ * from the results of the query for downloading them (see
+ * {@link GuestbookResponseServiceBean#streamResponsesByDataverseIdAndGuestbookId}):
+ * a row per answer to a custom question, in the order of the questions, the
+ * rows of a response next to each other. Only the line of the response being
+ * read is kept in memory.
+ */
+public class GuestbookResponseCsvWriter {
+
+    public static final String HEADER = "Guestbook, Dataset, Dataset PID, Date, Type, File Name, File Id, File PID, User Name, Email, Institution, Position, Custom Questions\n";
+
+    private static final String SEPARATOR = ",";
+    private static final String NEWLINE = "\n";
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("MM/d/yyyy");
+
+    private final Writer out;
+
+    public GuestbookResponseCsvWriter(Writer out) {
+        this.out = out;
+    }
+
+    public void writeHeader() throws IOException {
+        out.write(HEADER);
+    }
+
+    /**
+     * Writes the responses of the results, from the current row on.
+     *
+     * @return the number of responses written
+     */
+    public long writeResponses(ResultSet results) throws SQLException, IOException {
+        long count = 0;
+        StringBuilder line = null;
+        long responseId = 0;
+        while (results.next()) {
+            if (line == null || results.getLong(1) != responseId) {
+                if (line != null) {
+                    out.write(line.append(NEWLINE).toString());
+                    count++;
+                }
+                responseId = results.getLong(1);
+                line = new StringBuilder();
+                appendResponse(line, results);
+            }
+            // Finally, custom questions and answers, if present:
+            String question = results.getString(18);
+            if (question != null) {
+                line.append(SEPARATOR).append(removeCommas(question));
+                line.append(SEPARATOR).append(removeCommas(results.getString(19)));
+            }
+        }
+        if (line != null) {
+            out.write(line.append(NEWLINE).toString());
+            count++;
+        }
+        return count;
+    }
+
+    private static void appendResponse(StringBuilder sb, ResultSet result) throws SQLException {
+        // Since we are formatting the output as comma-separated values,
+        // we should go to the trouble of removing any commas from the
+        // string fields, or the structure of the file will be broken. -- L.A.
+
+        // Guestbook name:
+        sb.append(removeCommas(result.getString(2)));
+        sb.append(SEPARATOR);
+
+        // Dataset name:
+        sb.append(removeCommas(result.getString(3)));
+        sb.append(SEPARATOR);
+
+        // Dataset persistent identifier:
+        sb.append(formatPersistentIdentifier(result.getString(12), result.getString(13), result.getString(14)));
+        sb.append(SEPARATOR);
+
+        Timestamp responseTime = result.getTimestamp(4);
+        if (responseTime != null) {
+            sb.append(DATE_FORMAT.format(responseTime.toLocalDateTime()));
+        } else {
+            sb.append("N/A");
+        }
+        sb.append(SEPARATOR);
+
+        // type: (download, etc.)
+        sb.append(result.getString(5));
+        sb.append(SEPARATOR);
+
+        // file name:
+        sb.append(removeCommas(result.getString(6)));
+        sb.append(SEPARATOR);
+
+        // file id (numeric):
+        Object fileId = result.getObject(7);
+        sb.append(fileId == null ? "" : fileId);
+        sb.append(SEPARATOR);
+
+        // persistent id of the file (if available):
+        sb.append(formatPersistentIdentifier(result.getString(15), result.getString(16), result.getString(17)));
+        sb.append(SEPARATOR);
+
+        // name supplied in the guestbook response:
+        sb.append(removeCommas(result.getString(8)));
+        sb.append(SEPARATOR);
+
+        // email:
+        String email = result.getString(9);
+        sb.append(email == null ? "" : email);
+        sb.append(SEPARATOR);
+
+        // institution:
+        sb.append(removeCommas(result.getString(10)));
+        sb.append(SEPARATOR);
+
+        // position:
+        sb.append(removeCommas(result.getString(11)));
+    }
+
+    private static String removeCommas(String value) {
+        return value == null ? "" : value.replace(',', ' ');
+    }
+
+    private static String formatPersistentIdentifier(String protocol, String authority, String identifier) {
+        // Note that the persistent id may be unavailable for this dvObject:
+        if (StringUtil.nonEmpty(protocol) && StringUtil.nonEmpty(authority) && StringUtil.nonEmpty(identifier)) {
+            return protocol + ":" + authority + "/" + identifier;
+        }
+        return "N/A";
+    }
+}
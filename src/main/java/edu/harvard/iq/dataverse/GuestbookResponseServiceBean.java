@@ -9,9 +9,16 @@ import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.authorization.users.User;
 import edu.harvard.iq.dataverse.externaltools.ExternalTool;
 import edu.harvard.iq.dataverse.util.BundleUtil;
-import edu.harvard.iq.dataverse.util.StringUtil;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -21,6 +28,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
+import javax.annotation.Resource;
+import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
@@ -33,6 +42,7 @@ import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
+import javax.sql.DataSource;
 
 /**
  *
@@ -47,10 +57,17 @@ public class GuestbookResponseServiceBean {
     // the collected data, in CSV format, from the manage-guestbooks and 
     // guestbook-results pages. (for entire dataverses, and for the individual 
     // guestbooks within dataverses, respectively). -- L.A. 
+    // The answers to the custom questions are joined in, one row per answer, 
+    // so that the responses can be written out in a single pass over the rows 
+    // (see GuestbookResponseCsvWriter).
     private static final String BASE_QUERY_STRING_FOR_DOWNLOAD_AS_CSV = "select r.id, g.name, v.value, r.responsetime, f.downloadtype,"
                 + " m.label, r.dataFile_id, r.name, r.email, r.institution, r.position,"
-                + " o.protocol, o.authority, o.identifier, d.protocol, d.authority, d.identifier "
-                + "from guestbookresponse r, filedownload f, datasetfieldvalue v, filemetadata m, dvobject o, guestbook g, dvobject d "
+                + " o.protocol, o.authority, o.identifier, d.protocol, d.authority, d.identifier,"
+                + " q.questionstring, cr.response "
+                + "from guestbookresponse r"
+                + " left join customquestionresponse cr on cr.guestbookresponse_id = r.id"
+                + " left join customquestion q on q.id = cr.customquestion_id,"
+                + " filedownload f, datasetfieldvalue v, filemetadata m, dvobject o, guestbook g, dvobject d "
                 + "where "  
                 + " v.datasetfield_id = (select id from datasetfield f where datasetfieldtype_id = 1 "
                 + " and datasetversion_id = (select max(id) from datasetversion where dataset_id =r.dataset_id )) "
@@ -61,6 +78,9 @@ public class GuestbookResponseServiceBean {
                 + " and r.dataset_id = o.id "
                 + " and r.guestbook_id = g.id ";
     
+    // The number of rows fetched at a time when streaming the responses
+    private static final int FETCH_SIZE_FOR_DOWNLOAD_AS_CSV = 1000;
+    
     // And this query is used for retrieving guestbook responses for displaying 
     // on the guestbook-results.xhtml page (the info we show on the page is 
     // less detailed than what we let the users download as CSV files, so this 
@@ -84,10 +104,14 @@ public class GuestbookResponseServiceBean {
                 + "and g.dataset_id = o.id ";
 
     
-    private static SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("MM/d/yyyy");
-    
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     private EntityManager em;
+    
+    @Resource(lookup = "java:app/jdbc/dataverse")
+    private DataSource dataSource;
+    
+    @EJB
+    GuestbookResponseWriterServiceBean writer;
 
     public List<GuestbookResponse> findAll() {
         return em.createQuery("select object(o) from GuestbookResponse as o order by o.responseTime desc", GuestbookResponse.class).getResultList();
@@ -117,132 +141,49 @@ public class GuestbookResponseServiceBean {
        This method is used for streaming downloads of guestbook responses, in 
        CSV format, both for individual guestbooks, and for entire dataverses
        (with guestbookId = null).
+       The responses are read through a cursor, FETCH_SIZE_FOR_DOWNLOAD_AS_CSV
+       rows at a time, and written out as they are read; so the memory used 
+       does not grow with the number of responses. (It is not done in a 
+       transaction, which a long download could outlast.)
      */
-    private static final String SEPARATOR = ",";
-    private static final String NEWLINE = "\n";
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void streamResponsesByDataverseIdAndGuestbookId(OutputStream out, Long dataverseId, Long guestbookId) throws IOException {
-        
-        // Before we do anything else, create a map of all the custom question responses
-        // available for this dataverse (or, this individual guestbook within the
-        // dataverse; see the comment below, how it's saving us a metric f-ton
-        // of queries now) -- L.A. 
-        
-        Map<Integer, Object> customQandAs = mapCustomQuestionAnswersAsStrings(dataverseId, guestbookId);
-                
-        List<Object[]> guestbookResults = getGuestbookResults( dataverseId,  guestbookId );
-        // the CSV header:
-        out.write("Guestbook, Dataset, Dataset PID, Date, Type, File Name, File Id, File PID, User Name, Email, Institution, Position, Custom Questions\n".getBytes());
-        for (Object[] result : guestbookResults) {
-            StringBuilder sb = convertGuestbookResponsesToCSV(customQandAs, result);
-            out.write(sb.toString().getBytes());
-            out.flush();
-        }
-    }
-    
-    public List<Object[]> getGuestbookResults(Long dataverseId, Long guestbookId ){
-        
         String queryString = BASE_QUERY_STRING_FOR_DOWNLOAD_AS_CSV
-                + " and  o.owner_id = " 
-                + dataverseId.toString();
-        
+                + " and o.owner_id = ?";
         if (guestbookId != null) {
-            queryString+= (" and r.guestbook_id = " + guestbookId.toString());
+            queryString += " and r.guestbook_id = ?";
         }
-        
-        queryString += " ORDER by r.id DESC;";
+        // (the answers of each response follow it, in the order of the questions)
+        queryString += " ORDER by r.id DESC, q.id";
         logger.fine("stream responses query: " + queryString);
         
-        return  em.createNativeQuery(queryString).getResultList();
-        
-    }
-    
-    public StringBuilder convertGuestbookResponsesToCSV ( Map<Integer, Object> customQandAs, Object[] result) throws IOException {
-
-            Integer guestbookResponseId = (Integer)result[0];
-            
-            StringBuilder sb = new StringBuilder();
-            
-            // Since we are formatting the output as comma-separated values, 
-            // we should go to the trouble of removing any commas from the 
-            // string fields, or the structure of the file will be broken. -- L.A.
-            
-            // Guestbook name: 
-            sb.append(((String)result[1]).replace(',', ' '));
-            sb.append(SEPARATOR);
-
-            
-            // Dataset name: 
-            sb.append(((String)result[2]).replace(',', ' '));
-            sb.append(SEPARATOR);
-            
-            // Dataset persistent identifier: 
-            sb.append(formatPersistentIdentifier((String)result[11], (String)result[12], (String)result[13]));
-            sb.append(SEPARATOR);
-            
-            if (result[3] != null) {
-                sb.append(DATE_FORMAT.format((Date) result[3]));
-            } else {
-                sb.append("N/A");
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        GuestbookResponseCsvWriter csvWriter = new GuestbookResponseCsvWriter(writer);
+        // the CSV header:
+        csvWriter.writeHeader();
+        long count;
+        try (Connection connection = dataSource.getConnection()) {
+            // (the PostgreSQL driver only fetches the rows through a cursor 
+            // outside of auto-commit)
+            connection.setAutoCommit(false);
+            try (PreparedStatement query = connection.prepareStatement(queryString, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                query.setFetchSize(FETCH_SIZE_FOR_DOWNLOAD_AS_CSV);
+                query.setLong(1, dataverseId);
+                if (guestbookId != null) {
+                    query.setLong(2, guestbookId);
+                }
+                try (ResultSet results = query.executeQuery()) {
+                    count = csvWriter.writeResponses(results);
+                }
+            } finally {
+                connection.rollback();
+                connection.setAutoCommit(true);
             }
-            sb.append(SEPARATOR);
-            
-            // type: (download, etc.)
-            sb.append(result[4]);
-            sb.append(SEPARATOR);
-
-            // file name: 
-            sb.append(((String)result[5]).replace(',', ' '));
-            sb.append(SEPARATOR);
-
-            // file id (numeric):
-            sb.append(result[6] == null ? "" : result[6]);
-            sb.append(SEPARATOR);
-            
-            // persistent id of the file (if available):
-            // Dataset persistent identifier: 
-            sb.append(formatPersistentIdentifier((String)result[14], (String)result[15], (String)result[16]));
-            sb.append(SEPARATOR);
-            
-            // name supplied in the guestbook response: 
-            sb.append(result[7] == null ? "" : ((String)result[7]).replace(',', ' '));
-            sb.append(SEPARATOR);
-            
-            // email: 
-            sb.append(result[8] == null ? "" : result[8]);
-            sb.append(SEPARATOR);
-            
-            // institution:
-            sb.append(result[9] == null ? "" : ((String)result[9]).replace(',', ' '));
-            sb.append(SEPARATOR);
-            
-            // position: 
-            sb.append(result[10] == null ? "" : ((String)result[10]).replace(',', ' '));
-            
-            // Finally, custom questions and answers, if present:
-            
-            
-            if (customQandAs.containsKey(guestbookResponseId)) {
-                sb.append(customQandAs.get(guestbookResponseId)); 
-            } 
-
-            sb.append(NEWLINE);
-        return sb;
-        
-    }
-    
-    
-    private String formatPersistentIdentifier(String protocol, String authority, String identifier) {
-        // Note that the persistent id may be unavailable for this dvObject:
-        if (StringUtil.nonEmpty(protocol) && StringUtil.nonEmpty(authority) && StringUtil.nonEmpty(identifier)) {
-            StringBuilder sb = new StringBuilder();
-            sb.append(protocol);
-            sb.append(":");
-            sb.append(authority);
-            sb.append("/");
-            sb.append(identifier);
-            return sb.toString();
-        } 
-        return "N/A";
+        } catch (SQLException ex) {
+            throw new IOException("Failed to read the guestbook responses: " + ex.getMessage(), ex);
+        }
+        writer.flush();
+        logger.fine("streamed " + count + " guestbook responses");
     }
     
     /*
@@ -333,20 +274,16 @@ public class GuestbookResponseServiceBean {
     }
     
     /*
-       The 3 methods below are for caching all the custom question responses for this
+       The 2 methods below are for caching all the custom question responses for this
        guestbook and/or dataverse.
        The results are saved in maps, and later re-combined with the individual 
        "normal" guestbook responses, retrieved from GuestbookResponse table. -- L.A. 
     */
     private Map<Integer, Object> mapCustomQuestionAnswersAsLists(Long dataverseId, Long guestbookId, Integer firstResponse, Integer lastResponse) {
-        return selectCustomQuestionAnswers(dataverseId, guestbookId, false, firstResponse, lastResponse);
+        return selectCustomQuestionAnswers(dataverseId, guestbookId, firstResponse, lastResponse);
     }
     
-    public Map<Integer, Object> mapCustomQuestionAnswersAsStrings(Long dataverseId, Long guestbookId) {
-        return selectCustomQuestionAnswers(dataverseId, guestbookId, true, null, null);
-    }
-    
-    private Map<Integer, Object> selectCustomQuestionAnswers(Long dataverseId, Long guestbookId, boolean asString, Integer lastResponse, Integer firstResponse) {
+    private Map<Integer, Object> selectCustomQuestionAnswers(Long dataverseId, Long guestbookId, Integer lastResponse, Integer firstResponse) {
         Map<Integer, Object> ret = new HashMap<>();
 
         int count = 0;
@@ -378,24 +315,11 @@ public class GuestbookResponseServiceBean {
             for (Object[] response : customResponses) {
                 Integer responseId = (Integer) response[2];
 
-                if (asString) {
-                    // as combined strings of comma-separated question and answer values
-                    
-                    String qa = SEPARATOR + ((String)response[0]).replace(',', ' ') + SEPARATOR + (response[1] == null ? "" : ((String)response[1]).replace(',', ' '));
-
-                    if (ret.containsKey(responseId)) {
-                        ret.put(responseId, ret.get(responseId) + qa);
-                    } else {
-                        ret.put(responseId, qa);
-                    }
-                } else {
-                    // as a list of Object[]s - this is for display on the custom-responses page
-                    
-                    if (!ret.containsKey(responseId)) {
-                        ret.put(responseId, new ArrayList<>());
-                    }
-                    ((List) ret.get(responseId)).add(response);
+                // as a list of Object[]s - this is for display on the custom-responses page
+                if (!ret.containsKey(responseId)) {
+                    ret.put(responseId, new ArrayList<>());
                 }
+                ((List) ret.get(responseId)).add(response);
 
                 count++;
             }
@@ -879,31 +803,51 @@ public class GuestbookResponseServiceBean {
         return em.find(GuestbookResponse.class, id);
     }
 
-    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    /**
+     * Writes the response outside of the current transaction, if any - right
+     * away, or shortly after if the guestbook responses are written behind
+     * (see {@link GuestbookResponseWriterServiceBean}) - and counts it as a
+     * download of its file and dataset.
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void save(GuestbookResponse guestbookResponse) {
-        em.persist(guestbookResponse);
+        writer.write(guestbookResponse);
     }
     
+    /*
+     * The download counts are read from the counts maintained as the responses
+     * are written (see GuestbookResponseWriterServiceBean), rather than counted
+     * in the guestbookresponse table; the responses still waiting to be
+     * written are not counted yet.
+     */
         
     public Long getCountGuestbookResponsesByDataFileId(Long dataFileId) {
         // datafile id is null, will return 0
-        Query query = em.createNativeQuery("select count(o.id) from GuestbookResponse  o  where o.datafile_id  = " + dataFileId);
-        return (Long) query.getSingleResult();
+        return getDownloadCount("select coalesce(sum(count), 0) from datafiledownloadcount where datafile_id = ?1", dataFileId);
     }
     
     public Long getCountGuestbookResponsesByDatasetId(Long datasetId) {
         // dataset id is null, will return 0        
-        Query query = em.createNativeQuery("select count(o.id) from GuestbookResponse  o  where o.dataset_id  = " + datasetId);
-        return (Long) query.getSingleResult();
+        return getDownloadCount("select coalesce(sum(count), 0) from datasetdownloadcount where dataset_id = ?1", datasetId);
     }    
 
     public Long getCountOfAllGuestbookResponses() {
-        // dataset id is null, will return 0        
-        Query query = em.createNativeQuery("select count(o.id) from GuestbookResponse  o;");
-        return (Long) query.getSingleResult();
+        Query query = em.createNativeQuery("select coalesce(sum(count), 0) from datasetdownloadcount");
+        return ((Number) query.getSingleResult()).longValue();
+    }
+    
+    private Long getDownloadCount(String queryString, Long id) {
+        if (id == null) {
+            return 0L;
+        }
+        Query query = em.createNativeQuery(queryString).setParameter(1, id);
+        return ((Number) query.getSingleResult()).longValue();
     }
     
     public List<GuestbookResponse> findByAuthenticatedUserId(AuthenticatedUser user) {
+        // (responses still waiting to be written are to be found too, e.g.
+        // to be moved to another account)
+        writer.flush();
         Query query = em.createNamedQuery("GuestbookResponse.findByAuthenticatedUserId"); 
         query.setParameter("authenticatedUserId", user.getId());
         return query.getResultList();
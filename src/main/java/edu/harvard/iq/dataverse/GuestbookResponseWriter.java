@@ -0,0 +1,181 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.util.WriteBehindQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes guestbook responses behind the back of the download recording them,
+ * see {@link WriteBehindQueue}.
+ *
+ * The responses are queued as {@link Row}s, copies of the values of the
+ * {@link GuestbookResponse} taken when it is saved: the same response is
+ * reused for every file of a multiple-file download.
+ *
+ * A batch that cannot be written is written again one response at a time, so
+ * that one response that cannot be written (e.g. because its file was deleted
+ * in the meantime) does not take the rest of the batch with it.
+ */
+public class GuestbookResponseWriter extends WriteBehindQueue<GuestbookResponseWriter.Row> {
+
+    private static final Logger logger = Logger.getLogger(GuestbookResponseWriter.class.getCanonicalName());
+
+    /**
+     * The values of a guestbook response, with the objects it refers to as
+     * ids.
+     */
+    public static class Row {
+
+        /**
+         * The answer to a custom question of the guestbook.
+         */
+        public static class Answer {
+            final Long customQuestionId;
+            final String response;
+
+            public Answer(Long customQuestionId, String response) {
+                this.customQuestionId = customQuestionId;
+                this.response = response;
+            }
+
+            public Long getCustomQuestionId() {
+                return customQuestionId;
+            }
+
+            public String getResponse() {
+                return response;
+            }
+        }
+
+        final Long guestbookId;
+        final Long dataFileId;
+        final Long datasetId;
+        final Long datasetVersionId;
+        final Long authenticatedUserId;
+        final String name;
+        final String email;
+        final String institution;
+        final String position;
+        final Date responseTime;
+        final String downloadType;
+        final String sessionId;
+        final Date downloadTimestamp;
+        final List<Answer> answers;
+
+        public Row(Long guestbookId, Long dataFileId, Long datasetId, Long datasetVersionId, Long authenticatedUserId,
+                String name, String email, String institution, String position, Date responseTime,
+                String downloadType, String sessionId, Date downloadTimestamp, List<Answer> answers) {
+            this.guestbookId = guestbookId;
+            this.dataFileId = dataFileId;
+            this.datasetId = datasetId;
+            this.datasetVersionId = datasetVersionId;
+            this.authenticatedUserId = authenticatedUserId;
+            this.name = name;
+            this.email = email;
+            this.institution = institution;
+            this.position = position;
+            this.responseTime = responseTime;
+            this.downloadType = downloadType;
+            this.sessionId = sessionId;
+            this.downloadTimestamp = downloadTimestamp;
+            this.answers = answers != null ? Collections.unmodifiableList(new ArrayList<>(answers)) : Collections.emptyList();
+        }
+
+        public Long getGuestbookId() {
+            return guestbookId;
+        }
+
+        public Long getDataFileId() {
+            return dataFileId;
+        }
+
+        public Long getDatasetId() {
+            return datasetId;
+        }
+
+        public Long getDatasetVersionId() {
+            return datasetVersionId;
+        }
+
+        public Long getAuthenticatedUserId() {
+            return authenticatedUserId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        public String getInstitution() {
+            return institution;
+        }
+
+        public String getPosition() {
+            return position;
+        }
+
+        public Date getResponseTime() {
+            return responseTime;
+        }
+
+        public String getDownloadType() {
+            return downloadType;
+        }
+
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        public Date getDownloadTimestamp() {
+            return downloadTimestamp;
+        }
+
+        public List<Answer> getAnswers() {
+            return answers;
+        }
+
+        @Override
+        public String toString() {
+            return "[GuestbookResponse guestbook:" + guestbookId + " file:" + dataFileId + " dataset:" + datasetId + "]";
+        }
+    }
+
+    private final AtomicLong lost = new AtomicLong();
+
+    /**
+     * @param sink writes a batch of responses, all or none of them
+     */
+    public GuestbookResponseWriter(Sink<Row> sink, int capacity, int batchSize, long flushIntervalMillis) {
+        super("guestbook-response-writer", sink, capacity, batchSize, flushIntervalMillis);
+    }
+
+    @Override
+    protected void batchFailed(List<Row> batch, Exception ex) {
+        logger.log(Level.WARNING, "Could not write {0} guestbook responses ({1}); writing them one at a time",
+                new Object[]{batch.size(), ex.getMessage()});
+        for (Row row : batch) {
+            try {
+                sink.write(Collections.singletonList(row));
+                countWritten(1);
+            } catch (Exception rowEx) {
+                lost.incrementAndGet();
+                logger.log(Level.SEVERE, "Could not write " + row + "; it is lost: " + rowEx.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the number of responses that could not be written
+     */
+    public long getLost() {
+        return lost.get();
+    }
+}
@@ -0,0 +1,404 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.GuestbookResponseWriter.Row;
+import edu.harvard.iq.dataverse.util.SystemConfig;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.DependsOn;
+import javax.ejb.EJB;
+import javax.ejb.Lock;
+import javax.ejb.LockType;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionManagement;
+import javax.ejb.TransactionManagementType;
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+import javax.sql.DataSource;
+
+/**
+ * Writes the guestbook responses to the DB with plain JDBC, outside of the
+ * transaction of the download recording them: either right away, or - when
+ * :GuestbookResponseWriteBehind is set - in batches, by the
+ * {@link GuestbookResponseWriter} of this server.
+ *
+ * The download counts of the files and datasets (datafiledownloadcount and
+ * datasetdownloadcount, by month of the responses) are incremented in the
+ * same transaction as the responses are written in; they are reconciled with
+ * the guestbookresponse table every night, in case responses were deleted or
+ * written some other way - without holding up the downloads meanwhile.
+ */
+@Startup
+@Singleton
+@DependsOn("StartupFlywayMigrator")
+@TransactionManagement(value = TransactionManagementType.BEAN)
+public class GuestbookResponseWriterServiceBean {
+
+    private static final Logger logger = Logger.getLogger(GuestbookResponseWriterServiceBean.class.getCanonicalName());
+
+    static final int BATCH_SIZE = 500;
+    static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+    /**
+     * The month a response is counted in; responses without a time (from
+     * before they were recorded) are counted in -infinity.
+     */
+    static final String MONTH = "COALESCE(CAST(date_trunc('month', responsetime) AS date), '-infinity')";
+
+    private static final String INSERT_RESPONSE = "INSERT INTO guestbookresponse (guestbook_id, datafile_id, dataset_id,"
+            + " datasetversion_id, authenticateduser_id, name, email, institution, position, responsetime)"
+            + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_DOWNLOAD = "INSERT INTO filedownload (guestbookresponse_id, downloadtimestamp,"
+            + " downloadtype, sessionid) VALUES (?, ?, ?, ?)";
+    private static final String INSERT_ANSWER = "INSERT INTO customquestionresponse (guestbookresponse_id,"
+            + " customquestion_id, response) VALUES (?, ?, ?)";
+
+    private static final String INCREMENT_FILE_COUNTS = incrementCounts("datafiledownloadcount", "datafile_id");
+    private static final String INCREMENT_DATASET_COUNTS = incrementCounts("datasetdownloadcount", "dataset_id");
+    private static final String FILE_COUNT_DIFFERENCES = countDifferences("datafiledownloadcount", "datafile_id");
+    private static final String DATASET_COUNT_DIFFERENCES = countDifferences("datasetdownloadcount", "dataset_id");
+    private static final String CORRECT_FILE_COUNTS = incrementCountsBy("datafiledownloadcount", "datafile_id");
+    private static final String CORRECT_DATASET_COUNTS = incrementCountsBy("datasetdownloadcount", "dataset_id");
+    private static final String REMOVE_EMPTY_FILE_COUNTS = removeEmptyCounts("datafiledownloadcount", "datafile_id");
+    private static final String REMOVE_EMPTY_DATASET_COUNTS = removeEmptyCounts("datasetdownloadcount", "dataset_id");
+
+    /*
+     * The differences between the counts and the responses are read in a
+     * single snapshot, without locking anything: as the responses are
+     * written in the same transaction as their counts are incremented in,
+     * the responses written meanwhile are either in the snapshot along with
+     * their counts, or in neither. The differences are then added to the
+     * counts, like increments - at the same time as other increments, if need
+     * be. An advisory lock keeps two reconciliations (on different servers,
+     * say) from adding the same differences twice.
+     */
+    private static final long RECONCILE_LOCK_KEY = GuestbookResponseWriterServiceBean.class.getName().hashCode();
+
+    private static String incrementCounts(String table, String idColumn) {
+        return "INSERT INTO " + table + " (" + idColumn + ", month, count)"
+                + " SELECT " + idColumn + ", " + MONTH + ", count(*) FROM guestbookresponse"
+                + " WHERE id = ANY(?) GROUP BY 1, 2 ORDER BY 1, 2"
+                + " ON CONFLICT (" + idColumn + ", month) DO UPDATE SET count = " + table + ".count + EXCLUDED.count";
+    }
+
+    private static String countDifferences(String table, String idColumn) {
+        return "SELECT COALESCE(a.id, c." + idColumn + "), CAST(COALESCE(a.month, c.month) AS text),"
+                + " COALESCE(a.count, 0) - COALESCE(c.count, 0) FROM ("
+                + "SELECT " + idColumn + " AS id, " + MONTH + " AS month, count(*) AS count FROM guestbookresponse"
+                + " WHERE " + idColumn + " IS NOT NULL GROUP BY 1, 2) a"
+                + " FULL JOIN " + table + " c ON c." + idColumn + " = a.id AND c.month = a.month"
+                + " WHERE COALESCE(a.count, 0) <> COALESCE(c.count, 0)";
+    }
+
+    private static String incrementCountsBy(String table, String idColumn) {
+        return "INSERT INTO " + table + " (" + idColumn + ", month, count)"
+                + " SELECT id, month, count FROM unnest(?::bigint[], ?::text[]::date[], ?::bigint[]) AS d (id, month, count)"
+                + " ORDER BY 1, 2"
+                + " ON CONFLICT (" + idColumn + ", month) DO UPDATE SET count = " + table + ".count + EXCLUDED.count";
+    }
+
+    private static String removeEmptyCounts(String table, String idColumn) {
+        return "DELETE FROM " + table + " WHERE count <= 0 AND (" + idColumn + ", month) IN"
+                + " (SELECT id, month FROM unnest(?::bigint[], ?::text[]::date[]) AS d (id, month))";
+    }
+
+    @Resource(lookup = "java:app/jdbc/dataverse")
+    private DataSource dataSource;
+
+    @EJB
+    SystemConfig systemConfig;
+
+    private GuestbookResponseWriter writer;
+
+    @PostConstruct
+    void startWriter() {
+        writer = new GuestbookResponseWriter(this::insert, systemConfig.getGuestbookResponseQueueSize(),
+                BATCH_SIZE, FLUSH_INTERVAL_MILLIS);
+        writer.start();
+    }
+
+    @PreDestroy
+    void stopWriter() {
+        writer.stop();
+    }
+
+    /**
+     * Writes the response, or queues it to be written shortly if the guestbook
+     * responses are written behind and the queue is not full. Either way, the
+     * values of the response are copied: it can be reused for the next file.
+     */
+    @Lock(LockType.READ)
+    public void write(GuestbookResponse response) {
+        Row row = toRow(response);
+        if (systemConfig.isGuestbookResponseWriteBehind() && writer.offer(row)) {
+            return;
+        }
+        try {
+            insert(Collections.singletonList(row));
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Could not write " + row + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Writes the responses still queued right away.
+     */
+    @Lock(LockType.READ)
+    public void flush() {
+        writer.flush();
+    }
+
+    static Row toRow(GuestbookResponse response) {
+        List<Row.Answer> answers = new ArrayList<>();
+        if (response.getCustomQuestionResponses() != null) {
+            for (CustomQuestionResponse answer : response.getCustomQuestionResponses()) {
+                answers.add(new Row.Answer(answer.getCustomQuestion() != null ? answer.getCustomQuestion().getId() : null,
+                        answer.getResponse()));
+            }
+        }
+        FileDownload download = response.getFileDownload();
+        return new Row(response.getGuestbook() != null ? response.getGuestbook().getId() : null,
+                response.getDataFile() != null ? response.getDataFile().getId() : null,
+                response.getDataset() != null ? response.getDataset().getId() : null,
+                response.getDatasetVersion() != null ? response.getDatasetVersion().getId() : null,
+                response.getAuthenticatedUser() != null ? response.getAuthenticatedUser().getId() : null,
+                response.getName(), response.getEmail(), response.getInstitution(), response.getPosition(),
+                response.getResponseTime(),
+                download != null ? download.getDownloadtype() : null,
+                download != null ? download.getSessionId() : null,
+                download != null ? download.getDownloadTimestamp() : null,
+                answers);
+    }
+
+    private void insert(List<Row> rows) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                List<Long> ids = insertResponses(connection, rows);
+                try (PreparedStatement insertDownload = connection.prepareStatement(INSERT_DOWNLOAD);
+                        PreparedStatement insertAnswer = connection.prepareStatement(INSERT_ANSWER)) {
+                    boolean answered = false;
+                    for (int i = 0; i < rows.size(); i++) {
+                        Row row = rows.get(i);
+                        insertDownload.setLong(1, ids.get(i));
+                        setTimestamp(insertDownload, 2, row.getDownloadTimestamp());
+                        insertDownload.setString(3, row.getDownloadType());
+                        insertDownload.setString(4, row.getSessionId());
+                        insertDownload.addBatch();
+                        for (Row.Answer answer : row.getAnswers()) {
+                            insertAnswer.setLong(1, ids.get(i));
+                            setLong(insertAnswer, 2, answer.getCustomQuestionId());
+                            insertAnswer.setString(3, answer.getResponse());
+                            insertAnswer.addBatch();
+                            answered = true;
+                        }
+                    }
+                    insertDownload.executeBatch();
+                    if (answered) {
+                        insertAnswer.executeBatch();
+                    }
+                }
+                Array idArray = connection.createArrayOf("bigint", ids.toArray());
+                try (PreparedStatement incrementFileCounts = connection.prepareStatement(INCREMENT_FILE_COUNTS);
+                        PreparedStatement incrementDatasetCounts = connection.prepareStatement(INCREMENT_DATASET_COUNTS)) {
+                    incrementFileCounts.setArray(1, idArray);
+                    incrementFileCounts.executeUpdate();
+                    incrementDatasetCounts.setArray(1, idArray);
+                    incrementDatasetCounts.executeUpdate();
+                }
+                connection.commit();
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            }
+        }
+    }
+
+    private static List<Long> insertResponses(Connection connection, List<Row> rows) throws SQLException {
+        List<Long> ids = new ArrayList<>(rows.size());
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_RESPONSE, new String[]{"id"})) {
+            for (Row row : rows) {
+                setLong(insert, 1, row.getGuestbookId());
+                setLong(insert, 2, row.getDataFileId());
+                setLong(insert, 3, row.getDatasetId());
+                setLong(insert, 4, row.getDatasetVersionId());
+                setLong(insert, 5, row.getAuthenticatedUserId());
+                insert.setString(6, row.getName());
+                insert.setString(7, row.getEmail());
+                insert.setString(8, row.getInstitution());
+                insert.setString(9, row.getPosition());
+                setTimestamp(insert, 10, row.getResponseTime());
+                insert.addBatch();
+            }
+            insert.executeBatch();
+            try (ResultSet keys = insert.getGeneratedKeys()) {
+                while (keys.next()) {
+                    ids.add(keys.getLong(1));
+                }
+            }
+        }
+        if (ids.size() != rows.size()) {
+            throw new SQLException("Got " + ids.size() + " ids for " + rows.size() + " guestbook responses");
+        }
+        return ids;
+    }
+
+    private static void setLong(PreparedStatement statement, int index, Long value) throws SQLException {
+        if (value != null) {
+            statement.setLong(index, value);
+        } else {
+            statement.setNull(index, Types.BIGINT);
+        }
+    }
+
+    private static void setTimestamp(PreparedStatement statement, int index, Date date) throws SQLException {
+        if (date != null) {
+            statement.setTimestamp(index, new Timestamp(date.getTime()));
+        } else {
+            statement.setNull(index, Types.TIMESTAMP);
+        }
+    }
+
+    @Schedule(hour = "3", minute = "15", persistent = false)
+    @Lock(LockType.READ)
+    public void reconcileDownloadCountsTimer() {
+        if (systemConfig.isTimerServer()) {
+            logger.info("Reconciling the download counts");
+            try {
+                reconcileDownloadCounts();
+            } catch (SQLException ex) {
+                logger.log(Level.SEVERE, "Could not reconcile the download counts", ex);
+            }
+        }
+    }
+
+    /**
+     * Sets the download counts of the files and datasets to the number of
+     * their guestbook responses, by month.
+     *
+     * @return the number of counts that were off, by files and datasets
+     */
+    @Lock(LockType.READ)
+    public JsonObjectBuilder reconcileDownloadCounts() throws SQLException {
+        writer.flush();
+        long fileCounts;
+        long datasetCounts;
+        try (Connection connection = dataSource.getConnection()) {
+            advisoryLock(connection, "SELECT pg_advisory_lock(?)");
+            try {
+                CountDifferences fileDifferences;
+                CountDifferences datasetDifferences;
+                connection.setAutoCommit(false);
+                connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+                try (Statement statement = connection.createStatement()) {
+                    fileDifferences = new CountDifferences(statement, FILE_COUNT_DIFFERENCES);
+                    datasetDifferences = new CountDifferences(statement, DATASET_COUNT_DIFFERENCES);
+                    connection.commit();
+                } catch (SQLException ex) {
+                    connection.rollback();
+                    throw ex;
+                }
+                connection.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+                try {
+                    fileDifferences.apply(connection, CORRECT_FILE_COUNTS, REMOVE_EMPTY_FILE_COUNTS);
+                    datasetDifferences.apply(connection, CORRECT_DATASET_COUNTS, REMOVE_EMPTY_DATASET_COUNTS);
+                    connection.commit();
+                } catch (SQLException ex) {
+                    connection.rollback();
+                    throw ex;
+                }
+                fileCounts = fileDifferences.size();
+                datasetCounts = datasetDifferences.size();
+            } finally {
+                connection.setAutoCommit(true);
+                advisoryLock(connection, "SELECT pg_advisory_unlock(?)");
+            }
+        }
+        if (fileCounts > 0 || datasetCounts > 0) {
+            logger.log(Level.INFO, "Reconciled the download counts: {0} file and {1} dataset counts corrected",
+                    new Object[]{fileCounts, datasetCounts});
+        }
+        return Json.createObjectBuilder()
+                .add("fileCountsCorrected", fileCounts)
+                .add("datasetCountsCorrected", datasetCounts);
+    }
+
+    private static void advisoryLock(Connection connection, String query) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setLong(1, RECONCILE_LOCK_KEY);
+            statement.executeQuery().close();
+        }
+    }
+
+    /**
+     * How far the counts of a table are from the responses, by id and month.
+     */
+    private static final class CountDifferences {
+
+        private final List<Long> ids = new ArrayList<>();
+        private final List<String> months = new ArrayList<>();
+        private final List<Long> differences = new ArrayList<>();
+
+        CountDifferences(Statement statement, String query) throws SQLException {
+            try (ResultSet result = statement.executeQuery(query)) {
+                while (result.next()) {
+                    ids.add(result.getLong(1));
+                    months.add(result.getString(2));
+                    differences.add(result.getLong(3));
+                }
+            }
+        }
+
+        int size() {
+            return ids.size();
+        }
+
+        void apply(Connection connection, String increment, String removeEmpty) throws SQLException {
+            if (ids.isEmpty()) {
+                return;
+            }
+            Array idArray = connection.createArrayOf("bigint", ids.toArray());
+            Array monthArray = connection.createArrayOf("text", months.toArray());
+            try (PreparedStatement incrementCounts = connection.prepareStatement(increment);
+                    PreparedStatement removeEmptyCounts = connection.prepareStatement(removeEmpty)) {
+                incrementCounts.setArray(1, idArray);
+                incrementCounts.setArray(2, monthArray);
+                incrementCounts.setArray(3, connection.createArrayOf("bigint", differences.toArray()));
+                incrementCounts.executeUpdate();
+                removeEmptyCounts.setArray(1, idArray);
+                removeEmptyCounts.setArray(2, monthArray);
+                removeEmptyCounts.executeUpdate();
+            }
+        }
+    }
+
+    @Lock(LockType.READ)
+    public JsonObjectBuilder getStatistics() {
+        return Json.createObjectBuilder()
+                .add("writeBehind", systemConfig.isGuestbookResponseWriteBehind())
+                .add("queued", writer.getQueued())
+                .add("capacity", writer.getCapacity())
+                .add("accepted", writer.getAccepted())
+                .add("refused", writer.getRefused())
+                .add("written", writer.getWritten())
+                .add("batches", writer.getBatches())
+                .add("failedBatches", writer.getFailedBatches())
+                .add("lost", writer.getLost());
+    }
+}
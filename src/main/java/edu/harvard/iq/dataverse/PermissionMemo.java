@@ -0,0 +1,140 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.authorization.Permission;
+import edu.harvard.iq.dataverse.authorization.RoleAssignee;
+import edu.harvard.iq.dataverse.authorization.groups.Group;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Remembers, for the duration of one
+ * {@link edu.harvard.iq.dataverse.engine.command.DataverseRequest}, the
+ * groups of the request and the permissions its role assignees get, through
+ * role assignments, over the objects it checked - so that a page checking the
+ * same object once per button and once per file card only looks them up
+ * once.
+ *
+ * Whenever role assignments, roles, group memberships or the owners of
+ * dataverses change - anywhere - {@link #assignmentsChanged()} is called, and
+ * every memo forgets what it remembers before its next use. Permissions that
+ * follow from the state of the object itself (e.g. a released, unrestricted
+ * file) are not remembered here.
+ */
+public class PermissionMemo {
+
+    static final int MAX_SIZE = 100000;
+
+    private static final AtomicLong generation = new AtomicLong();
+
+    // (role assignee identifiers, object id) -> the permissions assigned to them on the object
+    private final Map<Key, Set<Permission>> permissions = new HashMap<>();
+    private Set<Group> groups;
+    private long memoGeneration = generation.get();
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Makes every memo forget what it remembers.
+     */
+    public static void assignmentsChanged() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * @return the permissions {@code ras} were found to have over the
+     * object, or {@code null} if they were not looked up yet
+     */
+    public synchronized Set<Permission> get(Set<RoleAssignee> ras, Long dvObjectId) {
+        if (dvObjectId == null) {
+            return null;
+        }
+        checkGeneration();
+        Set<Permission> found = permissions.get(new Key(ras, dvObjectId));
+        if (found == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return copy(found);
+    }
+
+    public synchronized void put(Set<RoleAssignee> ras, Long dvObjectId, Set<Permission> assigned) {
+        if (dvObjectId == null) {
+            return;
+        }
+        checkGeneration();
+        if (permissions.size() >= MAX_SIZE) {
+            permissions.clear();
+        }
+        permissions.put(new Key(ras, dvObjectId), copy(assigned));
+    }
+
+    /**
+     * @return the groups of the request, looked up with {@code loader} the
+     * first time
+     */
+    public synchronized Set<Group> getGroups(Supplier<Set<Group>> loader) {
+        checkGeneration();
+        if (groups == null) {
+            groups = loader.get();
+        }
+        return groups;
+    }
+
+    private void checkGeneration() {
+        long current = generation.get();
+        if (current != memoGeneration) {
+            permissions.clear();
+            groups = null;
+            memoGeneration = current;
+        }
+    }
+
+    private static Set<Permission> copy(Set<Permission> permissions) {
+        return permissions.isEmpty() ? EnumSet.noneOf(Permission.class) : EnumSet.copyOf(permissions);
+    }
+
+    public synchronized int size() {
+        return permissions.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private static final class Key {
+        final Set<String> assigneeIdentifiers = new HashSet<>();
+        final Long dvObjectId;
+
+        Key(Set<RoleAssignee> ras, Long dvObjectId) {
+            for (RoleAssignee ra : ras) {
+                assigneeIdentifiers.add(ra.getIdentifier());
+            }
+            this.dvObjectId = dvObjectId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(assigneeIdentifiers, dvObjectId);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return dvObjectId.equals(other.dvObjectId) && assigneeIdentifiers.equals(other.assigneeIdentifiers);
+        }
+    }
+}
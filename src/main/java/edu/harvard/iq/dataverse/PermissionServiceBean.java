@@ -10,6 +10,7 @@ import edu.harvard.iq.dataverse.authorization.RoleAssignee;
 import edu.harvard.iq.dataverse.authorization.groups.Group;
 import edu.harvard.iq.dataverse.authorization.groups.GroupServiceBean;
 import edu.harvard.iq.dataverse.authorization.groups.GroupUtil;
+import edu.harvard.iq.dataverse.authorization.groups.impl.explicit.ExplicitGroup;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.authorization.users.User;
 import edu.harvard.iq.dataverse.engine.command.Command;
@@ -34,9 +35,13 @@ import edu.harvard.iq.dataverse.util.BundleUtil;
 import edu.harvard.iq.dataverse.workflow.PendingWorkflowInvocation;
 import edu.harvard.iq.dataverse.workflow.WorkflowServiceBean;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
@@ -57,6 +62,8 @@ public class PermissionServiceBean {
 
     private static final Logger logger = Logger.getLogger(PermissionServiceBean.class.getName());
 
+    private static final int MAX_DEFINITION_POINTS_PER_QUERY = 10000;
+
     private static final Set<Permission> PERMISSIONS_FOR_AUTHENTICATED_USERS_ONLY
             = EnumSet.copyOf(Arrays.asList(Permission.values()).stream()
                     .filter(Permission::requiresAuthenticatedUser)
@@ -261,10 +268,10 @@ public class PermissionServiceBean {
         }
               
         // Actually look at permissions
-        Set<DvObject> parents = getPermissionAncestors(dvo);
+        Set<Long> parentIds = getPermissionAncestorIds(dvo);
         Set<RoleAssignee> ras = new HashSet<>(groupService.groupsFor(req));
         ras.add(user);
-        List<RoleAssignment> parentsAsignments = roleService.directRoleAssignments(ras, parents);
+        List<RoleAssignment> parentsAsignments = roleService.directRoleAssignmentsByDefinitionPointIds(ras, parentIds);
         
         for (RoleAssignment asmnt : parentsAsignments) {
             required.removeAll(asmnt.getRole().permissions());
@@ -324,9 +331,7 @@ public class PermissionServiceBean {
             }
         }
         
-        Set<RoleAssignee> ras = new HashSet<>(groupService.groupsFor(req, dvo));
-        ras.add(user);
-        return hasGroupPermissionsFor(ras, dvo, required);
+        return assignedPermissionsFor(req, dvo).containsAll(required);
     }
 
     public boolean hasPermissionsFor(RoleAssignee ra, DvObject dvo, Set<Permission> required) {
@@ -375,9 +380,7 @@ public class PermissionServiceBean {
         Set<Permission> permissions = getInferredPermissions(dvo);
 
         // Add permissions gained from ras
-        Set<RoleAssignee> ras = new HashSet<>(groupService.groupsFor(req, dvo));
-        ras.add(req.getUser());
-        addGroupPermissionsFor(ras, dvo, permissions);
+        permissions.addAll(assignedPermissionsFor(req, dvo));
 
         if (!req.getUser().isAuthenticated()) {
             permissions.removeAll(PERMISSIONS_FOR_AUTHENTICATED_USERS_ONLY);
@@ -385,6 +388,152 @@ public class PermissionServiceBean {
         return permissions;
     }
 
+    /**
+     * Finds, for each of {@code dvos}, the permissions {@code req} has over
+     * it - as {@link #permissionsFor(DataverseRequest, DvObject)} does for one
+     * object, but with one query for the role assignments on all of them (and
+     * their owners), for pages and calls that check a long list of objects,
+     * such as the files of a dataset. The request remembers the results, so
+     * the checks of single objects that follow are answered without queries.
+     *
+     * @param req the request whose permissions are checked
+     * @param dvos the objects to check
+     * @return the permissions of {@code req} over each of {@code dvos}
+     */
+    public Map<DvObject, Set<Permission>> permissionsFor(DataverseRequest req, Collection<? extends DvObject> dvos) {
+        Map<DvObject, Set<Permission>> permissions = new LinkedHashMap<>();
+        if (req.getUser().isSuperuser()) {
+            dvos.forEach(dvo -> permissions.put(dvo, EnumSet.allOf(Permission.class)));
+            return permissions;
+        }
+
+        Map<DvObject, Set<Permission>> assigned = assignedPermissionsFor(req, dvos);
+        for (DvObject dvo : dvos) {
+            Set<Permission> dvoPermissions = getInferredPermissions(dvo);
+            dvoPermissions.addAll(assigned.get(dvo));
+            if (!req.getUser().isAuthenticated()) {
+                dvoPermissions.removeAll(PERMISSIONS_FOR_AUTHENTICATED_USERS_ONLY);
+            }
+            permissions.put(dvo, dvoPermissions);
+        }
+        return permissions;
+    }
+
+    /**
+     * Same as calling {@link #hasPermissionsFor(DataverseRequest, DvObject, Set)}
+     * for each of {@code dvos}, but with one query for the role assignments
+     * on all of them - see {@link #permissionsFor(DataverseRequest, Collection)}.
+     *
+     * @param req the request whose permissions are checked
+     * @param dvos the objects to check
+     * @param required the permissions {@code req} needs
+     * @return those of {@code dvos} over which {@code req} has all of the
+     *         {@code required} permissions, in the same order
+     */
+    public <T extends DvObject> List<T> whichHavePermissionsFor(DataverseRequest req, List<T> dvos, Set<Permission> required) {
+        User user = req.getUser();
+        if (user.isSuperuser()) {
+            return new ArrayList<>(dvos);
+        } else if (!user.isAuthenticated()) {
+            if (required.stream().anyMatch(PERMISSIONS_FOR_AUTHENTICATED_USERS_ONLY::contains)) {
+                return new ArrayList<>();
+            }
+        }
+
+        Map<DvObject, Set<Permission>> assigned = assignedPermissionsFor(req, dvos);
+        return dvos.stream()
+                .filter(dvo -> assigned.get(dvo).containsAll(required))
+                .collect(toList());
+    }
+
+    /**
+     * The permissions the role assignees of {@code req} - its user and its
+     * groups in the context of {@code dvo} - get over {@code dvo} through role
+     * assignments, remembered by the request.
+     */
+    private Set<Permission> assignedPermissionsFor(DataverseRequest req, DvObject dvo) {
+        Set<RoleAssignee> ras = requestAssigneesFor(req, dvo);
+        Long dvoId = (dvo != null) ? dvo.getId() : null;
+        Set<Permission> permissions = req.getPermissionMemo().get(ras, dvoId);
+        if (permissions == null) {
+            permissions = EnumSet.noneOf(Permission.class);
+            addGroupPermissionsFor(ras, dvo, permissions);
+            req.getPermissionMemo().put(ras, dvoId, permissions);
+        }
+        return permissions;
+    }
+
+    private Map<DvObject, Set<Permission>> assignedPermissionsFor(DataverseRequest req, Collection<? extends DvObject> dvos) {
+        PermissionMemo memo = req.getPermissionMemo();
+        // (by identity, as objects that were not saved yet have no id to tell them apart)
+        Map<DvObject, Set<Permission>> permissions = new IdentityHashMap<>();
+        Map<DvObject, Set<RoleAssignee>> unknown = new IdentityHashMap<>();
+        for (DvObject dvo : dvos) {
+            Set<RoleAssignee> ras = requestAssigneesFor(req, dvo);
+            Set<Permission> remembered = memo.get(ras, dvo.getId());
+            if (remembered != null) {
+                permissions.put(dvo, remembered);
+            } else {
+                unknown.put(dvo, ras);
+            }
+        }
+        if (unknown.isEmpty()) {
+            return permissions;
+        }
+
+        // the role assignments of all the assignees, on all the objects and their owners
+        Map<DvObject, Set<Long>> ancestorIds = new IdentityHashMap<>();
+        Set<Long> allAncestorIds = new HashSet<>();
+        Set<RoleAssignee> allRas = new HashSet<>();
+        unknown.forEach((dvo, ras) -> {
+            ancestorIds.put(dvo, getPermissionAncestorIds(dvo));
+            allAncestorIds.addAll(ancestorIds.get(dvo));
+            allRas.addAll(ras);
+        });
+        Map<Long, List<RoleAssignment>> assignmentsByDefinitionPoint = new HashMap<>();
+        List<Long> definitionPointIds = new ArrayList<>(allAncestorIds);
+        // (in chunks, to keep the number of query parameters reasonable)
+        for (int from = 0; from < definitionPointIds.size(); from += MAX_DEFINITION_POINTS_PER_QUERY) {
+            List<Long> chunk = definitionPointIds.subList(from, Math.min(from + MAX_DEFINITION_POINTS_PER_QUERY, definitionPointIds.size()));
+            for (RoleAssignment asmnt : roleService.directRoleAssignmentsByDefinitionPointIds(allRas, chunk)) {
+                assignmentsByDefinitionPoint.computeIfAbsent(asmnt.getDefinitionPoint().getId(), id -> new ArrayList<>()).add(asmnt);
+            }
+        }
+
+        unknown.forEach((dvo, ras) -> {
+            Set<String> identifiers = ras.stream().map(RoleAssignee::getIdentifier).collect(Collectors.toSet());
+            Set<Permission> assigned = EnumSet.noneOf(Permission.class);
+            for (Long ancestorId : ancestorIds.get(dvo)) {
+                for (RoleAssignment asmnt : assignmentsByDefinitionPoint.getOrDefault(ancestorId, Collections.emptyList())) {
+                    if (identifiers.contains(asmnt.getAssigneeIdentifier())) {
+                        assigned.addAll(asmnt.getRole().permissions());
+                    }
+                }
+            }
+            memo.put(ras, dvo.getId(), assigned);
+            permissions.put(dvo, assigned);
+        });
+        return permissions;
+    }
+
+    /**
+     * The user of {@code req} and its groups in the context of {@code dvo} -
+     * the same as {@link GroupServiceBean#groupsFor(DataverseRequest, DvObject)},
+     * but from the groups of the request, which are looked up once per
+     * request.
+     */
+    private Set<RoleAssignee> requestAssigneesFor(DataverseRequest req, DvObject dvo) {
+        Set<RoleAssignee> ras = new HashSet<>();
+        for (Group group : req.getPermissionMemo().getGroups(() -> groupService.groupsFor(req))) {
+            // explicit groups only count under the dataverse that defines them
+            if (!(group instanceof ExplicitGroup) || ((ExplicitGroup) group).getOwner().isAncestorOf(dvo)) {
+                ras.add(group);
+            }
+        }
+        ras.add(req.getUser());
+        return ras;
+    }
+
     /**
      * Returns the set of permission a user/group has over a dataverse object.
      * This method takes into consideration group memberships as well, but does
@@ -475,8 +624,32 @@ public class PermissionServiceBean {
     }
 
     public Set<RoleAssignment> assignmentsFor(Set<RoleAssignee> ras, DvObject d) {
-        Set<DvObject> permAncestors = getPermissionAncestors(d);
-        return new HashSet<>(roleService.directRoleAssignments(ras, permAncestors));
+        Set<Long> permAncestorIds = getPermissionAncestorIds(d);
+        return new HashSet<>(roleService.directRoleAssignmentsByDefinitionPointIds(ras, permAncestorIds));
+    }
+
+    /**
+     * Same as {@link #getPermissionAncestors(DvObject)}, but only the ids.
+     * The owners are walked for every check rather than taken from the
+     * {@link DataverseServiceBean#ancestorCache}, so that a dataverse moved,
+     * or made a permission root, on another server counts right away.
+     * 
+     * @param d the object whose permission ancestors we want
+     * @return the ids of {@code d} and of its owners, up to and including the
+     *         first one that is effectively a permission root.
+     */
+    public Set<Long> getPermissionAncestorIds(DvObject d) {
+        Set<Long> ancestorIds = new HashSet<>();
+        while (d != null) {
+            if (d.getId() != null) {
+                ancestorIds.add(d.getId());
+            }
+            if (d instanceof Dataverse && ((Dataverse) d).isEffectivelyPermissionRoot()) {
+                return ancestorIds;
+            }
+            d = d.getOwner();
+        }
+        return ancestorIds;
     }
 
     public Set<DvObject> getPermissionAncestors(DvObject d) {
@@ -1,7 +1,16 @@
 package edu.harvard.iq.dataverse.actionlogging;
 
+import edu.harvard.iq.dataverse.util.SystemConfig;
 import java.util.Date;
+import java.util.UUID;
+import java.util.logging.Logger;
+import javax.annotation.Resource;
+import javax.ejb.EJB;
 import javax.ejb.Stateless;
+import javax.ejb.Timeout;
+import javax.ejb.Timer;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 import javax.persistence.EntityManager;
@@ -14,15 +23,37 @@ import javax.persistence.PersistenceContext;
 @Stateless
 public class ActionLogServiceBean {
     
+    private static final Logger logger = Logger.getLogger(ActionLogServiceBean.class.getCanonicalName());
+    
+    /**
+     * How long after an identifier change it is made again, for the records
+     * the other servers still had queued: a few of their flush intervals.
+     */
+    static final long IDENTIFIER_CHANGE_REDO_DELAY_MILLIS = 30 * ActionLogWriterServiceBean.FLUSH_INTERVAL_MILLIS;
+    
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     private EntityManager em;
     
+    @EJB
+    ActionLogWriterServiceBean writer;
+    
+    @EJB
+    SystemConfig systemConfig;
+    
+    @Resource
+    TimerService timerService;
+    
     /**
-     * Log the record. Set default values.
+     * Log the record. Set default values. The record is written outside of
+     * the current transaction, if any - right away, or shortly after if
+     * the action log is written behind (see {@link ActionLogWriterServiceBean}).
      * @param rec 
      */
-    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void log( ActionLogRecord rec ) {
+        if ( rec.getId() == null ) {
+            rec.setId( UUID.randomUUID().toString() );
+        }
         if ( rec.getEndTime() == null ) {
             rec.setEndTime( new Date() );
         }
@@ -30,13 +61,39 @@ public class ActionLogServiceBean {
                 && rec.getActionType() != ActionLogRecord.ActionType.Command ) {
             rec.setActionResult(ActionLogRecord.Result.OK);
         }
-        em.persist(rec);
+        writer.write(rec);
     }
 
     //Switches all actions from one identifier to another identifier, via native query
     //This is needed for when we change a userIdentifier or merge one account into another
     public void changeUserIdentifierInHistory(String oldIdentifier, String newIdentifier) {
-        em.createNativeQuery(
+        // (records still waiting to be written are to be switched too)
+        writer.flush();
+        updateUserIdentifier(oldIdentifier, newIdentifier);
+        if (systemConfig.isActionLogWriteBehind()) {
+            // Only the queue of this server was flushed: the records the
+            // other servers still have queued under the old identifier are
+            // written after this update, and switched by doing it again once
+            // those queues have been written. (The timer is created once the
+            // transaction commits.) Records a server could not write, and
+            // spilled to its file until the DB is back, may be written even
+            // later than that, and keep the old identifier.
+            timerService.createSingleActionTimer(IDENTIFIER_CHANGE_REDO_DELAY_MILLIS,
+                    new TimerConfig(new String[]{oldIdentifier, newIdentifier}, false));
+        }
+    }
+    
+    @Timeout
+    public void redoUserIdentifierChange(Timer timer) {
+        String[] identifiers = (String[]) timer.getInfo();
+        int count = updateUserIdentifier(identifiers[0], identifiers[1]);
+        if (count > 0) {
+            logger.info("Switched " + count + " action log records written late from " + identifiers[0] + " to " + identifiers[1]);
+        }
+    }
+    
+    private int updateUserIdentifier(String oldIdentifier, String newIdentifier) {
+        return em.createNativeQuery(
                 "UPDATE actionlogrecord "
                         + "SET useridentifier='"+newIdentifier+"', "
                         + "info='orig from "+oldIdentifier+" | ' || info "
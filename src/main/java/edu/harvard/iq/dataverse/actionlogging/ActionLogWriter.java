@@ -0,0 +1,237 @@
+package edu.harvard.iq.dataverse.actionlogging;
+
+import edu.harvard.iq.dataverse.util.WriteBehindQueue;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes {@link ActionLogRecord}s behind the back of the code logging them,
+ * see {@link WriteBehindQueue}.
+ *
+ * A batch that cannot be written (e.g. because the database is down) is
+ * appended to the spill file, which is written again, along with the next
+ * batches, until that succeeds. The records are written by their id, and a
+ * record already written is skipped, so a spill file written in part is
+ * simply written again in full.
+ */
+public class ActionLogWriter extends WriteBehindQueue<ActionLogRecord> {
+
+    private static final Logger logger = Logger.getLogger(ActionLogWriter.class.getCanonicalName());
+
+    private final Path spillFile;
+
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param sink writes a batch of records, all or none of them, skipping
+     * the records already written
+     */
+    public ActionLogWriter(Sink<ActionLogRecord> sink, Path spillFile, int capacity, int batchSize, long flushIntervalMillis) {
+        super("action-log-writer", sink, capacity, batchSize, flushIntervalMillis);
+        this.spillFile = spillFile;
+    }
+
+    /**
+     * Writes the records left in the spill file (by a previous run, too)
+     * before the queued ones.
+     */
+    @Override
+    protected void beforeBatches() {
+        if (Files.exists(spillFile)) {
+            writeSpillFile();
+        }
+    }
+
+    @Override
+    protected void batchFailed(List<ActionLogRecord> batch, Exception ex) {
+        logger.log(Level.WARNING, "Could not write {0} action log records ({1}); spilling them to {2}",
+                new Object[]{batch.size(), ex.getMessage(), spillFile});
+        spill(batch);
+    }
+
+    private void spill(List<ActionLogRecord> batch) {
+        try {
+            Files.createDirectories(spillFile.toAbsolutePath().getParent());
+            try (FileOutputStream out = new FileOutputStream(spillFile.toFile(), true)) {
+                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                for (ActionLogRecord rec : batch) {
+                    writer.write(toLine(rec));
+                    writer.write('\n');
+                }
+                writer.flush();
+                out.getFD().sync();
+            }
+            spilled.addAndGet(batch.size());
+        } catch (IOException ex) {
+            dropped.addAndGet(batch.size());
+            logger.log(Level.SEVERE, "Could not spill " + batch.size() + " action log records to " + spillFile + "; they are lost", ex);
+        }
+    }
+
+    /**
+     * Writes the records of the spill file, and deletes it once they are
+     * all written.
+     */
+    private void writeSpillFile() {
+        long count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(spillFile, StandardCharsets.UTF_8)) {
+            List<ActionLogRecord> batch = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                batch.add(fromLine(line));
+                if (batch.size() == batchSize) {
+                    sink.write(batch);
+                    count += batch.size();
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                sink.write(batch);
+                count += batch.size();
+            }
+        } catch (Exception ex) {
+            // (still there, to be written with the next batch)
+            logger.log(Level.FINE, "Could not write the spilled action log records yet: {0}", ex.getMessage());
+            return;
+        }
+        try {
+            Files.delete(spillFile);
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Could not delete " + spillFile + " after writing its records", ex);
+        }
+        countWritten(count);
+        logger.log(Level.INFO, "Wrote {0} spilled action log records", count);
+    }
+
+    /*
+     * The records are spilled one per line, in the text format of the
+     * PostgreSQL COPY command, in the order of ActionLogRecord columns
+     * (see COLUMNS), times as milliseconds since the epoch.
+     */
+
+    static final String COLUMNS = "id, starttime, endtime, actionresult, useridentifier, actiontype, actionsubtype, info";
+
+    static String toLine(ActionLogRecord rec) {
+        StringBuilder line = new StringBuilder();
+        appendField(line, rec.getId());
+        line.append('\t');
+        appendField(line, rec.getStartTime() != null ? Long.toString(rec.getStartTime().getTime()) : null);
+        line.append('\t');
+        appendField(line, rec.getEndTime() != null ? Long.toString(rec.getEndTime().getTime()) : null);
+        line.append('\t');
+        appendField(line, rec.getActionResult() != null ? rec.getActionResult().name() : null);
+        line.append('\t');
+        appendField(line, rec.getUserIdentifier());
+        line.append('\t');
+        appendField(line, rec.getActionType() != null ? rec.getActionType().name() : null);
+        line.append('\t');
+        appendField(line, rec.getActionSubType());
+        line.append('\t');
+        appendField(line, rec.getInfo());
+        return line.toString();
+    }
+
+    static ActionLogRecord fromLine(String line) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length != 8) {
+            throw new IllegalArgumentException("Not a spilled action log record: " + line);
+        }
+        ActionLogRecord rec = new ActionLogRecord();
+        rec.setId(parseField(fields[0]));
+        String startTime = parseField(fields[1]);
+        rec.setStartTime(startTime != null ? new Date(Long.parseLong(startTime)) : null);
+        String endTime = parseField(fields[2]);
+        rec.setEndTime(endTime != null ? new Date(Long.parseLong(endTime)) : null);
+        String result = parseField(fields[3]);
+        rec.setActionResult(result != null ? ActionLogRecord.Result.valueOf(result) : null);
+        rec.setUserIdentifier(parseField(fields[4]));
+        String type = parseField(fields[5]);
+        rec.setActionType(type != null ? ActionLogRecord.ActionType.valueOf(type) : null);
+        rec.setActionSubType(parseField(fields[6]));
+        rec.setInfo(parseField(fields[7]));
+        return rec;
+    }
+
+    private static void appendField(StringBuilder line, String value) {
+        if (value == null) {
+            line.append("\\N");
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                default:
+                    line.append(c);
+            }
+        }
+    }
+
+    private static String parseField(String field) {
+        if (field.equals("\\N")) {
+            return null;
+        }
+        StringBuilder value = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '\\' && i + 1 < field.length()) {
+                char escaped = field.charAt(++i);
+                switch (escaped) {
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    default:
+                        value.append(escaped);
+                }
+            } else {
+                value.append(c);
+            }
+        }
+        return value.toString();
+    }
+
+    public long getSpilled() {
+        return spilled.get();
+    }
+
+    /**
+     * @return the number of records that could neither be written nor
+     * spilled
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,162 @@
+package edu.harvard.iq.dataverse.actionlogging;
+
+import edu.harvard.iq.dataverse.util.SystemConfig;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.DependsOn;
+import javax.ejb.EJB;
+import javax.ejb.Lock;
+import javax.ejb.LockType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionManagement;
+import javax.ejb.TransactionManagementType;
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+import javax.sql.DataSource;
+
+/**
+ * Writes the {@link ActionLogRecord}s to the DB with plain JDBC, outside of
+ * the transaction of the code logging them: either right away, or - when
+ * :ActionLogWriteBehind is set - in batches, by the {@link ActionLogWriter}
+ * of this server.
+ */
+@Startup
+@Singleton
+@DependsOn("StartupFlywayMigrator")
+@TransactionManagement(value = TransactionManagementType.BEAN)
+public class ActionLogWriterServiceBean {
+
+    private static final Logger logger = Logger.getLogger(ActionLogWriterServiceBean.class.getCanonicalName());
+
+    static final int BATCH_SIZE = 500;
+    static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+    private static final String INSERT = "INSERT INTO actionlogrecord (" + ActionLogWriter.COLUMNS + ")"
+            + " VALUES (?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT (id) DO NOTHING";
+
+    @Resource(lookup = "java:app/jdbc/dataverse")
+    private DataSource dataSource;
+
+    @EJB
+    SystemConfig systemConfig;
+
+    private ActionLogWriter writer;
+
+    @PostConstruct
+    void startWriter() {
+        writer = new ActionLogWriter(this::insert, getSpillFile(), systemConfig.getActionLogQueueSize(),
+                BATCH_SIZE, FLUSH_INTERVAL_MILLIS);
+        writer.start();
+    }
+
+    @PreDestroy
+    void stopWriter() {
+        writer.stop();
+    }
+
+    /**
+     * Writes the record, or queues it to be written shortly if the action
+     * log is written behind and the queue is not full.
+     */
+    @Lock(LockType.READ)
+    public void write(ActionLogRecord rec) {
+        if (systemConfig.isActionLogWriteBehind() && writer.offer(rec)) {
+            return;
+        }
+        try {
+            insert(Collections.singletonList(rec));
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Could not write " + rec + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Writes the records still queued right away - e.g. before they are
+     * updated in the DB.
+     */
+    @Lock(LockType.READ)
+    public void flush() {
+        writer.flush();
+    }
+
+    private void insert(List<ActionLogRecord> records) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+                for (ActionLogRecord rec : records) {
+                    insert.setString(1, rec.getId());
+                    setTimestamp(insert, 2, rec.getStartTime());
+                    setTimestamp(insert, 3, rec.getEndTime());
+                    insert.setString(4, rec.getActionResult() != null ? rec.getActionResult().name() : null);
+                    insert.setString(5, rec.getUserIdentifier());
+                    insert.setString(6, rec.getActionType() != null ? rec.getActionType().name() : null);
+                    insert.setString(7, rec.getActionSubType());
+                    insert.setString(8, rec.getInfo());
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                connection.commit();
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            }
+        }
+    }
+
+    private static void setTimestamp(PreparedStatement statement, int index, Date date) throws SQLException {
+        if (date != null) {
+            statement.setTimestamp(index, new Timestamp(date.getTime()));
+        } else {
+            statement.setNull(index, Types.TIMESTAMP);
+        }
+    }
+
+    /**
+     * The file the records that could not be written are kept in, until
+     * they are; one per server, next to the files of the installation.
+     */
+    private static Path getSpillFile() {
+        String filesRootDirectory = System.getProperty(SystemConfig.FILES_DIRECTORY);
+        if (filesRootDirectory == null || filesRootDirectory.equals("")) {
+            filesRootDirectory = "/tmp/files";
+        }
+        String hostName;
+        try {
+            hostName = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException ex) {
+            logger.warning("Could not determine the host name; the action log spill file is named after localhost");
+            hostName = "localhost";
+        }
+        return Paths.get(filesRootDirectory, "actionlog", "spill-" + hostName + ".tsv");
+    }
+
+    @Lock(LockType.READ)
+    public JsonObjectBuilder getStatistics() {
+        return Json.createObjectBuilder()
+                .add("writeBehind", systemConfig.isActionLogWriteBehind())
+                .add("queued", writer.getQueued())
+                .add("capacity", writer.getCapacity())
+                .add("accepted", writer.getAccepted())
+                .add("refused", writer.getRefused())
+                .add("written", writer.getWritten())
+                .add("batches", writer.getBatches())
+                .add("failedBatches", writer.getFailedBatches())
+                .add("spilled", writer.getSpilled())
+                .add("dropped", writer.getDropped());
+    }
+}
@@ -816,6 +816,10 @@ public class Access extends AbstractApiBean {
                 DataFileZipper zipper = null; 
                 String fileManifest = "";
                 long sizeTotal = 0L;
+                // The files are added to the zip stream once they have all
+                // been checked, so that the zipper can open several of them
+                // at a time: 
+                List<DataFile> filesToZip = new ArrayList<>();
                 
                 if (fileIdParams != null && fileIdParams.length > 0) {
                     logger.fine(fileIdParams.length + " tokens;");
@@ -847,6 +851,7 @@ public class Access extends AbstractApiBean {
                                         // to produce some output.
                                         zipper = new DataFileZipper(os);
                                         zipper.setFileManifest(fileManifest);
+                                        zipper.setPrefetchThreads(systemConfig.getZipDownloadPrefetchThreads());
                                         response.setHeader("Content-disposition", "attachment; filename=\"dataverse_files.zip\"");
                                         response.setHeader("Content-Type", "application/zip; name=\"dataverse_files.zip\"");
                                     }
@@ -886,7 +891,8 @@ public class Access extends AbstractApiBean {
                                         size = file.getFilesize();
                                     }
                                     if (sizeTotal + size < zipDownloadSizeLimit) {
-                                        sizeTotal += zipper.addFileToZipStream(file, getOriginal);
+                                        sizeTotal += size;
+                                        filesToZip.add(file);
                                     } else {
                                         String fileName = file.getFileMetadata().getLabel();
                                         String mimeType = file.getContentType();
@@ -925,6 +931,8 @@ public class Access extends AbstractApiBean {
                     throw new ForbiddenException();
                 }
 
+                zipper.addFilesToZipStream(filesToZip, getOriginal);
+
                 // This will add the generated File Manifest to the zipped output, 
                 // then flush and close the stream:
                 zipper.finalizeZipStream();
@@ -16,9 +16,12 @@ import edu.harvard.iq.dataverse.DvObject;
 import edu.harvard.iq.dataverse.EMailValidator;
 import edu.harvard.iq.dataverse.EjbDataverseEngine;
 import edu.harvard.iq.dataverse.GlobalId;
+import edu.harvard.iq.dataverse.GuestbookResponseWriterServiceBean;
 import edu.harvard.iq.dataverse.RoleAssignment;
 import edu.harvard.iq.dataverse.UserServiceBean;
 import edu.harvard.iq.dataverse.actionlogging.ActionLogRecord;
+import edu.harvard.iq.dataverse.actionlogging.ActionLogWriterServiceBean;
+import edu.harvard.iq.dataverse.makedatacount.MakeDataCountLogWriterServiceBean;
 import edu.harvard.iq.dataverse.api.dto.RoleDTO;
 import edu.harvard.iq.dataverse.authorization.AuthenticatedUserDisplayInfo;
 import edu.harvard.iq.dataverse.authorization.AuthenticationProvider;
@@ -57,6 +60,7 @@ import static edu.harvard.iq.dataverse.util.json.JsonPrinter.*;
 
 import java.io.InputStream;
 import java.io.StringReader;
+import java.sql.SQLException;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.logging.Level;
@@ -89,6 +93,7 @@ import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
 import edu.harvard.iq.dataverse.engine.command.impl.DeactivateUserCommand;
 import edu.harvard.iq.dataverse.engine.command.impl.DeleteRoleCommand;
 import edu.harvard.iq.dataverse.engine.command.impl.RegisterDvObjectCommand;
+import edu.harvard.iq.dataverse.ingest.IngestScheduler;
 import edu.harvard.iq.dataverse.ingest.IngestServiceBean;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.userdata.UserListMaker;
@@ -134,6 +139,14 @@ public class Admin extends AbstractApiBean {
 	@EJB
 	IngestServiceBean ingestService;
 	@EJB
+	IngestScheduler ingestScheduler;
+	@EJB
+	ActionLogWriterServiceBean actionLogWriter;
+	@EJB
+	MakeDataCountLogWriterServiceBean mdcLogWriter;
+	@EJB
+	GuestbookResponseWriterServiceBean guestbookResponseWriter;
+	@EJB
 	DataFileServiceBean fileService;
 	@EJB
 	DatasetServiceBean datasetService;
@@ -170,6 +183,19 @@ public class Admin extends AbstractApiBean {
 		return ok(bld);
 	}
 
+	@Path("settings/cache")
+	@GET
+	public Response getSettingsCache() {
+		return ok(settingsSvc.getCacheStatistics());
+	}
+
+	@Path("settings/cache")
+	@DELETE
+	public Response clearSettingsCache() {
+		settingsSvc.clearCache();
+		return ok("Settings cache cleared.");
+	}
+
 	@Path("settings/{name}")
 	@PUT
 	public Response putSetting(@PathParam("name") String name, String content) {
@@ -207,6 +233,48 @@ public class Admin extends AbstractApiBean {
 		return ok("Setting " + name + " - " + lang + " deleted.");
 	}
 
+	@Path("apiTokenCache")
+	@GET
+	public Response getApiTokenCache() {
+		return ok(authSvc.getApiTokenCacheStatistics());
+	}
+
+	@Path("apiTokenCache")
+	@DELETE
+	public Response clearApiTokenCache() {
+		authSvc.clearApiTokenCache();
+		return ok("API token cache cleared.");
+	}
+
+	@Path("actionLogWriter")
+	@GET
+	public Response getActionLogWriter() {
+		return ok(actionLogWriter.getStatistics());
+	}
+
+	@Path("mdcLogWriter")
+	@GET
+	public Response getMdcLogWriter() {
+		return ok(mdcLogWriter.getStatistics());
+	}
+
+	@Path("guestbookResponseWriter")
+	@GET
+	public Response getGuestbookResponseWriter() {
+		return ok(guestbookResponseWriter.getStatistics());
+	}
+
+	@Path("downloadCounts/reconcile")
+	@POST
+	public Response reconcileDownloadCounts() {
+		try {
+			return ok(guestbookResponseWriter.reconcileDownloadCounts());
+		} catch (SQLException ex) {
+			logger.log(Level.SEVERE, "Could not reconcile the download counts", ex);
+			return error(Response.Status.INTERNAL_SERVER_ERROR, "Could not reconcile the download counts: " + ex.getMessage());
+		}
+	}
+
 	@Path("authenticationProviderFactories")
 	@GET
 	public Response listAuthProviderFactories() {
@@ -1279,6 +1347,17 @@ public class Admin extends AbstractApiBean {
 		return ok(info);
 	}
 
+	/**
+	 * The files waiting to be ingested, and being ingested, in each lane of
+	 * the ingest scheduler, with the wait and ingest times since the server
+	 * was started.
+	 */
+	@Path("ingest/queue")
+	@GET
+	public Response getIngestQueue() {
+		return ok(ingestScheduler.toJson());
+	}
+
 	@Path("datafiles/integrity/fixmissingoriginaltypes")
 	@GET
 	public Response fixMissingOriginalTypes() {
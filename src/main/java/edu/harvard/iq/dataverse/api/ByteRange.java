@@ -0,0 +1,210 @@
+package edu.harvard.iq.dataverse.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A range of bytes of a download, as requested in the "Range" header of a
+ * GET request (RFC 7233), resolved against the length of the content.
+ * Both ends of the range are inclusive.
+ */
+public class ByteRange {
+
+    /**
+     * More ranges than this in one request are not worth the trouble of
+     * serving them separately; the whole content is served instead.
+     */
+    public static final int MAX_RANGES = 64;
+
+    private final long start;
+    private final long end;
+
+    public ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long getLength() {
+        return end - start + 1;
+    }
+
+    /**
+     * @return the value of the Content-Range header of this range
+     */
+    public String toContentRange(long contentLength) {
+        return "bytes " + start + "-" + end + "/" + contentLength;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof ByteRange)) {
+            return false;
+        }
+        ByteRange other = (ByteRange) object;
+        return start == other.start && end == other.end;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(start) * 31 + Long.hashCode(end);
+    }
+
+    @Override
+    public String toString() {
+        return start + "-" + end;
+    }
+
+    /**
+     * Parses the value of a Range header.
+     *
+     * @param rangeHeader the header value, e.g. "bytes=0-499,-500"
+     * @param contentLength the length of the content the ranges apply to
+     * @return null if the header is not a valid "bytes" range request (or
+     * asks for too many ranges), in which case it must be ignored and the
+     * whole content served; an empty list if none of the ranges can be
+     * satisfied (416); otherwise, the satisfiable ranges, in the order
+     * requested - unless some of them overlap or are adjacent, in which
+     * case they are sorted and merged.
+     */
+    public static List<ByteRange> parse(String rangeHeader, long contentLength) {
+        if (rangeHeader == null || contentLength < 0) {
+            return null;
+        }
+        String header = rangeHeader.trim();
+        int equalsIndex = header.indexOf('=');
+        if (equalsIndex < 0 || !"bytes".equalsIgnoreCase(header.substring(0, equalsIndex).trim())) {
+            return null;
+        }
+
+        String[] rangeSpecs = header.substring(equalsIndex + 1).split(",");
+        if (rangeSpecs.length > MAX_RANGES) {
+            return null;
+        }
+
+        List<ByteRange> ranges = new ArrayList<>();
+        for (String rangeSpec : rangeSpecs) {
+            String spec = rangeSpec.trim();
+            int dashIndex = spec.indexOf('-');
+            if (dashIndex < 0) {
+                return null;
+            }
+            String first = spec.substring(0, dashIndex).trim();
+            String last = spec.substring(dashIndex + 1).trim();
+            long start;
+            long end;
+            try {
+                if (first.isEmpty()) {
+                    // suffix range: the last N bytes
+                    if (last.isEmpty()) {
+                        return null;
+                    }
+                    long suffixLength = parseNonNegative(last);
+                    if (suffixLength == 0) {
+                        continue;
+                    }
+                    start = Math.max(0, contentLength - suffixLength);
+                    end = contentLength - 1;
+                } else {
+                    start = parseNonNegative(first);
+                    end = contentLength - 1;
+                    if (!last.isEmpty()) {
+                        long lastPosition = parseNonNegative(last);
+                        if (lastPosition < start) {
+                            return null;
+                        }
+                        end = Math.min(lastPosition, end);
+                    }
+                }
+            } catch (NumberFormatException nfe) {
+                return null;
+            }
+            if (start < contentLength && start <= end) {
+                ranges.add(new ByteRange(start, end));
+            }
+        }
+
+        return coalesce(ranges);
+    }
+
+    private static long parseNonNegative(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                throw new NumberFormatException(value);
+            }
+        }
+        return Long.parseLong(value);
+    }
+
+    private static List<ByteRange> coalesce(List<ByteRange> ranges) {
+        List<ByteRange> sorted = new ArrayList<>(ranges);
+        Collections.sort(sorted, Comparator.comparingLong(ByteRange::getStart));
+        boolean overlapping = false;
+        for (int i = 1; i < sorted.size(); i++) {
+            if (sorted.get(i).start <= sorted.get(i - 1).end + 1) {
+                overlapping = true;
+                break;
+            }
+        }
+        if (!overlapping) {
+            return ranges;
+        }
+
+        List<ByteRange> merged = new ArrayList<>();
+        ByteRange current = sorted.get(0);
+        for (int i = 1; i < sorted.size(); i++) {
+            ByteRange next = sorted.get(i);
+            if (next.start <= current.end + 1) {
+                current = new ByteRange(current.start, Math.max(current.end, next.end));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+
+    /**
+     * Checks an If-None-Match header against the entity tag of the content,
+     * using the weak comparison function, as RFC 7232 requires.
+     */
+    public static boolean matchesIfNoneMatch(String ifNoneMatchHeader, String etag) {
+        if (ifNoneMatchHeader == null || etag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatchHeader.split(",")) {
+            String tag = candidate.trim();
+            if ("*".equals(tag) || stripWeakPrefix(tag).equals(stripWeakPrefix(etag))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks an If-Range header against the entity tag of the content. Only
+     * a strong match allows the ranges to be served; a date (we don't send
+     * Last-Modified) or a weak tag never matches.
+     */
+    public static boolean matchesIfRange(String ifRangeHeader, String etag) {
+        if (ifRangeHeader == null) {
+            return true;
+        }
+        String tag = ifRangeHeader.trim();
+        return etag != null && !tag.startsWith("W/") && tag.equals(etag);
+    }
+
+    private static String stripWeakPrefix(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
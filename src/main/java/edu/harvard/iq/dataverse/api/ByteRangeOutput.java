@@ -0,0 +1,114 @@
+package edu.harvard.iq.dataverse.api;
+
+import edu.harvard.iq.dataverse.dataaccess.StorageIO;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * The body of a 206 (Partial Content) response: the requested ranges of a
+ * datafile, read from storage with StorageIO.getRangeInputStream(). A
+ * single range is sent as it is; several ranges are sent as a
+ * multipart/byteranges body.
+ *
+ * The content the ranges refer to is the prefix (the variable header of a
+ * tabular file, if any), followed by the stored object.
+ */
+public class ByteRangeOutput implements StreamingOutput {
+
+    private final StorageIO<?> storageIO;
+    private final byte[] prefix;
+    private final List<ByteRange> ranges;
+    private final long contentLength;
+    private final String contentType;
+    private final String boundary;
+
+    public ByteRangeOutput(StorageIO<?> storageIO, byte[] prefix, List<ByteRange> ranges, long contentLength, String contentType) {
+        this.storageIO = storageIO;
+        this.prefix = prefix == null ? new byte[0] : prefix;
+        this.ranges = ranges;
+        this.contentLength = contentLength;
+        this.contentType = contentType;
+        this.boundary = UUID.randomUUID().toString().replace("-", "");
+    }
+
+    public boolean isMultipart() {
+        return ranges.size() > 1;
+    }
+
+    /**
+     * @return the Content-Type of the response: the type of the content
+     * itself for a single range, multipart/byteranges otherwise
+     */
+    public String getResponseContentType() {
+        return isMultipart() ? "multipart/byteranges; boundary=" + boundary : contentType;
+    }
+
+    public long getResponseContentLength() {
+        if (!isMultipart()) {
+            return ranges.get(0).getLength();
+        }
+        long length = getClosingDelimiter().length;
+        for (ByteRange range : ranges) {
+            length += getPartHeader(range).length + range.getLength();
+        }
+        return length;
+    }
+
+    @Override
+    public void write(OutputStream out) throws IOException {
+        for (ByteRange range : ranges) {
+            if (isMultipart()) {
+                out.write(getPartHeader(range));
+            }
+            writeRange(range, out);
+        }
+        if (isMultipart()) {
+            out.write(getClosingDelimiter());
+        }
+        out.flush();
+    }
+
+    private void writeRange(ByteRange range, OutputStream out) throws IOException {
+        long start = range.getStart();
+        long end = range.getEnd();
+
+        if (start < prefix.length) {
+            int prefixEnd = (int) Math.min(end, prefix.length - 1);
+            out.write(prefix, (int) start, prefixEnd - (int) start + 1);
+            start = prefix.length;
+        }
+
+        if (start <= end) {
+            long remaining = end - start + 1;
+            try (InputStream in = storageIO.getRangeInputStream(start - prefix.length, remaining)) {
+                byte[] buffer = new byte[4 * 8192];
+                int count;
+                while (remaining > 0 && (count = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                    out.write(buffer, 0, count);
+                    remaining -= count;
+                }
+            }
+            if (remaining > 0) {
+                throw new IOException("Premature end of the stored object; " + remaining + " bytes of range " + range + " missing.");
+            }
+        }
+    }
+
+    private byte[] getPartHeader(ByteRange range) {
+        // (the CRLF before the first delimiter is allowed - as the
+        // "preamble" - which keeps the parts uniform)
+        return ("\r\n--" + boundary + "\r\n"
+                + "Content-Type: " + contentType + "\r\n"
+                + "Content-Range: " + range.toContentRange(contentLength) + "\r\n"
+                + "\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private byte[] getClosingDelimiter() {
+        return ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -107,7 +107,6 @@ import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.Map;
 import java.util.Optional;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
@@ -914,15 +913,8 @@ public class Dataverses extends AbstractApiBean {
                 + filename);
                ServletOutputStream outputStream = response.getOutputStream();
 
-            Map<Integer, Object> customQandAs = guestbookResponseService.mapCustomQuestionAnswersAsStrings(dv.getId(), gbId);
-
-            List<Object[]> guestbookResults = guestbookResponseService.getGuestbookResults(dv.getId(), gbId);
-            outputStream.write("Guestbook, Dataset, Dataset PID, Date, Type, File Name, File Id, File PID, User Name, Email, Institution, Position, Custom Questions\n".getBytes());
-            for (Object[] result : guestbookResults) {
-                StringBuilder sb = guestbookResponseService.convertGuestbookResponsesToCSV(customQandAs, result);
-                outputStream.write(sb.toString().getBytes());
-                outputStream.flush();
-            }
+            guestbookResponseService.streamResponsesByDataverseIdAndGuestbookId(outputStream, dv.getId(), gbId);
+            outputStream.flush();
             return Response.ok().build();
         } catch (IOException io) {
             return error(Status.BAD_REQUEST, "Failed to produce response file. Exception: " + io.getMessage());
@@ -14,6 +14,7 @@ import java.io.IOException;
 
 import javax.ws.rs.WebApplicationException;
 
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
@@ -78,6 +79,10 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
 
             DataFile dataFile = di.getDownloadInfo().getDataFile();
             StorageIO<DataFile> storageIO = DataAccess.getStorageIO(dataFile, daReq);
+            // (the driver of the datafile itself; storageIO is replaced by
+            // another one when a thumbnail, a format conversion etc. is
+            // requested)
+            StorageIO<DataFile> dataFileIO = storageIO;
 
             if (storageIO != null) {
                 try {
@@ -385,6 +390,17 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
 
                 } 
 
+                // Conditional and partial (Range) requests are supported on
+                // the datafile itself - with or without the variable header -
+                // but not on the content derived from it:
+                String etag = null;
+                boolean acceptRanges = false;
+                if (storageIO == dataFileIO) {
+                    etag = getEntityTag(dataFile, storageIO);
+                    acceptRanges = storageIO.isRangeReadSupported() && getContentSize(storageIO) > -1;
+                    handleConditionalAndRangeRequests(di, storageIO, etag, acceptRanges);
+                }
+
                 try (InputStream instream = storageIO.getInputStream()) {
                     if (instream != null) {
                         // headers:
@@ -410,6 +426,12 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
                             //httpHeaders.add("Transfer-encoding", "chunked");
                             //useChunkedTransfer = true;
                         }
+                        if (etag != null) {
+                            httpHeaders.add("ETag", etag);
+                        }
+                        if (acceptRanges) {
+                            httpHeaders.add("Accept-Ranges", "bytes");
+                        }
 
                         // (the httpHeaders map must be modified *before* writing any
                         // data in the output stream!)
@@ -451,21 +473,7 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
 
                         logger.fine("di conversion param: " + di.getConversionParam() + ", value: " + di.getConversionParamValue());
 
-                        // Downloads of thumbnail images (scaled down, low-res versions of graphic image files) and 
-                        // "preprocessed metadata" records for tabular data files are NOT considered "real" downloads, 
-                        // so these should not produce guestbook entries: 
-                        if (di.getGbr() != null && !(isThumbnailDownload(di) || isPreprocessedMetadataDownload(di))) {
-                            try {
-                                logger.fine("writing guestbook response.");
-                                Command<?> cmd = new CreateGuestbookResponseCommand(di.getDataverseRequestService().getDataverseRequest(), di.getGbr(), di.getGbr().getDataFile().getOwner());
-                                di.getCommand().submit(cmd);
-                                MakeDataCountEntry entry = new MakeDataCountEntry(di.getRequestUriInfo(), di.getRequestHttpHeaders(), di.getDataverseRequestService(), di.getGbr().getDataFile());
-                                mdcLogService.logEntry(entry);
-                            } catch (CommandException e) {
-                            }
-                        } else {
-                            logger.fine("not writing guestbook response");
-                        }
+                        writeGuestbookResponse(di);
 
                         outstream.close();
                         return;
@@ -478,6 +486,116 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
 
     }
 
+    /**
+     * Answers If-None-Match and Range requests on the datafile, by throwing
+     * a WebApplicationException carrying the response (304, 206 or 416) -
+     * the same way the redirects to S3 are issued above. Returns normally
+     * if the whole file should be sent, with a 200.
+     */
+    private void handleConditionalAndRangeRequests(DownloadInstance di, StorageIO<DataFile> storageIO, String etag, boolean acceptRanges) throws IOException {
+        HttpHeaders requestHeaders = di.getRequestHttpHeaders();
+        if (requestHeaders == null) {
+            return;
+        }
+
+        if (etag != null && ByteRange.matchesIfNoneMatch(requestHeaders.getHeaderString("If-None-Match"), etag)) {
+            logger.fine("If-None-Match: the datafile has not changed.");
+            storageIO.closeInputStream();
+            throw new WebApplicationException(Response.notModified().header("ETag", etag).build());
+        }
+
+        String rangeHeader = requestHeaders.getHeaderString("Range");
+        if (rangeHeader == null || !acceptRanges) {
+            return;
+        }
+        if (!ByteRange.matchesIfRange(requestHeaders.getHeaderString("If-Range"), etag)) {
+            // the client's copy is out of date; it gets the whole file
+            return;
+        }
+
+        long contentSize = getContentSize(storageIO);
+        List<ByteRange> ranges = ByteRange.parse(rangeHeader, contentSize);
+        if (ranges == null) {
+            // not a valid byte range request; must be ignored
+            return;
+        }
+
+        // the ranges are read with new streams, opened with
+        // getRangeInputStream(); the one opened with the driver isn't needed:
+        storageIO.closeInputStream();
+
+        if (ranges.isEmpty()) {
+            throw new WebApplicationException(Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header("Content-Range", "bytes */" + contentSize)
+                    .build());
+        }
+
+        String finalFileName = URLEncoder.encode(storageIO.getFileName(), "UTF-8").replaceAll("\\+", "%20");
+        byte[] varHeader = storageIO.getVarHeader() != null ? storageIO.getVarHeader().getBytes() : null;
+        ByteRangeOutput rangeOutput = new ByteRangeOutput(storageIO, varHeader, ranges, contentSize, storageIO.getMimeType() + "; name=\"" + finalFileName + "\"");
+
+        Response.ResponseBuilder partialContent = Response.status(Response.Status.PARTIAL_CONTENT)
+                .entity(rangeOutput)
+                .header("Content-disposition", "attachment; filename=\"" + finalFileName + "\"")
+                .header("Content-Type", rangeOutput.getResponseContentType())
+                .header("Content-Length", rangeOutput.getResponseContentLength())
+                .header("Accept-Ranges", "bytes");
+        if (!rangeOutput.isMultipart()) {
+            partialContent.header("Content-Range", ranges.get(0).toContentRange(contentSize));
+        }
+        if (etag != null) {
+            partialContent.header("ETag", etag);
+        }
+
+        // A download resumed (or a file read in pieces) by the client is
+        // only counted once - for the request that starts at the beginning
+        // of the file:
+        if (ranges.get(0).getStart() == 0) {
+            writeGuestbookResponse(di);
+        }
+
+        logger.fine("Serving " + ranges.size() + " byte range(s) of the datafile.");
+        throw new WebApplicationException(partialContent.build());
+    }
+
+    /**
+     * The entity tag of a datafile download is derived from the checksum of
+     * the file. For a tabular file, the checksum is that of the uploaded
+     * original, not of the stored tab file; so the size of the stored
+     * object, and the variable header, if sent, are added to it.
+     */
+    static String getEntityTag(DataFile dataFile, StorageIO<?> storageIO) {
+        if (dataFile.getChecksumValue() == null || dataFile.getChecksumValue().isEmpty()) {
+            return null;
+        }
+        StringBuilder etag = new StringBuilder("\"").append(dataFile.getChecksumValue());
+        if (dataFile.isTabularData()) {
+            etag.append("-").append(storageIO.getSize());
+            if (storageIO.getVarHeader() != null) {
+                etag.append("-").append(Integer.toHexString(storageIO.getVarHeader().hashCode()));
+            }
+        }
+        return etag.append("\"").toString();
+    }
+
+    private void writeGuestbookResponse(DownloadInstance di) {
+        // Downloads of thumbnail images (scaled down, low-res versions of graphic image files) and 
+        // "preprocessed metadata" records for tabular data files are NOT considered "real" downloads, 
+        // so these should not produce guestbook entries: 
+        if (di.getGbr() != null && !(isThumbnailDownload(di) || isPreprocessedMetadataDownload(di))) {
+            try {
+                logger.fine("writing guestbook response.");
+                Command<?> cmd = new CreateGuestbookResponseCommand(di.getDataverseRequestService().getDataverseRequest(), di.getGbr(), di.getGbr().getDataFile().getOwner());
+                di.getCommand().submit(cmd);
+                MakeDataCountEntry entry = new MakeDataCountEntry(di.getRequestUriInfo(), di.getRequestHttpHeaders(), di.getDataverseRequestService(), di.getGbr().getDataFile());
+                mdcLogService.logEntry(entry);
+            } catch (CommandException e) {
+            }
+        } else {
+            logger.fine("not writing guestbook response");
+        }
+    }
+
     private boolean isAuxiliaryObjectCached(StorageIO storageIO, String auxiliaryTag) {
         try {
             return storageIO.isAuxObjectCached(auxiliaryTag);
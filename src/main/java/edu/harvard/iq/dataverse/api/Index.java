@@ -30,6 +30,8 @@ import edu.harvard.iq.dataverse.search.IndexBatchServiceBean;
 import edu.harvard.iq.dataverse.search.IndexResponse;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
 import edu.harvard.iq.dataverse.search.IndexUtil;
+import edu.harvard.iq.dataverse.search.ReindexCoordinatorServiceBean;
+import edu.harvard.iq.dataverse.search.ReindexJob;
 import edu.harvard.iq.dataverse.search.SearchException;
 import edu.harvard.iq.dataverse.search.SearchFields;
 import edu.harvard.iq.dataverse.search.SearchFilesServiceBean;
@@ -58,6 +60,7 @@ import javax.validation.ConstraintViolation;
 import javax.validation.ConstraintViolationException;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.QueryParam;
@@ -75,6 +78,8 @@ public class Index extends AbstractApiBean {
     @EJB
     IndexBatchServiceBean indexBatchService;
     @EJB
+    ReindexCoordinatorServiceBean reindexCoordinator;
+    @EJB
     SolrIndexServiceBean solrIndexService;
     @EJB
     DataverseServiceBean dataverseService;
@@ -101,17 +106,17 @@ public class Index extends AbstractApiBean {
     public static String permsIndexed = "permsIndexed";
 
     @GET
-    public Response indexAllOrSubset(@QueryParam("numPartitions") Long numPartitionsSelected, @QueryParam("partitionIdToProcess") Long partitionIdToProcess, @QueryParam("previewOnly") boolean previewOnly) {
-        return indexAllOrSubset(numPartitionsSelected, partitionIdToProcess, false, previewOnly);
+    public Response indexAllOrSubset(@QueryParam("numPartitions") Long numPartitionsSelected, @QueryParam("partitionIdToProcess") Long partitionIdToProcess, @QueryParam("previewOnly") boolean previewOnly, @QueryParam("bulk") boolean bulk) {
+        return indexAllOrSubset(numPartitionsSelected, partitionIdToProcess, false, previewOnly, bulk);
     }
 
     @GET
     @Path("continue")
-    public Response indexAllOrSubsetContinue(@QueryParam("numPartitions") Long numPartitionsSelected, @QueryParam("partitionIdToProcess") Long partitionIdToProcess, @QueryParam("previewOnly") boolean previewOnly) {
-        return indexAllOrSubset(numPartitionsSelected, partitionIdToProcess, true, previewOnly);
+    public Response indexAllOrSubsetContinue(@QueryParam("numPartitions") Long numPartitionsSelected, @QueryParam("partitionIdToProcess") Long partitionIdToProcess, @QueryParam("previewOnly") boolean previewOnly, @QueryParam("bulk") boolean bulk) {
+        return indexAllOrSubset(numPartitionsSelected, partitionIdToProcess, true, previewOnly, bulk);
     }
 
-    private Response indexAllOrSubset(Long numPartitionsSelected, Long partitionIdToProcess, boolean skipIndexed, boolean previewOnly) {
+    private Response indexAllOrSubset(Long numPartitionsSelected, Long partitionIdToProcess, boolean skipIndexed, boolean previewOnly, boolean bulk) {
         try {
             long numPartitions = 1;
             if (numPartitionsSelected != null) {
@@ -146,6 +151,7 @@ public class Index extends AbstractApiBean {
             JsonObjectBuilder args = Json.createObjectBuilder();
             args.add("numPartitions", numPartitions);
             args.add("partitionIdToProcess", partitionIdToProcess);
+            args.add("bulk", bulk);
             JsonArrayBuilder availablePartitionIdsBuilder = Json.createArrayBuilder();
             for (long i : availablePartitionIds) {
                 availablePartitionIdsBuilder.add(i);
@@ -165,7 +171,7 @@ public class Index extends AbstractApiBean {
              * @todo How can we expose the String returned from "index all" via
              * the API?
              */
-            Future<JsonObjectBuilder> indexAllFuture = indexBatchService.indexAllOrSubset(numPartitions, partitionIdToProcess, skipIndexed, previewOnly);
+            Future<JsonObjectBuilder> indexAllFuture = indexBatchService.indexAllOrSubset(numPartitions, partitionIdToProcess, skipIndexed, previewOnly, bulk);
             JsonObject workloadPreview = preview.build().getJsonObject("previewOfPartitionWorkload");
             int dataverseCount = workloadPreview.getInt("dataverseCount");
             int datasetCount = workloadPreview.getInt("datasetCount");
@@ -433,6 +439,59 @@ public class Index extends AbstractApiBean {
         }
     }
   
+    /**
+     * Starts a reindex that is split into partitions, each indexed by its own
+     * worker on this server.
+     *
+     * @param workers number of partitions/workers; defaults to the
+     * :ReindexWorkerThreads setting
+     * @param skipIndexed only index objects without an index timestamp, as
+     * "continue" does
+     * @param bulk send the Solr documents in batches (see indexAllOrSubset)
+     */
+    @GET
+    @Path("parallel")
+    public Response startParallelReindex(@QueryParam("workers") Integer workers, @QueryParam("continue") boolean skipIndexed, @QueryParam("bulk") boolean bulk) {
+        try {
+            ReindexJob job = reindexCoordinator.start(workers, skipIndexed, bulk);
+            return ok(job.toJson());
+        } catch (IllegalArgumentException ex) {
+            return error(Status.BAD_REQUEST, ex.getMessage());
+        } catch (IllegalStateException ex) {
+            return error(Status.CONFLICT, ex.getMessage());
+        }
+    }
+
+    @GET
+    @Path("parallel/status")
+    public Response parallelReindexStatus() {
+        ReindexJob job = reindexCoordinator.getJob();
+        if (job == null) {
+            return error(Status.NOT_FOUND, "No parallel reindex has been started.");
+        }
+        return ok(job.toJson());
+    }
+
+    @POST
+    @Path("parallel/pause")
+    public Response pauseParallelReindex() {
+        try {
+            return ok(reindexCoordinator.pause().toJson());
+        } catch (IllegalStateException ex) {
+            return error(Status.CONFLICT, ex.getMessage());
+        }
+    }
+
+    @POST
+    @Path("parallel/resume")
+    public Response resumeParallelReindex() {
+        try {
+            return ok(reindexCoordinator.resume().toJson());
+        } catch (IllegalStateException ex) {
+            return error(Status.CONFLICT, ex.getMessage());
+        }
+    }
+
     /**
      * We use the output of this method to generate our Solr schema.xml
      *
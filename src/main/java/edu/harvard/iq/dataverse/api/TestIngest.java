@@ -11,6 +11,7 @@ import edu.harvard.iq.dataverse.DataTable;
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetServiceBean;
 import edu.harvard.iq.dataverse.FileMetadata;
+import edu.harvard.iq.dataverse.dataaccess.TabularColumnarImage;
 import edu.harvard.iq.dataverse.ingest.IngestServiceBean;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileReader;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
@@ -143,6 +144,8 @@ public class TestIngest {
                     } catch (IOException ioex) {
                         output = output.concat ("UNF: failed to calculate\n"+"\n");
                     }
+                    // (the columnar image produced along with the UNFs is not needed)
+                    TabularColumnarImage.getImageFile(tabFile).delete();
                     
                     for (int i = 0; i < dataTable.getVarQuantity(); i++) {
                         String vartype = "";
@@ -0,0 +1,145 @@
+package edu.harvard.iq.dataverse.authorization;
+
+import edu.harvard.iq.dataverse.util.LruCache;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches, for a short while, which user an API token belongs to - so that
+ * a client making many calls doesn't cost a token lookup on every one of
+ * them. Only the id of the user is cached; the user itself is loaded for
+ * every call, so a deactivated user is refused right away.
+ *
+ * Only tokens found valid are cached, with their expiration time. The
+ * entries of a user are removed when a token of theirs is removed (or the
+ * user is deleted, deactivated or merged) on this server, see
+ * {@link ApiTokenCacheServiceBean}; on the other servers of a
+ * cluster, an entry lives at most as long as the time to live.
+ */
+public class ApiTokenCache {
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+    public static final long DEFAULT_TIME_TO_LIVE_MILLIS = 60 * 1000L;
+
+    private final LruCache<String, Entry> cache = new LruCache<>();
+    private volatile long timeToLiveMillis = DEFAULT_TIME_TO_LIVE_MILLIS;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    public ApiTokenCache() {
+        cache.setMaxSize(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize the number of tokens to keep
+     * @param timeToLiveMillis how long a token is kept; 0 to not cache
+     * tokens at all
+     */
+    public void setLimits(int maxSize, long timeToLiveMillis) {
+        if (cache.getMaxSize() != maxSize) {
+            cache.setMaxSize(maxSize);
+        }
+        if (this.timeToLiveMillis != timeToLiveMillis) {
+            this.timeToLiveMillis = timeToLiveMillis;
+            if (timeToLiveMillis <= 0) {
+                cache.invalidate();
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return timeToLiveMillis > 0;
+    }
+
+    /**
+     * @return the id of the user the token belongs to, or null if the token
+     * is not cached (or no longer valid)
+     */
+    public Long getUserId(String token, long now) {
+        Entry entry = cache.get(token);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (now - entry.cachedTime >= timeToLiveMillis || entry.expireTime <= now) {
+            cache.invalidate(token);
+            expirations.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.userId;
+    }
+
+    /**
+     * @param expireTime when the token expires, as in
+     * {@link edu.harvard.iq.dataverse.authorization.users.ApiToken#getExpireTime()};
+     * null if it doesn't
+     */
+    public void put(String token, Long userId, Date expireTime, long now) {
+        if (!isEnabled() || token == null || userId == null) {
+            return;
+        }
+        cache.put(token, new Entry(userId, expireTime != null ? expireTime.getTime() : Long.MAX_VALUE, now));
+    }
+
+    public void invalidate(String token) {
+        cache.invalidate(token);
+    }
+
+    /**
+     * Removes all the tokens of a user.
+     */
+    public void invalidateUser(Long userId) {
+        if (userId != null) {
+            cache.invalidateIf((token, entry) -> userId.equals(entry.userId));
+        }
+    }
+
+    public void invalidate() {
+        cache.invalidate();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public long getMaxSize() {
+        return cache.getMaxSize();
+    }
+
+    public long getTimeToLiveMillis() {
+        return timeToLiveMillis;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    public double getHitRate() {
+        long lookups = hits.get() + misses.get();
+        return lookups > 0 ? (double) hits.get() / lookups : 0.0;
+    }
+
+    private static final class Entry {
+        final Long userId;
+        final long expireTime;
+        final long cachedTime;
+
+        Entry(Long userId, long expireTime, long cachedTime) {
+            this.userId = userId;
+            this.expireTime = expireTime;
+            this.cachedTime = cachedTime;
+        }
+    }
+}
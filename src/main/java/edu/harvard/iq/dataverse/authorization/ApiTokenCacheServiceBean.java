@@ -0,0 +1,97 @@
+package edu.harvard.iq.dataverse.authorization;
+
+import edu.harvard.iq.dataverse.util.SystemConfig;
+import java.util.Date;
+import javax.annotation.Resource;
+import javax.ejb.EJB;
+import javax.ejb.Lock;
+import javax.ejb.LockType;
+import javax.ejb.Singleton;
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * Holds the {@link ApiTokenCache} of this server. Tokens removed in a
+ * transaction are dropped from the cache right away and again once the
+ * transaction is over, since a call looking its token up before the commit
+ * still finds it in the DB - and would cache it for another time to live.
+ */
+@Singleton
+@Lock(LockType.READ)
+public class ApiTokenCacheServiceBean {
+
+    @EJB
+    SystemConfig systemConfig;
+
+    @Resource
+    TransactionSynchronizationRegistry transactionRegistry;
+
+    private final ApiTokenCache cache = new ApiTokenCache();
+
+    /**
+     * @return the id of the user the token belongs to, or null if the token
+     * is not cached
+     */
+    public Long getUserId(String token, long now) {
+        cache.setLimits(systemConfig.getApiTokenCacheSize(), systemConfig.getApiTokenCacheTimeToLive());
+        return cache.getUserId(token, now);
+    }
+
+    public void put(String token, Long userId, Date expireTime, long now) {
+        cache.put(token, userId, expireTime, now);
+    }
+
+    /**
+     * Drops a token that was removed, or is being removed in the current
+     * transaction.
+     */
+    public void tokenRemoved(String token) {
+        cache.invalidate(token);
+        afterTransaction(() -> cache.invalidate(token));
+    }
+
+    /**
+     * Drops the tokens of a user whose tokens were removed, or who was
+     * deactivated, merged or deleted - in the current transaction or not.
+     */
+    public void userTokensRemoved(Long userId) {
+        cache.invalidateUser(userId);
+        afterTransaction(() -> cache.invalidateUser(userId));
+    }
+
+    public void clear() {
+        cache.invalidate();
+    }
+
+    public JsonObjectBuilder getStatistics() {
+        return Json.createObjectBuilder()
+                .add("size", cache.size())
+                .add("maxSize", cache.getMaxSize())
+                .add("timeToLiveMillis", cache.getTimeToLiveMillis())
+                .add("hits", cache.getHits())
+                .add("misses", cache.getMisses())
+                .add("expirations", cache.getExpirations())
+                .add("hitRate", cache.getHitRate());
+    }
+
+    private void afterTransaction(Runnable invalidation) {
+        if (transactionRegistry.getTransactionKey() == null) {
+            return;
+        }
+        transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    invalidation.run();
+                }
+            }
+        });
+    }
+}
@@ -35,6 +35,7 @@ import edu.harvard.iq.dataverse.passwordreset.PasswordResetData;
 import edu.harvard.iq.dataverse.passwordreset.PasswordResetServiceBean;
 import edu.harvard.iq.dataverse.search.savedsearch.SavedSearchServiceBean;
 import edu.harvard.iq.dataverse.util.BundleUtil;
+import edu.harvard.iq.dataverse.util.SystemConfig;
 import edu.harvard.iq.dataverse.validation.PasswordValidatorServiceBean;
 import edu.harvard.iq.dataverse.workflow.PendingWorkflowInvocation;
 import edu.harvard.iq.dataverse.workflows.WorkflowComment;
@@ -58,6 +59,7 @@ import javax.ejb.EJB;
 import javax.ejb.EJBException;
 import javax.ejb.Stateless;
 import javax.inject.Named;
+import javax.json.JsonObjectBuilder;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.NonUniqueResultException;
@@ -127,8 +129,14 @@ public class AuthenticationServiceBean {
     @EJB
     SavedSearchServiceBean savedSearchService;
 
+    @EJB
+    SystemConfig systemConfig;
+
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     private EntityManager em;
+    
+    @EJB
+    private ApiTokenCacheServiceBean apiTokenCache;
         
         
     public AbstractOAuth2AuthenticationProvider getOAuth2Provider( String id ) {
@@ -178,9 +186,26 @@ public class AuthenticationServiceBean {
             if (apiToken != null) {
                 em.remove(apiToken);
             }
+            apiTokenCache.userTokensRemoved(user.getId());
         }
     }
     
+    /**
+     * Stops the cached API tokens of a user from being accepted, for a user
+     * deactivated or merged in the current transaction.
+     */
+    public void apiTokensRevoked(AuthenticatedUser user) {
+        apiTokenCache.userTokensRemoved(user.getId());
+    }
+
+    public JsonObjectBuilder getApiTokenCacheStatistics() {
+        return apiTokenCache.getStatistics();
+    }
+
+    public void clearApiTokenCache() {
+        apiTokenCache.clear();
+    }
+    
     public boolean isOrcidEnabled() {
         return authProvidersRegistrationService.getOAuth2AuthProvidersMap().values().stream().anyMatch( s -> s.getId().toLowerCase().contains("orcid") );
     }
@@ -209,6 +234,7 @@ public class AuthenticationServiceBean {
             if (apiToken != null) {
                 em.remove(apiToken);
             }
+            apiTokenCache.userTokensRemoved(user.getId());
             // @todo: this should be handed down to the service instead of doing it here.
             ConfirmEmailData confirmEmailData = confirmEmailService.findSingleConfirmEmailDataByUser(user);
             if (confirmEmailData != null) {
@@ -384,6 +410,7 @@ public class AuthenticationServiceBean {
             if (token.getExpireTime().before(latest)) {
                 // Don't return an expired token which is unusable, delete it instead
                 em.remove(token);
+                apiTokenCache.tokenRemoved(token.getTokenString());
                 return null;
             } else {
                 return tokens.get(0);
@@ -398,9 +425,11 @@ public class AuthenticationServiceBean {
                 Timestamp time = token.getExpireTime();
                 if (time.before(latest)) {
                     em.remove(token);
+                    apiTokenCache.tokenRemoved(token.getTokenString());
                 } else {
                     if(goodToken != null) {
                       em.remove(goodToken);
+                      apiTokenCache.tokenRemoved(goodToken.getTokenString());
                       goodToken = null;
                     }
                     latest = time;
@@ -438,12 +467,23 @@ public class AuthenticationServiceBean {
     }
 
     public AuthenticatedUser lookupUser( String apiToken ) {
+        long now = System.currentTimeMillis();
+        Long cachedUserId = apiTokenCache.getUserId(apiToken, now);
+        if ( cachedUserId != null ) {
+            AuthenticatedUser user = em.find(AuthenticatedUser.class, cachedUserId);
+            if ( user != null ) {
+                return checkNotDeactivated(user, apiToken);
+            }
+            // (deleted on another server)
+            apiTokenCache.tokenRemoved(apiToken);
+        }
+        
         ApiToken tkn = findApiToken(apiToken);
         if ( tkn == null ) return null;
         
         if ( tkn.isDisabled() ) return null;
         if ( tkn.getExpireTime() != null ) {
-            if ( tkn.getExpireTime().before( new Timestamp(new Date().getTime())) ) {
+            if ( tkn.getExpireTime().before( new Timestamp(now)) ) {
                 em.remove(tkn);
 		logger.info("attempted access with expired token: " + apiToken);
                 return null;
@@ -451,6 +491,11 @@ public class AuthenticationServiceBean {
         }
         
         AuthenticatedUser user = tkn.getAuthenticatedUser();
+        apiTokenCache.put(apiToken, user.getId(), tkn.getExpireTime(), now);
+        return checkNotDeactivated(user, apiToken);
+    }
+    
+    private AuthenticatedUser checkNotDeactivated( AuthenticatedUser user, String apiToken ) {
         if (!user.isDeactivated()) {
             return user;
         } else {
@@ -534,6 +579,7 @@ public class AuthenticationServiceBean {
             for(ExplicitGroup explicitGroup: explicitGroupService.findGroups(au)){
                 explicitGroup.removeByRoleAssgineeIdentifier(au.getIdentifier());
             }            
+            explicitGroupService.membershipsChanged();
         }
         
     }
@@ -0,0 +1,147 @@
+package edu.harvard.iq.dataverse.authorization.groups.impl.explicit;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The memberships of the explicit groups, as ids, in memory: which groups
+ * a user, a group, or another role assignee (by its identifier) belongs to
+ * directly, and - following the groups that contain these groups, upwards -
+ * all the groups it belongs to. The latter, which every permission check of
+ * a logged-in user needs, is computed once per member, and kept until the
+ * memberships change.
+ *
+ * The members of a group are replaced as a whole whenever the group is
+ * saved, so that the graph follows the changes made on this server without
+ * being loaded again.
+ */
+public class ExplicitGroupGraph {
+
+    private static final String USER = "u:";
+    private static final String GROUP = "g:";
+    private static final String IDENTIFIER = "r:";
+
+    // group id -> the keys of its direct members
+    private final Map<Long, Set<String>> membersOfGroup = new HashMap<>();
+    // member key -> the ids of the groups it directly belongs to
+    private final Map<String, Set<Long>> groupsOfMember = new HashMap<>();
+    // member key -> the ids of all the groups it belongs to
+    private final Map<String, Set<Long>> closures = new ConcurrentHashMap<>();
+
+    public static String userKey(Long userId) {
+        return USER + userId;
+    }
+
+    public static String groupKey(Long groupId) {
+        return GROUP + groupId;
+    }
+
+    public static String identifierKey(String identifier) {
+        return IDENTIFIER + identifier;
+    }
+
+    /**
+     * Adds a member to a group; for loading the graph.
+     */
+    public synchronized void addMember(Long groupId, String memberKey) {
+        membersOfGroup.computeIfAbsent(groupId, id -> new HashSet<>()).add(memberKey);
+        groupsOfMember.computeIfAbsent(memberKey, key -> new HashSet<>()).add(groupId);
+        closures.clear();
+    }
+
+    /**
+     * Replaces the members of a group.
+     */
+    public synchronized void setMembers(Long groupId, Collection<String> memberKeys) {
+        removeMembers(groupId);
+        for (String memberKey : memberKeys) {
+            addMember(groupId, memberKey);
+        }
+        closures.clear();
+    }
+
+    /**
+     * Removes a group - with its members, and from the groups it is a
+     * member of.
+     */
+    public synchronized void removeGroup(Long groupId) {
+        removeMembers(groupId);
+        Set<Long> containingGroups = groupsOfMember.remove(groupKey(groupId));
+        if (containingGroups != null) {
+            for (Long containingGroup : containingGroups) {
+                Set<String> members = membersOfGroup.get(containingGroup);
+                if (members != null) {
+                    members.remove(groupKey(groupId));
+                }
+            }
+        }
+        closures.clear();
+    }
+
+    private void removeMembers(Long groupId) {
+        Set<String> members = membersOfGroup.remove(groupId);
+        if (members != null) {
+            for (String memberKey : members) {
+                Set<Long> groups = groupsOfMember.get(memberKey);
+                if (groups != null) {
+                    groups.remove(groupId);
+                    if (groups.isEmpty()) {
+                        groupsOfMember.remove(memberKey);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the ids of the groups the member belongs to directly
+     */
+    public synchronized Set<Long> findDirectGroupIds(String memberKey) {
+        Set<Long> groups = groupsOfMember.get(memberKey);
+        return groups != null ? new HashSet<>(groups) : Collections.emptySet();
+    }
+
+    /**
+     * @return the ids of all the groups the member belongs to, directly or
+     * through the groups it belongs to
+     */
+    public Set<Long> findGroupIds(String memberKey) {
+        Set<Long> closure = closures.get(memberKey);
+        if (closure == null) {
+            synchronized (this) {
+                closure = Collections.unmodifiableSet(computeClosure(memberKey));
+                closures.put(memberKey, closure);
+            }
+        }
+        return closure;
+    }
+
+    private Set<Long> computeClosure(String memberKey) {
+        Set<Long> closure = new HashSet<>();
+        Deque<String> perimeter = new ArrayDeque<>();
+        perimeter.add(memberKey);
+        while (!perimeter.isEmpty()) {
+            Set<Long> groups = groupsOfMember.get(perimeter.poll());
+            if (groups != null) {
+                for (Long groupId : groups) {
+                    // (the groups may contain each other in a cycle)
+                    if (closure.add(groupId)) {
+                        perimeter.add(groupKey(groupId));
+                    }
+                }
+            }
+        }
+        return closure;
+    }
+
+    public synchronized int getGroupCount() {
+        return membersOfGroup.size();
+    }
+}
@@ -1,26 +1,33 @@
 package edu.harvard.iq.dataverse.authorization.groups.impl.explicit;
 
 import edu.harvard.iq.dataverse.DvObject;
+import edu.harvard.iq.dataverse.PermissionMemo;
 import edu.harvard.iq.dataverse.RoleAssigneeServiceBean;
 import edu.harvard.iq.dataverse.authorization.RoleAssignee;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
-import static java.util.stream.Collectors.joining;
 import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.inject.Named;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 /**
  * A bean providing the {@link ExplicitGroupProvider}s with container services,
@@ -38,33 +45,26 @@ public class ExplicitGroupServiceBean {
     
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     protected EntityManager em;
+    
+    @Resource
+    TransactionSynchronizationRegistry transactionRegistry;
 	
     ExplicitGroupProvider provider;
     
     /**
-     * A PostgreSQL-specific query that returns a group and all the groups
-     * that contain it, and their parents too (-> recourse up teh containment
-     * hierarchy of the explicit groups). Takes the group id as a parameter.
+     * How long the membership graph is used before it is loaded again -
+     * which bounds how long a change made on another server of a cluster
+     * takes to show here.
      */
-    private static final String FIND_ALL_PARENTS_QUERY_TEMPLATE = "WITH RECURSIVE\n" +
-        "explicit_group_graph AS (\n" +
-        "  SELECT\n" +
-        "     eg.id as id,\n" +
-        "     ee.explicitgroup_id as parent_group_id\n" +
-        "  FROM explicitgroup eg \n" +
-        "    LEFT JOIN explicitgroup_explicitgroup ee \n" +
-        "      ON eg.id=ee.containedexplicitgroups_id\n" +
-        "),\n" +
-        "parents AS (\n" +
-        "  SELECT * FROM explicit_group_graph\n" +
-        "  WHERE \n" +
-        "    id IN (@IDS)\n" +
-        "  UNION ALL\n" +
-        "  SELECT egg.*\n" +
-        "  FROM explicit_group_graph egg, parents\n" +
-        "  WHERE parents.parent_group_id = egg.id\n" +
-        ") SELECT * from explicitgroup \n" +
-        "WHERE id IN (SELECT distinct id FROM parents);";
+    static final long GRAPH_MAX_AGE_MILLIS = 60 * 1000L;
+    
+    private static volatile ExplicitGroupGraph graph = null;
+    private static volatile long graphLoadTime = 0;
+    // incremented whenever the graph is dropped or changed; a graph loaded
+    // while that happened may be out of date, and is not kept
+    private static final AtomicLong graphGeneration = new AtomicLong();
+    // marks the transactions that changed the memberships
+    private static final Object GRAPH_CHANGED_KEY = ExplicitGroupServiceBean.class.getName() + ".graphChanged";
     
     @PostConstruct
     void setup() {
@@ -78,6 +78,7 @@ public class ExplicitGroupServiceBean {
     public ExplicitGroup persist( ExplicitGroup g ) {
         if ( g.getId() == null ) {
             em.persist( g );
+            membershipsChanged();
             return g;
         } else {
             // clean stale data once in a while
@@ -93,7 +94,9 @@ public class ExplicitGroupServiceBean {
                 }
             }
             
-            return em.merge( g );
+            ExplicitGroup merged = em.merge( g );
+            membersChanged( merged );
+            return merged;
         }    
     }
     
@@ -127,6 +130,8 @@ public class ExplicitGroupServiceBean {
 
     public void removeGroup(ExplicitGroup explicitGroup) {
         em.remove( explicitGroup );
+        Long groupId = explicitGroup.getId();
+        changeGraph( current -> current.removeGroup(groupId) );
     }
     
     /**
@@ -152,28 +157,7 @@ public class ExplicitGroupServiceBean {
      * @see #findGroups(edu.harvard.iq.dataverse.authorization.RoleAssignee)
      */
     public Set<ExplicitGroup> findDirectlyContainingGroups( RoleAssignee ra ) {
-        if ( ra instanceof AuthenticatedUser ) {
-            return provider.updateProvider(
-                    new HashSet<>(
-                            em.createNamedQuery("ExplicitGroup.findByAuthenticatedUserIdentifier", ExplicitGroup.class)
-                              .setParameter("authenticatedUserIdentifier", ra.getIdentifier().substring(1))
-                              .getResultList()
-                  ));
-        } else if ( ra instanceof ExplicitGroup ) {
-            return provider.updateProvider(
-                    new HashSet<>(
-                            em.createNamedQuery("ExplicitGroup.findByContainedExplicitGroupId", ExplicitGroup.class)
-                              .setParameter("containedExplicitGroupId", ((ExplicitGroup) ra).getId())
-                              .getResultList()
-                  ));
-        } else {
-            return provider.updateProvider(
-                    new HashSet<>(
-                            em.createNamedQuery("ExplicitGroup.findByRoleAssgineeIdentifier", ExplicitGroup.class)
-                              .setParameter("roleAssigneeIdentifier", ra.getIdentifier())
-                              .getResultList()
-                  ));
-        }
+        return findByIds( getGraph().findDirectGroupIds(memberKey(ra)) );
     }
 
     
@@ -183,7 +167,7 @@ public class ExplicitGroupServiceBean {
      * @return set of the explicit groups that contain {@code ra}.
      */
     public Set<ExplicitGroup> findGroups( RoleAssignee ra ) {
-        return findClosure(findDirectlyContainingGroups(ra));
+        return findByIds( getGraph().findGroupIds(memberKey(ra)) );
     }
     
     /**
@@ -256,14 +240,151 @@ public class ExplicitGroupServiceBean {
         
         if ( seed.isEmpty() ) return Collections.emptySet();
         
-        String ids = seed.stream().map(eg->Long.toString(eg.getId())).collect( joining(",") );
-        
-        // PSQL driver has issues with arrays and collections as parameters, so we're using 
-        // string manipulation to create the query here. Not ideal, but seems to be
-        // the only solution at the Java Persistence level (i.e. without downcasting to org.postgresql.*)
-        String sqlCode = FIND_ALL_PARENTS_QUERY_TEMPLATE.replace("@IDS", ids);
-        return new HashSet<>(em.createNativeQuery(sqlCode, ExplicitGroup.class)
-            .getResultList());
+        ExplicitGroupGraph current = getGraph();
+        Set<Long> ids = new HashSet<>();
+        for ( ExplicitGroup eg : seed ) {
+            ids.add( eg.getId() );
+            ids.addAll( current.findGroupIds(ExplicitGroupGraph.groupKey(eg.getId())) );
+        }
+        return findByIds( ids );
+    }
+    
+    /**
+     * Loads the groups, all in one query.
+     */
+    private Set<ExplicitGroup> findByIds( Set<Long> ids ) {
+        if ( ids.isEmpty() ) {
+            return new HashSet<>();
+        }
+        return provider.updateProvider( new HashSet<>(
+                em.createNamedQuery("ExplicitGroup.findByIds", ExplicitGroup.class)
+                  .setParameter("ids", new ArrayList<>(ids))
+                  .getResultList()) );
+    }
+    
+    private static String memberKey( RoleAssignee ra ) {
+        if ( ra instanceof AuthenticatedUser ) {
+            return ExplicitGroupGraph.userKey( ((AuthenticatedUser) ra).getId() );
+        } else if ( ra instanceof ExplicitGroup ) {
+            return ExplicitGroupGraph.groupKey( ((ExplicitGroup) ra).getId() );
+        } else {
+            return ExplicitGroupGraph.identifierKey( ra.getIdentifier() );
+        }
+    }
+    
+    /**
+     * @return the graph of the memberships of all the explicit groups,
+     * loaded with three queries if it is not in memory.
+     */
+    ExplicitGroupGraph getGraph() {
+        ExplicitGroupGraph current = graph;
+        boolean changedHere = isGraphChangedInTransaction();
+        if ( current == null || changedHere || System.currentTimeMillis() - graphLoadTime > GRAPH_MAX_AGE_MILLIS ) {
+            long loadTime = System.currentTimeMillis();
+            long generation = graphGeneration.get();
+            current = new ExplicitGroupGraph();
+            for ( Object[] row : (List<Object[]>) em.createNativeQuery(
+                    "SELECT explicitgroup_id, containedexplicitgroups_id FROM explicitgroup_explicitgroup").getResultList() ) {
+                current.addMember( toLong(row[0]), ExplicitGroupGraph.groupKey(toLong(row[1])) );
+            }
+            for ( Object[] row : (List<Object[]>) em.createNativeQuery(
+                    "SELECT explicitgroup_id, containedauthenticatedusers_id FROM explicitgroup_authenticateduser").getResultList() ) {
+                current.addMember( toLong(row[0]), ExplicitGroupGraph.userKey(toLong(row[1])) );
+            }
+            for ( Object[] row : (List<Object[]>) em.createNativeQuery(
+                    "SELECT explicitgroup_id, containedroleassignees FROM explicitgroup_containedroleassignees").getResultList() ) {
+                current.addMember( toLong(row[0]), ExplicitGroupGraph.identifierKey((String) row[1]) );
+            }
+            logger.fine("Loaded the memberships of " + current.getGroupCount() + " explicit groups in " + (System.currentTimeMillis() - loadTime) + " ms");
+            // a graph loaded by a transaction that changed the memberships has
+            // its changes, which no other transaction may see before the commit
+            if ( !changedHere && graphGeneration.get() == generation ) {
+                graph = current;
+                graphLoadTime = loadTime;
+            }
+        }
+        return current;
+    }
+    
+    private static Long toLong( Object id ) {
+        return ((Number) id).longValue();
+    }
+    
+    /**
+     * Updates the graph with the members of a group that was just saved.
+     */
+    private void membersChanged( ExplicitGroup g ) {
+        List<String> memberKeys = new ArrayList<>();
+        g.getContainedExplicitGroups().forEach( eg -> memberKeys.add(ExplicitGroupGraph.groupKey(eg.getId())) );
+        g.getContainedAuthenticatedUsers().forEach( au -> memberKeys.add(ExplicitGroupGraph.userKey(au.getId())) );
+        g.getContainedRoleAssignees().forEach( idtf -> memberKeys.add(ExplicitGroupGraph.identifierKey(idtf)) );
+        Long groupId = g.getId();
+        changeGraph( current -> current.setMembers(groupId, memberKeys) );
+    }
+    
+    /**
+     * Applies a change to the graph once the transaction is committed, so
+     * that other transactions do not see it before; until then this
+     * transaction loads the graph, with its changes, for itself.
+     */
+    private void changeGraph( Consumer<ExplicitGroupGraph> change ) {
+        graphChangedInTransaction();
+        transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if ( status == Status.STATUS_COMMITTED ) {
+                    // a graph being loaded now may be from before the commit
+                    graphGeneration.incrementAndGet();
+                    ExplicitGroupGraph committed = graph;
+                    if ( committed != null ) {
+                        change.accept( committed );
+                    }
+                    PermissionMemo.assignmentsChanged();
+                }
+            }
+        });
+    }
+    
+    /**
+     * Drops the graph once the transaction is over; until then this
+     * transaction loads the graph, with its changes, for itself. For the
+     * changes that are not made through {@link #persist(ExplicitGroup)}.
+     */
+    public void membershipsChanged() {
+        graphChangedInTransaction();
+        transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if ( status == Status.STATUS_COMMITTED ) {
+                    dropGraph();
+                    PermissionMemo.assignmentsChanged();
+                }
+            }
+        });
+    }
+    
+    private void graphChangedInTransaction() {
+        // the permissions this transaction remembers may depend on the change
+        PermissionMemo.assignmentsChanged();
+        transactionRegistry.putResource( GRAPH_CHANGED_KEY, Boolean.TRUE );
+    }
+    
+    private boolean isGraphChangedInTransaction() {
+        return transactionRegistry.getTransactionKey() != null
+                && transactionRegistry.getResource( GRAPH_CHANGED_KEY ) != null;
+    }
+    
+    private static void dropGraph() {
+        graphGeneration.incrementAndGet();
+        graph = null;
     }
     
     /**
@@ -278,6 +399,7 @@ public class ExplicitGroupServiceBean {
         } else if (assignee instanceof ExplicitGroup) {
             em.createNativeQuery("DELETE FROM explicitgroup_explicitgroup WHERE containedexplicitgroups_id=" + ((ExplicitGroup) assignee).getId()).executeUpdate();
         }
+        membershipsChanged();
     }
     
     
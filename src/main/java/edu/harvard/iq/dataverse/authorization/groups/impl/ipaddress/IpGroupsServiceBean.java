@@ -3,19 +3,21 @@ package edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress;
 import edu.harvard.iq.dataverse.RoleAssigneeServiceBean;
 import edu.harvard.iq.dataverse.actionlogging.ActionLogRecord;
 import edu.harvard.iq.dataverse.actionlogging.ActionLogServiceBean;
-import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IPv4Address;
-import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IPv6Address;
 import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IpAddress;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
+import javax.annotation.Resource;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.inject.Named;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 /**
  * Provides CRUD tools to efficiently manage IP groups in a Java EE container.
@@ -37,6 +39,22 @@ public class IpGroupsServiceBean {
     @EJB
     RoleAssigneeServiceBean roleAssigneeSvc;
     
+    @Resource
+    TransactionSynchronizationRegistry transactionRegistry;
+    
+    /**
+     * How long the index of the ranges is used before it is built again -
+     * which bounds how long a change made on another server of a cluster
+     * takes to show here.
+     */
+    static final long RANGE_INDEX_MAX_AGE_MILLIS = 60 * 1000L;
+    
+    private static volatile IpRangeIndex rangeIndex = null;
+    private static volatile long rangeIndexBuildTime = 0;
+    // incremented whenever the ranges change; an index built while that
+    // happened may be out of date, and is not kept
+    private static final AtomicLong rangeIndexGeneration = new AtomicLong();
+    
     /**
      * Stores (inserts/updates) the passed IP group.
      * @param grp The group to store.
@@ -58,6 +76,7 @@ public class IpGroupsServiceBean {
                     // new group
                     em.persist( grp );
                     actionLogSvc.log( alr );
+                    rangesChanged();
                     return grp;
                     
                 } else {
@@ -66,15 +85,18 @@ public class IpGroupsServiceBean {
                     existing.setIpv4Ranges(grp.getIpv4Ranges());
                     existing.setIpv6Ranges(grp.getIpv6Ranges());
                     actionLogSvc.log( alr.setActionSubType("ipUpdate") );
+                    rangesChanged();
                     return existing;
                 }
             } else {
                 actionLogSvc.log( alr );
                 em.persist( grp );
+                rangesChanged();
                 return grp;
             }
         } else {
             actionLogSvc.log( alr.setActionSubType("ipUpdate") );
+            rangesChanged();
             return em.merge(grp);
         }
     }
@@ -97,27 +119,60 @@ public class IpGroupsServiceBean {
         return em.createNamedQuery("IpGroup.findAll", IpGroup.class).getResultList();
     }
     
+    /**
+     * Finds the groups containing the address in the {@link IpRangeIndex},
+     * so that the common case - the address is in no group - costs no query
+     * at all; the groups found are loaded by id.
+     * @param ipa the address
+     * @return the groups that have a range containing {@code ipa}
+     */
     public Set<IpGroup> findAllIncludingIp( IpAddress ipa ) {
-        if ( ipa instanceof IPv4Address ) {
-            IPv4Address ip4 = (IPv4Address) ipa;
-            List<IpGroup> groupList = em.createNamedQuery("IPv4Range.findGroupsContainingAddressAsLong", IpGroup.class)
-                    .setParameter("addressAsLong", ip4.toBigInteger()).getResultList();
-            return new HashSet<>(groupList);
-
-        } else if ( ipa instanceof IPv6Address ) {
-            IPv6Address ip6 = (IPv6Address) ipa;
-            long[] ip6arr = ip6.toLongArray();
-            List<IpGroup> groupList = em.createNamedQuery("IPv6Range.findGroupsContainingABCD", IpGroup.class)
-                    .setParameter("a", ip6arr[0])
-                    .setParameter("b", ip6arr[1])
-                    .setParameter("c", ip6arr[2])
-                    .setParameter("d", ip6arr[3])
-                    .getResultList();
-            return new HashSet<>(groupList);
-
-        } else {
-            throw new IllegalArgumentException( "Unknown IpAddress type: " + ipa.getClass() + " (for IpAddress:" + ipa + ")" );
+        Set<IpGroup> groups = new HashSet<>();
+        for ( Long id : getRangeIndex().findGroupIds(ipa) ) {
+            IpGroup grp = em.find( IpGroup.class, id );
+            if ( grp != null ) {
+                groups.add( grp );
+            }
         }
+        return groups;
+    }
+    
+    IpRangeIndex getRangeIndex() {
+        IpRangeIndex index = rangeIndex;
+        if ( index == null || System.currentTimeMillis() - rangeIndexBuildTime > RANGE_INDEX_MAX_AGE_MILLIS ) {
+            long buildTime = System.currentTimeMillis();
+            long generation = rangeIndexGeneration.get();
+            IpRangeIndex.Builder builder = new IpRangeIndex.Builder();
+            findAll().forEach( builder::add );
+            index = builder.build();
+            logger.fine("Built the index of " + index.getRangeCount() + " IP ranges in " + (System.currentTimeMillis() - buildTime) + " ms");
+            if ( rangeIndexGeneration.get() == generation ) {
+                rangeIndex = index;
+                rangeIndexBuildTime = buildTime;
+            }
+        }
+        return index;
+    }
+    
+    /**
+     * Drops the index of the ranges, right away and again once the
+     * transaction is over (an index built by another transaction in between
+     * would have the ranges from before the change).
+     */
+    private void rangesChanged() {
+        rangeIndexGeneration.incrementAndGet();
+        rangeIndex = null;
+        transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                rangeIndexGeneration.incrementAndGet();
+                rangeIndex = null;
+            }
+        });
     }
     
     /**
@@ -132,6 +187,7 @@ public class IpGroupsServiceBean {
         if ( roleAssigneeSvc.getAssignmentsFor(grp.getIdentifier()).isEmpty() ) {
             em.remove( grp );
             actionLogSvc.log(alr);
+            rangesChanged();
             
         } else {
             String failReason = "Group " + grp.getAlias() + " has assignments and thus can't be deleted.";
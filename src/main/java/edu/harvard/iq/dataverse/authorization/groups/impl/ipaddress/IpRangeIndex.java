@@ -0,0 +1,231 @@
+package edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress;
+
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IPv4Address;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IPv6Address;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IpAddress;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IpAddressRange;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An in-memory index of the ranges of all the IP groups, answering which
+ * groups contain an address with a binary search - rather than a query.
+ *
+ * The address space is cut at every bottom and (just after) every top of a
+ * range into segments, each of which is contained in the same groups
+ * throughout; the index holds the start of every segment, in order, and the
+ * ids of the groups that contain it. Addresses are held as unsigned 128-bit
+ * numbers (two {@code long}s), IPv4 and IPv6 addresses in separate segments.
+ *
+ * Immutable, and so thread-safe, once built.
+ */
+public class IpRangeIndex {
+
+    private final Segments ipv4;
+    private final Segments ipv6;
+    private final int rangeCount;
+
+    private IpRangeIndex(Segments ipv4, Segments ipv6, int rangeCount) {
+        this.ipv4 = ipv4;
+        this.ipv6 = ipv6;
+        this.rangeCount = rangeCount;
+    }
+
+    /**
+     * @return the ids of the groups that have a range containing the
+     * address; an empty set if there are none
+     */
+    public Set<Long> findGroupIds(IpAddress address) {
+        if (address instanceof IPv4Address) {
+            return ipv4.find(0, toLong((IPv4Address) address));
+        } else if (address instanceof IPv6Address) {
+            IPv6Address ipv6Address = (IPv6Address) address;
+            return ipv6.find(high(ipv6Address), low(ipv6Address));
+        } else {
+            throw new IllegalArgumentException("Unknown IpAddress type: " + address.getClass() + " (for IpAddress:" + address + ")");
+        }
+    }
+
+    public int getRangeCount() {
+        return rangeCount;
+    }
+
+    public int getSegmentCount() {
+        return ipv4.size() + ipv6.size();
+    }
+
+    // (not IPv4Address.toLong(), which overflows for addresses over 127.255.255.255)
+    private static long toLong(IPv4Address address) {
+        return ((long) address.get(0) << 24) | (address.get(1) << 16) | (address.get(2) << 8) | address.get(3);
+    }
+
+    // (not IPv6Address.toLongArray(), which holds only two of the 16-bit words in each long)
+    private static long high(IPv6Address address) {
+        return toLong(address, 0);
+    }
+
+    private static long low(IPv6Address address) {
+        return toLong(address, 4);
+    }
+
+    private static long toLong(IPv6Address address, int firstWord) {
+        long value = 0;
+        for (int i = firstWord; i < firstWord + 4; i++) {
+            value = (value << 16) | (address.get(i) & 0xffffL);
+        }
+        return value;
+    }
+
+    public static class Builder {
+
+        private final List<Event> ipv4Events = new ArrayList<>();
+        private final List<Event> ipv6Events = new ArrayList<>();
+        private int rangeCount = 0;
+
+        public Builder add(IpAddressRange range, Long groupId) {
+            IpAddress bottom = range.getBottom();
+            IpAddress top = range.getTop();
+            if (bottom instanceof IPv4Address) {
+                ipv4Events.add(new Event(0, toLong((IPv4Address) bottom), false, groupId));
+                ipv4Events.add(new Event(0, toLong((IPv4Address) top), true, groupId));
+            } else {
+                IPv6Address bottomIPv6 = (IPv6Address) bottom;
+                IPv6Address topIPv6 = (IPv6Address) top;
+                ipv6Events.add(new Event(high(bottomIPv6), low(bottomIPv6), false, groupId));
+                ipv6Events.add(new Event(high(topIPv6), low(topIPv6), true, groupId));
+            }
+            rangeCount++;
+            return this;
+        }
+
+        public Builder add(IpGroup group) {
+            if (group.getIpv4Ranges() != null) {
+                group.getIpv4Ranges().forEach(range -> add(range, group.getId()));
+            }
+            if (group.getIpv6Ranges() != null) {
+                group.getIpv6Ranges().forEach(range -> add(range, group.getId()));
+            }
+            return this;
+        }
+
+        public IpRangeIndex build() {
+            return new IpRangeIndex(Segments.of(ipv4Events), Segments.of(ipv6Events), rangeCount);
+        }
+    }
+
+    /**
+     * A bottom of a range, where the range starts, or a top - after which
+     * it ends.
+     */
+    private static final class Event {
+        final long high;
+        final long low;
+        final boolean afterTop;
+        final Long groupId;
+
+        Event(long high, long low, boolean afterTop, Long groupId) {
+            this.high = high;
+            this.low = low;
+            this.afterTop = afterTop;
+            this.groupId = groupId;
+        }
+
+        int comparePosition(Event other) {
+            return compare(high, low, afterTop, other.high, other.low, other.afterTop);
+        }
+    }
+
+    private static int compare(long high1, long low1, boolean after1, long high2, long low2, boolean after2) {
+        int c = Long.compareUnsigned(high1, high2);
+        if (c == 0) {
+            c = Long.compareUnsigned(low1, low2);
+        }
+        if (c == 0) {
+            c = Boolean.compare(after1, after2);
+        }
+        return c;
+    }
+
+    private static final class Segments {
+        // the start of segment i is (highs[i], lows[i]), or just after it if afterTops[i]
+        final long[] highs;
+        final long[] lows;
+        final boolean[] afterTops;
+        final List<Set<Long>> groupIds;
+
+        private Segments(long[] highs, long[] lows, boolean[] afterTops, List<Set<Long>> groupIds) {
+            this.highs = highs;
+            this.lows = lows;
+            this.afterTops = afterTops;
+            this.groupIds = groupIds;
+        }
+
+        static Segments of(List<Event> events) {
+            events.sort(Event::comparePosition);
+            List<Event> starts = new ArrayList<>();
+            List<Set<Long>> groupIds = new ArrayList<>();
+            // (the same set is shared by all the segments that have it)
+            Map<Set<Long>, Set<Long>> sets = new HashMap<>();
+            Map<Long, Integer> activeRanges = new HashMap<>();
+            Set<Long> current = Collections.emptySet();
+
+            int i = 0;
+            while (i < events.size()) {
+                Event start = events.get(i);
+                while (i < events.size() && events.get(i).comparePosition(start) == 0) {
+                    Event event = events.get(i);
+                    if (event.afterTop) {
+                        if (activeRanges.merge(event.groupId, -1, Integer::sum) == 0) {
+                            activeRanges.remove(event.groupId);
+                        }
+                    } else {
+                        activeRanges.merge(event.groupId, 1, Integer::sum);
+                    }
+                    i++;
+                }
+                if (!activeRanges.keySet().equals(current)) {
+                    Set<Long> ids = new HashSet<>(activeRanges.keySet());
+                    current = sets.computeIfAbsent(ids, Collections::unmodifiableSet);
+                    starts.add(start);
+                    groupIds.add(current);
+                }
+            }
+
+            long[] highs = new long[starts.size()];
+            long[] lows = new long[starts.size()];
+            boolean[] afterTops = new boolean[starts.size()];
+            for (int s = 0; s < starts.size(); s++) {
+                highs[s] = starts.get(s).high;
+                lows[s] = starts.get(s).low;
+                afterTops[s] = starts.get(s).afterTop;
+            }
+            return new Segments(highs, lows, afterTops, groupIds);
+        }
+
+        Set<Long> find(long high, long low) {
+            // the last segment that starts at, or before, the address
+            int from = 0;
+            int to = highs.length - 1;
+            int found = -1;
+            while (from <= to) {
+                int mid = (from + to) >>> 1;
+                if (compare(highs[mid], lows[mid], afterTops[mid], high, low, false) <= 0) {
+                    found = mid;
+                    from = mid + 1;
+                } else {
+                    to = mid - 1;
+                }
+            }
+            return found >= 0 ? groupIds.get(found) : Collections.emptySet();
+        }
+
+        int size() {
+            return highs.length;
+        }
+    }
+}
@@ -19,17 +19,27 @@
 */
 package edu.harvard.iq.dataverse.dataaccess;
 
+import java.io.Closeable;
 import java.io.InputStream;
 import java.io.IOException;
 
 
 import edu.harvard.iq.dataverse.DataFile;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -40,6 +50,44 @@ import java.util.zip.ZipOutputStream;
  */
 public class DataFileZipper {
     public static long DEFAULT_ZIPFILE_LIMIT = 100 * 1024 * 1024; // 100MB
+    public static final int DEFAULT_PREFETCH_THREADS = 4;
+    
+    // The first bytes of every file are read into a buffer of this size
+    // (by the prefetching threads, if enabled) before its zip entry is
+    // written; the files that fit entirely in the buffer are "STORED" in 
+    // the zip file, when their content is already compressed:
+    static final int PREFETCH_BUFFER_SIZE = 1024 * 1024;
+    
+    // MIME types of content that is already compressed, and is not worth
+    // deflating again: 
+    private static final Set<String> COMPRESSED_MIME_TYPES = new HashSet<>(Arrays.asList(
+            "application/zip",
+            "application/gzip",
+            "application/x-gzip",
+            "application/x-bzip2",
+            "application/x-xz",
+            "application/x-7z-compressed",
+            "application/x-rar-compressed",
+            "application/vnd.rar",
+            "application/zstd",
+            "application/java-archive",
+            "application/x-compressed-tar",
+            "application/vnd.openxmlformats-officedocument.wordprocessingml.document",
+            "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
+            "application/vnd.openxmlformats-officedocument.presentationml.presentation",
+            "application/vnd.oasis.opendocument.text",
+            "application/vnd.oasis.opendocument.spreadsheet",
+            "application/vnd.oasis.opendocument.presentation",
+            "image/jpeg",
+            "image/png",
+            "image/gif",
+            "image/webp",
+            "audio/mpeg",
+            "audio/ogg",
+            "audio/aac",
+            "audio/flac",
+            "audio/mp4"
+    ));
     
     private static final Logger logger = Logger.getLogger(DataFileZipper.class.getCanonicalName());
     private static final String MANIFEST_FILE_NAME = "MANIFEST.TXT";
@@ -53,6 +101,11 @@ public class DataFileZipper {
     private String fileManifest = "";
     
     private Set<String> zippedFolders = null; 
+    
+    private int prefetchThreads = DEFAULT_PREFETCH_THREADS;
+    
+    private long zipStartTime = 0L;
+    private long bytesZipped = 0L;
 
     public DataFileZipper() {
         fileNameList = new ArrayList<>();
@@ -83,11 +136,29 @@ public class DataFileZipper {
         return this.fileManifest; 
     }
     
+    /**
+     * The number of files opened, and read into the prefetch buffers,
+     * concurrently by addFilesToZipStream(), while the current file is 
+     * being written into the zip stream; 1 (or less) means that the files
+     * are opened and read one at a time.
+     */
+    public void setPrefetchThreads(int prefetchThreads) {
+        this.prefetchThreads = prefetchThreads;
+    }
+    
+    public int getPrefetchThreads() {
+        return prefetchThreads;
+    }
+    
     public void openZipStream() throws IOException {
         if (outputStream == null) {
             throw new IOException("Attempted to create a ZipOutputStream from a NULL OutputStream.");
         }
+        // (ZipOutputStream switches to the Zip64 format by itself, if the
+        // entries, or the number of entries, exceed the limits of the
+        // original format)
         this.zipOutputStream = new ZipOutputStream(outputStream);
+        this.zipStartTime = System.currentTimeMillis();
     }
     
     public long addFileToZipStream(DataFile dataFile) throws IOException {
@@ -98,112 +169,207 @@ public class DataFileZipper {
         if (zipOutputStream == null) {
             openZipStream();
         }
-
-        boolean createManifest = fileManifest != null;
         
-        DataAccessRequest daReq = new DataAccessRequest();
-        StorageIO<DataFile> accessObject = DataAccess.getStorageIO(dataFile, daReq);
+        try (PrefetchedFile prefetchedFile = PrefetchedFile.fetch(dataFile, getOriginal, PREFETCH_BUFFER_SIZE)) {
+            return writeZipEntry(dataFile, prefetchedFile);
+        }
+    }
+    
+    /**
+     * Adds the files to the zip stream, in the order in which they are 
+     * listed; while a file is being written, the next ones are opened, and
+     * their first PREFETCH_BUFFER_SIZE bytes read, by up to prefetchThreads
+     * threads - so that the latency of opening the objects on remote
+     * storage (S3, Swift) is not paid one file at a time.
+     * 
+     * @return the number of bytes zipped
+     */
+    public long addFilesToZipStream(List<DataFile> dataFiles, boolean getOriginal) throws IOException {
+        if (zipOutputStream == null) {
+            openZipStream();
+        }
+        
+        long byteSize = 0L;
+        
+        if (prefetchThreads < 2 || dataFiles.size() < 2) {
+            for (DataFile dataFile : dataFiles) {
+                byteSize += addFileToZipStream(dataFile, getOriginal);
+            }
+            return byteSize;
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(prefetchThreads, dataFiles.size()));
+        Deque<Future<PrefetchedFile>> prefetchQueue = new ArrayDeque<>();
+        int nextFile = 0;
+        
+        try {
+            for (DataFile dataFile : dataFiles) {
+                // keep up to prefetchThreads files (this one included) 
+                // opened, or being opened: 
+                while (nextFile < dataFiles.size() && prefetchQueue.size() < prefetchThreads) {
+                    DataFile prefetchDataFile = dataFiles.get(nextFile++);
+                    // The entity is only used from this thread; the
+                    // relationships needed to open it are loaded here: 
+                    loadStorageRelationships(prefetchDataFile);
+                    prefetchQueue.add(executor.submit(() -> PrefetchedFile.fetch(prefetchDataFile, getOriginal, PREFETCH_BUFFER_SIZE)));
+                }
 
-        if (accessObject != null) {
-            Boolean gotOriginal = false;
-            if(getOriginal) {
-                StoredOriginalFile sof = new StoredOriginalFile();
-                StorageIO<DataFile> tempAccessObject = sof.retreive(accessObject);
-                if(null != tempAccessObject) { //If there is an original, use it
-                    gotOriginal = true;
-                    accessObject = tempAccessObject; 
-                } 
+                try (PrefetchedFile prefetchedFile = getPrefetchedFile(prefetchQueue.poll())) {
+                    byteSize += writeZipEntry(dataFile, prefetchedFile);
+                }
             }
-            if(!gotOriginal) { //if we didn't get this from sof.retreive we have to open it
-                accessObject.open();
+        } finally {
+            List<Runnable> notStarted = executor.shutdownNow();
+            // close the files still prefetched, if we are bailing out early:
+            for (Future<PrefetchedFile> prefetched : prefetchQueue) {
+                if (!notStarted.contains(prefetched)) {
+                    try {
+                        prefetched.get().close();
+                    } catch (InterruptedException | ExecutionException ex) {
+                        // nothing left to close
+                    }
+                }
+            }
+        }
+        
+        return byteSize;
+    }
+    
+    private static void loadStorageRelationships(DataFile dataFile) {
+        if (dataFile.getFileMetadata() != null) {
+            dataFile.getFileMetadata().getLabel();
+        }
+        if (dataFile.isTabularData() && dataFile.getDataTable().getDataVariables() != null) {
+            dataFile.getDataTable().getDataVariables().size();
+        }
+    }
+    
+    private PrefetchedFile getPrefetchedFile(Future<PrefetchedFile> prefetched) throws IOException {
+        try {
+            return prefetched.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a file to be opened.", ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
             }
+            throw new IOException("Failed to open a file for zipping.", ee.getCause());
+        }
+    }
+    
+    private long writeZipEntry(DataFile dataFile, PrefetchedFile prefetchedFile) throws IOException {
+        if (prefetchedFile == null) {
+            return 0L;
+        }
 
-            long byteSize = 0;
+        boolean createManifest = fileManifest != null;
 
-            String fileName = accessObject.getFileName();
-            String mimeType = accessObject.getMimeType();
-            if (mimeType == null || mimeType.equals("")) {
-                mimeType = "application/octet-stream";
-            }
+        long byteSize = 0;
 
-            //if (sizeTotal + fileSize < sizeLimit) {
-            Boolean Success = true;
+        String fileName = prefetchedFile.fileName;
+        String mimeType = prefetchedFile.mimeType;
+        if (mimeType == null || mimeType.equals("")) {
+            mimeType = "application/octet-stream";
+        }
 
-            InputStream instream = accessObject.getInputStream();
-            if (instream == null) {
-                if (createManifest) {
-                    addToManifest(fileName
-                            + " (" + mimeType
-                            + ") COULD NOT be downloaded because an I/O error has occured. \r\n");
-                }
+        if (!prefetchedFile.readable) {
+            if (createManifest) {
+                addToManifest(fileName
+                        + " (" + mimeType
+                        + ") COULD NOT be downloaded because an I/O error has occured. \r\n");
+            }
+            return 0L;
+        }
 
-                Success = false;
-            } else {
-                // If any of the files have non-empty DirectoryLabels we'll 
-                // use them to re-create the folders in the Zipped bundle:
-                String folderName = dataFile.getFileMetadata().getDirectoryLabel(); 
-                if (folderName != null) {
-                    // If any of the saved folder names start with with slashes,
-                    // we want to remove them: 
-                    // (i.e., ///foo/bar will become foo/bar)
-                    while (folderName.startsWith("/")) {
-                        folderName = folderName.substring(1);
-                    }
-                    if (!"".equals(folderName)) {
-                        if (!zippedFolders.contains(folderName)) {
-                            ZipEntry d = new ZipEntry(folderName + "/");
-                            zipOutputStream.putNextEntry(d);
-                            zipOutputStream.closeEntry();
-                            zippedFolders.add(folderName);
-                        }
-                        fileName = folderName + "/" + fileName;
-                    }
-                }
-                
-                String zipEntryName = checkZipEntryName(fileName);
-                
-                ZipEntry e = new ZipEntry(zipEntryName);
-                logger.fine("created new zip entry for " + zipEntryName);
-
-                zipOutputStream.putNextEntry(e);
-
-                // before writing out any bytes from the input stream, flush
-                // any extra content, such as the variable header for the 
-                // subsettable files:
-                String varHeaderLine = accessObject.getVarHeader();
-                if (varHeaderLine != null) {
-                    zipOutputStream.write(varHeaderLine.getBytes());
-                    byteSize += (varHeaderLine.getBytes().length);
+        // If any of the files have non-empty DirectoryLabels we'll 
+        // use them to re-create the folders in the Zipped bundle:
+        String folderName = dataFile.getFileMetadata().getDirectoryLabel(); 
+        if (folderName != null) {
+            // If any of the saved folder names start with with slashes,
+            // we want to remove them: 
+            // (i.e., ///foo/bar will become foo/bar)
+            while (folderName.startsWith("/")) {
+                folderName = folderName.substring(1);
+            }
+            if (!"".equals(folderName)) {
+                if (!zippedFolders.contains(folderName)) {
+                    ZipEntry d = new ZipEntry(folderName + "/");
+                    zipOutputStream.putNextEntry(d);
+                    zipOutputStream.closeEntry();
+                    zippedFolders.add(folderName);
                 }
+                fileName = folderName + "/" + fileName;
+            }
+        }
 
-                byte[] data = new byte[8192];
+        String zipEntryName = checkZipEntryName(fileName);
 
-                int i = 0;
-                while ((i = instream.read(data)) > 0) {
-                    zipOutputStream.write(data, 0, i);
-                    logger.fine("wrote " + i + " bytes;");
+        ZipEntry e = new ZipEntry(zipEntryName);
+        
+        // Content that's already compressed is not deflated again: it is
+        // STORED, if we know its size and CRC before writing it (i.e., if
+        // it fit in the prefetch buffer); otherwise written with a 
+        // deflater that doesn't compress. 
+        byte[] varHeaderBytes = prefetchedFile.varHeader == null ? new byte[0] : prefetchedFile.varHeader.getBytes();
+        boolean compressedContent = isCompressedMimeType(mimeType);
+        if (compressedContent && prefetchedFile.isComplete()) {
+            CRC32 crc = new CRC32();
+            crc.update(varHeaderBytes);
+            crc.update(prefetchedFile.buffer, 0, prefetchedFile.bufferedLength);
+            e.setMethod(ZipEntry.STORED);
+            e.setSize(varHeaderBytes.length + prefetchedFile.bufferedLength);
+            e.setCompressedSize(varHeaderBytes.length + prefetchedFile.bufferedLength);
+            e.setCrc(crc.getValue());
+        } else {
+            zipOutputStream.setLevel(compressedContent ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+        }
+        logger.fine("created new zip entry for " + zipEntryName);
 
-                    byteSize += i;
-                    zipOutputStream.flush();
-                }
-                instream.close();
-                zipOutputStream.closeEntry();
-                logger.fine("closed zip entry for " + zipEntryName);
+        zipOutputStream.putNextEntry(e);
 
-                if (createManifest) {
-                    addToManifest(zipEntryName + " (" + mimeType + ") " + byteSize + " bytes.\r\n");
-                }
+        // before writing out any bytes from the input stream, flush
+        // any extra content, such as the variable header for the 
+        // subsettable files:
+        if (varHeaderBytes.length > 0) {
+            zipOutputStream.write(varHeaderBytes);
+            byteSize += varHeaderBytes.length;
+        }
 
-                if (byteSize > 0) {
-                    zippedFilesList.add(dataFile.getId());
-                }
+        zipOutputStream.write(prefetchedFile.buffer, 0, prefetchedFile.bufferedLength);
+        byteSize += prefetchedFile.bufferedLength;
+
+        if (!prefetchedFile.isComplete()) {
+            byte[] data = new byte[8192];
+
+            int i = 0;
+            while ((i = prefetchedFile.instream.read(data)) > 0) {
+                zipOutputStream.write(data, 0, i);
+                byteSize += i;
             }
-            //} else if (createManifest) {
-            //    addToManifest(fileName + " (" + mimeType + ") " + " skipped because the total size of the download bundle exceeded the limit of " + sizeLimit + " bytes.\r\n");
-            //}
-            return byteSize;
         }
-        return 0L;
+        zipOutputStream.closeEntry();
+        zipOutputStream.flush();
+        logger.fine("closed zip entry for " + zipEntryName + "; " + byteSize + " bytes.");
+
+        if (createManifest) {
+            addToManifest(zipEntryName + " (" + mimeType + ") " + byteSize + " bytes.\r\n");
+        }
+
+        if (byteSize > 0) {
+            zippedFilesList.add(dataFile.getId());
+        }
+        bytesZipped += byteSize;
+        
+        return byteSize;
+    }
+    
+    static boolean isCompressedMimeType(String mimeType) {
+        if (mimeType == null) {
+            return false;
+        }
+        String baseType = mimeType.split(";")[0].trim().toLowerCase();
+        return COMPRESSED_MIME_TYPES.contains(baseType) || baseType.startsWith("video/");
     }
     
     public void finalizeZipStream() throws IOException {
@@ -221,6 +387,7 @@ public class DataFileZipper {
             
             ZipEntry e = new ZipEntry(manifestEntry);
 
+            zipOutputStream.setLevel(Deflater.DEFAULT_COMPRESSION);
             zipOutputStream.putNextEntry(e);
             zipOutputStream.write(fileManifest.getBytes());
             zipOutputStream.closeEntry();
@@ -228,6 +395,23 @@ public class DataFileZipper {
 
         zipOutputStream.flush();
         zipOutputStream.close();
+        
+        logger.info(getThroughputReport());
+    }
+    
+    /**
+     * @return the number of files and bytes zipped so far, and the rate at
+     * which they were zipped (since the zip stream was opened)
+     */
+    public String getThroughputReport() {
+        long elapsed = Math.max(1L, System.currentTimeMillis() - zipStartTime);
+        return "Zipped " + zippedFilesList.size() + " files, " + bytesZipped + " bytes, in " + elapsed + " ms ("
+                + String.format("%.2f", (bytesZipped / 1048576.0) / (elapsed / 1000.0)) + " MB/s, "
+                + prefetchThreads + " prefetch threads).";
+    }
+    
+    public long getBytesZipped() {
+        return bytesZipped;
     }
     
     public void addToManifest(String manifestEntry) {
@@ -250,4 +434,85 @@ public class DataFileZipper {
         fileNameList.add(name);
         return name;
     }
+    
+    /**
+     * A file opened for zipping, with its first bytes already read into the
+     * buffer; if the whole file fit in it, the input stream is closed.
+     */
+    private static class PrefetchedFile implements Closeable {
+        private String fileName;
+        private String mimeType;
+        private String varHeader;
+        private boolean readable;
+        private InputStream instream;
+        private byte[] buffer = new byte[0];
+        private int bufferedLength = 0;
+        
+        /**
+         * @return null if no storage driver is available for the file
+         */
+        static PrefetchedFile fetch(DataFile dataFile, boolean getOriginal, int bufferSize) throws IOException {
+            DataAccessRequest daReq = new DataAccessRequest();
+            StorageIO<DataFile> accessObject = DataAccess.getStorageIO(dataFile, daReq);
+
+            if (accessObject == null) {
+                return null;
+            }
+            
+            Boolean gotOriginal = false;
+            if(getOriginal) {
+                StoredOriginalFile sof = new StoredOriginalFile();
+                StorageIO<DataFile> tempAccessObject = sof.retreive(accessObject);
+                if(null != tempAccessObject) { //If there is an original, use it
+                    gotOriginal = true;
+                    accessObject = tempAccessObject; 
+                } 
+            }
+            if(!gotOriginal) { //if we didn't get this from sof.retreive we have to open it
+                accessObject.open();
+            }
+
+            PrefetchedFile prefetchedFile = new PrefetchedFile();
+            prefetchedFile.fileName = accessObject.getFileName();
+            prefetchedFile.mimeType = accessObject.getMimeType();
+            prefetchedFile.varHeader = accessObject.getVarHeader();
+            prefetchedFile.instream = accessObject.getInputStream();
+            prefetchedFile.readable = prefetchedFile.instream != null;
+            
+            if (prefetchedFile.readable) {
+                try {
+                    prefetchedFile.fill(bufferSize);
+                } catch (IOException ioex) {
+                    prefetchedFile.close();
+                    throw ioex;
+                }
+            }
+            return prefetchedFile;
+        }
+        
+        private void fill(int bufferSize) throws IOException {
+            buffer = new byte[bufferSize];
+            int i;
+            while (bufferedLength < bufferSize && (i = instream.read(buffer, bufferedLength, bufferSize - bufferedLength)) != -1) {
+                bufferedLength += i;
+            }
+            if (bufferedLength < bufferSize) {
+                // the whole file is in the buffer
+                instream.close();
+                instream = null;
+            }
+        }
+        
+        boolean isComplete() {
+            return instream == null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (instream != null) {
+                instream.close();
+                instream = null;
+            }
+        }
+    }
 }
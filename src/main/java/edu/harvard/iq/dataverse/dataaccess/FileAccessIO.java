@@ -45,6 +45,7 @@ import java.nio.channels.Channel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import org.apache.commons.io.input.BoundedInputStream;
 
 
 public class FileAccessIO<T extends DvObject> extends StorageIO<T> {
@@ -630,6 +631,26 @@ public class FileAccessIO<T extends DvObject> extends StorageIO<T> {
         return auxItems;
     }
 
+    @Override
+    public boolean isRangeReadSupported() {
+        return dvObject instanceof DataFile && isReadAccess;
+    }
+
+    @Override
+    public InputStream getRangeInputStream(long offset, long length) throws IOException {
+        if (!isRangeReadSupported()) {
+            throw new UnsupportedDataAccessOperationException("FileAccessIO: ranged reads are only supported on datafiles opened for reading.");
+        }
+        FileInputStream in = new FileInputStream(getFileSystemPath().toFile());
+        try {
+            in.getChannel().position(offset);
+        } catch (IOException ioex) {
+            in.close();
+            throw ioex;
+        }
+        return new BoundedInputStream(in, length);
+    }
+
     @Override
     public InputStream getAuxFileAsInputStream(String auxItemTag) throws IOException {
         InputStream in = null;
@@ -0,0 +1,219 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Builds the "rotated image" of a tab-delimited file (see
+ * TabularSubsetGenerator) one row at a time: the tokens of every column are
+ * buffered in memory, and spilled into a temp file per column when the
+ * buffer fills up; once all the rows have been added, the columns are
+ * concatenated into the final image, after the header of column end offsets.
+ *
+ * This allows the ingest plugins to produce the image at the same time as
+ * they write the tab file, instead of the file being read again, from the
+ * beginning, to produce it afterwards.
+ */
+public class RotatedImageWriter {
+
+    private static final int MAX_COLUMN_BUFFER = 8 * 1024;
+
+    private final File imageFile;
+    private final boolean fixedVarCount;
+    private int varcount;
+    private int casecount = 0;
+
+    private byte[][] bufferedColumns;
+    private int[] bufferedSizes;
+    private long[] cachedfileSizes;
+    private File[] columnTempFiles;
+
+    /**
+     * The number of columns is taken from the first row added; every other
+     * row must have the same number of tokens.
+     */
+    public RotatedImageWriter(File imageFile) {
+        this.imageFile = imageFile;
+        this.fixedVarCount = false;
+        this.varcount = -1;
+    }
+
+    /**
+     * Only the first varcount tokens of every row are stored; a row with
+     * fewer tokens is an error.
+     */
+    public RotatedImageWriter(File imageFile, int varcount) {
+        this.imageFile = imageFile;
+        this.fixedVarCount = true;
+        initBuffers(varcount);
+    }
+
+    private void initBuffers(int varcount) {
+        this.varcount = varcount;
+        bufferedColumns = new byte[varcount][MAX_COLUMN_BUFFER];
+        bufferedSizes = new int[varcount];
+        cachedfileSizes = new long[varcount];
+        columnTempFiles = new File[varcount];
+    }
+
+    public int getVarCount() {
+        return varcount;
+    }
+
+    public int getCaseCount() {
+        return casecount;
+    }
+
+    public void addRow(String[] tokens) throws IOException {
+        if (varcount < 0) {
+            initBuffers(tokens.length);
+        }
+        if (tokens.length < varcount || (!fixedVarCount && tokens.length != varcount)) {
+            throw new IOException("Row " + casecount + " has " + tokens.length + " tokens; " + varcount + " expected.");
+        }
+
+        for (int varindex = 0; varindex < varcount; varindex++) {
+            // TODO: figure out the safest way to convert strings to
+            // bytes here. Is it going to be safer to use getBytes("UTF8")?
+            // we are already making the assumption that the values
+            // in the tab file are in UTF8. -- L.A.
+            byte[] token = (tokens[varindex] + "\n").getBytes();
+            int tokensize = token.length;
+            if (bufferedSizes[varindex] + tokensize > MAX_COLUMN_BUFFER) {
+                // fill the buffer and dump its contents into the temp file:
+                // (do note that there may be *several* MAX_COLUMN_BUFFERs
+                // worth of bytes in the token!)
+
+                int tokenoffset = 0;
+
+                if (bufferedSizes[varindex] != MAX_COLUMN_BUFFER) {
+                    tokenoffset = MAX_COLUMN_BUFFER - bufferedSizes[varindex];
+                    System.arraycopy(token, 0, bufferedColumns[varindex], bufferedSizes[varindex], tokenoffset);
+                } // (otherwise the buffer is already full, and we should
+                  // simply dump it into the temp file, without adding any
+                  // extra bytes to it)
+
+                File bufferTempFile = columnTempFiles[varindex];
+                if (bufferTempFile == null) {
+                    bufferTempFile = File.createTempFile("columnBufferFile", "bytes");
+                    columnTempFiles[varindex] = bufferTempFile;
+                }
+
+                // *append* the contents of the buffer to the end of the
+                // temp file, if already exists:
+                try (BufferedOutputStream outputStream = new BufferedOutputStream(new FileOutputStream(bufferTempFile, true))) {
+                    outputStream.write(bufferedColumns[varindex], 0, MAX_COLUMN_BUFFER);
+                    cachedfileSizes[varindex] += MAX_COLUMN_BUFFER;
+
+                    // keep writing MAX_COLUMN_BUFFER-size chunks of bytes into
+                    // the temp file, for as long as there's more than MAX_COLUMN_BUFFER
+                    // bytes left in the token:
+                    while (tokensize - tokenoffset > MAX_COLUMN_BUFFER) {
+                        outputStream.write(token, tokenoffset, MAX_COLUMN_BUFFER);
+                        cachedfileSizes[varindex] += MAX_COLUMN_BUFFER;
+                        tokenoffset += MAX_COLUMN_BUFFER;
+                    }
+                }
+
+                // buffer the remaining bytes and reset the buffered
+                // byte counter:
+                System.arraycopy(token, tokenoffset, bufferedColumns[varindex], 0, tokensize - tokenoffset);
+                bufferedSizes[varindex] = tokensize - tokenoffset;
+
+            } else {
+                // continue buffering
+                System.arraycopy(token, 0, bufferedColumns[varindex], bufferedSizes[varindex], tokensize);
+                bufferedSizes[varindex] += tokensize;
+            }
+        }
+        casecount++;
+    }
+
+    /**
+     * Writes the final image file, out of the buffered and cached columns.
+     */
+    public File finish() throws IOException {
+        if (varcount < 1) {
+            abort();
+            throw new IOException("No rows were added to the rotated image.");
+        }
+
+        // OK, we've created the individual byte vectors of the tab file columns;
+        // they may be partially saved in temp files and/or in memory.
+        // We now need to go through all these buffers and create the final
+        // rotated image file.
+        try (BufferedOutputStream finalOut = new BufferedOutputStream(new FileOutputStream(imageFile))) {
+
+            // but first we should create the offset header and write it out into
+            // the final file; because it should be at the head, doh!
+            byte[] offsetHeader = new byte[varcount * 8];
+            long columnOffset = varcount * 8;
+            // (this is the offset of the first column vector; it is equal to the
+            // size of the offset header, i.e. varcount * 8 bytes)
+
+            for (int varindex = 0; varindex < varcount; varindex++) {
+                long totalColumnBytes = cachedfileSizes[varindex] + bufferedSizes[varindex];
+                columnOffset += totalColumnBytes;
+                byte[] columnOffsetByteArray = ByteBuffer.allocate(8).putLong(columnOffset).array();
+                System.arraycopy(columnOffsetByteArray, 0, offsetHeader, varindex * 8, 8);
+            }
+
+            finalOut.write(offsetHeader, 0, varcount * 8);
+
+            for (int varindex = 0; varindex < varcount; varindex++) {
+                long cachedBytesRead = 0;
+
+                // check if there is a cached temp file:
+                File cachedTempFile = columnTempFiles[varindex];
+                if (cachedTempFile != null) {
+                    byte[] cachedBytes = new byte[MAX_COLUMN_BUFFER];
+                    try (BufferedInputStream cachedIn = new BufferedInputStream(new FileInputStream(cachedTempFile))) {
+                        int readlen;
+                        while ((readlen = cachedIn.read(cachedBytes)) > -1) {
+                            finalOut.write(cachedBytes, 0, readlen);
+                            cachedBytesRead += readlen;
+                        }
+                    }
+                    // delete the temp file:
+                    cachedTempFile.delete();
+                    columnTempFiles[varindex] = null;
+                }
+
+                if (cachedBytesRead != cachedfileSizes[varindex]) {
+                    throw new IOException("Could not read the correct number of bytes cached for column " + varindex + "; "
+                            + cachedfileSizes[varindex] + " bytes expected, " + cachedBytesRead + " read.");
+                }
+
+                // then check if there are any bytes buffered for this column:
+                if (bufferedSizes[varindex] > 0) {
+                    finalOut.write(bufferedColumns[varindex], 0, bufferedSizes[varindex]);
+                }
+            }
+        } catch (IOException ioex) {
+            abort();
+            throw ioex;
+        }
+        bufferedColumns = null;
+        return imageFile;
+    }
+
+    /**
+     * Discards the image, along with any temp files produced so far.
+     */
+    public void abort() {
+        if (columnTempFiles != null) {
+            for (File cachedTempFile : columnTempFiles) {
+                if (cachedTempFile != null) {
+                    cachedTempFile.delete();
+                }
+            }
+        }
+        bufferedColumns = null;
+        imageFile.delete();
+    }
+}
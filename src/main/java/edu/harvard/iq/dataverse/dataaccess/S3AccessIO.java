@@ -35,12 +35,10 @@ import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.Dataverse;
 import edu.harvard.iq.dataverse.DvObject;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
-import edu.harvard.iq.dataverse.util.FileUtil;
 import opennlp.tools.util.StringUtil;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -51,12 +49,12 @@ import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 import org.apache.commons.io.IOUtils;
 
@@ -81,6 +79,12 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
 
     private static HashMap<String, AmazonS3> driverClientMap = new HashMap<String,AmazonS3>();
     private static HashMap<String, TransferManager> driverTMMap = new HashMap<String,TransferManager>();
+    // uploads the parts of the streams saved; each stream has at most stream-parts-in-flight parts in it
+    private static final ExecutorService partUploadExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "s3-part-upload");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public S3AccessIO(T dvObject, DataAccessRequest req, String driverId) {
         super(dvObject, req, driverId);
@@ -335,18 +339,9 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
 
     /**
      * Implements the StorageIO saveInputStream() method. 
-     * This implementation is somewhat problematic, because S3 cannot save an object of 
-     * an unknown length. This effectively nullifies any benefits of streaming; 
-     * as we cannot start saving until we have read the entire stream. 
-     * One way of solving this would be to buffer the entire stream as byte[], 
-     * in memory, then save it... Which of course would be limited by the amount 
-     * of memory available, and thus would not work for streams larger than that. 
-     * So we have eventually decided to save save the stream to a temp file, then 
-     * save to S3. This is slower, but guaranteed to work on any size stream. 
-     * An alternative we may want to consider is to not implement this method 
-     * in the S3 driver, and make it throw the UnsupportedDataAccessOperationException, 
-     * similarly to how we handle attempts to open OutputStreams, in this and the 
-     * Swift driver. 
+     * S3 cannot save an object of an unknown length in one request, so a
+     * stream without a filesize is saved as a multipart upload, part by part,
+     * as it is read - see {@link S3StreamUploader}.
      * 
      * @param inputStream InputStream we want to save
      * @param filesize Long representing the filesize
@@ -382,26 +377,10 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         if (!this.canWrite()) {
             open(DataAccessOption.WRITE_ACCESS);
         }
-        String directoryString = FileUtil.getFilesTempDirectory();
-
-        Random rand = new Random();
-        Path tempPath = Paths.get(directoryString, Integer.toString(rand.nextInt(Integer.MAX_VALUE)));
-        File tempFile = createTempFile(tempPath, inputStream);
-        
         try {
-            s3.putObject(bucketName, key, tempFile);
-        } catch (SdkClientException ioex) {
-            String failureMsg = ioex.getMessage();
-            if (failureMsg == null) {
-                failureMsg = "S3AccessIO: Unknown exception occured while uploading a local file into S3 Storage.";
-            }
-            tempFile.delete();
-            throw new IOException(failureMsg);
-        }
-        tempFile.delete();
-        ObjectMetadata objectMetadata = s3.getObjectMetadata(bucketName, key);
-        if (objectMetadata != null) {
-            setSize(objectMetadata.getContentLength());
+            setSize(newStreamUploader(key).upload(inputStream));
+        } finally {
+            IOUtils.closeQuietly(inputStream);
         }
     }
     
@@ -539,18 +518,8 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
     
     /**
      * Implements the StorageIO saveInputStreamAsAux() method. 
-     * This implementation is problematic, because S3 cannot save an object of 
-     * an unknown length. This effectively nullifies any benefits of streaming; 
-     * as we cannot start saving until we have read the entire stream. 
-     * One way of solving this would be to buffer the entire stream as byte[], 
-     * in memory, then save it... Which of course would be limited by the amount 
-     * of memory available, and thus would not work for streams larger than that. 
-     * So we have eventually decided to save save the stream to a temp file, then 
-     * save to S3. This is slower, but guaranteed to work on any size stream. 
-     * An alternative we may want to consider is to not implement this method 
-     * in the S3 driver, and make it throw the UnsupportedDataAccessOperationException, 
-     * similarly to how we handle attempts to open OutputStreams, in this and the 
-     * Swift driver. 
+     * As in {@link #saveInputStream(InputStream)}, the stream is saved as a
+     * multipart upload, part by part, as it is read.
      * 
      * @param inputStream InputStream we want to save
      * @param auxItemTag String representing this Auxiliary type ("extension")
@@ -561,48 +530,18 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         if (!this.canWrite()) {
             open(DataAccessOption.WRITE_ACCESS);
         }
-
-        String directoryString = FileUtil.getFilesTempDirectory();
-
-        Random rand = new Random();
-        String pathNum = Integer.toString(rand.nextInt(Integer.MAX_VALUE));
-        Path tempPath = Paths.get(directoryString, pathNum);
-        File tempFile = createTempFile(tempPath, inputStream);
-        
-        String destinationKey = getDestinationKey(auxItemTag);
-        
         try {
-            s3.putObject(bucketName, destinationKey, tempFile);
-        } catch (SdkClientException ioex) {
-            String failureMsg = ioex.getMessage();
-
-            if (failureMsg == null) {
-                failureMsg = "S3AccessIO: SdkClientException occured while saving a local InputStream as S3Object";
-            }
-            tempFile.delete();
-            throw new IOException(failureMsg);
-        }
-        tempFile.delete();
-    }
-    
-    //Helper method for supporting saving streams with unknown length to S3
-    //We save those streams to a file and then upload the file
-    private File createTempFile(Path path, InputStream inputStream) throws IOException {
-
-        File targetFile = new File(path.toUri()); // File needs a name
-        try (OutputStream outStream = new FileOutputStream(targetFile);) {
-
-            byte[] buffer = new byte[8 * 1024];
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                outStream.write(buffer, 0, bytesRead);
-            }
-
+            newStreamUploader(getDestinationKey(auxItemTag)).upload(inputStream);
         } finally {
             IOUtils.closeQuietly(inputStream);
         }
-        return targetFile;
-    } 
+    }
+
+    //Helper method for saving streams with unknown length to S3, without a temp file
+    private S3StreamUploader newStreamUploader(String destinationKey) {
+        return new S3StreamUploader(s3, bucketName, destinationKey, getStreamPartSize(driverId),
+                getStreamPartsInFlight(driverId), partUploadExecutor);
+    }
     
     @Override
     public List<String> listAuxObjects() throws IOException {
@@ -754,6 +693,24 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         throw new UnsupportedDataAccessOperationException("S3AccessIO: there are no output Streams associated with S3 objects.");
     }
 
+    @Override
+    public boolean isRangeReadSupported() {
+        return dvObject instanceof DataFile && isReadAccess;
+    }
+
+    @Override
+    public InputStream getRangeInputStream(long offset, long length) throws IOException {
+        if (!isRangeReadSupported()) {
+            throw new UnsupportedDataAccessOperationException("S3AccessIO: ranged reads are only supported on datafiles opened for reading.");
+        }
+        try {
+            // (a ranged GET - only the requested bytes are transferred)
+            return s3.getObject(new GetObjectRequest(bucketName, key).withRange(offset, offset + length - 1)).getObjectContent();
+        } catch (SdkClientException sce) {
+            throw new IOException("Cannot get S3 object " + key + " (" + sce.getMessage() + ")");
+        }
+    }
+
     @Override
     public InputStream getAuxFileAsInputStream(String auxItemTag) throws IOException {
         String destinationKey = getDestinationKey(auxItemTag);
@@ -1092,6 +1049,38 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
     }
 
 
+    // (the part size of the streams of unknown length, which are held in memory)
+    static int getStreamPartSize(String driverId) {
+        int size = 16 * 1024 * 1024;
+        String partLength = System.getProperty("dataverse.files." + driverId + ".stream-part-size");
+        if (partLength != null) {
+            try {
+                int val = Integer.parseInt(partLength);
+                if (val >= S3StreamUploader.MIN_PART_SIZE) {
+                    size = val;
+                } else {
+                    logger.warning(S3StreamUploader.MIN_PART_SIZE + " is the minimum part size allowed for jvm option dataverse.files." + driverId + ".stream-part-size");
+                }
+            } catch (NumberFormatException nfe) {
+                logger.warning("Unable to parse dataverse.files." + driverId + ".stream-part-size as int: " + partLength);
+            }
+        }
+        return size;
+    }
+
+    static int getStreamPartsInFlight(String driverId) {
+        int parts = 4;
+        String partsInFlight = System.getProperty("dataverse.files." + driverId + ".stream-parts-in-flight");
+        if (partsInFlight != null) {
+            try {
+                parts = Math.max(1, Integer.parseInt(partsInFlight));
+            } catch (NumberFormatException nfe) {
+                logger.warning("Unable to parse dataverse.files." + driverId + ".stream-parts-in-flight as int: " + partsInFlight);
+            }
+        }
+        return parts;
+    }
+
     private static TransferManager getTransferManager(String driverId) {
         if(driverTMMap.containsKey(driverId)) {
             return driverTMMap.get(driverId);
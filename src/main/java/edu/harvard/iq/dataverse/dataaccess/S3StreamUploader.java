@@ -0,0 +1,231 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Saves a stream of unknown length as an S3 object, without saving it to a
+ * temp file first: the stream is read into a small ring of part-sized
+ * buffers, and each buffer, once full, is uploaded as a part of a multipart
+ * upload - while the next ones are being read - and then reused.
+ *
+ * A stream shorter than one part is saved with a single PUT instead; it is
+ * read into a buffer that starts small and grows as needed, so that a small
+ * stream does not take a whole part of memory. The MD5 of every part (or of
+ * the single PUT) is sent along with it, for S3 to check.
+ *
+ * Memory use is bounded by {@code partSize * partsInFlight}.
+ */
+class S3StreamUploader {
+
+    private static final Logger logger = Logger.getLogger(S3StreamUploader.class.getCanonicalName());
+
+    /** The smallest part S3 accepts, but for the last one. */
+    static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+    /** The most parts a multipart upload can have. */
+    static final int MAX_PARTS = 10000;
+    /** The size of the buffer the first part is read into, at first. */
+    static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final AmazonS3 s3;
+    private final String bucketName;
+    private final String key;
+    private final int partSize;
+    private final int partsInFlight;
+    private final Executor executor;
+
+    S3StreamUploader(AmazonS3 s3, String bucketName, String key, int partSize, int partsInFlight, Executor executor) {
+        this.s3 = s3;
+        this.bucketName = bucketName;
+        this.key = key;
+        this.partSize = partSize;
+        this.partsInFlight = Math.max(1, partsInFlight);
+        this.executor = executor;
+    }
+
+    /**
+     * Reads {@code inputStream} to its end and saves it as the object.
+     *
+     * @return the number of bytes saved
+     * @throws IOException if the stream cannot be read or the object cannot
+     * be saved; an unfinished multipart upload is aborted
+     */
+    long upload(InputStream inputStream) throws IOException {
+        byte[] firstBuffer = new byte[Math.min(partSize, INITIAL_BUFFER_SIZE)];
+        int length = read(inputStream, firstBuffer, 0);
+        while (length == firstBuffer.length && length < partSize) {
+            firstBuffer = Arrays.copyOf(firstBuffer, (int) Math.min(partSize, 2L * firstBuffer.length));
+            length = read(inputStream, firstBuffer, length);
+        }
+
+        if (length < partSize) {
+            // the whole stream fits in one part
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(length);
+            metadata.setContentMD5(md5Base64(firstBuffer, length));
+            try {
+                s3.putObject(new PutObjectRequest(bucketName, key, new ByteArrayInputStream(firstBuffer, 0, length), metadata));
+            } catch (SdkClientException sce) {
+                throw new IOException("S3StreamUploader: failed to save " + key + ": " + sce.getMessage(), sce);
+            }
+            return length;
+        }
+
+        String uploadId;
+        try {
+            uploadId = s3.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, key)).getUploadId();
+        } catch (SdkClientException sce) {
+            throw new IOException("S3StreamUploader: failed to start a multipart upload of " + key + ": " + sce.getMessage(), sce);
+        }
+
+        // buffers whose parts have been uploaded, to be filled again
+        BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(partsInFlight);
+        List<CompletableFuture<PartETag>> parts = new ArrayList<>();
+        int buffers = 1;
+        long size = 0;
+        try {
+            byte[] buffer = firstBuffer;
+            while (length > 0) {
+                if (parts.size() == MAX_PARTS) {
+                    throw new IOException("S3StreamUploader: " + key + " would take more than " + MAX_PARTS
+                            + " parts of " + partSize + " bytes; configure a larger part size");
+                }
+                parts.add(uploadPart(uploadId, parts.size() + 1, buffer, length, freeBuffers));
+                size += length;
+                if (length < partSize) {
+                    break;
+                }
+
+                buffer = freeBuffers.poll();
+                if (buffer == null && buffers < partsInFlight) {
+                    buffer = new byte[partSize];
+                    buffers++;
+                }
+                while (buffer == null) {
+                    // all the buffers are being uploaded; wait for one
+                    checkFailures(parts);
+                    buffer = freeBuffers.poll(100, TimeUnit.MILLISECONDS);
+                }
+                checkFailures(parts);
+                length = read(inputStream, buffer, 0);
+            }
+
+            List<PartETag> partETags = new ArrayList<>(parts.size());
+            for (CompletableFuture<PartETag> part : parts) {
+                partETags.add(part.get());
+            }
+            s3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, uploadId, partETags));
+        } catch (IOException | RuntimeException | InterruptedException | ExecutionException ex) {
+            abort(uploadId, parts);
+            if (ex instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("S3StreamUploader: interrupted while saving " + key);
+            }
+            if (ex instanceof IOException) {
+                throw (IOException) ex;
+            }
+            Throwable cause = (ex instanceof ExecutionException) ? ex.getCause() : ex;
+            throw new IOException("S3StreamUploader: failed to save " + key + ": " + cause.getMessage(), cause);
+        }
+
+        logger.log(Level.FINE, "Saved {0} ({1} bytes) in {2} parts", new Object[]{key, size, parts.size()});
+        return size;
+    }
+
+    private CompletableFuture<PartETag> uploadPart(String uploadId, int partNumber, byte[] buffer, int length, BlockingQueue<byte[]> freeBuffers) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                UploadPartRequest request = new UploadPartRequest()
+                        .withBucketName(bucketName)
+                        .withKey(key)
+                        .withUploadId(uploadId)
+                        .withPartNumber(partNumber)
+                        .withPartSize(length)
+                        .withMD5Digest(md5Base64(buffer, length))
+                        .withInputStream(new ByteArrayInputStream(buffer, 0, length));
+                return s3.uploadPart(request).getPartETag();
+            } finally {
+                freeBuffers.offer(buffer);
+            }
+        }, executor);
+    }
+
+    private static void checkFailures(List<CompletableFuture<PartETag>> parts) throws ExecutionException, InterruptedException {
+        for (CompletableFuture<PartETag> part : parts) {
+            if (part.isCompletedExceptionally()) {
+                part.get();
+            }
+        }
+    }
+
+    private void abort(String uploadId, List<CompletableFuture<PartETag>> parts) {
+        // (parts still being uploaded would otherwise outlive the abort)
+        for (CompletableFuture<PartETag> part : parts) {
+            try {
+                part.join();
+            } catch (RuntimeException ignored) {
+            }
+        }
+        try {
+            s3.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+        } catch (SdkClientException sce) {
+            logger.warning("S3StreamUploader: failed to abort the multipart upload of " + key + ": " + sce.getMessage());
+        }
+    }
+
+    /**
+     * Fills the buffer from the stream, from {@code length} on, unless the
+     * stream ends first.
+     *
+     * @return the number of bytes in the buffer
+     */
+    private static int read(InputStream inputStream, byte[] buffer, int length) throws IOException {
+        while (length < buffer.length) {
+            int read = inputStream.read(buffer, length, buffer.length - length);
+            if (read == -1) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    private static String md5Base64(byte[] buffer, int length) {
+        MessageDigest md5 = newMd5();
+        md5.update(buffer, 0, length);
+        return Base64.getEncoder().encodeToString(md5.digest());
+    }
+
+    private static MessageDigest newMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+}
@@ -275,6 +275,24 @@ public abstract class StorageIO<T extends DvObject> {
     public InputStream getInputStream() throws IOException {
         return in;
     }
+
+    /**
+     * Whether getRangeInputStream() can be used to read a part of the main
+     * object, without reading it from the beginning (used to serve HTTP
+     * Range requests).
+     */
+    public boolean isRangeReadSupported() {
+        return false;
+    }
+
+    /**
+     * Opens a new stream on length bytes of the main object, starting at
+     * offset; it is independent of the stream opened by open(), and must be
+     * closed by the caller.
+     */
+    public InputStream getRangeInputStream(long offset, long length) throws IOException {
+        throw new UnsupportedDataAccessOperationException("Ranged reads are not supported by this storage driver.");
+    }
     
     public OutputStream getOutputStream() throws IOException {
         return out; 
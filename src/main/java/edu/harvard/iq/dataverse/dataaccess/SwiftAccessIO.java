@@ -28,6 +28,8 @@ import javax.crypto.spec.SecretKeySpec;
 import org.javaswift.joss.client.factory.AccountFactory;
 import static org.javaswift.joss.client.factory.AuthenticationMethod.BASIC;
 import static org.javaswift.joss.client.factory.AuthenticationMethod.KEYSTONE_V3;
+import org.javaswift.joss.headers.object.range.MidPartRange;
+import org.javaswift.joss.instructions.DownloadInstructions;
 import org.javaswift.joss.model.Account;
 import org.javaswift.joss.model.Container;
 import org.javaswift.joss.model.StoredObject;
@@ -855,6 +857,20 @@ public class SwiftAccessIO<T extends DvObject> extends StorageIO<T> {
         return ((expiry - duration) * 1000) > currentTime;
     }
 
+    @Override
+    public boolean isRangeReadSupported() {
+        return dvObject instanceof DataFile && isReadAccess && swiftFileObject != null;
+    }
+
+    @Override
+    public InputStream getRangeInputStream(long offset, long length) throws IOException {
+        if (!isRangeReadSupported()) {
+            throw new UnsupportedDataAccessOperationException("SwiftAccessIO: ranged reads are only supported on datafiles opened for reading.");
+        }
+        DownloadInstructions downloadInstructions = new DownloadInstructions().setRange(new MidPartRange(offset, offset + length - 1));
+        return swiftFileObject.downloadObjectAsInputStream(downloadInstructions);
+    }
+
     @Override
     public InputStream getAuxFileAsInputStream(String auxItemTag) throws IOException {        
         if (this.isAuxObjectCached(auxItemTag)) {
@@ -0,0 +1,824 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.datavariable.DataVariable;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * A column-oriented binary image of a tab-delimited data file, saved as an
+ * auxiliary object of the ingested file (with the tag {@link #AUX_TAG}).
+ *
+ * Unlike the "rotated image" produced by TabularSubsetGenerator, where every
+ * column is still a sequence of text tokens, every column of this image
+ * stores:
+ *
+ * - the tokens of the tab file, either as an array of offsets into the
+ *   concatenated token bytes, or - for columns with few distinct values -
+ *   as a dictionary of the distinct tokens plus an array of dictionary codes;
+ * - for numeric columns, the parsed values as fixed-width primitives
+ *   (8-byte longs or doubles, 4-byte floats), preceded by a bitmap of the
+ *   missing values.
+ *
+ * The image is memory-mapped one column at a time, so a variable subset, or
+ * a summary statistics calculation, only touches the requested columns and
+ * never has to parse any text for numeric vectors.
+ *
+ * File layout (all numbers big-endian):
+ *
+ *   int magic, int version, int varcount, int casecount,
+ *   varcount x (long column offset, long column length),
+ *   the column blocks:
+ *     byte column type, byte encoding,
+ *     PLAIN:      int[casecount + 1] token offsets, token bytes
+ *     DICTIONARY: int dictionary size, int[size + 1] entry offsets,
+ *                 entry bytes, int[casecount] codes
+ *     numeric columns only: byte[(casecount + 7) / 8] missing value
+ *                 bitmap, casecount x value
+ */
+public class TabularColumnarImage implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(TabularColumnarImage.class.getCanonicalName());
+
+    public static final String AUX_TAG = "columnar";
+    public static final String FILE_EXTENSION = ".columnar";
+
+    public static final int COLUMN_TYPE_STRING = 1;
+    public static final int COLUMN_TYPE_LONG   = 2;
+    public static final int COLUMN_TYPE_DOUBLE = 3;
+    public static final int COLUMN_TYPE_FLOAT  = 4;
+
+    static final int ENCODING_PLAIN = 1;
+    static final int ENCODING_DICTIONARY = 2;
+
+    /*
+     * Columns with more distinct values than this are stored as plain
+     * offsets + bytes; the dictionary is only worth it for categorical-like
+     * columns.
+     */
+    static final int MAX_DICTIONARY_SIZE = 4096;
+
+    private static final int MAGIC = 0x44565443; // "DVTC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private final FileChannel channel;
+    private final int varcount;
+    private final int casecount;
+    private final long[] columnOffsets;
+    private final long[] columnLengths;
+    private final Column[] columns;
+
+    private TabularColumnarImage(FileChannel channel, int varcount, int casecount, long[] columnOffsets, long[] columnLengths) {
+        this.channel = channel;
+        this.varcount = varcount;
+        this.casecount = casecount;
+        this.columnOffsets = columnOffsets;
+        this.columnLengths = columnLengths;
+        this.columns = new Column[varcount];
+    }
+
+    /**
+     * @return the location where the ingest keeps the image of the tab file
+     * it has just produced, until it is saved as an auxiliary object.
+     */
+    public static File getImageFile(File tabFile) {
+        return new File(tabFile.getAbsolutePath() + FILE_EXTENSION);
+    }
+
+    /**
+     * Maps the variables of a data table to the column types of the image,
+     * the same way the summary statistics of the variables are calculated
+     * by the ingest: continuous variables are doubles (or floats, when so
+     * formatted), discrete numeric variables are longs, and everything else
+     * is a string.
+     */
+    public static int[] getColumnTypes(List<DataVariable> variables) {
+        int[] columnTypes = new int[variables.size()];
+        for (int i = 0; i < variables.size(); i++) {
+            DataVariable variable = variables.get(i);
+            if (variable.isIntervalContinuous()) {
+                columnTypes[i] = "float".equals(variable.getFormat()) ? COLUMN_TYPE_FLOAT : COLUMN_TYPE_DOUBLE;
+            } else if (variable.isIntervalDiscrete() && variable.isTypeNumeric()) {
+                columnTypes[i] = COLUMN_TYPE_LONG;
+            } else {
+                columnTypes[i] = COLUMN_TYPE_STRING;
+            }
+        }
+        return columnTypes;
+    }
+
+    /**
+     * Generates the columnar image of a tab-delimited file. The columns are
+     * read from the rotated image of the file, one at a time; if the rotated
+     * image did not exist already, it is deleted once the columnar image is
+     * produced. A rotated image that already exists (for example, one written
+     * by the ingest plugin along with the tab file) is checked against the
+     * number of variables and cases first; if it doesn't match, it is
+     * replaced with one generated from the tab file.
+     */
+    public static void generate(File tabFile, int casecount, int[] columnTypes, File imageFile) throws IOException {
+        File rotatedImageFile = new File(tabFile.getAbsolutePath() + ".90d");
+        if (rotatedImageFile.exists()) {
+            try {
+                generateFromRotatedImage(tabFile, casecount, columnTypes, imageFile);
+                return;
+            } catch (IOException ioex) {
+                logger.warning("Rotated image of " + tabFile.getAbsolutePath() + " does not match the tab file; regenerating it (" + ioex.getMessage() + ")");
+                rotatedImageFile.delete();
+            }
+        }
+
+        try {
+            generateFromRotatedImage(tabFile, casecount, columnTypes, imageFile);
+        } finally {
+            rotatedImageFile.delete();
+        }
+    }
+
+    private static void generateFromRotatedImage(File tabFile, int casecount, int[] columnTypes, File imageFile) throws IOException {
+        int varcount = columnTypes.length;
+        TabularSubsetGenerator subsetGenerator = new TabularSubsetGenerator();
+        File rotatedImageFile = subsetGenerator.getRotatedImage(tabFile, varcount, casecount);
+
+        long[] columnEndOffsets = subsetGenerator.extractColumnOffsets(rotatedImageFile, varcount, casecount);
+        if (columnEndOffsets[varcount - 1] != rotatedImageFile.length()) {
+            throw new IOException("Rotated image size (" + rotatedImageFile.length() + ") does not match the column offsets of " + varcount + " variables");
+        }
+
+        try (FileChannel rotated = FileChannel.open(rotatedImageFile.toPath(), StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(imageFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            long[] offsets = new long[varcount];
+            long[] lengths = new long[varcount];
+            long position = HEADER_SIZE + varcount * 16L;
+
+            for (int column = 0; column < varcount; column++) {
+                long rotatedColumnOffset = column > 0 ? columnEndOffsets[column - 1] : varcount * 8L;
+                offsets[column] = position;
+                lengths[column] = writeColumn(rotated, rotatedColumnOffset, columnEndOffsets[column] - rotatedColumnOffset, casecount, columnTypes[column], out, position);
+                position += lengths[column];
+            }
+
+            SectionWriter header = new SectionWriter(out, 0);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(varcount);
+            header.putInt(casecount);
+            for (int column = 0; column < varcount; column++) {
+                header.putLong(offsets[column]);
+                header.putLong(lengths[column]);
+            }
+            header.flush();
+        } catch (IOException ioex) {
+            imageFile.delete();
+            throw ioex;
+        }
+    }
+
+    /*
+     * Writes one column block, at the specified position of the image;
+     * returns the size of the block. The rotated column is read twice: once to
+     * size the sections of the block (and to collect the distinct tokens),
+     * and once to write them.
+     */
+    private static long writeColumn(FileChannel rotated, long rotatedColumnOffset, long rotatedColumnLength, int casecount, int columnType, FileChannel out, long position) throws IOException {
+        Map<ByteBuffer, Integer> dictionary = new HashMap<>();
+        long dictionaryBytes = 0;
+        long tokenBytes = 0;
+
+        TokenReader tokens = new TokenReader(rotated, rotatedColumnOffset);
+        for (int caseindex = 0; caseindex < casecount; caseindex++) {
+            tokens.next();
+            tokenBytes += tokens.length;
+            if (dictionary != null && !dictionary.containsKey(tokens.key())) {
+                if (dictionary.size() == MAX_DICTIONARY_SIZE) {
+                    dictionary = null;
+                } else {
+                    dictionary.put(ByteBuffer.wrap(Arrays.copyOf(tokens.buffer, tokens.length)), dictionary.size());
+                    dictionaryBytes += tokens.length;
+                }
+            }
+        }
+        if (tokens.consumed != rotatedColumnLength) {
+            throw new IOException("Rotated column length (" + tokens.consumed + " bytes read, " + rotatedColumnLength + " expected) does not match the stored number of cases");
+        }
+
+        int encoding = ENCODING_PLAIN;
+        long tokenSectionSize = 4L * (casecount + 1) + tokenBytes;
+        if (dictionary != null) {
+            long dictionarySectionSize = 4L + 4L * (dictionary.size() + 1) + dictionaryBytes + 4L * casecount;
+            if (dictionarySectionSize < tokenSectionSize) {
+                encoding = ENCODING_DICTIONARY;
+                tokenSectionSize = dictionarySectionSize;
+            }
+        }
+        int valueSize = valueSize(columnType);
+        long bitmapSize = valueSize > 0 ? (casecount + 7) / 8 : 0;
+        long blockSize = 2 + tokenSectionSize + bitmapSize + (long) valueSize * casecount;
+        if (blockSize > Integer.MAX_VALUE) {
+            throw new IOException("Column is too large for a columnar image (" + blockSize + " bytes)");
+        }
+
+        // section positions:
+        long tokenSectionPosition = position + 2;
+        long bitmapPosition = tokenSectionPosition + tokenSectionSize;
+        long valuesPosition = bitmapPosition + bitmapSize;
+
+        SectionWriter typeWriter = new SectionWriter(out, position);
+        typeWriter.putByte((byte) columnType);
+        typeWriter.putByte((byte) encoding);
+        typeWriter.flush();
+
+        SectionWriter offsetWriter;
+        SectionWriter textWriter;
+        SectionWriter codeWriter = null;
+        if (encoding == ENCODING_DICTIONARY) {
+            ByteBuffer[] entries = new ByteBuffer[dictionary.size()];
+            for (Map.Entry<ByteBuffer, Integer> entry : dictionary.entrySet()) {
+                entries[entry.getValue()] = entry.getKey();
+            }
+            offsetWriter = new SectionWriter(out, tokenSectionPosition);
+            textWriter = new SectionWriter(out, tokenSectionPosition + 4L + 4L * (entries.length + 1));
+            offsetWriter.putInt(entries.length);
+            int entryOffset = 0;
+            for (ByteBuffer entry : entries) {
+                offsetWriter.putInt(entryOffset);
+                textWriter.put(entry.array(), 0, entry.array().length);
+                entryOffset += entry.array().length;
+            }
+            offsetWriter.putInt(entryOffset);
+            offsetWriter.flush();
+            textWriter.flush();
+            codeWriter = new SectionWriter(out, tokenSectionPosition + 4L + 4L * (entries.length + 1) + dictionaryBytes);
+            offsetWriter = null;
+            textWriter = null;
+        } else {
+            offsetWriter = new SectionWriter(out, tokenSectionPosition);
+            textWriter = new SectionWriter(out, tokenSectionPosition + 4L * (casecount + 1));
+        }
+
+        SectionWriter bitmapWriter = valueSize > 0 ? new SectionWriter(out, bitmapPosition) : null;
+        SectionWriter valueWriter = valueSize > 0 ? new SectionWriter(out, valuesPosition) : null;
+        BitSet missing = new BitSet();
+        int missingBits = 0;
+        int tokenOffset = 0;
+
+        tokens = new TokenReader(rotated, rotatedColumnOffset);
+        for (int caseindex = 0; caseindex < casecount; caseindex++) {
+            tokens.next();
+            if (codeWriter != null) {
+                codeWriter.putInt(dictionary.get(tokens.key()));
+            } else {
+                offsetWriter.putInt(tokenOffset);
+                textWriter.put(tokens.buffer, 0, tokens.length);
+                tokenOffset += tokens.length;
+            }
+
+            if (valueSize > 0) {
+                String token = new String(tokens.buffer, 0, tokens.length, StandardCharsets.UTF_8);
+                if (columnType == COLUMN_TYPE_LONG) {
+                    valueWriter.putLong(TabularSubsetGenerator.parseLongValue(token, missing, caseindex));
+                } else if (columnType == COLUMN_TYPE_DOUBLE) {
+                    valueWriter.putDouble(TabularSubsetGenerator.parseDoubleValue(token, missing, caseindex));
+                } else {
+                    valueWriter.putFloat(TabularSubsetGenerator.parseFloatValue(token, missing, caseindex));
+                }
+                if (missing.get(caseindex)) {
+                    missingBits |= 1 << (caseindex % 8);
+                }
+                if (caseindex % 8 == 7) {
+                    bitmapWriter.putByte((byte) missingBits);
+                    missingBits = 0;
+                }
+            }
+        }
+
+        if (codeWriter != null) {
+            codeWriter.flush();
+        } else {
+            offsetWriter.putInt(tokenOffset);
+            offsetWriter.flush();
+            textWriter.flush();
+        }
+        if (valueSize > 0) {
+            if (casecount % 8 != 0) {
+                bitmapWriter.putByte((byte) missingBits);
+            }
+            bitmapWriter.flush();
+            valueWriter.flush();
+        }
+
+        return blockSize;
+    }
+
+    private static int valueSize(int columnType) {
+        switch (columnType) {
+            case COLUMN_TYPE_LONG:
+            case COLUMN_TYPE_DOUBLE:
+                return 8;
+            case COLUMN_TYPE_FLOAT:
+                return 4;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Opens a columnar image; the columns are mapped into memory when they
+     * are first requested.
+     */
+    public static TabularColumnarImage open(Path imagePath) throws IOException {
+        FileChannel channel = FileChannel.open(imagePath, StandardOpenOption.READ);
+        try {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("Not a columnar image: " + imagePath);
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Not a columnar image, or unsupported version: " + imagePath);
+            }
+            int varcount = header.getInt(8);
+            int casecount = header.getInt(12);
+            if (varcount < 0 || casecount < 0 || fileSize < HEADER_SIZE + varcount * 16L) {
+                throw new IOException("Corrupted columnar image header: " + imagePath);
+            }
+
+            ByteBuffer directory = ByteBuffer.allocate(varcount * 16);
+            readFully(channel, directory, HEADER_SIZE);
+            long[] columnOffsets = new long[varcount];
+            long[] columnLengths = new long[varcount];
+            for (int i = 0; i < varcount; i++) {
+                columnOffsets[i] = directory.getLong(i * 16);
+                columnLengths[i] = directory.getLong(i * 16 + 8);
+                if (columnOffsets[i] < 0 || columnLengths[i] < 2 || columnLengths[i] > Integer.MAX_VALUE
+                        || columnOffsets[i] + columnLengths[i] > fileSize) {
+                    throw new IOException("Corrupted columnar image directory (column " + i + "): " + imagePath);
+                }
+            }
+            return new TabularColumnarImage(channel, varcount, casecount, columnOffsets, columnLengths);
+        } catch (IOException ioex) {
+            channel.close();
+            throw ioex;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of the columnar image");
+            }
+        }
+    }
+
+    public int getVarCount() {
+        return varcount;
+    }
+
+    public int getCaseCount() {
+        return casecount;
+    }
+
+    /**
+     * Note that a Column keeps a read position of its own; the same column
+     * should only be read by one thread at a time.
+     */
+    public synchronized Column getColumn(int column) throws IOException {
+        if (column < 0 || column >= varcount) {
+            throw new IOException("Column " + column + " out of bounds (" + varcount + " columns)");
+        }
+        if (columns[column] == null) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, columnOffsets[column], columnLengths[column]);
+            columns[column] = new Column(buffer, casecount);
+        }
+        return columns[column];
+    }
+
+    /*
+     * The vector methods below return the same vectors as the corresponding
+     * TabularSubsetGenerator.subset*Vector(InputStream, ...) methods would
+     * for the tab file. When the column holds values of the requested type
+     * they are read directly; otherwise the tokens are parsed (once per
+     * distinct token, for dictionary-encoded columns).
+     */
+
+    public Double[] getDoubleVector(int column) throws IOException {
+        Column c = getColumn(column);
+        if (c.getType() != COLUMN_TYPE_DOUBLE) {
+            return c.parseTokens(new Double[casecount], TabularSubsetGenerator::parseDoubleToken);
+        }
+        Double[] retVector = new Double[casecount];
+        for (int i = 0; i < casecount; i++) {
+            retVector[i] = c.isMissing(i) ? null : c.getDouble(i);
+        }
+        return retVector;
+    }
+
+    public Float[] getFloatVector(int column) throws IOException {
+        Column c = getColumn(column);
+        if (c.getType() != COLUMN_TYPE_FLOAT) {
+            return c.parseTokens(new Float[casecount], TabularSubsetGenerator::parseFloatToken);
+        }
+        Float[] retVector = new Float[casecount];
+        for (int i = 0; i < casecount; i++) {
+            retVector[i] = c.isMissing(i) ? null : c.getFloat(i);
+        }
+        return retVector;
+    }
+
+    public Long[] getLongVector(int column) throws IOException {
+        Column c = getColumn(column);
+        if (c.getType() != COLUMN_TYPE_LONG) {
+            return c.parseTokens(new Long[casecount], TabularSubsetGenerator::parseLongToken);
+        }
+        Long[] retVector = new Long[casecount];
+        for (int i = 0; i < casecount; i++) {
+            retVector[i] = c.isMissing(i) ? null : c.getLong(i);
+        }
+        return retVector;
+    }
+
+    /*
+     * Primitive versions of the vector methods above; the missing values are
+     * recorded in the supplied bitmap instead of being returned as nulls.
+     */
+
+    public double[] getDoubleValues(int column, BitSet missing) throws IOException {
+        Column c = getColumn(column);
+        double[] retVector = new double[casecount];
+        if (c.getType() != COLUMN_TYPE_DOUBLE) {
+            c.parseTokens((token, index) -> {
+                retVector[index] = TabularSubsetGenerator.parseDoubleValue(token, missing, index);
+            });
+            return retVector;
+        }
+        for (int i = 0; i < casecount; i++) {
+            if (c.isMissing(i)) {
+                missing.set(i);
+            } else {
+                retVector[i] = c.getDouble(i);
+            }
+        }
+        return retVector;
+    }
+
+    public float[] getFloatValues(int column, BitSet missing) throws IOException {
+        Column c = getColumn(column);
+        float[] retVector = new float[casecount];
+        if (c.getType() != COLUMN_TYPE_FLOAT) {
+            c.parseTokens((token, index) -> {
+                retVector[index] = TabularSubsetGenerator.parseFloatValue(token, missing, index);
+            });
+            return retVector;
+        }
+        for (int i = 0; i < casecount; i++) {
+            if (c.isMissing(i)) {
+                missing.set(i);
+            } else {
+                retVector[i] = c.getFloat(i);
+            }
+        }
+        return retVector;
+    }
+
+    public long[] getLongValues(int column, BitSet missing) throws IOException {
+        Column c = getColumn(column);
+        long[] retVector = new long[casecount];
+        if (c.getType() != COLUMN_TYPE_LONG) {
+            c.parseTokens((token, index) -> {
+                retVector[index] = TabularSubsetGenerator.parseLongValue(token, missing, index);
+            });
+            return retVector;
+        }
+        for (int i = 0; i < casecount; i++) {
+            if (c.isMissing(i)) {
+                missing.set(i);
+            } else {
+                retVector[i] = c.getLong(i);
+            }
+        }
+        return retVector;
+    }
+
+    public String[] getStringVector(int column) throws IOException {
+        return getColumn(column).parseTokens(new String[casecount], TabularSubsetGenerator::decodeStringToken);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // (the mapped buffers are released when they are garbage collected)
+        channel.close();
+    }
+
+    /**
+     * A single, memory-mapped, column of the image.
+     */
+    public static final class Column {
+
+        private final ByteBuffer buffer;
+        // a duplicate of the buffer, for the relative bulk reads of the tokens:
+        private final ByteBuffer reader;
+        private final int casecount;
+        private final int type;
+        private final int encoding;
+
+        private final int offsetsPosition;
+        private final int textPosition;
+        private final int dictionarySize;
+        private final int codesPosition;
+        private final int bitmapPosition;
+        private final int valuesPosition;
+
+        private Column(ByteBuffer buffer, int casecount) throws IOException {
+            this.buffer = buffer;
+            this.reader = buffer.duplicate();
+            this.casecount = casecount;
+            this.type = buffer.get(0);
+            this.encoding = buffer.get(1);
+
+            int tokensEnd;
+            if (encoding == ENCODING_DICTIONARY) {
+                dictionarySize = buffer.getInt(2);
+                offsetsPosition = 6;
+                textPosition = offsetsPosition + 4 * (dictionarySize + 1);
+                codesPosition = textPosition + buffer.getInt(offsetsPosition + 4 * dictionarySize);
+                tokensEnd = codesPosition + 4 * casecount;
+            } else if (encoding == ENCODING_PLAIN) {
+                dictionarySize = 0;
+                offsetsPosition = 2;
+                textPosition = offsetsPosition + 4 * (casecount + 1);
+                codesPosition = -1;
+                tokensEnd = textPosition + buffer.getInt(offsetsPosition + 4 * casecount);
+            } else {
+                throw new IOException("Unsupported column encoding: " + encoding);
+            }
+
+            int valueSize = valueSize(type);
+            if (valueSize > 0) {
+                bitmapPosition = tokensEnd;
+                valuesPosition = bitmapPosition + (casecount + 7) / 8;
+            } else if (type == COLUMN_TYPE_STRING) {
+                bitmapPosition = -1;
+                valuesPosition = -1;
+            } else {
+                throw new IOException("Unsupported column type: " + type);
+            }
+            if ((valueSize > 0 ? valuesPosition + (long) valueSize * casecount : tokensEnd) != buffer.capacity()) {
+                throw new IOException("Corrupted column block");
+            }
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        public boolean isDictionaryEncoded() {
+            return encoding == ENCODING_DICTIONARY;
+        }
+
+        private int entryIndex(int row) {
+            if (row < 0 || row >= casecount) {
+                throw new IndexOutOfBoundsException("Row " + row + " out of bounds (" + casecount + " rows)");
+            }
+            return encoding == ENCODING_DICTIONARY ? buffer.getInt(codesPosition + 4 * row) : row;
+        }
+
+        public int getTokenLength(int row) {
+            int entry = entryIndex(row);
+            return buffer.getInt(offsetsPosition + 4 * (entry + 1)) - buffer.getInt(offsetsPosition + 4 * entry);
+        }
+
+        /**
+         * Copies the token of the tab file (i.e., the text of the value, as
+         * stored in the tab file) into the destination array.
+         * @return the number of bytes copied.
+         */
+        public int copyToken(int row, byte[] dest, int destOffset) {
+            int entry = entryIndex(row);
+            return copyEntry(entry, dest, destOffset);
+        }
+
+        private int copyEntry(int entry, byte[] dest, int destOffset) {
+            int start = buffer.getInt(offsetsPosition + 4 * entry);
+            int length = buffer.getInt(offsetsPosition + 4 * (entry + 1)) - start;
+            reader.position(textPosition + start);
+            reader.get(dest, destOffset, length);
+            return length;
+        }
+
+        public byte[] getTokenBytes(int row) {
+            byte[] token = new byte[getTokenLength(row)];
+            copyToken(row, token, 0);
+            return token;
+        }
+
+        public String getToken(int row) {
+            return new String(getTokenBytes(row), StandardCharsets.UTF_8);
+        }
+
+        public boolean isMissing(int row) {
+            checkNumeric(row);
+            return (buffer.get(bitmapPosition + row / 8) & (1 << (row % 8))) != 0;
+        }
+
+        public long getLong(int row) {
+            checkType(row, COLUMN_TYPE_LONG);
+            return buffer.getLong(valuesPosition + 8 * row);
+        }
+
+        public double getDouble(int row) {
+            checkType(row, COLUMN_TYPE_DOUBLE);
+            return buffer.getDouble(valuesPosition + 8 * row);
+        }
+
+        public float getFloat(int row) {
+            checkType(row, COLUMN_TYPE_FLOAT);
+            return buffer.getFloat(valuesPosition + 4 * row);
+        }
+
+        private void checkNumeric(int row) {
+            if (bitmapPosition < 0) {
+                throw new IllegalStateException("Not a numeric column");
+            }
+            if (row < 0 || row >= casecount) {
+                throw new IndexOutOfBoundsException("Row " + row + " out of bounds (" + casecount + " rows)");
+            }
+        }
+
+        private void checkType(int row, int expectedType) {
+            if (type != expectedType) {
+                throw new IllegalStateException("Column type is " + type + ", not " + expectedType);
+            }
+            checkNumeric(row);
+        }
+
+        /*
+         * Hands the token of every row to the parser, which stores the parsed
+         * value at the given index (and records it as missing, if so). This
+         * is only used when the values requested are not of the type of the
+         * column.
+         */
+        private void parseTokens(TokenParser parser) {
+            String[] entries = null;
+            if (encoding == ENCODING_DICTIONARY) {
+                entries = new String[dictionarySize];
+                for (int entry = 0; entry < dictionarySize; entry++) {
+                    int length = buffer.getInt(offsetsPosition + 4 * (entry + 1)) - buffer.getInt(offsetsPosition + 4 * entry);
+                    byte[] token = new byte[length];
+                    copyEntry(entry, token, 0);
+                    entries[entry] = new String(token, StandardCharsets.UTF_8);
+                }
+            }
+            for (int row = 0; row < casecount; row++) {
+                parser.parse(entries != null ? entries[buffer.getInt(codesPosition + 4 * row)] : getToken(row), row);
+            }
+        }
+
+        private <T> T[] parseTokens(T[] retVector, Function<String, T> parser) {
+            if (encoding == ENCODING_DICTIONARY) {
+                Object[] parsed = new Object[dictionarySize];
+                for (int entry = 0; entry < dictionarySize; entry++) {
+                    int length = buffer.getInt(offsetsPosition + 4 * (entry + 1)) - buffer.getInt(offsetsPosition + 4 * entry);
+                    byte[] token = new byte[length];
+                    copyEntry(entry, token, 0);
+                    parsed[entry] = parser.apply(new String(token, StandardCharsets.UTF_8));
+                }
+                for (int row = 0; row < casecount; row++) {
+                    @SuppressWarnings("unchecked")
+                    T value = (T) parsed[buffer.getInt(codesPosition + 4 * row)];
+                    retVector[row] = value;
+                }
+            } else {
+                for (int row = 0; row < casecount; row++) {
+                    retVector[row] = parser.apply(getToken(row));
+                }
+            }
+            return retVector;
+        }
+    }
+
+    private interface TokenParser {
+        void parse(String token, int index);
+    }
+
+    /*
+     * Reads the '\n'-terminated tokens of a column of the rotated image.
+     */
+    private static final class TokenReader {
+        private final InputStream in;
+        byte[] buffer = new byte[256];
+        int length;
+        long consumed = 0;
+
+        TokenReader(FileChannel rotated, long position) throws IOException {
+            // (the stream is not closed, as that would close the channel)
+            this.in = new BufferedInputStream(Channels.newInputStream(rotated.position(position)), 65536);
+        }
+
+        void next() throws IOException {
+            length = 0;
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b < 0) {
+                    throw new IOException("Rotated image has fewer tokens than the stored number of cases");
+                }
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                buffer[length++] = (byte) b;
+            }
+            consumed += length + 1;
+        }
+
+        ByteBuffer key() {
+            return ByteBuffer.wrap(buffer, 0, length);
+        }
+    }
+
+    /*
+     * A buffered, sequential writer of a section of the image, starting at
+     * a fixed position of the file. The sections of a column block are written
+     * side by side, each one with a writer of its own.
+     */
+    private static final class SectionWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(32768);
+        private long position;
+
+        SectionWriter(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        void putByte(byte b) throws IOException {
+            ensureCapacity(1);
+            buffer.put(b);
+        }
+
+        void putInt(int i) throws IOException {
+            ensureCapacity(4);
+            buffer.putInt(i);
+        }
+
+        void putLong(long l) throws IOException {
+            ensureCapacity(8);
+            buffer.putLong(l);
+        }
+
+        void putDouble(double d) throws IOException {
+            ensureCapacity(8);
+            buffer.putDouble(d);
+        }
+
+        void putFloat(float f) throws IOException {
+            ensureCapacity(4);
+            buffer.putFloat(f);
+        }
+
+        void put(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int chunk = Math.min(length, buffer.remaining());
+                buffer.put(bytes, offset, chunk);
+                offset += chunk;
+                length -= chunk;
+            }
+        }
+
+        private void ensureCapacity(int size) throws IOException {
+            if (buffer.remaining() < size) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+    }
+}
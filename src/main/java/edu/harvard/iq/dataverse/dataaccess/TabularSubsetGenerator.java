@@ -24,16 +24,15 @@ import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Scanner;
 import java.util.Set;
@@ -42,8 +41,12 @@ import java.math.MathContext;
 import java.math.RoundingMode;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 
@@ -86,6 +89,16 @@ public class TabularSubsetGenerator implements SubsetGenerator {
     private long[] columnTotalOffsets;
     private long[] columnTotalLengths;
     
+    // when the columnar image of the file is available, the subset is 
+    // read from it instead of the rotated image:
+    private TabularColumnarImage columnarImage = null;
+    private TabularColumnarImage.Column[] subsetColumns;
+    // the files whose columnar image is being generated, by id:
+    private static final ConcurrentHashMap<Long, Object> columnarImageLocks = new ConcurrentHashMap<>();
+    private int currentCase = 0;
+    private byte[] pendingBytes = null;
+    private int pendingOffset = 0;
+    
     public TabularSubsetGenerator() {
         
     }
@@ -108,15 +121,30 @@ public class TabularSubsetGenerator implements SubsetGenerator {
         //File tabfile = datafile.getFileSystemLocation().toFile();
         File tabfile = dataAccess.getFileSystemPath().toFile();
         
+        if (variables == null || variables.size() < 1 || variables.size() > getVarCount()) {
+            throw new IOException("Illegal number of variables in the subset request");
+        }
+        
+        columnarImage = openColumnarImage(datafile, dataAccess, tabfile);
+        if (columnarImage != null) {
+            subsetcount = variables.size();
+            subsetColumns = new TabularColumnarImage.Column[subsetcount];
+            int i = 0;
+            for (DataVariable var : variables) {
+                if (!datafile.getDataTable().getId().equals(var.getDataTable().getId())) {
+                    columnarImage.close();
+                    throw new IOException("Variable in the subset request does not belong to the datafile.");
+                }
+                subsetColumns[i++] = columnarImage.getColumn(var.getFileOrder());
+            }
+            return;
+        }
+        
         File rotatedImageFile = getRotatedImage(tabfile, getVarCount(), getCaseCount());
         long[] columnEndOffsets = extractColumnOffsets(rotatedImageFile, getVarCount(), getCaseCount()); 
         
         fileChannel = (FileChannel.open(Paths.get(rotatedImageFile.getAbsolutePath()), StandardOpenOption.READ));
         
-        if (variables == null || variables.size() < 1 || variables.size() > getVarCount()) {
-            throw new IOException("Illegal number of variables in the subset request");
-        }
-        
         subsetcount = variables.size();
         columnTotalOffsets = new long[subsetcount];
         columnTotalLengths = new long[subsetcount];
@@ -159,6 +187,49 @@ public class TabularSubsetGenerator implements SubsetGenerator {
         }
     }
     
+    /*
+     * Opens the columnar image of the file, saved as an auxiliary object by 
+     * the ingest; files ingested before the columnar images were introduced 
+     * get one generated (and saved) on the first subset request - by one 
+     * request at a time per file, the others waiting for it and using the 
+     * image it saved. The image is written next to the file and moved in 
+     * place once complete, so it is never read half written. 
+     * Returns null if the image cannot be used, in which case the subset 
+     * is read from the rotated image, as before. 
+     */
+    private TabularColumnarImage openColumnarImage(DataFile datafile, StorageIO<DataFile> dataAccess, File tabfile) {
+        try {
+            if (!dataAccess.isAuxObjectCached(TabularColumnarImage.AUX_TAG)) {
+                Object lock = columnarImageLocks.computeIfAbsent(datafile.getId(), id -> new Object());
+                try {
+                    synchronized (lock) {
+                        if (!dataAccess.isAuxObjectCached(TabularColumnarImage.AUX_TAG)) {
+                            Path imagePath = dataAccess.getAuxObjectAsPath(TabularColumnarImage.AUX_TAG);
+                            Path stagedPath = Files.createTempFile(imagePath.getParent(), "columnarImage", ".tmp");
+                            try {
+                                TabularColumnarImage.generate(tabfile, getCaseCount(), TabularColumnarImage.getColumnTypes(datafile.getDataTable().getDataVariables()), stagedPath.toFile());
+                                Files.move(stagedPath, imagePath, StandardCopyOption.ATOMIC_MOVE);
+                            } finally {
+                                Files.deleteIfExists(stagedPath);
+                            }
+                        }
+                    }
+                } finally {
+                    columnarImageLocks.remove(datafile.getId(), lock);
+                }
+            }
+            TabularColumnarImage image = TabularColumnarImage.open(dataAccess.getAuxObjectAsPath(TabularColumnarImage.AUX_TAG));
+            if (image.getVarCount() != getVarCount() || image.getCaseCount() != getCaseCount()) {
+                image.close();
+                throw new IOException("dimensions of the image do not match the data table");
+            }
+            return image;
+        } catch (IOException ioex) {
+            dbgLog.warning("Could not use the columnar image of datafile " + datafile.getId() + " (" + ioex.getMessage() + "); subsetting the rotated image instead.");
+            return null;
+        }
+    }
+    
     private int getVarCount() {
         return varcount;
     }
@@ -304,6 +375,9 @@ public class TabularSubsetGenerator implements SubsetGenerator {
     }
     
     public int readSingleColumnSubset(byte[] buffer) throws IOException {
+        if (columnarImage != null) {
+            return readSingleColumnarSubset(buffer);
+        }
         if (columnTotalOffsets[0] == columnTotalLengths[0]) {
             return -1;
         }
@@ -326,10 +400,59 @@ public class TabularSubsetGenerator implements SubsetGenerator {
     }
     
     
+    private int readSingleColumnarSubset(byte[] buffer) {
+        TabularColumnarImage.Column column = subsetColumns[0];
+        int bytesread = 0;
+        
+        while (bytesread < buffer.length) {
+            if (pendingBytes == null) {
+                if (currentCase >= getCaseCount()) {
+                    break;
+                }
+                int tokenLength = column.getTokenLength(currentCase);
+                if (bytesread + tokenLength + 1 <= buffer.length) {
+                    // the token fits; copy it straight into the buffer:
+                    bytesread += column.copyToken(currentCase++, buffer, bytesread);
+                    buffer[bytesread++] = '\n';
+                    continue;
+                }
+                pendingBytes = new byte[tokenLength + 1];
+                column.copyToken(currentCase++, pendingBytes, 0);
+                pendingBytes[tokenLength] = '\n';
+                pendingOffset = 0;
+            }
+            int chunk = Math.min(buffer.length - bytesread, pendingBytes.length - pendingOffset);
+            System.arraycopy(pendingBytes, pendingOffset, buffer, bytesread, chunk);
+            bytesread += chunk;
+            pendingOffset += chunk;
+            if (pendingOffset == pendingBytes.length) {
+                pendingBytes = null;
+            }
+        }
+        return bytesread > 0 ? bytesread : -1;
+    }
+    
     public byte[] readSubsetLineBytes() throws IOException {
         byte[] ret = null; 
         int total = 0; 
         
+        if (columnarImage != null) {
+            if (currentCase >= getCaseCount()) {
+                throw new IOException("Failed to read subset line entry");
+            }
+            for (int i = 0; i < subsetcount; i++) {
+                total += subsetColumns[i].getTokenLength(currentCase) + 1;
+            }
+            ret = new byte[total];
+            int offset = 0;
+            for (int i = 0; i < subsetcount; i++) {
+                offset += subsetColumns[i].copyToken(currentCase, ret, offset);
+                ret[offset++] = (byte) (i < subsetcount - 1 ? '\t' : '\n');
+            }
+            currentCase++;
+            return ret;
+        }
+        
         for (int i = 0; i < subsetcount; i++) {
             columnEntries[i] = readColumnEntryBytes(i);
             if (columnEntries[i] == null) {
@@ -350,6 +473,13 @@ public class TabularSubsetGenerator implements SubsetGenerator {
     
     
     public void close() {
+        if (columnarImage != null) {
+            try {
+                columnarImage.close();
+            } catch (IOException ioe) {
+                // don't care.
+            }
+        }
         if (fileChannel != null) {
             try {
                 fileChannel.close();
@@ -424,26 +554,7 @@ public class TabularSubsetGenerator implements SubsetGenerator {
         for (int caseIndex = 0; caseIndex < numCases; caseIndex++) {
             if (scanner.hasNext()) {
                 String[] line = (scanner.next()).split("\t", -1);
-
-                // Verified: new Double("nan") works correctly, 
-                // resulting in Double.NaN;
-                // Double("[+-]Inf") doesn't work however; 
-                // (the constructor appears to be expecting it
-                // to be spelled as "Infinity", "-Infinity", etc. 
-                if ("inf".equalsIgnoreCase(line[column]) || "+inf".equalsIgnoreCase(line[column])) {
-                    retVector[caseIndex] = java.lang.Double.POSITIVE_INFINITY;
-                } else if ("-inf".equalsIgnoreCase(line[column])) {
-                    retVector[caseIndex] = java.lang.Double.NEGATIVE_INFINITY;
-                } else if (line[column] == null || line[column].equals("")) {
-                    // missing value:
-                    retVector[caseIndex] = null;
-                } else {
-                    try {
-                        retVector[caseIndex] = new Double(line[column]);
-                    } catch (NumberFormatException ex) {
-                        retVector[caseIndex] = null; // missing value
-                    }
-                }
+                retVector[caseIndex] = parseDoubleToken(line[column]);
 
             } else {
                 scanner.close();
@@ -478,25 +589,7 @@ public class TabularSubsetGenerator implements SubsetGenerator {
         for (int caseIndex = 0; caseIndex < numCases; caseIndex++) {
             if (scanner.hasNext()) {
                 String[] line = (scanner.next()).split("\t", -1);
-                // Verified: new Float("nan") works correctly, 
-                // resulting in Float.NaN;
-                // Float("[+-]Inf") doesn't work however; 
-                // (the constructor appears to be expecting it
-                // to be spelled as "Infinity", "-Infinity", etc. 
-                if ("inf".equalsIgnoreCase(line[column]) || "+inf".equalsIgnoreCase(line[column])) {
-                    retVector[caseIndex] = java.lang.Float.POSITIVE_INFINITY;
-                } else if ("-inf".equalsIgnoreCase(line[column])) {
-                    retVector[caseIndex] = java.lang.Float.NEGATIVE_INFINITY;
-                } else if (line[column] == null || line[column].equals("")) {
-                    // missing value:
-                    retVector[caseIndex] = null;
-                } else {
-                    try {
-                        retVector[caseIndex] = new Float(line[column]);
-                    } catch (NumberFormatException ex) {
-                        retVector[caseIndex] = null; // missing value
-                    }
-                }
+                retVector[caseIndex] = parseFloatToken(line[column]);
             } else {
                 scanner.close();
                 throw new RuntimeException("Tab file has fewer rows than the stored number of cases!");
@@ -530,11 +623,7 @@ public class TabularSubsetGenerator implements SubsetGenerator {
         for (int caseIndex = 0; caseIndex < numCases; caseIndex++) {
             if (scanner.hasNext()) {
                 String[] line = (scanner.next()).split("\t", -1);
-                try {
-                    retVector[caseIndex] = new Long(line[column]);
-                } catch (NumberFormatException ex) {
-                    retVector[caseIndex] = null; // assume missing value
-                }
+                retVector[caseIndex] = parseLongToken(line[column]);
             } else {
                 scanner.close();
                 throw new RuntimeException("Tab file has fewer rows than the stored number of cases!");
@@ -568,51 +657,7 @@ public class TabularSubsetGenerator implements SubsetGenerator {
         for (int caseIndex = 0; caseIndex < numCases; caseIndex++) {
             if (scanner.hasNext()) {
                 String[] line = (scanner.next()).split("\t", -1);
-                retVector[caseIndex] = line[column];
-                
-                
-                if ("".equals(line[column])) {
-                    // An empty string is a string missing value!
-                    // An empty string in quotes is an empty string!
-                    retVector[caseIndex] = null;
-                } else {
-                    // Strip the outer quotes:
-                    line[column] = line[column].replaceFirst("^\\\"", "");
-                    line[column] = line[column].replaceFirst("\\\"$", "");
-
-                    // We need to restore the special characters that 
-                    // are stored in tab files escaped - quotes, new lines 
-                    // and tabs. Before we do that however, we need to 
-                    // take care of any escaped backslashes stored in 
-                    // the tab file. I.e., "foo\t" should be transformed 
-                    // to "foo<TAB>"; but "foo\\t" should be transformed 
-                    // to "foo\t". This way new lines and tabs that were
-                    // already escaped in the original data are not 
-                    // going to be transformed to unescaped tab and 
-                    // new line characters!
-                    String[] splitTokens = line[column].split(Matcher.quoteReplacement("\\\\"), -2);
-
-                    // (note that it's important to use the 2-argument version 
-                    // of String.split(), and set the limit argument to a
-                    // negative value; otherwise any trailing backslashes 
-                    // are lost.)
-                    for (int i = 0; i < splitTokens.length; i++) {
-                        splitTokens[i] = splitTokens[i].replaceAll(Matcher.quoteReplacement("\\\""), "\"");
-                        splitTokens[i] = splitTokens[i].replaceAll(Matcher.quoteReplacement("\\t"), "\t");
-                        splitTokens[i] = splitTokens[i].replaceAll(Matcher.quoteReplacement("\\n"), "\n");
-                        splitTokens[i] = splitTokens[i].replaceAll(Matcher.quoteReplacement("\\r"), "\r");
-                    }
-                    // TODO: 
-                    // Make (some of?) the above optional; for ex., we 
-                    // do need to restore the newlines when calculating UNFs;
-                    // But if we are subsetting these vectors in order to 
-                    // create a new tab-delimited file, they will 
-                    // actually break things! -- L.A. Jul. 28 2014
-
-                    line[column] = StringUtils.join(splitTokens, '\\');
-
-                    retVector[caseIndex] = line[column];
-                }
+                retVector[caseIndex] = decodeStringToken(line[column]);
 
             } else {
                 scanner.close();
@@ -635,6 +680,215 @@ public class TabularSubsetGenerator implements SubsetGenerator {
 
     }
 
+    /*
+     * The methods below interpret a single token of a tab-delimited file, 
+     * the way the subset*Vector(InputStream, ...) methods above do. They are 
+     * shared with TabularColumnarImage, so that the vectors read from the 
+     * columnar image are identical to the ones read from the tab file.
+     */
+    
+    static Double parseDoubleToken(String token) {
+        // Verified: new Double("nan") works correctly, 
+        // resulting in Double.NaN;
+        // Double("[+-]Inf") doesn't work however; 
+        // (the constructor appears to be expecting it
+        // to be spelled as "Infinity", "-Infinity", etc. 
+        if ("inf".equalsIgnoreCase(token) || "+inf".equalsIgnoreCase(token)) {
+            return java.lang.Double.POSITIVE_INFINITY;
+        } else if ("-inf".equalsIgnoreCase(token)) {
+            return java.lang.Double.NEGATIVE_INFINITY;
+        } else if (token == null || token.equals("")) {
+            // missing value:
+            return null;
+        } else {
+            try {
+                return new Double(token);
+            } catch (NumberFormatException ex) {
+                return null; // missing value
+            }
+        }
+    }
+    
+    static Float parseFloatToken(String token) {
+        // (same deal as with Doubles, above)
+        if ("inf".equalsIgnoreCase(token) || "+inf".equalsIgnoreCase(token)) {
+            return java.lang.Float.POSITIVE_INFINITY;
+        } else if ("-inf".equalsIgnoreCase(token)) {
+            return java.lang.Float.NEGATIVE_INFINITY;
+        } else if (token == null || token.equals("")) {
+            // missing value:
+            return null;
+        } else {
+            try {
+                return new Float(token);
+            } catch (NumberFormatException ex) {
+                return null; // missing value
+            }
+        }
+    }
+    
+    static Long parseLongToken(String token) {
+        try {
+            return new Long(token);
+        } catch (NumberFormatException ex) {
+            return null; // assume missing value
+        }
+    }
+    
+    static String decodeStringToken(String token) {
+        if ("".equals(token)) {
+            // An empty string is a string missing value!
+            // An empty string in quotes is an empty string!
+            return null;
+        } 
+        // Strip the outer quotes:
+        token = token.replaceFirst("^\\\"", "");
+        token = token.replaceFirst("\\\"$", "");
+
+        // We need to restore the special characters that 
+        // are stored in tab files escaped - quotes, new lines 
+        // and tabs. Before we do that however, we need to 
+        // take care of any escaped backslashes stored in 
+        // the tab file. I.e., "foo\t" should be transformed 
+        // to "foo<TAB>"; but "foo\\t" should be transformed 
+        // to "foo\t". This way new lines and tabs that were
+        // already escaped in the original data are not 
+        // going to be transformed to unescaped tab and 
+        // new line characters!
+        String[] splitTokens = token.split(Matcher.quoteReplacement("\\\\"), -2);
+
+        // (note that it's important to use the 2-argument version 
+        // of String.split(), and set the limit argument to a
+        // negative value; otherwise any trailing backslashes 
+        // are lost.)
+        for (int i = 0; i < splitTokens.length; i++) {
+            splitTokens[i] = splitTokens[i].replaceAll(Matcher.quoteReplacement("\\\""), "\"");
+            splitTokens[i] = splitTokens[i].replaceAll(Matcher.quoteReplacement("\\t"), "\t");
+            splitTokens[i] = splitTokens[i].replaceAll(Matcher.quoteReplacement("\\n"), "\n");
+            splitTokens[i] = splitTokens[i].replaceAll(Matcher.quoteReplacement("\\r"), "\r");
+        }
+        // TODO: 
+        // Make (some of?) the above optional; for ex., we 
+        // do need to restore the newlines when calculating UNFs;
+        // But if we are subsetting these vectors in order to 
+        // create a new tab-delimited file, they will 
+        // actually break things! -- L.A. Jul. 28 2014
+
+        return StringUtils.join(splitTokens, '\\');
+    }
+
+    /*
+     * Primitive counterparts of the methods above: the parsed value is 
+     * returned, and a missing value is recorded in the bitmap at the given 
+     * index (0 is returned in its place). 
+     */
+    
+    static double parseDoubleValue(String token, BitSet missing, int index) {
+        if ("inf".equalsIgnoreCase(token) || "+inf".equalsIgnoreCase(token)) {
+            return java.lang.Double.POSITIVE_INFINITY;
+        } else if ("-inf".equalsIgnoreCase(token)) {
+            return java.lang.Double.NEGATIVE_INFINITY;
+        } else if (token == null || token.equals("")) {
+            missing.set(index);
+            return 0.0;
+        }
+        try {
+            return java.lang.Double.parseDouble(token);
+        } catch (NumberFormatException ex) {
+            missing.set(index);
+            return 0.0;
+        }
+    }
+    
+    static float parseFloatValue(String token, BitSet missing, int index) {
+        if ("inf".equalsIgnoreCase(token) || "+inf".equalsIgnoreCase(token)) {
+            return java.lang.Float.POSITIVE_INFINITY;
+        } else if ("-inf".equalsIgnoreCase(token)) {
+            return java.lang.Float.NEGATIVE_INFINITY;
+        } else if (token == null || token.equals("")) {
+            missing.set(index);
+            return 0.0f;
+        }
+        try {
+            return java.lang.Float.parseFloat(token);
+        } catch (NumberFormatException ex) {
+            missing.set(index);
+            return 0.0f;
+        }
+    }
+    
+    static long parseLongValue(String token, BitSet missing, int index) {
+        try {
+            return java.lang.Long.parseLong(token);
+        } catch (NumberFormatException ex) {
+            missing.set(index);
+            return 0L;
+        }
+    }
+    
+    /*
+     * The methods below subset a single numeric column of a tab-delimited 
+     * file into a primitive vector; the missing values are recorded in the 
+     * supplied bitmap, instead of being stored as nulls. This avoids 
+     * allocating an object for every value, as the Double[], Float[] and 
+     * Long[] methods above do. 
+     */
+    
+    public static double[] subsetDoubleVector(InputStream in, int column, int numCases, BitSet missing) {
+        double[] retVector = new double[numCases];
+        scanColumn(in, column, numCases, (token, caseIndex) -> {
+            retVector[caseIndex] = parseDoubleValue(token, missing, caseIndex);
+        });
+        return retVector;
+    }
+    
+    public static float[] subsetFloatVector(InputStream in, int column, int numCases, BitSet missing) {
+        float[] retVector = new float[numCases];
+        scanColumn(in, column, numCases, (token, caseIndex) -> {
+            retVector[caseIndex] = parseFloatValue(token, missing, caseIndex);
+        });
+        return retVector;
+    }
+    
+    public static long[] subsetLongVector(InputStream in, int column, int numCases, BitSet missing) {
+        long[] retVector = new long[numCases];
+        scanColumn(in, column, numCases, (token, caseIndex) -> {
+            retVector[caseIndex] = parseLongValue(token, missing, caseIndex);
+        });
+        return retVector;
+    }
+    
+    private interface ColumnTokenHandler {
+        void handle(String token, int caseIndex);
+    }
+    
+    private static void scanColumn(InputStream in, int column, int numCases, ColumnTokenHandler handler) {
+        Scanner scanner = new Scanner(in);
+        scanner.useDelimiter("\\n");
+
+        for (int caseIndex = 0; caseIndex < numCases; caseIndex++) {
+            if (scanner.hasNext()) {
+                String[] line = (scanner.next()).split("\t", -1);
+                handler.handle(line[column], caseIndex);
+            } else {
+                scanner.close();
+                throw new RuntimeException("Tab file has fewer rows than the stored number of cases!");
+            }
+        }
+
+        int tailIndex = numCases;
+        while (scanner.hasNext()) {
+            String nextLine = scanner.next();
+            if (!"".equals(nextLine)) {
+                scanner.close();
+                throw new RuntimeException("Column " + column + ": tab file has more nonempty rows than the stored number of cases (" + numCases + ")! current index: " + tailIndex + ", line: " + nextLine);
+            }
+            tailIndex++;
+        }
+
+        scanner.close();
+    }
+
     /*
      * Straightforward method for subsetting a tab-delimited data file, extracting
      * all the columns representing continuous variables and returning them as 
@@ -1079,7 +1333,7 @@ public class TabularSubsetGenerator implements SubsetGenerator {
         return retVector; 
     }
     
-    private long[] extractColumnOffsets (File rotatedImageFile, int varcount, int casecount) throws IOException {
+    long[] extractColumnOffsets (File rotatedImageFile, int varcount, int casecount) throws IOException {
          BufferedInputStream rotfileStream = new BufferedInputStream(new FileInputStream(rotatedImageFile));
         
         byte[] offsetHeader = new byte[varcount * 8];
@@ -1107,7 +1361,7 @@ public class TabularSubsetGenerator implements SubsetGenerator {
         return byteOffsets; 
     }
     
-    private File getRotatedImage(File tabfile, int varcount, int casecount)  throws IOException {
+    File getRotatedImage(File tabfile, int varcount, int casecount)  throws IOException {
         String fileName = tabfile.getAbsolutePath();
         String rotatedImageFileName = fileName + ".90d";
         File rotatedImageFile = new File(rotatedImageFileName); 
@@ -1126,26 +1380,7 @@ public class TabularSubsetGenerator implements SubsetGenerator {
         String fileName = tabfile.getAbsolutePath();
         String rotatedImageFileName = fileName + ".90d";
         
-        int MAX_OUTPUT_STREAMS = 32;
-        int MAX_BUFFERED_BYTES = 10 * 1024 * 1024; // 10 MB - for now?
-        int MAX_COLUMN_BUFFER = 8 * 1024; 
-        
-        // offsetHeader will contain the byte offsets of the individual column 
-        // vectors in the final rotated image file
-        byte[] offsetHeader = new byte[varcount * 8];
-        int[] bufferedSizes = new int[varcount];
-        long[] cachedfileSizes = new long[varcount];
-        File[] columnTempFiles = new File[varcount];
-        
-        for (int i = 0; i < varcount; i++) {
-            bufferedSizes[i] = 0; 
-            cachedfileSizes[i] = 0;
-        }
-        
-        // TODO: adjust MAX_COLUMN_BUFFER here, so that the total size is 
-        // no more than MAX_BUFFERED_BYTES (but no less than 1024 maybe?)
-        
-        byte[][] bufferedColumns = new byte [varcount][MAX_COLUMN_BUFFER];
+        RotatedImageWriter imageWriter = new RotatedImageWriter(new File(rotatedImageFileName), varcount);
         
         // read the tab-delimited file: 
         
@@ -1154,142 +1389,22 @@ public class TabularSubsetGenerator implements SubsetGenerator {
         Scanner scanner = new Scanner(tabfileStream);
         scanner.useDelimiter("\\n");
         
-        for (int caseindex = 0; caseindex < casecount; caseindex++) {
-            if (scanner.hasNext()) {
-                String[] line = (scanner.next()).split("\t", -1);
-                // TODO: throw an exception if there are fewer tab-delimited 
-                // tokens than the number of variables specified. 
-                String token = "";
-                int tokensize = 0; 
-                for (int varindex = 0; varindex < varcount; varindex++) {
-                    // TODO: figure out the safest way to convert strings to 
-                    // bytes here. Is it going to be safer to use getBytes("UTF8")?
-                    // we are already making the assumption that the values 
-                    // in the tab file are in UTF8. -- L.A.
-                    token = line[varindex] + "\n";
-                    tokensize = token.getBytes().length;
-                    if (bufferedSizes[varindex]+tokensize > MAX_COLUMN_BUFFER) {
-                        // fill the buffer and dump its contents into the temp file:
-                        // (do note that there may be *several* MAX_COLUMN_BUFFERs
-                        // worth of bytes in the token!)
-                        
-                        int tokenoffset = 0; 
-
-                        if (bufferedSizes[varindex] != MAX_COLUMN_BUFFER) {
-                            tokenoffset = MAX_COLUMN_BUFFER-bufferedSizes[varindex];
-                            System.arraycopy(token.getBytes(), 0, bufferedColumns[varindex], bufferedSizes[varindex], tokenoffset);
-                        } // (otherwise the buffer is already full, and we should 
-                          // simply dump it into the temp file, without adding any 
-                          // extra bytes to it)
-                        
-                        File bufferTempFile = columnTempFiles[varindex]; 
-                        if (bufferTempFile == null) {
-                            bufferTempFile = File.createTempFile("columnBufferFile", "bytes");
-                            columnTempFiles[varindex] = bufferTempFile; 
-                        } 
-                        
-                        // *append* the contents of the buffer to the end of the
-                        // temp file, if already exists:
-                        BufferedOutputStream outputStream = new BufferedOutputStream(new FileOutputStream (bufferTempFile, true));
-                        outputStream.write(bufferedColumns[varindex], 0, MAX_COLUMN_BUFFER);
-                        cachedfileSizes[varindex] += MAX_COLUMN_BUFFER;
-                        
-                        // keep writing MAX_COLUMN_BUFFER-size chunks of bytes into 
-                        // the temp file, for as long as there's more than MAX_COLUMN_BUFFER
-                        // bytes left in the token:
-                        
-                        while (tokensize - tokenoffset > MAX_COLUMN_BUFFER) {
-                            outputStream.write(token.getBytes(), tokenoffset, MAX_COLUMN_BUFFER);
-                            cachedfileSizes[varindex] += MAX_COLUMN_BUFFER;
-                            tokenoffset += MAX_COLUMN_BUFFER;
-                        }
-                        
-                        outputStream.close();
-                        
-                        // buffer the remaining bytes and reset the buffered 
-                        // byte counter: 
-                        
-                        System.arraycopy(token.getBytes(), 
-                                tokenoffset, 
-                                bufferedColumns[varindex], 
-                                0,
-                                tokensize - tokenoffset); 
-                        
-                        bufferedSizes[varindex] = tokensize - tokenoffset; 
-                        
-                    } else {
-                        // continue buffering
-                        System.arraycopy(token.getBytes(), 0, bufferedColumns[varindex], bufferedSizes[varindex], tokensize);
-                        bufferedSizes[varindex] += tokensize; 
-                    }
-                }
-            } else {
-                scanner.close();
-                throw new IOException("Tab file has fewer rows than the stored number of cases!");
-            }
-            
-        }
-        
-        // OK, we've created the individual byte vectors of the tab file columns;
-        // they may be partially saved in temp files and/or in memory.
-        // We now need to go through all these buffers and create the final 
-        // rotated image file. 
-        
-        BufferedOutputStream finalOut = new BufferedOutputStream(new FileOutputStream (new File(rotatedImageFileName)));
-        
-        // but first we should create the offset header and write it out into 
-        // the final file; because it should be at the head, doh!
-        
-        long columnOffset = varcount * 8;
-        // (this is the offset of the first column vector; it is equal to the
-        // size of the offset header, i.e. varcount * 8 bytes)
-      
-        for (int varindex = 0; varindex < varcount; varindex++) {
-            long totalColumnBytes = cachedfileSizes[varindex] + bufferedSizes[varindex];
-            columnOffset+=totalColumnBytes;
-            //totalColumnBytes;
-            byte[] columnOffsetByteArray = ByteBuffer.allocate(8).putLong(columnOffset).array();
-            System.arraycopy(columnOffsetByteArray, 0, offsetHeader, varindex * 8, 8);
-        }
-        
-        finalOut.write(offsetHeader, 0, varcount * 8);
-        
-        for (int varindex = 0; varindex < varcount; varindex++) {
-            long cachedBytesRead = 0; 
-            
-            // check if there is a cached temp file:
-            
-            File cachedTempFile = columnTempFiles[varindex]; 
-            if (cachedTempFile != null) {
-                byte[] cachedBytes = new byte[MAX_COLUMN_BUFFER];
-                BufferedInputStream cachedIn = new BufferedInputStream(new FileInputStream(cachedTempFile));
-                int readlen = 0; 
-                while ((readlen = cachedIn.read(cachedBytes)) > -1) {
-                    finalOut.write(cachedBytes, 0, readlen);
-                    cachedBytesRead += readlen;
+        try {
+            for (int caseindex = 0; caseindex < casecount; caseindex++) {
+                if (scanner.hasNext()) {
+                    imageWriter.addRow((scanner.next()).split("\t", -1));
+                } else {
+                    throw new IOException("Tab file has fewer rows than the stored number of cases!");
                 }
-                cachedIn.close();
-                // delete the temp file: 
-                cachedTempFile.delete();
-                
             }
-            
-            if (cachedBytesRead != cachedfileSizes[varindex]) {
-                finalOut.close();
-                throw new IOException("Could not read the correct number of bytes cached for column "+varindex+"; "+
-                        cachedfileSizes[varindex] + " bytes expected, "+cachedBytesRead+" read.");
-            }
-            
-            // then check if there are any bytes buffered for this column:
-            
-            if (bufferedSizes[varindex] > 0) {
-                finalOut.write(bufferedColumns[varindex], 0, bufferedSizes[varindex]);
-            }
-            
+        } catch (IOException ioex) {
+            imageWriter.abort();
+            throw ioex;
+        } finally {
+            scanner.close();
         }
         
-        finalOut.close();
-        return new File(rotatedImageFileName);
+        return imageWriter.finish();
 
     }
   
@@ -1,5 +1,6 @@
 package edu.harvard.iq.dataverse.engine.command;
 
+import edu.harvard.iq.dataverse.PermissionMemo;
 import edu.harvard.iq.dataverse.api.AbstractApiBean;
 import edu.harvard.iq.dataverse.api.batchjob.FileRecordJobResource;
 import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IpAddress;
@@ -24,6 +25,7 @@ public class DataverseRequest {
     private final User user;
     private final IpAddress sourceAddress;
     private final String invocationId;
+    private final PermissionMemo permissionMemo = new PermissionMemo();
     
     private final static String undefined = "0.0.0.0";
     
@@ -186,5 +188,13 @@ public class DataverseRequest {
     public String getWFInvocationId() {
         return invocationId;
     }
+
+    /**
+     * @return what the permission checks of this request found so far
+     * @see edu.harvard.iq.dataverse.PermissionServiceBean
+     */
+    public PermissionMemo getPermissionMemo() {
+        return permissionMemo;
+    }
     
 }
@@ -81,6 +81,7 @@ public class DeleteDataverseCommand extends AbstractVoidCommand {
         // DATAVERSE
         Dataverse doomedAndMerged = ctxt.em().merge(doomed);
         ctxt.em().remove(doomedAndMerged);
+        ctxt.dataverses().ancestorsChanged(doomed);
     }
 
     @Override 
@@ -10,6 +10,7 @@ import edu.harvard.iq.dataverse.DatasetLock;
 import edu.harvard.iq.dataverse.DatasetVersionUser;
 import edu.harvard.iq.dataverse.DvObject;
 import edu.harvard.iq.dataverse.GuestbookResponse;
+import edu.harvard.iq.dataverse.PermissionMemo;
 import edu.harvard.iq.dataverse.RoleAssignment;
 import edu.harvard.iq.dataverse.UserNotification;
 import edu.harvard.iq.dataverse.authorization.AuthenticatedUserLookup;
@@ -103,6 +104,7 @@ public class MergeInAccountCommand extends AbstractVoidCommand {
         int resultCount = ctxt.em().createNamedQuery("RoleAssignment.deleteAllByAssigneeIdentifier", RoleAssignment.class).
                         setParameter("assigneeIdentifier", consumedAU.getIdentifier())
                         .executeUpdate();
+        PermissionMemo.assignmentsChanged();
         
         // DatasetVersionUser
         for (DatasetVersionUser user : ctxt.datasetVersion().getDatasetVersionUsersByAuthenticatedUser(consumedAU)) {
@@ -178,6 +180,7 @@ public class MergeInAccountCommand extends AbstractVoidCommand {
         ctxt.em().createNativeQuery("Delete from OAuth2TokenData where user_id ="+consumedAU.getId()).executeUpdate();
         
         ctxt.em().createNativeQuery("UPDATE explicitgroup_authenticateduser SET containedauthenticatedusers_id="+ongoingAU.getId()+" WHERE containedauthenticatedusers_id="+consumedAU.getId()).executeUpdate();
+        ctxt.explicitGroups().membershipsChanged();
         
         ctxt.actionLog().changeUserIdentifierInHistory(consumedAU.getIdentifier(), ongoingAU.getIdentifier());
         
@@ -190,6 +193,7 @@ public class MergeInAccountCommand extends AbstractVoidCommand {
         if(null != toRemove) { //not all users have apiTokens
             ctxt.em().remove(toRemove);
         }
+        ctxt.authentication().apiTokensRevoked(consumedAU);
         AuthenticatedUserLookup consumedAUL = consumedAU.getAuthenticatedUserLookup();
         ctxt.em().remove(consumedAUL);
         ctxt.em().remove(consumedAU);
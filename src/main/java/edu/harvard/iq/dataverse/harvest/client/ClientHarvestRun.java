@@ -182,6 +182,69 @@ public class ClientHarvestRun implements Serializable {
         this.deletedDatasetCount = deletedDatasetCount;
     }
 
+    // Per-stage counters of the harvest pipeline (see HarvestPipeline):
+    // the number of identifiers listed by the remote server, and the time, 
+    // in milliseconds, spent in the GetRecord calls (summed over all the 
+    // fetcher threads) and in importing the fetched records. 
+    private Long listedIdentifierCount = 0L;
+    private Long fetchTime = 0L;
+    private Long importTime = 0L;
+    private Integer fetchThreads = 1;
+
+    public Long getListedIdentifierCount() {
+        return listedIdentifierCount;
+    }
+
+    public void setListedIdentifierCount(Long listedIdentifierCount) {
+        this.listedIdentifierCount = listedIdentifierCount;
+    }
+
+    public Long getFetchTime() {
+        return fetchTime;
+    }
+
+    public void setFetchTime(Long fetchTime) {
+        this.fetchTime = fetchTime;
+    }
+
+    public Long getImportTime() {
+        return importTime;
+    }
+
+    public void setImportTime(Long importTime) {
+        this.importTime = importTime;
+    }
+
+    public Integer getFetchThreads() {
+        return fetchThreads;
+    }
+
+    public void setFetchThreads(Integer fetchThreads) {
+        this.fetchThreads = fetchThreads;
+    }
+    
+    /**
+     * @return GetRecord throughput, in records per second of wall clock time 
+     * (i.e., with the fetcher threads working in parallel), or null if unknown.
+     */
+    public Double getFetchThroughput() {
+        if (listedIdentifierCount == null || fetchTime == null || fetchTime == 0L) {
+            return null; 
+        }
+        int threads = fetchThreads == null || fetchThreads < 1 ? 1 : fetchThreads;
+        return listedIdentifierCount * 1000.0 * threads / fetchTime;
+    }
+    
+    /**
+     * @return import throughput, in records per second, or null if unknown.
+     */
+    public Double getImportThroughput() {
+        if (listedIdentifierCount == null || importTime == null || importTime == 0L) {
+            return null; 
+        }
+        return listedIdentifierCount * 1000.0 / importTime;
+    }
+
     @Override
     public int hashCode() {
         int hash = 0;
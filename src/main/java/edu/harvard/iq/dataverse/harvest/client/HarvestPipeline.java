@@ -0,0 +1,258 @@
+package edu.harvard.iq.dataverse.harvest.client;
+
+import com.lyncode.xoai.model.oaipmh.Header;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Runs the GetRecord loop of an OAI harvest as a pipeline: the ListIdentifiers
+ * headers are streamed on the calling thread, the GetRecord requests are made
+ * by a fixed pool of fetcher threads, and the fetched records are handed back
+ * to the calling thread - in the original ListIdentifiers order - to be
+ * imported. The number of records fetched but not yet imported is capped by
+ * the window size, so a slow import stage throttles the fetchers instead of
+ * piling up temp files.
+ *
+ * With a single fetcher thread no pool is created and every record is fetched
+ * and processed inline, exactly as in the original serial harvest.
+ *
+ * The import stage must stay on the calling thread, since it needs the EJB
+ * transaction context of the harvester service.
+ *
+ * If the run is aborted - the processor or the ListIdentifiers stream throws -
+ * the records fetched but not processed yet, and those whose fetch is still
+ * under way, are handed to the {@link RecordDiscarder}, to delete their temp
+ * files.
+ *
+ * @param <R> the fetched record (a {@link FastGetRecord}, in a real harvest)
+ */
+public class HarvestPipeline<R> {
+    private static final Logger logger = Logger.getLogger(HarvestPipeline.class.getCanonicalName());
+
+    public interface RecordFetcher<R> {
+        R fetch(String identifier) throws Exception;
+    }
+
+    public interface RecordProcessor<R> {
+        /**
+         * @param header the ListIdentifiers header of the record
+         * @param record the fetched record, or null if the fetch failed
+         * @param fetchError the exception thrown by the fetcher, or null
+         */
+        void process(Header header, R record, Throwable fetchError);
+    }
+
+    public interface RecordDiscarder<R> {
+        void discard(R record);
+    }
+
+    private final int fetchThreads;
+    private final int windowSize;
+    private final RecordFetcher<R> fetcher;
+    private final RecordDiscarder<R> discarder;
+
+    private final AtomicLong identifiersListed = new AtomicLong();
+    private final AtomicLong recordsFetched = new AtomicLong();
+    private final AtomicLong fetchNanos = new AtomicLong();
+    private final AtomicLong recordsProcessed = new AtomicLong();
+    private final AtomicLong processNanos = new AtomicLong();
+
+    public HarvestPipeline(int fetchThreads, RecordFetcher<R> fetcher) {
+        this(fetchThreads, fetcher, record -> {});
+    }
+
+    public HarvestPipeline(int fetchThreads, RecordFetcher<R> fetcher, RecordDiscarder<R> discarder) {
+        this(fetchThreads, fetchThreads * 4, fetcher, discarder);
+    }
+
+    public HarvestPipeline(int fetchThreads, int windowSize, RecordFetcher<R> fetcher) {
+        this(fetchThreads, windowSize, fetcher, record -> {});
+    }
+
+    public HarvestPipeline(int fetchThreads, int windowSize, RecordFetcher<R> fetcher, RecordDiscarder<R> discarder) {
+        this.fetchThreads = Math.max(1, fetchThreads);
+        this.windowSize = Math.max(this.fetchThreads, windowSize);
+        this.fetcher = fetcher;
+        this.discarder = discarder;
+    }
+
+    public void run(Iterator<Header> headers, RecordProcessor<R> processor) {
+        if (fetchThreads == 1) {
+            while (headers.hasNext()) {
+                Header header = headers.next();
+                identifiersListed.incrementAndGet();
+                R record = null;
+                Throwable fetchError = null;
+                try {
+                    record = timedFetch(header.getIdentifier());
+                } catch (Throwable t) {
+                    fetchError = t;
+                }
+                timedProcess(processor, header, record, fetchError);
+            }
+            return;
+        }
+
+        logger.fine("running pipelined harvest with " + fetchThreads + " fetcher threads, window of " + windowSize);
+        ExecutorService executor = Executors.newFixedThreadPool(fetchThreads);
+        Deque<PendingRecord<R>> pending = new ArrayDeque<>(windowSize);
+        try {
+            while (headers.hasNext()) {
+                Header header = headers.next();
+                identifiersListed.incrementAndGet();
+                PendingRecord<R> next = new PendingRecord<>(header);
+                next.future = executor.submit(() -> fetchPending(next));
+                pending.add(next);
+                if (pending.size() >= windowSize) {
+                    processNext(pending, processor);
+                }
+            }
+            while (!pending.isEmpty()) {
+                processNext(pending, processor);
+            }
+        } finally {
+            executor.shutdownNow();
+            // (empty, unless the run was aborted)
+            discardPending(pending);
+        }
+    }
+
+    /**
+     * Fetches the record; if the run was aborted in the meantime, nothing 
+     * will process it, and it is discarded right away.
+     */
+    private R fetchPending(PendingRecord<R> pendingRecord) throws Exception {
+        R record = timedFetch(pendingRecord.header.getIdentifier());
+        if (!pendingRecord.fetched(record) && record != null) {
+            discard(record);
+        }
+        return record;
+    }
+
+    private void discardPending(Deque<PendingRecord<R>> pending) {
+        if (!pending.isEmpty()) {
+            logger.fine("harvest aborted; discarding " + pending.size() + " records fetched or being fetched");
+        }
+        for (PendingRecord<R> pendingRecord : pending) {
+            R record = pendingRecord.abandon();
+            if (record != null) {
+                discard(record);
+            }
+        }
+        pending.clear();
+    }
+
+    private void discard(R record) {
+        try {
+            discarder.discard(record);
+        } catch (RuntimeException re) {
+            logger.warning("failed to discard a harvested record: " + re.getMessage());
+        }
+    }
+
+    private void processNext(Deque<PendingRecord<R>> pending, RecordProcessor<R> processor) {
+        PendingRecord<R> next = pending.poll();
+        R record = null;
+        Throwable fetchError = null;
+        try {
+            record = next.future.get();
+        } catch (ExecutionException ee) {
+            fetchError = ee.getCause();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            fetchError = ie;
+        }
+        timedProcess(processor, next.header, record, fetchError);
+    }
+
+    private R timedFetch(String identifier) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return fetcher.fetch(identifier);
+        } finally {
+            fetchNanos.addAndGet(System.nanoTime() - start);
+            recordsFetched.incrementAndGet();
+        }
+    }
+
+    private void timedProcess(RecordProcessor<R> processor, Header header, R record, Throwable fetchError) {
+        long start = System.nanoTime();
+        try {
+            processor.process(header, record, fetchError);
+        } finally {
+            processNanos.addAndGet(System.nanoTime() - start);
+            recordsProcessed.incrementAndGet();
+        }
+    }
+
+    public int getFetchThreads() {
+        return fetchThreads;
+    }
+
+    public long getIdentifiersListed() {
+        return identifiersListed.get();
+    }
+
+    public long getRecordsFetched() {
+        return recordsFetched.get();
+    }
+
+    /**
+     * @return time spent in GetRecord calls, summed over all the fetcher threads
+     */
+    public long getFetchTimeMillis() {
+        return fetchNanos.get() / 1000000L;
+    }
+
+    public long getRecordsProcessed() {
+        return recordsProcessed.get();
+    }
+
+    public long getProcessTimeMillis() {
+        return processNanos.get() / 1000000L;
+    }
+
+    /**
+     * A record in the window. Once the run is aborted, the record is 
+     * discarded exactly once: by the run, if it was fetched already, or else 
+     * by its fetcher thread.
+     */
+    private static final class PendingRecord<R> {
+        final Header header;
+        Future<R> future;
+        private R record;
+        private boolean abandoned = false;
+
+        PendingRecord(Header header) {
+            this.header = header;
+        }
+
+        /**
+         * @return false if the record was abandoned, and is to be discarded
+         */
+        synchronized boolean fetched(R record) {
+            if (abandoned) {
+                return false;
+            }
+            this.record = record;
+            return true;
+        }
+
+        /**
+         * @return the record, if it was fetched already
+         */
+        synchronized R abandon() {
+            abandoned = true;
+            R fetchedRecord = record;
+            record = null;
+            return fetchedRecord;
+        }
+    }
+}
@@ -35,13 +35,13 @@ import org.apache.commons.lang3.mutable.MutableBoolean;
 import org.apache.commons.lang3.mutable.MutableLong;
 import org.xml.sax.SAXException;
 
-import com.lyncode.xoai.model.oaipmh.Header;
 import edu.harvard.iq.dataverse.EjbDataverseEngine;
 import edu.harvard.iq.dataverse.api.imports.ImportServiceBean;
 import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.harvest.client.oai.OaiHandler;
 import edu.harvard.iq.dataverse.harvest.client.oai.OaiHandlerException;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
+import edu.harvard.iq.dataverse.util.SystemConfig;
 import java.io.FileWriter;
 import java.io.PrintWriter;
 import javax.persistence.EntityManager;
@@ -73,6 +73,8 @@ public class HarvesterServiceBean {
     EjbDataverseEngine engineService;
     @EJB
     IndexServiceBean indexService;
+    @EJB
+    SystemConfig systemConfig;
     
     private static final Logger logger = Logger.getLogger("edu.harvard.iq.dataverse.harvest.client.HarvesterServiceBean");
     private static final SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
@@ -159,6 +161,10 @@ public class HarvesterServiceBean {
         List<String> failedIdentifiers = new ArrayList<String>();
         List<String> deletedIdentifiers = new ArrayList<String>();
         
+        // (transient; only used to carry the stage counters over to the 
+        // ClientHarvestRun record of this harvest, in setHarvestSuccess())
+        ClientHarvestRun stageCounters = new ClientHarvestRun();
+        
         Date harvestStartTime = new Date();
         
         try {
@@ -174,12 +180,12 @@ public class HarvesterServiceBean {
 
                
                 if (harvestingClientConfig.isOai()) {
-                    harvestedDatasetIds = harvestOAI(dataverseRequest, harvestingClientConfig, hdLogger, importCleanupLog, harvestErrorOccurred, failedIdentifiers, deletedIdentifiers, harvestedDatasetIdsThisBatch);
+                    harvestedDatasetIds = harvestOAI(dataverseRequest, harvestingClientConfig, hdLogger, importCleanupLog, harvestErrorOccurred, failedIdentifiers, deletedIdentifiers, harvestedDatasetIdsThisBatch, stageCounters);
 
                 } else {
                     throw new IOException("Unsupported harvest type");
                 }
-               harvestingClientService.setHarvestSuccess(harvestingClientId, new Date(), harvestedDatasetIds.size(), failedIdentifiers.size(), deletedIdentifiers.size());
+               harvestingClientService.setHarvestSuccess(harvestingClientId, new Date(), harvestedDatasetIds.size(), failedIdentifiers.size(), deletedIdentifiers.size(), stageCounters);
                hdLogger.log(Level.INFO, "COMPLETED HARVEST, server=" + harvestingClientConfig.getArchiveUrl() + ", metadataPrefix=" + harvestingClientConfig.getMetadataPrefix());
                hdLogger.log(Level.INFO, "Datasets created/updated: " + harvestedDatasetIds.size() + ", datasets deleted: " + deletedIdentifiers.size() + ", datasets failed: " + failedIdentifiers.size());
 
@@ -228,8 +234,9 @@ public class HarvesterServiceBean {
      * @param hdLogger          custom logger (specific to this harvesting run)
      * @param harvestErrorOccurred  have we encountered any errors during harvest?
      * @param failedIdentifiers     Study Identifiers for failed "GetRecord" requests
+     * @param stageCounters     receives the per-stage (list/fetch/import) counters of this run
      */
-    private List<Long> harvestOAI(DataverseRequest dataverseRequest, HarvestingClient harvestingClient, Logger hdLogger, PrintWriter importCleanupLog, MutableBoolean harvestErrorOccurred, List<String> failedIdentifiers, List<String> deletedIdentifiers, List<Long> harvestedDatasetIdsThisBatch)
+    private List<Long> harvestOAI(DataverseRequest dataverseRequest, HarvestingClient harvestingClient, Logger hdLogger, PrintWriter importCleanupLog, MutableBoolean harvestErrorOccurred, List<String> failedIdentifiers, List<String> deletedIdentifiers, List<Long> harvestedDatasetIdsThisBatch, ClientHarvestRun stageCounters)
             throws IOException, ParserConfigurationException, SAXException, TransformerException {
 
         logBeginOaiHarvest(hdLogger, harvestingClient);
@@ -249,10 +256,17 @@ public class HarvesterServiceBean {
             throw new IOException(errorMessage);
         }
                 
+        // (the records fetched ahead are dropped, with their temp files, if
+        // the harvest is aborted before they are imported)
+        HarvestPipeline<FastGetRecord> pipeline = new HarvestPipeline<>(systemConfig.getHarvestingClientFetchThreads(), oaiHandler::runGetRecord, record -> {
+            if (record.getMetadataFile() != null) {
+                record.getMetadataFile().delete();
+            }
+        });
+
         try {
-            for (Iterator<Header> idIter = oaiHandler.runListIdentifiers(); idIter.hasNext();) {
+            pipeline.run(oaiHandler.runListIdentifiers(), (h, record, fetchError) -> {
 
-                Header h = idIter.next();
                 String identifier = h.getIdentifier();
                 Date dateStamp = h.getDatestamp();
                 
@@ -260,18 +274,13 @@ public class HarvesterServiceBean {
 
                 MutableBoolean getRecordErrorOccurred = new MutableBoolean(false);
 
-                // Retrieve and process this record with a separate GetRecord call:
-                Long datasetId = processRecord(dataverseRequest, hdLogger, importCleanupLog, oaiHandler, identifier, getRecordErrorOccurred, processedSizeThisBatch, deletedIdentifiers, dateStamp);
+                // Process this record, retrieved with a separate GetRecord call:
+                Long datasetId = processRecord(dataverseRequest, hdLogger, importCleanupLog, oaiHandler, identifier, record, fetchError, getRecordErrorOccurred, processedSizeThisBatch, deletedIdentifiers, dateStamp);
                 
                 hdLogger.info("Total content processed in this batch so far: "+processedSizeThisBatch);
                 if (datasetId != null) {
                     harvestedDatasetIds.add(datasetId);
-                    
-                    if ( harvestedDatasetIdsThisBatch == null ) {
-                        harvestedDatasetIdsThisBatch = new ArrayList<Long>();
-                    }
                     harvestedDatasetIdsThisBatch.add(datasetId);
-                    
                 }
                 
                 if (getRecordErrorOccurred.booleanValue() == true) {
@@ -291,12 +300,20 @@ public class HarvesterServiceBean {
 
 
                     processedSizeThisBatch.setValue(0L);
-                    harvestedDatasetIdsThisBatch = null;
+                    harvestedDatasetIdsThisBatch.clear();
                 }
 
-            }
+            });
         } catch (OaiHandlerException e) {
             throw new IOException("Failed to run ListIdentifiers: " + e.getMessage());
+        } finally {
+            stageCounters.setListedIdentifierCount(pipeline.getIdentifiersListed());
+            stageCounters.setFetchTime(pipeline.getFetchTimeMillis());
+            stageCounters.setImportTime(pipeline.getProcessTimeMillis());
+            stageCounters.setFetchThreads(pipeline.getFetchThreads());
+            hdLogger.log(Level.INFO, "Identifiers listed: " + pipeline.getIdentifiersListed() 
+                    + "; GetRecord: " + pipeline.getRecordsFetched() + " records in " + pipeline.getFetchTimeMillis() + " ms (" + pipeline.getFetchThreads() + " fetcher threads)"
+                    + "; import: " + pipeline.getRecordsProcessed() + " records in " + pipeline.getProcessTimeMillis() + " ms");
         }
 
         logCompletedOaiHarvest(hdLogger, harvestingClient);
@@ -307,14 +324,18 @@ public class HarvesterServiceBean {
     
     
     
-    private Long processRecord(DataverseRequest dataverseRequest, Logger hdLogger, PrintWriter importCleanupLog, OaiHandler oaiHandler, String identifier, MutableBoolean recordErrorOccurred, MutableLong processedSizeThisBatch, List<String> deletedIdentifiers, Date dateStamp) {
+    private Long processRecord(DataverseRequest dataverseRequest, Logger hdLogger, PrintWriter importCleanupLog, OaiHandler oaiHandler, String identifier, FastGetRecord record, Throwable fetchError, MutableBoolean recordErrorOccurred, MutableLong processedSizeThisBatch, List<String> deletedIdentifiers, Date dateStamp) {
         String errMessage = null;
         Dataset harvestedDataset = null;
         logGetRecord(hdLogger, oaiHandler, identifier);
         File tempFile = null;
         
         try {  
-            FastGetRecord record = oaiHandler.runGetRecord(identifier);
+            // The GetRecord call itself has already been made, possibly on 
+            // one of the HarvestPipeline fetcher threads: 
+            if (fetchError != null) {
+                throw fetchError;
+            }
             errMessage = record.getErrorMessage();
 
             if (errMessage != null) {
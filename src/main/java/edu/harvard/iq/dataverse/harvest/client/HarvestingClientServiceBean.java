@@ -166,7 +166,7 @@ public class HarvestingClientServiceBean implements java.io.Serializable {
     }
     
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
-    public void setHarvestSuccess(Long hcId, Date currentTime, int harvestedCount, int failedCount, int deletedCount) {
+    public void setHarvestSuccess(Long hcId, Date currentTime, int harvestedCount, int failedCount, int deletedCount, ClientHarvestRun stageCounters) {
         HarvestingClient harvestingClient = em.find(HarvestingClient.class, hcId);
         if (harvestingClient == null) {
             return;
@@ -184,6 +184,12 @@ public class HarvestingClientServiceBean implements java.io.Serializable {
             currentRun.setHarvestedDatasetCount(new Long(harvestedCount));
             currentRun.setFailedDatasetCount(new Long(failedCount));
             currentRun.setDeletedDatasetCount(new Long(deletedCount));
+            if (stageCounters != null) {
+                currentRun.setListedIdentifierCount(stageCounters.getListedIdentifierCount());
+                currentRun.setFetchTime(stageCounters.getFetchTime());
+                currentRun.setImportTime(stageCounters.getImportTime());
+                currentRun.setFetchThreads(stageCounters.getFetchThreads());
+            }
         }
     }
 
@@ -295,7 +295,60 @@ public class OAIRecordServiceBean implements java.io.Serializable {
     }
     
     public List<OAIRecord> findOaiRecordsBySetName(String setName, Date from, Date until, boolean excludeSet) {
+        TypedQuery<OAIRecord> query = createSetQuery(setName, from, until, excludeSet, null, null);
                 
+        try {
+            return query.getResultList();      
+        } catch (Exception ex) {
+            logger.fine("Caught exception; returning null.");
+            return null;
+        }
+    }
+    
+    /**
+     * Returns a single page of the records in the set, in globalId order. 
+     * When {@code afterGlobalId} is supplied, the page starts with the first
+     * record past that identifier (keyset pagination, served directly off the 
+     * index on setName/globalId); otherwise {@code offset} records are skipped.
+     * Only {@code maxResults} records are ever loaded, so the cost of a page 
+     * does not depend on the size of the set. 
+     */
+    public List<OAIRecord> findOaiRecordsPageBySetName(String setName, Date from, Date until, String afterGlobalId, int offset, int maxResults) {
+        TypedQuery<OAIRecord> query = createSetQuery(setName, from, until, false, afterGlobalId, null);
+        
+        if (afterGlobalId == null && offset > 0) {
+            query.setFirstResult(offset);
+        }
+        query.setMaxResults(maxResults);
+        
+        try {
+            return query.getResultList();      
+        } catch (Exception ex) {
+            logger.fine("Caught exception; returning null.");
+            return null;
+        }
+    }
+    
+    /**
+     * Finds the records for the supplied global ids that belong to sets 
+     * *other* than the one specified; i.e., the extra sets that need to be
+     * listed in the headers of the records on the current page. 
+     */
+    public List<OAIRecord> findOaiRecordsNotInThisSet(String setName, Date from, Date until, Collection<String> globalIds) {
+        if (globalIds == null || globalIds.isEmpty()) {
+            return null;
+        }
+        TypedQuery<OAIRecord> query = createSetQuery(setName, from, until, true, null, globalIds);
+        
+        try {
+            return query.getResultList();      
+        } catch (Exception ex) {
+            logger.fine("Caught exception; returning null.");
+            return null;
+        }
+    }
+    
+    private TypedQuery<OAIRecord> createSetQuery(String setName, Date from, Date until, boolean excludeSet, String afterGlobalId, Collection<String> globalIds) {
         if (setName == null) {
             setName = "";
         }
@@ -309,48 +362,49 @@ public class OAIRecordServiceBean implements java.io.Serializable {
         
         queryString += from != null ? " and h.lastUpdateTime >= :from" : "";
         queryString += until != null ? " and h.lastUpdateTime<=:until" : "";
+        queryString += afterGlobalId != null ? " and h.globalId > :afterGlobalId" : "";
+        queryString += globalIds != null ? " and h.globalId in :globalIds" : "";
         queryString += " order by h.globalId";
 
         logger.fine("Query: "+queryString);
         
         TypedQuery<OAIRecord> query = em.createQuery(queryString, OAIRecord.class);
-        if (setName != null) { query.setParameter("setName",setName); }
+        query.setParameter("setName",setName);
         if (from != null) { query.setParameter("from",from,TemporalType.TIMESTAMP); }
-        // In order to achieve inclusivity on the "until" matching, we need to do 
-        // the following (if the "until" parameter is supplied):
-        // 1) if the supplied "until" parameter has the time portion (and is not just
-        // a date), we'll increment it by one second. This is because the time stamps we 
-        // keep in the database also have fractional thousands of a second. 
-        // So, a record may be shown as "T17:35:45", but in the database it is 
-        // actually "17:35:45.356", so "<= 17:35:45" isn't going to work on this 
-        // time stamp! - So we want to try "<= 17:35:45" instead. 
-        // 2) if it's just a date, we'll increment it by a *full day*. Otherwise
-        // our database time stamp of 2016-10-23T17:35:45.123Z is NOT going to 
-        // match " <= 2016-10-23" - which is really going to be interpreted as 
-        // "2016-10-23T00:00:00.000". 
-        // -- L.A. 4.6
+        if (until != null) { query.setParameter("until",getInclusiveUntilDate(until),TemporalType.TIMESTAMP); }
+        if (afterGlobalId != null) { query.setParameter("afterGlobalId",afterGlobalId); }
+        if (globalIds != null) { query.setParameter("globalIds",globalIds); }
         
-        if (until != null) { 
-            // 24 * 3600 * 1000 = number of milliseconds in a day. 
-            
-            if (until.getTime() % (24 * 3600 * 1000) == 0) {
-                // The supplied "until" parameter is a date, with no time
-                // portion. 
-                logger.fine("plain date. incrementing by one day");
-                until.setTime(until.getTime()+(24 * 3600 * 1000));
-            } else {
-                logger.fine("date and time. incrementing by one second");
-                until.setTime(until.getTime()+1000);
-            }
-            query.setParameter("until",until,TemporalType.TIMESTAMP); 
-        }
-                
-        try {
-            return query.getResultList();      
-        } catch (Exception ex) {
-            logger.fine("Caught exception; returning null.");
-            return null;
-        }
+        return query;
+    }
+    
+    // In order to achieve inclusivity on the "until" matching, we need to do 
+    // the following (if the "until" parameter is supplied):
+    // 1) if the supplied "until" parameter has the time portion (and is not just
+    // a date), we'll increment it by one second. This is because the time stamps we 
+    // keep in the database also have fractional thousands of a second. 
+    // So, a record may be shown as "T17:35:45", but in the database it is 
+    // actually "17:35:45.356", so "<= 17:35:45" isn't going to work on this 
+    // time stamp! - So we want to try "<= 17:35:45" instead. 
+    // 2) if it's just a date, we'll increment it by a *full day*. Otherwise
+    // our database time stamp of 2016-10-23T17:35:45.123Z is NOT going to 
+    // match " <= 2016-10-23" - which is really going to be interpreted as 
+    // "2016-10-23T00:00:00.000". 
+    // -- L.A. 4.6
+    // (The adjusted value is returned as a new Date; the supplied one is 
+    // left alone, since the same "until" is reused for every page of the 
+    // list and for the extra sets lookup)
+    static Date getInclusiveUntilDate(Date until) {
+        // 24 * 3600 * 1000 = number of milliseconds in a day. 
+        
+        if (until.getTime() % (24 * 3600 * 1000) == 0) {
+            // The supplied "until" parameter is a date, with no time
+            // portion. 
+            logger.fine("plain date. incrementing by one day");
+            return new Date(until.getTime()+(24 * 3600 * 1000));
+        } 
+        logger.fine("date and time. incrementing by one second");
+        return new Date(until.getTime()+1000);
     }
     
     // This method is to only get the records NOT marked as "deleted":
@@ -18,10 +18,12 @@ import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetServiceBean;
 import edu.harvard.iq.dataverse.harvest.server.OAIRecord;
 import edu.harvard.iq.dataverse.harvest.server.OAIRecordServiceBean;
+import edu.harvard.iq.dataverse.util.LruCache;
 import edu.harvard.iq.dataverse.util.StringUtil;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Objects;
 import java.util.logging.Logger;
 
 /**
@@ -42,9 +44,19 @@ public class XitemRepository implements ItemRepository {
         super();
         this.recordService = recordService;
         this.datasetService = datasetService;
+        this.pageCursors.setMaxSize(1024);
     }
     
     private List<Xitem> list = new ArrayList<Xitem>();
+    
+    // The XOAI resumption tokens only carry the numeric offset (plus the 
+    // set and from/until); so we remember the last global id served on each 
+    // page, keyed by the list parameters and the offset of the *next* page. 
+    // When the harvester comes back with that token we can continue with a 
+    // keyset query ("globalId > last"), instead of scanning the set from the 
+    // beginning. If the cursor isn't in the cache (evicted, or the token was 
+    // issued by another node) we fall back on a bounded offset query. 
+    private final LruCache<PageCursorKey, String> pageCursors = new LruCache<>();
 
 
     @Override
@@ -118,24 +130,22 @@ public class XitemRepository implements ItemRepository {
                 + ", from=" + from
                 + ", until=" + until);
 
-        List<OAIRecord> oaiRecords = recordService.findOaiRecordsBySetName(setSpec, from, until);
-
-        logger.fine("total " + oaiRecords.size() + " returned");
+        List<OAIRecord> oaiRecords = findPage(setSpec, from, until, offset, length);
 
         List<ItemIdentifier> xoaiItems = new ArrayList<>();
         if (oaiRecords != null && !oaiRecords.isEmpty()) {
 
-            for (int i = offset; i < offset + length && i < oaiRecords.size(); i++) {
+            for (int i = 0; i < length && i < oaiRecords.size(); i++) {
                 OAIRecord record = oaiRecords.get(i);
                 xoaiItems.add(new Xitem(record));
             }
             
-            // Run a second pass, looking for records in this set that occur
+            // Run a second pass, looking for records on this page that occur
             // in *other* sets. Then we'll add these multiple sets to the 
             // formatted output in the header:
             addExtraSets(xoaiItems, setSpec, from, until);
             
-            boolean hasMore = offset + length < oaiRecords.size();
+            boolean hasMore = oaiRecords.size() > length;
             ListItemIdentifiersResult result = new ListItemIdentifiersResult(hasMore, xoaiItems);
             logger.fine("returning result with " + xoaiItems.size() + " items.");
             return result;
@@ -187,14 +197,12 @@ public class XitemRepository implements ItemRepository {
                 + ", from=" + from
                 + ", until=" + until);
 
-        List<OAIRecord> oaiRecords = recordService.findOaiRecordsBySetName(setSpec, from, until);
-
-        logger.fine("total " + oaiRecords.size() + " returned");
+        List<OAIRecord> oaiRecords = findPage(setSpec, from, until, offset, length);
 
         List<Item> xoaiItems = new ArrayList<>();
         if (oaiRecords != null && !oaiRecords.isEmpty()) {
 
-            for (int i = offset; i < offset + length && i < oaiRecords.size(); i++) {
+            for (int i = 0; i < length && i < oaiRecords.size(); i++) {
                 OAIRecord oaiRecord = oaiRecords.get(i);
                 Dataset dataset = datasetService.findByGlobalId(oaiRecord.getGlobalId());
                 if (dataset != null) {
@@ -205,7 +213,7 @@ public class XitemRepository implements ItemRepository {
             
             addExtraSets(xoaiItems, setSpec, from, until);
             
-            boolean hasMore = offset + length < oaiRecords.size();
+            boolean hasMore = oaiRecords.size() > length;
             ListItemsResults result = new ListItemsResults(hasMore, xoaiItems);
             logger.fine("returning result with " + xoaiItems.size() + " items.");
             return result;
@@ -214,11 +222,37 @@ public class XitemRepository implements ItemRepository {
         return new ListItemsResults(false, xoaiItems);
     }
     
+    /**
+     * Looks up one page of records, plus one extra record that is only used 
+     * to determine whether there are more pages to follow. 
+     */
+    private List<OAIRecord> findPage(String setSpec, Date from, Date until, int offset, int length) {
+        String afterGlobalId = offset > 0 ? pageCursors.get(new PageCursorKey(setSpec, from, until, offset)) : null;
+        logger.fine(afterGlobalId != null ? "resuming after " + afterGlobalId : "no cursor; using offset " + offset);
+
+        List<OAIRecord> oaiRecords = recordService.findOaiRecordsPageBySetName(setSpec, from, until, afterGlobalId, offset, length + 1);
+
+        if (oaiRecords != null && oaiRecords.size() > length) {
+            pageCursors.put(new PageCursorKey(setSpec, from, until, offset + length), oaiRecords.get(length - 1).getGlobalId());
+        }
+        
+        return oaiRecords;
+    }
+    
     private void addExtraSets(Object xoaiItemsList, String setSpec, Date from, Date until) {
         
         List<Xitem> xoaiItems = (List<Xitem>)xoaiItemsList;
         
-        List<OAIRecord> oaiRecords = recordService.findOaiRecordsNotInThisSet(setSpec, from, until);
+        if (xoaiItems.isEmpty()) {
+            return;
+        }
+        
+        List<String> globalIds = new ArrayList<>(xoaiItems.size());
+        for (Xitem xitem : xoaiItems) {
+            globalIds.add(xitem.getIdentifier());
+        }
+        
+        List<OAIRecord> oaiRecords = recordService.findOaiRecordsNotInThisSet(setSpec, from, until, globalIds);
         
         if (oaiRecords == null || oaiRecords.isEmpty()) {
             return;
@@ -245,4 +279,38 @@ public class XitemRepository implements ItemRepository {
         }
                 
     }
+    
+    private static final class PageCursorKey {
+        private final String setSpec;
+        private final Long from;
+        private final Long until;
+        private final int offset;
+
+        PageCursorKey(String setSpec, Date from, Date until, int offset) {
+            this.setSpec = setSpec;
+            this.from = from == null ? null : from.getTime();
+            this.until = until == null ? null : until.getTime();
+            this.offset = offset;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PageCursorKey)) {
+                return false;
+            }
+            PageCursorKey other = (PageCursorKey) o;
+            return offset == other.offset
+                    && Objects.equals(setSpec, other.setSpec)
+                    && Objects.equals(from, other.from)
+                    && Objects.equals(until, other.until);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(setSpec, from, until, offset);
+        }
+    }
 }
@@ -0,0 +1,70 @@
+package edu.harvard.iq.dataverse.ingest;
+
+/**
+ * Decides when the next file of a lane of the {@link IngestScheduler} may
+ * start being ingested, while other files are still being ingested: there
+ * is a limit on the number of files ingested at the same time, and a budget
+ * for the sum of their sizes (the memory an ingest needs grows with the size
+ * of the file). A file that doesn't fit in the budget on its own is still
+ * ingested - but alone, once all the others have finished.
+ *
+ * Not thread-safe; the scheduler only uses it under its lock.
+ */
+class IngestConcurrencyBudget {
+
+    private int maxFiles;
+    private long maxBytes;
+
+    private int files = 0;
+    private long bytes = 0;
+
+    IngestConcurrencyBudget(int maxFiles, long maxBytes) {
+        setLimits(maxFiles, maxBytes);
+    }
+
+    /**
+     * Changes the limits; the files already started are not affected.
+     */
+    void setLimits(int maxFiles, long maxBytes) {
+        this.maxFiles = Math.max(1, maxFiles);
+        this.maxBytes = maxBytes;
+    }
+
+    int getMaxFiles() {
+        return maxFiles;
+    }
+
+    long getMaxBytes() {
+        return maxBytes;
+    }
+
+    boolean canStart(long fileSize) {
+        if (files == 0) {
+            return true;
+        }
+        return files < maxFiles && bytes + size(fileSize) <= maxBytes;
+    }
+
+    void started(long fileSize) {
+        files++;
+        bytes += size(fileSize);
+    }
+
+    void finished(long fileSize) {
+        files--;
+        bytes -= size(fileSize);
+    }
+
+    int getFilesInProgress() {
+        return files;
+    }
+
+    long getBytesInProgress() {
+        return bytes;
+    }
+
+    private static long size(long fileSize) {
+        // (the size of a file that hasn't been measured is -1)
+        return Math.max(0, fileSize);
+    }
+}
@@ -0,0 +1,185 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * The tabular files of one {@link IngestMessage} (one upload), while they
+ * are being ingested by the {@link IngestScheduler}. Every file is a
+ * {@link Task} of its own, that may be ingested at any time, in either lane
+ * of the scheduler; the outcomes are collected here, in the order of the
+ * message, for the one notification sent once the last file is done.
+ *
+ * The outcomes are only changed by the scheduler, under its lock; the
+ * {@link IngestMessageBean} processing the message waits for the last of them
+ * with {@link #awaitDone()}.
+ */
+public class IngestJob {
+
+    private final Long authenticatedUserId;
+    private final Long lastFileId;
+    private final List<Task> tasks = new ArrayList<>();
+    private final List<String> ingestedFiles = new ArrayList<>();
+
+    private int remaining = 0;
+    private boolean ingestWithErrors = false;
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    /**
+     * @param lastFileId the id of the last file of the message; the Ingest
+     * lock is removed from the dataset of that file (all the files of a
+     * message belong to the same dataset)
+     */
+    public IngestJob(Long authenticatedUserId, Long lastFileId) {
+        this.authenticatedUserId = authenticatedUserId;
+        this.lastFileId = lastFileId;
+    }
+
+    public Task addTask(Long fileId, String fileName, long fileSize, String contentType) {
+        Task task = new Task(this, tasks.size(), fileId, fileName, fileSize, contentType);
+        tasks.add(task);
+        ingestedFiles.add(null);
+        remaining++;
+        return task;
+    }
+
+    public List<Task> getTasks() {
+        return Collections.unmodifiableList(tasks);
+    }
+
+    public Long getAuthenticatedUserId() {
+        return authenticatedUserId;
+    }
+
+    public Long getLastFileId() {
+        return lastFileId;
+    }
+
+    public boolean isIngestWithErrors() {
+        return ingestWithErrors;
+    }
+
+    /**
+     * Records the outcome of a file.
+     *
+     * @param ingestedFile the entry of the file in the list of the
+     * notification, or null if the file is not to be listed
+     * @return true if that was the last file of the job
+     */
+    boolean finished(Task task, String ingestedFile, boolean withErrors) {
+        ingestedFiles.set(task.getIndex(), ingestedFile);
+        if (withErrors) {
+            ingestWithErrors = true;
+        }
+        remaining--;
+        if (remaining == 0) {
+            done.countDown();
+        }
+        return remaining == 0;
+    }
+
+    /**
+     * Waits until every file of the job has been ingested, or has failed.
+     */
+    public void awaitDone() throws InterruptedException {
+        if (!tasks.isEmpty()) {
+            done.await();
+        }
+    }
+
+    /**
+     * @return the list of the files, with the outcome of their ingest, for
+     * the notification
+     */
+    public String getIngestedFilesList() {
+        StringBuilder sbIngestedFiles = new StringBuilder();
+        sbIngestedFiles.append("<ul>");
+        for (String ingestedFile : ingestedFiles) {
+            if (ingestedFile != null) {
+                sbIngestedFiles.append(ingestedFile);
+            }
+        }
+        sbIngestedFiles.append("</ul>");
+        return sbIngestedFiles.toString();
+    }
+
+    public static class Task {
+
+        private final IngestJob job;
+        private final int index;
+        private final Long fileId;
+        private final String fileName;
+        private final long fileSize;
+        private final String contentType;
+
+        private String lane;
+        private long queuedTime;
+        private long startTime;
+
+        Task(IngestJob job, int index, Long fileId, String fileName, long fileSize, String contentType) {
+            this.job = job;
+            this.index = index;
+            this.fileId = fileId;
+            this.fileName = fileName;
+            this.fileSize = fileSize;
+            this.contentType = contentType;
+        }
+
+        public IngestJob getJob() {
+            return job;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public Long getFileId() {
+            return fileId;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public long getFileSize() {
+            return fileSize;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public Long getUserId() {
+            return job.getAuthenticatedUserId();
+        }
+
+        /**
+         * @return the lane of the scheduler the file was queued in
+         */
+        public String getLane() {
+            return lane;
+        }
+
+        void setLane(String lane) {
+            this.lane = lane;
+        }
+
+        public long getQueuedTime() {
+            return queuedTime;
+        }
+
+        void setQueuedTime(long queuedTime) {
+            this.queuedTime = queuedTime;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        void setStartTime(long startTime) {
+            this.startTime = startTime;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObjectBuilder;
+
+/**
+ * One lane of the {@link IngestScheduler}: the files waiting to be ingested,
+ * queued per user, and the files being ingested, within the limits of an
+ * {@link IngestConcurrencyBudget}.
+ *
+ * The next file is taken from the user who has the fewest files being
+ * ingested in the lane (and, among those, from the user whose next file has
+ * been waiting the longest), so that a user who uploads hundreds of files
+ * doesn't keep everybody else waiting; the files of a user are ingested in
+ * the order they were queued.
+ *
+ * Not thread-safe; the scheduler only uses it under its lock.
+ */
+class IngestLane {
+
+    private final String name;
+    private final IngestConcurrencyBudget budget;
+
+    private final Map<Long, Deque<IngestJob.Task>> waitingByUser = new LinkedHashMap<>();
+    private final Map<Long, Integer> runningByUser = new HashMap<>();
+    private int waiting = 0;
+    private long waitingBytes = 0;
+
+    // metrics, since the server was started:
+    private long started = 0;
+    private long finished = 0;
+    private long totalWaitMillis = 0;
+    private long maxWaitMillis = 0;
+    private long totalIngestMillis = 0;
+
+    IngestLane(String name, int maxFiles, long maxBytes) {
+        this.name = name;
+        this.budget = new IngestConcurrencyBudget(maxFiles, maxBytes);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    void setLimits(int maxFiles, long maxBytes) {
+        budget.setLimits(maxFiles, maxBytes);
+    }
+
+    void add(IngestJob.Task task, long now) {
+        task.setQueuedTime(now);
+        waitingByUser.computeIfAbsent(task.getUserId(), userId -> new ArrayDeque<>()).add(task);
+        waiting++;
+        waitingBytes += Math.max(0, task.getFileSize());
+    }
+
+    /**
+     * Takes the next file to ingest off the queue, if the limits of the
+     * lane allow it to start now; the file then counts as running until
+     * {@link #finished(IngestJob.Task, long)} is called.
+     *
+     * @return the file, or null if none can start
+     */
+    IngestJob.Task next(long now) {
+        IngestJob.Task next = null;
+        int nextUserRunning = 0;
+        for (Map.Entry<Long, Deque<IngestJob.Task>> entry : waitingByUser.entrySet()) {
+            IngestJob.Task head = entry.getValue().peek();
+            int userRunning = runningByUser.getOrDefault(entry.getKey(), 0);
+            if (next == null || userRunning < nextUserRunning
+                    || userRunning == nextUserRunning && head.getQueuedTime() < next.getQueuedTime()) {
+                next = head;
+                nextUserRunning = userRunning;
+            }
+        }
+        // (the file chosen waits for room in the lane, rather than letting
+        // smaller files of other users overtake it indefinitely)
+        if (next == null || !budget.canStart(next.getFileSize())) {
+            return null;
+        }
+
+        Deque<IngestJob.Task> userQueue = waitingByUser.get(next.getUserId());
+        userQueue.poll();
+        if (userQueue.isEmpty()) {
+            waitingByUser.remove(next.getUserId());
+        }
+        waiting--;
+        waitingBytes -= Math.max(0, next.getFileSize());
+
+        budget.started(next.getFileSize());
+        runningByUser.merge(next.getUserId(), 1, Integer::sum);
+        next.setStartTime(now);
+
+        long waitMillis = now - next.getQueuedTime();
+        started++;
+        totalWaitMillis += waitMillis;
+        maxWaitMillis = Math.max(maxWaitMillis, waitMillis);
+        return next;
+    }
+
+    void finished(IngestJob.Task task, long now) {
+        budget.finished(task.getFileSize());
+        if (runningByUser.merge(task.getUserId(), -1, Integer::sum) <= 0) {
+            runningByUser.remove(task.getUserId());
+        }
+        finished++;
+        totalIngestMillis += now - task.getStartTime();
+    }
+
+    int getWaiting() {
+        return waiting;
+    }
+
+    int getRunning() {
+        return budget.getFilesInProgress();
+    }
+
+    JsonObjectBuilder toJson(long now) {
+        long oldestWaitMillis = 0;
+        JsonArrayBuilder users = Json.createArrayBuilder();
+        Map<Long, Integer> waitingCounts = new LinkedHashMap<>();
+        for (Map.Entry<Long, Deque<IngestJob.Task>> entry : waitingByUser.entrySet()) {
+            waitingCounts.put(entry.getKey(), entry.getValue().size());
+            oldestWaitMillis = Math.max(oldestWaitMillis, now - entry.getValue().peek().getQueuedTime());
+        }
+        for (Long userId : runningByUser.keySet()) {
+            waitingCounts.putIfAbsent(userId, 0);
+        }
+        for (Map.Entry<Long, Integer> entry : waitingCounts.entrySet()) {
+            JsonObjectBuilder user = Json.createObjectBuilder();
+            if (entry.getKey() != null) {
+                user.add("userId", entry.getKey());
+            }
+            users.add(user
+                    .add("waiting", entry.getValue())
+                    .add("running", runningByUser.getOrDefault(entry.getKey(), 0)));
+        }
+
+        return Json.createObjectBuilder()
+                .add("maxRunning", budget.getMaxFiles())
+                .add("maxRunningBytes", budget.getMaxBytes())
+                .add("running", budget.getFilesInProgress())
+                .add("runningBytes", budget.getBytesInProgress())
+                .add("waiting", waiting)
+                .add("waitingBytes", waitingBytes)
+                .add("oldestWaitMillis", oldestWaitMillis)
+                .add("started", started)
+                .add("finished", finished)
+                .add("averageWaitMillis", started > 0 ? totalWaitMillis / started : 0)
+                .add("maxWaitMillis", maxWaitMillis)
+                .add("averageIngestMillis", finished > 0 ? totalIngestMillis / finished : 0)
+                .add("users", users);
+    }
+}
@@ -21,15 +21,12 @@
 package edu.harvard.iq.dataverse.ingest;
 
 import edu.harvard.iq.dataverse.*;
-import edu.harvard.iq.dataverse.authorization.AuthenticationServiceBean;
-import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 
-import java.sql.Timestamp;
-import java.time.Instant;
-import java.util.Iterator;
+import java.util.List;
 import java.util.logging.Logger;
 import javax.ejb.ActivationConfigProperty;
 import javax.ejb.EJB;
+import javax.ejb.EJBException;
 import javax.ejb.MessageDriven;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
@@ -54,11 +51,9 @@ import javax.jms.ObjectMessage;
 )
 public class IngestMessageBean implements MessageListener {
     private static final Logger logger = Logger.getLogger(IngestMessageBean.class.getCanonicalName());
-    @EJB DatasetServiceBean datasetService;
     @EJB DataFileServiceBean datafileService;
-    @EJB IngestServiceBean ingestService;
-    @EJB UserNotificationServiceBean userNotificationService;
-    @EJB AuthenticationServiceBean authenticationServiceBean;
+    @EJB IngestWorkerServiceBean ingestWorker;
+    @EJB IngestScheduler ingestScheduler;
 
    
     public IngestMessageBean() {
@@ -68,122 +63,44 @@ public class IngestMessageBean implements MessageListener {
     public void onMessage(Message message) {
         IngestMessage ingestMessage = null;
 
-        Long datafile_id = null;
-        AuthenticatedUser authenticatedUser = null;
-        
         try {
             ObjectMessage om = (ObjectMessage) message;
             ingestMessage = (IngestMessage) om.getObject();
 
-            authenticatedUser = authenticationServiceBean.findByID(ingestMessage.getAuthenticatedUserId());
-
-            Iterator iter = ingestMessage.getFileIds().iterator();
-            datafile_id = null;
-
-            boolean ingestWithErrors = false;
-
-            StringBuilder sbIngestedFiles = new StringBuilder();
-            sbIngestedFiles.append("<ul>");
-            
-            while (iter.hasNext()) {
-                datafile_id = (Long) iter.next();
-
-                logger.fine("Start ingest job;");
-                try {
-
-                    DataFile datafile = datafileService.find(datafile_id);
-
-                    if (ingestService.ingestAsTabular(datafile_id)) {
-                        //Thread.sleep(10000);
-                        logger.fine("Finished ingest job;");
-                        sbIngestedFiles.append(String.format("<li>%s</li>", datafile.getCurrentName()));
-                    } else {
-                        logger.warning("Error occurred during ingest job for file id " + datafile_id + "!");
-                        sbIngestedFiles.append(String.format("<li>%s (Error)</li>", datafile.getCurrentName()));
-                        ingestWithErrors = true;
-                    }
-
-                } catch (Exception ex) {
-                    //ex.printStackTrace();
-                    // TODO: 
-                    // this solution is working - but it would be cleaner to instead
-                    // make sure that all the exceptions are interrupted and appropriate
-                    // action taken still on the ingest service side. 
-                    // -- L.A. Aug. 13 2014; 
-                    logger.info("Unknown exception occurred  during ingest (supressed stack trace); re-setting ingest status.");
-                    if (datafile_id != null) {
-                        logger.fine("looking up datafile for id " + datafile_id);
-                        DataFile datafile = datafileService.find(datafile_id);
-                        if (datafile != null) {
-
-                            ingestWithErrors = true;
-
-                            sbIngestedFiles.append(String.format("<li>%s (Error)</li>", datafile.getCurrentName()));
-
-                            datafile.SetIngestProblem();
-                            IngestReport errorReport = new IngestReport();
-                            errorReport.setFailure();
-                            if (ex.getMessage() != null) {
-                                errorReport.setReport("Ingest succeeded, but failed to save the ingested tabular data in the database: " + ex.getMessage());
-                            } else {
-                                errorReport.setReport("Ingest succeeded, but failed to save the ingested tabular data in the database; no further information is available");
-                            }
-                            errorReport.setDataFile(datafile);
-                            datafile.setIngestReport(errorReport);
-                            datafile.setDataTables(null);
-
-                            logger.info("trying to save datafile and the failed ingest report, id=" + datafile_id);
-                            datafile = datafileService.save(datafile);
-
-                            Dataset dataset = datafile.getOwner();
-                            if (dataset != null && dataset.getId() != null) {
-                                //logger.info("attempting to remove dataset lock for dataset " + dataset.getId());
-                                //datasetService.removeDatasetLock(dataset.getId());
-                                ingestService.sendFailNotification(dataset.getId());
-                            }
-                        }
-                    }
+            // The files are handed over to the scheduler, which ingests them
+            // several at a time, in lanes by size, taking turns between the 
+            // users; the outcomes are collected in the order of the message. 
+            List<Long> fileIds = ingestMessage.getFileIds();
+            IngestJob job = new IngestJob(ingestMessage.getAuthenticatedUserId(), fileIds.isEmpty() ? null : fileIds.get(fileIds.size() - 1));
+            for (Long datafile_id : fileIds) {
+                DataFile datafile = datafileService.find(datafile_id);
+                if (datafile == null) {
+                    logger.warning("Skipping ingest of file id " + datafile_id + "; the file cannot be found.");
+                } else if (message.getJMSRedelivered() && datafile.isTabularData()) {
+                    // (ingested before the server processing the message 
+                    // stopped)
+                    logger.fine("Skipping ingest of file id " + datafile_id + "; it was ingested before the message was delivered again.");
+                } else {
+                    job.addTask(datafile_id, datafile.getCurrentName(), datafile.getFilesize(), datafile.getContentType());
                 }
             }
 
-            sbIngestedFiles.append("</ul>");
-
-            Long objectId = null;
-            
-            // Remove the dataset lock: 
-            // (note that the assumption here is that all of the datafiles
-            // packed into this IngestMessage belong to the same dataset) 
-            if (datafile_id != null) {
-                DataFile datafile = datafileService.find(datafile_id);
-                if (datafile != null) {
-                    Dataset dataset = datafile.getOwner();
-                    objectId = dataset.getId();
-                    if (dataset != null && dataset.getId() != null) {
-                        datasetService.removeDatasetLocks(dataset, DatasetLock.Reason.Ingest);
-                    }
-                } 
+            // The message is only acknowledged once this returns: waiting 
+            // until the last file is done keeps it on the JMS queue in the 
+            // meantime, to be delivered again if the server stops. 
+            if (!job.getTasks().isEmpty()) {
+                ingestScheduler.schedule(job);
+                try {
+                    job.awaitDone();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new EJBException("Interrupted while waiting for the ingest of file ids " + fileIds + "; the message will be delivered again");
+                }
             }
-
-            userNotificationService.sendNotification(
-                    authenticatedUser,
-                    Timestamp.from(Instant.now()),
-                    !ingestWithErrors ? UserNotification.Type.INGESTCOMPLETED : UserNotification.Type.INGESTCOMPLETEDWITHERRORS,
-                    objectId,
-                    sbIngestedFiles.toString(),
-                    true
-            );
-
+            ingestWorker.completeJob(job);
 
         } catch (JMSException ex) {
             ex.printStackTrace(); // error in getting object from message; can't send e-mail
-
-        } finally {
-            // when we're done, go ahead and remove the lock (not yet)
-            try {
-                //datasetService.removeDatasetLock( ingestMessage.getDatasetId() );
-            } catch (Exception ex) {
-                ex.printStackTrace(); // application was unable to remove the datasetLock
-            }
         }
     }
  
@@ -0,0 +1,158 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import edu.harvard.iq.dataverse.util.FileUtil;
+import edu.harvard.iq.dataverse.util.SystemConfig;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+import javax.ejb.EJB;
+import javax.ejb.Lock;
+import javax.ejb.LockType;
+import javax.ejb.Singleton;
+import javax.inject.Named;
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+
+/**
+ * Schedules the ingest of the tabular files of the messages taken off the
+ * ingest queue by {@link IngestMessageBean}, instead of ingesting them in
+ * the order the messages arrive. Files go into one of two lanes, by size
+ * (weighted by how much the format grows when it is ingested):
+ * <ul>
+ * <li>small files, up to :IngestParallelFiles of them at a time, within the
+ * :IngestParallelSizeBudget;</li>
+ * <li>large files, at most :IngestLargeFileConcurrency of them at a time,
+ * so that a few very large files cannot exhaust the heap - nor keep the
+ * small files of other uploads waiting.</li>
+ * </ul>
+ * Within a lane, the users take turns (see {@link IngestLane}). Every file is
+ * ingested by its own {@link IngestWorkerServiceBean} invocation, which
+ * reports back here when it is done; the queues, and their metrics, are
+ * kept in memory and reported by /api/admin/ingest/queue.
+ *
+ * The queues only hold the files of the messages being processed: a message
+ * stays on the JMS queue, unacknowledged, until the last of its files is
+ * done, so the files of a server that stops are delivered again - to it, or
+ * to another server of the cluster - as they were before the scheduler.
+ * The scheduler can therefore only reorder the files of as many messages as
+ * the message-driven bean pool processes at once.
+ */
+@Named
+@Singleton
+public class IngestScheduler {
+
+    private static final Logger logger = Logger.getLogger(IngestScheduler.class.getCanonicalName());
+
+    public static final String SMALL_LANE = "small";
+    public static final String LARGE_LANE = "large";
+
+    public static final long DEFAULT_LARGE_FILE_THRESHOLD = 1024L * 1024L * 1024L;
+    public static final int DEFAULT_LARGE_FILE_CONCURRENCY = 1;
+
+    @EJB
+    IngestWorkerServiceBean ingestWorker;
+    @EJB
+    SystemConfig systemConfig;
+
+    private final IngestLane smallLane = new IngestLane(SMALL_LANE, 4, Long.MAX_VALUE);
+    private final IngestLane largeLane = new IngestLane(LARGE_LANE, DEFAULT_LARGE_FILE_CONCURRENCY, Long.MAX_VALUE);
+    private final List<IngestLane> lanes = Arrays.asList(smallLane, largeLane);
+
+    private long largeFileThreshold = DEFAULT_LARGE_FILE_THRESHOLD;
+    private int activeJobs = 0;
+
+    /**
+     * Queues the files of a job, and starts as many of them as the lanes
+     * allow.
+     */
+    @Lock(LockType.WRITE)
+    public void schedule(IngestJob job) {
+        // (the settings are read again for every upload, so that they can be
+        // changed while files are being ingested)
+        smallLane.setLimits(systemConfig.getIngestParallelFiles(), systemConfig.getIngestParallelSizeBudget());
+        largeLane.setLimits(systemConfig.getIngestLargeFileConcurrency(), Long.MAX_VALUE);
+        largeFileThreshold = systemConfig.getIngestLargeFileThreshold();
+
+        long now = System.currentTimeMillis();
+        for (IngestJob.Task task : job.getTasks()) {
+            IngestLane lane = isLargeFile(task.getFileSize(), task.getContentType(), largeFileThreshold) ? largeLane : smallLane;
+            task.setLane(lane.getName());
+            lane.add(task, now);
+        }
+        activeJobs++;
+        logger.fine("scheduled ingest of " + job.getTasks().size() + " files; " + smallLane.getWaiting() + " small and " + largeLane.getWaiting() + " large files waiting");
+        dispatch(now);
+    }
+
+    /**
+     * Records the outcome of the ingest of a file, and starts the files
+     * waiting for the room it leaves in its lane.
+     *
+     * @return true if that was the last file of its job; the notification
+     * can then be sent, and the lock of the dataset removed
+     */
+    @Lock(LockType.WRITE)
+    public boolean finished(IngestJob.Task task, String ingestedFile, boolean withErrors) {
+        long now = System.currentTimeMillis();
+        (LARGE_LANE.equals(task.getLane()) ? largeLane : smallLane).finished(task, now);
+        boolean jobDone = task.getJob().finished(task, ingestedFile, withErrors);
+        if (jobDone) {
+            activeJobs--;
+        }
+        dispatch(now);
+        return jobDone;
+    }
+
+    private void dispatch(long now) {
+        for (IngestLane lane : lanes) {
+            IngestJob.Task task;
+            while ((task = lane.next(now)) != null) {
+                logger.fine("starting ingest of file id " + task.getFileId() + " in the " + lane.getName() + " lane, after " + (now - task.getQueuedTime()) + " ms in the queue");
+                ingestWorker.ingest(task);
+            }
+        }
+    }
+
+    @Lock(LockType.READ)
+    public JsonObjectBuilder toJson() {
+        long now = System.currentTimeMillis();
+        return Json.createObjectBuilder()
+                .add("activeJobs", activeJobs)
+                .add("largeFileThreshold", largeFileThreshold)
+                .add("lanes", Json.createObjectBuilder()
+                        .add(SMALL_LANE, smallLane.toJson(now))
+                        .add(LARGE_LANE, largeLane.toJson(now)));
+    }
+
+    /**
+     * A file is large if its size, weighted by how much its format grows
+     * when it is read into memory and written out as a tab file, is over
+     * the threshold: compressed formats (XLSX, RData) grow the most; the
+     * binary formats of Stata and SPSS roughly double; text formats don't
+     * grow.
+     */
+    static boolean isLargeFile(long fileSize, String contentType, long threshold) {
+        return fileSize * getSizeFactor(contentType) > threshold;
+    }
+
+    static int getSizeFactor(String contentType) {
+        if (contentType == null) {
+            return 1;
+        }
+        switch (contentType) {
+            case FileUtil.MIME_TYPE_XLSX:
+                return 8;
+            case FileUtil.MIME_TYPE_RDATA:
+                return 4;
+            case FileUtil.MIME_TYPE_STATA:
+            case FileUtil.MIME_TYPE_STATA13:
+            case FileUtil.MIME_TYPE_STATA14:
+            case FileUtil.MIME_TYPE_STATA15:
+            case FileUtil.MIME_TYPE_SPSS_SAV:
+            case FileUtil.MIME_TYPE_SPSS_POR:
+                return 2;
+            default:
+                return 1;
+        }
+    }
+}
@@ -45,6 +45,7 @@ import edu.harvard.iq.dataverse.dataaccess.DataAccessOption;
 import edu.harvard.iq.dataverse.dataaccess.StorageIO;
 import edu.harvard.iq.dataverse.dataaccess.ImageThumbConverter;
 import edu.harvard.iq.dataverse.dataaccess.S3AccessIO;
+import edu.harvard.iq.dataverse.dataaccess.TabularColumnarImage;
 import edu.harvard.iq.dataverse.dataaccess.TabularSubsetGenerator;
 import edu.harvard.iq.dataverse.datavariable.SummaryStatistic;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
@@ -52,6 +53,7 @@ import edu.harvard.iq.dataverse.ingest.metadataextraction.FileMetadataExtractor;
 import edu.harvard.iq.dataverse.ingest.metadataextraction.FileMetadataIngest;
 import edu.harvard.iq.dataverse.ingest.metadataextraction.impl.plugins.fits.FITSFileMetadataExtractor;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileReader;
+import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileWriter;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
 import edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.dta.DTAFileReader;
 import edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.dta.NewDTAFileReader;
@@ -89,6 +91,7 @@ import java.nio.file.StandardCopyOption;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.List;
 import java.util.Iterator;
@@ -97,9 +100,14 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.ListIterator;
 import java.util.logging.Logger;
 import java.util.Hashtable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.inject.Named;
@@ -221,7 +229,10 @@ public class IngestServiceBean {
 						 * Files.copy(tempLocationPath, storageIO.getFileSystemLocation(),
 						 * StandardCopyOption.REPLACE_EXISTING);
 						 */
+						long storeStart = System.currentTimeMillis();
 						dataAccess.savePath(tempLocationPath);
+						logger.fine("Saved " + storageLocation + " in permanent storage in "
+								+ (System.currentTimeMillis() - storeStart) + " ms");
 
 						// Set filesize in bytes
 						//
@@ -565,121 +576,268 @@ public class IngestServiceBean {
 
     
     public void produceSummaryStatistics(DataFile dataFile, File generatedTabularFile) throws IOException {
+        produceSummaryStatistics(dataFile, generatedTabularFile, null);
+    }
+    
+    private void produceSummaryStatistics(DataFile dataFile, File generatedTabularFile, IngestTimings timings) throws IOException {
         /*
         logger.info("Skipping summary statistics and UNF.");
          */
-        produceDiscreteNumericSummaryStatistics(dataFile, generatedTabularFile); 
-        produceContinuousSummaryStatistics(dataFile, generatedTabularFile);
-        produceCharacterSummaryStatistics(dataFile, generatedTabularFile);
+        // The columnar image of the tab file is generated first (from the 
+        // rotated image written by the ingest plugin along with the tab file, 
+        // when available); the vectors are then read from it, instead of 
+        // scanning the entire tab file for every variable. The image is left 
+        // next to the tab file, to be saved as an auxiliary object along with it. 
+        if (timings != null) {
+            timings.start(IngestTimings.PHASE_COLUMNAR_IMAGE);
+        }
+        TabularColumnarImage columnarImage = openColumnarImage(dataFile, generatedTabularFile);
+        if (timings != null) {
+            timings.start(IngestTimings.PHASE_SUMMARY_STATISTICS);
+        }
+        try {
+            // The statistics of all the variables, of all types, are 
+            // calculated in one go, so that the variables of every type are 
+            // spread across the threads:
+            produceVariableStatistics(dataFile, generatedTabularFile, columnarImage, null, systemConfig.getIngestStatisticsThreads());
+        } finally {
+            if (columnarImage != null) {
+                columnarImage.close();
+            }
+        }
         
         recalculateDataFileUNF(dataFile);
         recalculateDatasetVersionUNF(dataFile.getFileMetadata().getDatasetVersion());
+        if (timings != null) {
+            timings.stop();
+        }
+    }
+    
+    /*
+     * Returns null if the columnar image could not be produced; the vectors 
+     * are then subset from the tab file directly. 
+     */
+    private static TabularColumnarImage openColumnarImage(DataFile dataFile, File generatedTabularFile) {
+        File imageFile = TabularColumnarImage.getImageFile(generatedTabularFile);
+        try {
+            if (!imageFile.exists()) {
+                TabularColumnarImage.generate(generatedTabularFile,
+                        dataFile.getDataTable().getCaseQuantity().intValue(),
+                        TabularColumnarImage.getColumnTypes(dataFile.getDataTable().getDataVariables()),
+                        imageFile);
+            }
+            return TabularColumnarImage.open(Paths.get(imageFile.getAbsolutePath()));
+        } catch (IOException ioex) {
+            logger.warning("Failed to produce the columnar image of " + generatedTabularFile.getAbsolutePath() + "; " + ioex.getMessage());
+            imageFile.delete();
+            return null;
+        } finally {
+            // the rotated image is no longer needed, once the columnar one 
+            // has been produced:
+            TabularDataFileWriter.getRotatedImageFile(generatedTabularFile).delete();
+        }
     }
     
     public void produceContinuousSummaryStatistics(DataFile dataFile, File generatedTabularFile) throws IOException {
-
-        /* 
-        // quick, but memory-inefficient way:
-        // - this method just loads the entire file-worth of continuous vectors 
-        // into a Double[][] matrix. 
-        //Double[][] variableVectors = subsetContinuousVectors(dataFile);
-        //calculateContinuousSummaryStatistics(dataFile, variableVectors);
+        produceVariableStatistics(dataFile, generatedTabularFile, null, VARIABLE_CONTINUOUS, 1);
+    }
+    
+    public void produceDiscreteNumericSummaryStatistics(DataFile dataFile, File generatedTabularFile) throws IOException {
+        produceVariableStatistics(dataFile, generatedTabularFile, null, VARIABLE_DISCRETE_NUMERIC, 1);
+    }
+    
+    public void produceCharacterSummaryStatistics(DataFile dataFile, File generatedTabularFile) throws IOException {
+        produceVariableStatistics(dataFile, generatedTabularFile, null, VARIABLE_CHARACTER, 1);
+    }
+    
+    private static final int VARIABLE_CONTINUOUS = 1;
+    private static final int VARIABLE_DISCRETE_NUMERIC = 2;
+    private static final int VARIABLE_CHARACTER = 3;
+    
+    private static int getVariableStatisticsType(DataVariable variable) {
+        if (variable.isIntervalContinuous()) {
+            return VARIABLE_CONTINUOUS;
+        } else if (variable.isIntervalDiscrete() && variable.isTypeNumeric()) {
+            return VARIABLE_DISCRETE_NUMERIC;
+        } else if (variable.isTypeCharacter()) {
+            return VARIABLE_CHARACTER;
+        }
+        return 0;
+    }
+    
+    /*
+     * The summary statistics and the UNF of one variable, calculated by a 
+     * worker thread. (They are only assigned to the variable by the thread 
+     * that started the calculation, in the order of the variables; so the 
+     * results are the same as when the variables are processed one by one.)
+     */
+    private static class VariableStatistics {
+        double[] summaryStatistics;
+        String unf;
+    }
+    
+    /*
+     * Calculates the summary statistics and the UNFs of the variables of the 
+     * given type (or of all the types, if null), on a ForkJoinPool with the 
+     * specified number of threads. Memory use is bounded: the variables are 
+     * handed to the pool in groups, and every task subsets the vector of its 
+     * variable, and drops it once the statistics are calculated, so no more 
+     * vectors than there are threads are in memory at any one time.
+     */
+    private void produceVariableStatistics(DataFile dataFile, File generatedTabularFile, TabularColumnarImage columnarImage, Integer variableType, int threads) throws IOException {
+        List<DataVariable> variables = dataFile.getDataTable().getDataVariables();
+        List<Integer> selected = new ArrayList<>();
+        for (int i = 0; i < variables.size(); i++) {
+            int type = getVariableStatisticsType(variables.get(i));
+            if (type != 0 && (variableType == null || variableType == type)) {
+                selected.add(i);
+            }
+        }
         
-        // A more sophisticated way: this subsets one column at a time, using 
-        // the new optimized subsetting that does not have to read any extra 
-        // bytes from the file to extract the column:
+        if (threads < 2 || selected.size() < 2) {
+            for (int i : selected) {
+                assignVariableStatistics(variables.get(i), calculateVariableStatistics(dataFile, generatedTabularFile, columnarImage, i));
+            }
+            return;
+        }
         
-        TabularSubsetGenerator subsetGenerator = new TabularSubsetGenerator();
-        */
+        ForkJoinPool pool = new ForkJoinPool(Math.min(threads, selected.size()));
+        try {
+            int groupSize = pool.getParallelism() * 2;
+            for (int groupStart = 0; groupStart < selected.size(); groupStart += groupSize) {
+                List<Integer> group = selected.subList(groupStart, Math.min(groupStart + groupSize, selected.size()));
+                List<Callable<VariableStatistics>> tasks = new ArrayList<>();
+                for (int i : group) {
+                    tasks.add(() -> calculateVariableStatistics(dataFile, generatedTabularFile, columnarImage, i));
+                }
+                List<Future<VariableStatistics>> results = pool.invokeAll(tasks);
+                for (int k = 0; k < group.size(); k++) {
+                    assignVariableStatistics(variables.get(group.get(k)), results.get(k).get());
+                }
+            }
+        } catch (InterruptedException iex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while calculating summary statistics");
+        } catch (ExecutionException eex) {
+            if (eex.getCause() instanceof IOException) {
+                throw (IOException) eex.getCause();
+            }
+            throw new IOException("Failed to calculate summary statistics: " + eex.getCause().getMessage(), eex.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+    
+    private VariableStatistics calculateVariableStatistics(DataFile dataFile, File generatedTabularFile, TabularColumnarImage columnarImage, int i) throws IOException {
+        DataVariable variable = dataFile.getDataTable().getDataVariables().get(i);
+        int caseQuantity = dataFile.getDataTable().getCaseQuantity().intValue();
+        VariableStatistics statistics = new VariableStatistics();
         
-        for (int i = 0; i < dataFile.getDataTable().getVarQuantity(); i++) {
-            if (dataFile.getDataTable().getDataVariables().get(i).isIntervalContinuous()) {
+        switch (getVariableStatisticsType(variable)) {
+            case VARIABLE_CONTINUOUS: {
                 logger.fine("subsetting continuous vector");
 
-                if ("float".equals(dataFile.getDataTable().getDataVariables().get(i).getFormat())) {
-                    Float[] variableVector = TabularSubsetGenerator.subsetFloatVector(new FileInputStream(generatedTabularFile), i, dataFile.getDataTable().getCaseQuantity().intValue());
-                    logger.fine("Calculating summary statistics on a Float vector;");
-                    calculateContinuousSummaryStatistics(dataFile, i, variableVector);
+                // the vectors are subset as primitives, with the missing 
+                // values recorded in a bitmap, rather than as Double/Float 
+                // objects: 
+                BitSet missing = new BitSet();
+                if ("float".equals(variable.getFormat())) {
+                    float[] variableVector = columnarImage != null
+                            ? columnarImage.getFloatValues(i, missing)
+                            : TabularSubsetGenerator.subsetFloatVector(new FileInputStream(generatedTabularFile), i, caseQuantity, missing);
+                    logger.fine("Calculating summary statistics on a float vector;");
+                    statistics.summaryStatistics = SumStatCalculator.calculateSummaryStatistics(variableVector, missing);
                     // calculate the UNF while we are at it:
-                    logger.fine("Calculating UNF on a Float vector;");
-                    calculateUNF(dataFile, i, variableVector);
-                    variableVector = null; 
+                    logger.fine("Calculating UNF on a float vector;");
+                    statistics.unf = calculateUNF(i, variableVector, missing);
                 } else {
-                    Double[] variableVector = TabularSubsetGenerator.subsetDoubleVector(new FileInputStream(generatedTabularFile), i, dataFile.getDataTable().getCaseQuantity().intValue());
-                    logger.fine("Calculating summary statistics on a Double vector;");
-                    calculateContinuousSummaryStatistics(dataFile, i, variableVector);
+                    double[] variableVector = columnarImage != null
+                            ? columnarImage.getDoubleValues(i, missing)
+                            : TabularSubsetGenerator.subsetDoubleVector(new FileInputStream(generatedTabularFile), i, caseQuantity, missing);
+                    logger.fine("Calculating summary statistics on a double vector;");
+                    statistics.summaryStatistics = SumStatCalculator.calculateSummaryStatistics(variableVector, missing);
                     // calculate the UNF while we are at it:
-                    logger.fine("Calculating UNF on a Double vector;");
-                    calculateUNF(dataFile, i, variableVector);
-                    variableVector = null; 
+                    logger.fine("Calculating UNF on a double vector;");
+                    statistics.unf = calculateUNF(i, variableVector, missing);
                 }
                 logger.fine("Done! (continuous);");
+                break;
             }
-        }
-    }
-    
-    public void produceDiscreteNumericSummaryStatistics(DataFile dataFile, File generatedTabularFile) throws IOException {
-        
-        //TabularSubsetGenerator subsetGenerator = new TabularSubsetGenerator();
-        
-        for (int i = 0; i < dataFile.getDataTable().getVarQuantity(); i++) {
-            if (dataFile.getDataTable().getDataVariables().get(i).isIntervalDiscrete()
-                    && dataFile.getDataTable().getDataVariables().get(i).isTypeNumeric()) {
+            case VARIABLE_DISCRETE_NUMERIC: {
                 logger.fine("subsetting discrete-numeric vector");
 
-                Long[] variableVector = TabularSubsetGenerator.subsetLongVector(new FileInputStream(generatedTabularFile), i, dataFile.getDataTable().getCaseQuantity().intValue());
+                BitSet missing = new BitSet();
+                long[] variableVector = columnarImage != null
+                        ? columnarImage.getLongValues(i, missing)
+                        : TabularSubsetGenerator.subsetLongVector(new FileInputStream(generatedTabularFile), i, caseQuantity, missing);
                 // We are discussing calculating the same summary stats for 
                 // all numerics (the same kind of sumstats that we've been calculating
                 // for numeric continuous type)  -- L.A. Jul. 2014
-                calculateContinuousSummaryStatistics(dataFile, i, variableVector);
+                statistics.summaryStatistics = SumStatCalculator.calculateSummaryStatistics(variableVector, missing);
                 // calculate the UNF while we are at it:
-                logger.fine("Calculating UNF on a Long vector");
-                calculateUNF(dataFile, i, variableVector);
+                logger.fine("Calculating UNF on a long vector");
+                statistics.unf = calculateUNF(i, variableVector, missing);
                 logger.fine("Done! (discrete numeric)");
-                variableVector = null; 
+                break;
             }
-        }
-    }
-    
-    public void produceCharacterSummaryStatistics(DataFile dataFile, File generatedTabularFile) throws IOException {
-
-        /* 
-            At this point it's still not clear what kinds of summary stats we
-            want for character types. Though we are pretty confident we don't 
-            want to keep doing what we used to do in the past, i.e. simply 
-            store the total counts for all the unique values; even if it's a 
-            very long vector, and *every* value in it is unique. (As a result 
-            of this, our Categorical Variable Value table is the single 
-            largest in the production database. With no evidence whatsoever, 
-            that this information is at all useful. 
-                -- L.A. Jul. 2014 
-        
-        TabularSubsetGenerator subsetGenerator = new TabularSubsetGenerator();
-        */
-        
-        for (int i = 0; i < dataFile.getDataTable().getVarQuantity(); i++) {
-            if (dataFile.getDataTable().getDataVariables().get(i).isTypeCharacter()) {
-
+            case VARIABLE_CHARACTER: {
+                /* 
+                    At this point it's still not clear what kinds of summary stats we
+                    want for character types. Though we are pretty confident we don't 
+                    want to keep doing what we used to do in the past, i.e. simply 
+                    store the total counts for all the unique values; even if it's a 
+                    very long vector, and *every* value in it is unique. (As a result 
+                    of this, our Categorical Variable Value table is the single 
+                    largest in the production database. With no evidence whatsoever, 
+                    that this information is at all useful. 
+                        -- L.A. Jul. 2014 
+                */
                 logger.fine("subsetting character vector");
-                String[] variableVector = TabularSubsetGenerator.subsetStringVector(new FileInputStream(generatedTabularFile), i, dataFile.getDataTable().getCaseQuantity().intValue());
-                //calculateCharacterSummaryStatistics(dataFile, i, variableVector);
+                String[] variableVector = columnarImage != null
+                        ? columnarImage.getStringVector(i)
+                        : TabularSubsetGenerator.subsetStringVector(new FileInputStream(generatedTabularFile), i, caseQuantity);
                 // calculate the UNF while we are at it:
                 logger.fine("Calculating UNF on a String vector");
-                calculateUNF(dataFile, i, variableVector);
+                statistics.unf = calculateUNF(variable, i, variableVector);
                 logger.fine("Done! (character)");
-                variableVector = null; 
+                break;
             }
         }
+        return statistics;
+    }
+    
+    private void assignVariableStatistics(DataVariable variable, VariableStatistics statistics) throws IOException {
+        if (statistics.summaryStatistics != null) {
+            assignContinuousSummaryStatistics(variable, statistics.summaryStatistics);
+        }
+        if (statistics.unf != null) {
+            variable.setUnf(statistics.unf);
+        } else {
+            logger.warning("failed to calculate UNF signature for variable " + variable.getName());
+        }
     }
 
     public static void produceFrequencyStatistics(DataFile dataFile, File generatedTabularFile) throws IOException {
 
         List<DataVariable> vars = dataFile.getDataTable().getDataVariables();
 
-        produceFrequencies(generatedTabularFile, vars);
+        // use the columnar image, if one was produced along with the summary 
+        // statistics:
+        File imageFile = TabularColumnarImage.getImageFile(generatedTabularFile);
+        if (imageFile.exists()) {
+            try (TabularColumnarImage columnarImage = TabularColumnarImage.open(Paths.get(imageFile.getAbsolutePath()))) {
+                produceFrequencies(generatedTabularFile, vars, columnarImage);
+            }
+        } else {
+            produceFrequencies(generatedTabularFile, vars);
+        }
     }
 
     public static void produceFrequencies( File generatedTabularFile, List<DataVariable> vars) throws IOException {
+        produceFrequencies(generatedTabularFile, vars, null);
+    }
+
+    private static void produceFrequencies( File generatedTabularFile, List<DataVariable> vars, TabularColumnarImage columnarImage) throws IOException {
 
         for (int i = 0; i < vars.size(); i++) {
 
@@ -688,7 +846,9 @@ public class IngestServiceBean {
             boolean isNumeric = vars.get(i).isTypeNumeric();
             Object[] variableVector = null;
             if (cats.size() > 0) {
-                if (isNumeric) {
+                if (columnarImage != null) {
+                    variableVector = isNumeric ? columnarImage.getFloatVector(i) : columnarImage.getStringVector(i);
+                } else if (isNumeric) {
                     variableVector = TabularSubsetGenerator.subsetFloatVector(new FileInputStream(generatedTabularFile), i, caseQuantity);
                 }
                 else {
@@ -874,6 +1034,8 @@ public class IngestServiceBean {
         }
         
         TabularDataIngest tabDataIngest = null; 
+        IngestTimings timings = new IngestTimings();
+        timings.start(IngestTimings.PHASE_READ);
         try {
             if (additionalData != null) {
                 tabDataIngest = ingestPlugin.read(inputStream, additionalData);
@@ -898,6 +1060,7 @@ public class IngestServiceBean {
         } finally {
         	IOUtils.closeQuietly(inputStream);
         }
+        timings.stop();
 
         String originalContentType = dataFile.getContentType();
         String originalFileName = dataFile.getFileMetadata().getLabel();
@@ -917,10 +1080,10 @@ public class IngestServiceBean {
 
                 dataFile.setFilesize(tabFile.length());
 
-                // and change the mime type to "Tabular Data" on the final datafile, 
-                // and replace (or add) the extension ".tab" to the filename: 
+                // and change the mime type to "Tabular Data" on the final datafile
+                // (the extension ".tab" replaces, or is added to, the filename 
+                // when the datafile is saved, below):
                 dataFile.setContentType(FileUtil.MIME_TYPE_INGESTED_FILE);
-                IngestUtil.modifyExistingFilename(dataFile.getOwner().getLatestVersion(), dataFile.getFileMetadata(), FileUtil.replaceExtension(fileName, "tab"));
 
                 if (FileUtil.MIME_TYPE_CSV_ALT.equals(dataFile.getContentType())) {
                     tabDataIngest.getDataTable().setOriginalFileFormat(FileUtil.MIME_TYPE_CSV);
@@ -934,8 +1097,10 @@ public class IngestServiceBean {
                 tabDataIngest.getDataTable().setOriginalFileName(originalFileName);
                 
                 try {
-                    produceSummaryStatistics(dataFile, tabFile);
+                    produceSummaryStatistics(dataFile, tabFile, timings);
+                    timings.start(IngestTimings.PHASE_FREQUENCIES);
                     produceFrequencyStatistics(dataFile, tabFile);
+                    timings.stop();
                     postIngestTasksSuccessful = true;
                 } catch (IOException postIngestEx) {
 
@@ -950,6 +1115,7 @@ public class IngestServiceBean {
 
                 if (!postIngestTasksSuccessful) {
                     logger.warning("Ingest failure (!postIngestTasksSuccessful).");
+                    TabularColumnarImage.getImageFile(tabFile).delete();
                     return false;
                 }
 
@@ -968,7 +1134,10 @@ public class IngestServiceBean {
                             throw new EJBException("Deliberate database save failure");
                         }
                      */
-                    dataFile = fileService.saveInTransaction(dataFile);
+                    timings.start(IngestTimings.PHASE_DATABASE);
+                    createIngestSuccessReport(dataFile, timings);
+                    dataFile = fileService.saveIngestedInTransaction(dataFile, FileUtil.replaceExtension(fileName, "tab"));
+                    timings.stop();
                     databaseSaveSuccessful = true;
 
                     logger.fine("Ingest (" + dataFile.getFileMetadata().getLabel() + ".");
@@ -996,10 +1165,12 @@ public class IngestServiceBean {
 
                 if (!databaseSaveSuccessful) {
                     logger.warning("Ingest failure (failed to save the tabular data in the database; file left intact as uploaded).");
+                    TabularColumnarImage.getImageFile(tabFile).delete();
                     return false;
                 }
 
                 // Finally, let's swap the original and the tabular files: 
+                timings.start(IngestTimings.PHASE_STORAGE);
                 try {
                     /* Start of save as backup */
 
@@ -1019,8 +1190,29 @@ public class IngestServiceBean {
                     // Reset the file size: 
                     dataFile.setFilesize(dataAccess.getSize());
                     
+                    // and save the columnar image of the tab file, produced 
+                    // along with the summary statistics, for subsetting - 
+                    // which is only done on local files (the image is memory 
+                    // mapped, from the path of the aux object), so there is 
+                    // no point in uploading it to remote storage:
+                    File columnarImageFile = TabularColumnarImage.getImageFile(tabFile);
+                    if (columnarImageFile.exists() && dataAccess.isLocalFile()) {
+                        try {
+                            dataAccess.savePathAsAux(Paths.get(columnarImageFile.getAbsolutePath()), TabularColumnarImage.AUX_TAG);
+                        } catch (IOException iox) {
+                            logger.warning("Failed to save the columnar image of the tabular file; " + iox.getMessage());
+                        }
+                    }
+                    columnarImageFile.delete();
+                    
+                    timings.stop();
+                    if (dataFile.getIngestReport() != null) {
+                        dataFile.getIngestReport().setReport(timings.toString());
+                        dataFile.getIngestReport().setEndTime(new Date());
+                    }
                     dataFile = fileService.save(dataFile);
                     logger.fine("saved data file after updating the size");
+                    logger.fine(timings.toString());
 
                     // delete the temp tab-file:
                     tabFile.delete();
@@ -1069,6 +1261,22 @@ public class IngestServiceBean {
         return inputStream;
     }
 
+    /*
+     * The report of a successful ingest records the time spent in each of 
+     * its phases. (It's updated with the time it took to save the tab file, 
+     * once it's been saved.)
+     */
+    private static void createIngestSuccessReport(DataFile dataFile, IngestTimings timings) {
+        IngestReport report = new IngestReport();
+        report.setType(IngestReport.INGEST_TYPE_TABULAR);
+        report.setStatus(IngestReport.INGEST_STATUS_SUCCESS);
+        report.setStartTime(timings.getStartTime());
+        report.setEndTime(new Date());
+        report.setReport(timings.toString());
+        report.setDataFile(dataFile);
+        dataFile.setIngestReport(report);
+    }
+
     private void restoreIngestedDataFile(DataFile dataFile, TabularDataIngest tabDataIngest, long originalSize, String originalFileName, String originalContentType) {
         dataFile.setDataTables(null);
         if (tabDataIngest != null && tabDataIngest.getDataTable() != null) {
@@ -1544,11 +1752,6 @@ public class IngestServiceBean {
         return contVarFields;
     }
     
-    private void calculateContinuousSummaryStatistics(DataFile dataFile, int varnum, Number[] dataVector) throws IOException {
-        double[] sumStats = SumStatCalculator.calculateSummaryStatistics(dataVector);
-        assignContinuousSummaryStatistics(dataFile.getDataTable().getDataVariables().get(varnum), sumStats);
-    }
-    
     private void assignContinuousSummaryStatistics(DataVariable variable, double[] sumStats) throws IOException {
         if (sumStats == null || sumStats.length != variableService.summaryStatisticTypes.length) {
             throw new IOException ("Wrong number of summary statistics types calculated! ("+sumStats.length+")");
@@ -1568,50 +1771,70 @@ public class IngestServiceBean {
 
     }
     
-    private void calculateUNF(DataFile dataFile, int varnum, Double[] dataVector) {
-        String unf = null;
-        try {
-            unf = UNFUtil.calculateUNF(dataVector);
-        } catch (IOException iex) {
-            logger.warning("exception thrown when attempted to calculate UNF signature for (numeric, continuous) variable " + varnum);
-        } catch (UnfException uex) {
-            logger.warning("UNF Exception: thrown when attempted to calculate UNF signature for (numeric, continuous) variable " + varnum);
+    static String calculateUNF(int varnum, double[] dataVector, BitSet missing) {
+        Double[] unfVector = new Double[dataVector.length];
+        for (int i = 0; i < dataVector.length; i++) {
+            unfVector[i] = missing.get(i) ? null : dataVector[i];
         }
-        
-        if (unf != null) {
-            dataFile.getDataTable().getDataVariables().get(varnum).setUnf(unf);
-        } else {
-            logger.warning("failed to calculate UNF signature for variable " + varnum);
+        return calculateNumericUNF(varnum, unfVector, "(numeric, continuous)");
+    }
+    
+    static String calculateUNF(int varnum, long[] dataVector, BitSet missing) {
+        Double[] unfVector = new Double[dataVector.length];
+        for (int i = 0; i < dataVector.length; i++) {
+            unfVector[i] = missing.get(i) ? null : (double) dataVector[i];
         }
+        return calculateNumericUNF(varnum, unfVector, "(numeric, discrete)");
     }
     
-    private void calculateUNF(DataFile dataFile, int varnum, Long[] dataVector) {
-        String unf = null;
+    // Calculating UNFs from *floats*, not *doubles* - this is to test dataverse
+    // 4.0 Ingest against DVN 3.*; because of the nature of the UNF bug, reading
+    // the tab file entry with 7+ digits of precision as a Double will result
+    // in a UNF signature *different* from what was produced by the v. 3.* ingest,
+    // from a STATA float value directly. 
+    // TODO: remove this from the final production 4.0!
+    // -- L.A., Jul 2014
+    static String calculateUNF(int varnum, float[] dataVector, BitSet missing) {
+        Double[] unfVector = new Double[dataVector.length];
+        for (int i = 0; i < dataVector.length; i++) {
+            unfVector[i] = missing.get(i) ? null : (double) dataVector[i];
+        }
+        return calculateNumericUNF(varnum, unfVector, "numeric, \"continuous\" (float)");
+    }
+    
+    /*
+     * The UNF library only accepts numeric vectors as Number objects (a null
+     * standing for a missing value); and UnfDigest.unf() copies any vector 
+     * it is given into a new, transposed, matrix - and keeps the signature 
+     * object of the last calculation in a static field. So the Double[] 
+     * vector, built from the primitive one above, is handed to 
+     * UnfDigest.unfV() directly, with the default number of digits, and no 
+     * signature object: this produces the same UNF as UNFUtil.calculateUNF(),
+     * without the extra copy, and without touching any of the static state 
+     * of UnfDigest - so the numeric UNFs of several variables can be 
+     * calculated at the same time.
+     */
+    private static String calculateNumericUNF(int varnum, Double[] unfVector, String variableType) {
         try {
-            unf = UNFUtil.calculateUNF(dataVector);
+            return UnfDigest.unfV(unfVector, UnfCons.DEF_NDGTS, null);
         } catch (IOException iex) {
-            logger.warning("exception thrown when attempted to calculate UNF signature for (numeric, discrete) variable " + varnum);
-        }  catch (UnfException uex) {
-            logger.warning("UNF Exception: thrown when attempted to calculate UNF signature for (numeric, discrete) variable " + varnum);
-        }
-        
-        if (unf != null) {
-            dataFile.getDataTable().getDataVariables().get(varnum).setUnf(unf);
-        } else {
-            logger.warning("failed to calculate UNF signature for variable " + varnum);
+            logger.warning("exception thrown when attempted to calculate UNF signature for " + variableType + " variable " + varnum);
+        } catch (UnfException uex) {
+            logger.warning("UNF Exception: thrown when attempted to calculate UNF signature for " + variableType + " variable " + varnum);
         }
+        return null;
     }
     
-    private void calculateUNF(DataFile dataFile, int varnum, String[] dataVector) throws IOException {
+    private static String calculateUNF(DataVariable variable, int varnum, String[] dataVector) throws IOException {
         String unf = null;
         
         String[] dateFormats = null; 
         
         // Special handling for Character strings that encode dates and times:
         
-        if ("time".equals(dataFile.getDataTable().getDataVariables().get(varnum).getFormatCategory())) {
+        if ("time".equals(variable.getFormatCategory())) {
             dateFormats = new String[dataVector.length];
-            String savedDateTimeFormat = dataFile.getDataTable().getDataVariables().get(varnum).getFormat();
+            String savedDateTimeFormat = variable.getFormat();
             String timeFormat = null;
             if (savedDateTimeFormat != null && !savedDateTimeFormat.equals("")) {
                 timeFormat = savedDateTimeFormat;
@@ -1668,9 +1891,9 @@ public class IngestServiceBean {
                     dateFormats[i] = timeFormat;
                 }
             }
-        } else if ("date".equals(dataFile.getDataTable().getDataVariables().get(varnum).getFormatCategory())) {
+        } else if ("date".equals(variable.getFormatCategory())) {
             dateFormats = new String[dataVector.length];
-            String savedDateFormat = dataFile.getDataTable().getDataVariables().get(varnum).getFormat();
+            String savedDateFormat = variable.getFormat();
             for (int i = 0; i < dataVector.length; i++) {
                 if (dataVector[i] != null) {
                     if (savedDateFormat != null && !savedDateFormat.equals("")) {
@@ -1682,12 +1905,17 @@ public class IngestServiceBean {
             }
         }
                 
+        // (unlike the numeric ones, the UNFs of character vectors are 
+        // calculated using the static state of UnfDigest; so only one can be 
+        // calculated at a time)
         try {
-            if (dateFormats == null) {
-                logger.fine("calculating the UNF value for string vector; first value: "+dataVector[0]);
-                unf = UNFUtil.calculateUNF(dataVector);
-            } else {
-                unf = UNFUtil.calculateUNF(dataVector, dateFormats);
+            synchronized (UnfDigest.class) {
+                if (dateFormats == null) {
+                    logger.fine("calculating the UNF value for string vector; first value: "+dataVector[0]);
+                    unf = UNFUtil.calculateUNF(dataVector);
+                } else {
+                    unf = UNFUtil.calculateUNF(dataVector, dateFormats);
+                }
             }
         } catch (IOException iex) {
             logger.warning("IO exception thrown when attempted to calculate UNF signature for (character) variable " + varnum);
@@ -1695,36 +1923,7 @@ public class IngestServiceBean {
             logger.warning("UNF Exception: thrown when attempted to calculate UNF signature for (character) variable " + varnum);
         }
         
-        if (unf != null) {
-            dataFile.getDataTable().getDataVariables().get(varnum).setUnf(unf);
-        } else {
-            logger.warning("failed to calculate UNF signature for variable " + varnum);
-        }
-    }
-    
-    // Calculating UNFs from *floats*, not *doubles* - this is to test dataverse
-    // 4.0 Ingest against DVN 3.*; because of the nature of the UNF bug, reading
-    // the tab file entry with 7+ digits of precision as a Double will result
-    // in a UNF signature *different* from what was produced by the v. 3.* ingest,
-    // from a STATA float value directly. 
-    // TODO: remove this from the final production 4.0!
-    // -- L.A., Jul 2014
-    
-    private void calculateUNF(DataFile dataFile, int varnum, Float[] dataVector) {
-        String unf = null;
-        try {
-            unf = UNFUtil.calculateUNF(dataVector);
-        } catch (IOException iex) {
-            logger.warning("exception thrown when attempted to calculate UNF signature for numeric, \"continuous\" (float) variable " + varnum);
-        } catch (UnfException uex) {
-            logger.warning("UNF Exception: thrown when attempted to calculate UNF signature for numeric, \"continuous\" (float) variable" + varnum);
-        }
-        
-        if (unf != null) {
-            dataFile.getDataTable().getDataVariables().get(varnum).setUnf(unf);
-        } else {
-            logger.warning("failed to calculate UNF signature for variable " + varnum);
-        }
+        return unf;
     }
     
     // This method takes a list of file ids, checks the format type of the ingested 
@@ -0,0 +1,75 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Wall-clock times of the phases of a tabular ingest, in the order in which
+ * they were run. Saved as the text of the IngestReport of a successful
+ * ingest.
+ */
+public class IngestTimings {
+
+    public static final String PHASE_READ = "read";
+    public static final String PHASE_COLUMNAR_IMAGE = "columnar image";
+    public static final String PHASE_SUMMARY_STATISTICS = "summary statistics and UNFs";
+    public static final String PHASE_FREQUENCIES = "frequencies";
+    public static final String PHASE_DATABASE = "database";
+    public static final String PHASE_STORAGE = "storage";
+
+    private final Date startTime = new Date();
+    private final Map<String, Long> durations = new LinkedHashMap<>();
+    private String currentPhase = null;
+    private long currentPhaseStart;
+
+    /**
+     * Starts timing a phase; the phase being timed, if any, is stopped.
+     */
+    public void start(String phase) {
+        stop();
+        currentPhase = phase;
+        currentPhaseStart = System.nanoTime();
+    }
+
+    public void stop() {
+        if (currentPhase != null) {
+            durations.merge(currentPhase, (System.nanoTime() - currentPhaseStart) / 1000000, Long::sum);
+            currentPhase = null;
+        }
+    }
+
+    public Date getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return the time spent in each phase, in milliseconds
+     */
+    public Map<String, Long> getDurations() {
+        return Collections.unmodifiableMap(durations);
+    }
+
+    public long getTotal() {
+        long total = 0;
+        for (long duration : durations.values()) {
+            total += duration;
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Ingest completed in ").append(getTotal()).append(" ms");
+        String separator = " (";
+        for (Map.Entry<String, Long> duration : durations.entrySet()) {
+            sb.append(separator).append(duration.getKey()).append(": ").append(duration.getValue()).append(" ms");
+            separator = ", ";
+        }
+        if (!durations.isEmpty()) {
+            sb.append(")");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,154 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.DataFileServiceBean;
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.DatasetLock;
+import edu.harvard.iq.dataverse.DatasetServiceBean;
+import edu.harvard.iq.dataverse.UserNotification;
+import edu.harvard.iq.dataverse.UserNotificationServiceBean;
+import edu.harvard.iq.dataverse.authorization.AuthenticationServiceBean;
+import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.logging.Logger;
+import javax.ejb.Asynchronous;
+import javax.ejb.EJB;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import static javax.ejb.TransactionAttributeType.NOT_SUPPORTED;
+
+/**
+ * Ingests one tabular file, started by the {@link IngestScheduler}, as an
+ * asynchronous invocation on a thread of the container's async pool; the
+ * ingest itself runs in the transaction IngestServiceBean.ingestAsTabular()
+ * starts for every file. The outcome is reported back to the scheduler; once
+ * the last file of an upload is done, the {@link IngestMessageBean} waiting
+ * for it removes the Ingest lock from the dataset and sends the user one
+ * notification for all the files, see {@link #completeJob(IngestJob)}.
+ */
+@Stateless
+public class IngestWorkerServiceBean {
+
+    private static final Logger logger = Logger.getLogger(IngestWorkerServiceBean.class.getCanonicalName());
+
+    @EJB
+    IngestServiceBean ingestService;
+    @EJB
+    IngestScheduler ingestScheduler;
+    @EJB
+    DatasetServiceBean datasetService;
+    @EJB
+    DataFileServiceBean datafileService;
+    @EJB
+    UserNotificationServiceBean userNotificationService;
+    @EJB
+    AuthenticationServiceBean authenticationServiceBean;
+
+    @Asynchronous
+    @TransactionAttribute(NOT_SUPPORTED)
+    public void ingest(IngestJob.Task task) {
+        String ingestedFile = null;
+        boolean ingestWithErrors = false;
+        try {
+            logger.fine("Start ingest job;");
+            try {
+                if (ingestService.ingestAsTabular(task.getFileId())) {
+                    logger.fine("Finished ingest job;");
+                    ingestedFile = String.format("<li>%s</li>", task.getFileName());
+                } else {
+                    logger.warning("Error occurred during ingest job for file id " + task.getFileId() + "!");
+                    ingestedFile = String.format("<li>%s (Error)</li>", task.getFileName());
+                    ingestWithErrors = true;
+                }
+            } catch (Exception ex) {
+                ingestedFile = handleIngestFailure(task.getFileId(), ex);
+                ingestWithErrors = ingestedFile != null;
+            }
+        } finally {
+            // (the file must leave its lane, whatever happened to it)
+            ingestScheduler.finished(task, ingestedFile, ingestWithErrors);
+        }
+    }
+
+    /**
+     * Removes the Ingest lock from the dataset, and sends the notification
+     * listing the outcome of every file of the job.
+     */
+    @TransactionAttribute(NOT_SUPPORTED)
+    public void completeJob(IngestJob job) {
+        Long objectId = null;
+
+        // Remove the dataset lock:
+        // (note that the assumption here is that all of the datafiles
+        // packed into this IngestMessage belong to the same dataset)
+        if (job.getLastFileId() != null) {
+            DataFile datafile = datafileService.find(job.getLastFileId());
+            if (datafile != null) {
+                Dataset dataset = datafile.getOwner();
+                objectId = dataset.getId();
+                if (dataset != null && dataset.getId() != null) {
+                    datasetService.removeDatasetLocks(dataset, DatasetLock.Reason.Ingest);
+                }
+            }
+        }
+
+        AuthenticatedUser authenticatedUser = authenticationServiceBean.findByID(job.getAuthenticatedUserId());
+        userNotificationService.sendNotification(
+                authenticatedUser,
+                Timestamp.from(Instant.now()),
+                !job.isIngestWithErrors() ? UserNotification.Type.INGESTCOMPLETED : UserNotification.Type.INGESTCOMPLETEDWITHERRORS,
+                objectId,
+                job.getIngestedFilesList(),
+                true
+        );
+    }
+
+    /**
+     * Marks a file whose ingest failed with an exception as such, and
+     * notifies the owner of the dataset.
+     *
+     * @return the entry of the file in the list of the notification, or
+     * null if the file cannot be found
+     */
+    private String handleIngestFailure(Long datafile_id, Exception ex) {
+        // TODO:
+        // this solution is working - but it would be cleaner to instead
+        // make sure that all the exceptions are interrupted and appropriate
+        // action taken still on the ingest service side.
+        // -- L.A. Aug. 13 2014;
+        logger.info("Unknown exception occurred  during ingest (supressed stack trace); re-setting ingest status.");
+        if (datafile_id == null) {
+            return null;
+        }
+        logger.fine("looking up datafile for id " + datafile_id);
+        DataFile datafile = datafileService.find(datafile_id);
+        if (datafile == null) {
+            return null;
+        }
+
+        datafile.SetIngestProblem();
+        IngestReport errorReport = new IngestReport();
+        errorReport.setFailure();
+        if (ex.getMessage() != null) {
+            errorReport.setReport("Ingest succeeded, but failed to save the ingested tabular data in the database: " + ex.getMessage());
+        } else {
+            errorReport.setReport("Ingest succeeded, but failed to save the ingested tabular data in the database; no further information is available");
+        }
+        errorReport.setDataFile(datafile);
+        datafile.setIngestReport(errorReport);
+        datafile.setDataTables(null);
+
+        logger.info("trying to save datafile and the failed ingest report, id=" + datafile_id);
+        datafile = datafileService.save(datafile);
+
+        Dataset dataset = datafile.getOwner();
+        if (dataset != null && dataset.getId() != null) {
+            //logger.info("attempting to remove dataset lock for dataset " + dataset.getId());
+            //datasetService.removeDatasetLock(dataset.getId());
+            ingestService.sendFailNotification(dataset.getId());
+        }
+
+        return String.format("<li>%s (Error)</li>", datafile.getCurrentName());
+    }
+}
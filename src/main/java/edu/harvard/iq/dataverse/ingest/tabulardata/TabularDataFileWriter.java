@@ -0,0 +1,94 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata;
+
+import edu.harvard.iq.dataverse.dataaccess.RotatedImageWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.util.logging.Logger;
+
+/**
+ * The writer the ingest plugins use to produce the tab-delimited file. Every
+ * line printed is also added to the rotated (column-wise) image of the file,
+ * which is saved next to it, as "[tab file].90d", when the writer is closed;
+ * the summary statistics, UNFs and the columnar image of the file are then
+ * produced from the rotated image, without reading the tab file again.
+ *
+ * The image is only a shortcut: if a line can't be added to it, it is
+ * discarded, and the tab file is written as usual. (The image is checked
+ * against the stored number of cases and variables before it is used, and
+ * regenerated from the tab file if it doesn't match.)
+ */
+public class TabularDataFileWriter extends PrintWriter {
+
+    private static final Logger logger = Logger.getLogger(TabularDataFileWriter.class.getCanonicalName());
+
+    private final File tabFile;
+    private RotatedImageWriter imageWriter;
+    private boolean closed = false;
+
+    public TabularDataFileWriter(File tabFile) throws FileNotFoundException {
+        super(tabFile);
+        this.tabFile = tabFile;
+        this.imageWriter = new RotatedImageWriter(getRotatedImageFile(tabFile));
+    }
+
+    public TabularDataFileWriter(File tabFile, String csn) throws FileNotFoundException, UnsupportedEncodingException {
+        super(tabFile, csn);
+        this.tabFile = tabFile;
+        this.imageWriter = new RotatedImageWriter(getRotatedImageFile(tabFile));
+    }
+
+    public TabularDataFileWriter(Writer out, File tabFile, boolean autoFlush) {
+        super(out, autoFlush);
+        this.tabFile = tabFile;
+        this.imageWriter = new RotatedImageWriter(getRotatedImageFile(tabFile));
+    }
+
+    public static File getRotatedImageFile(File tabFile) {
+        return new File(tabFile.getAbsolutePath() + ".90d");
+    }
+
+    @Override
+    public void println(String line) {
+        super.println(line);
+        if (imageWriter != null) {
+            try {
+                imageWriter.addRow(line.split("\t", -1));
+            } catch (IOException ioex) {
+                discardImage(ioex);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (imageWriter != null) {
+            if (checkError()) {
+                discardImage(new IOException("failed to write the tab-delimited file"));
+            } else if (imageWriter.getCaseCount() > 0) {
+                try {
+                    imageWriter.finish();
+                } catch (IOException ioex) {
+                    discardImage(ioex);
+                }
+            } else {
+                imageWriter.abort();
+            }
+            imageWriter = null;
+        }
+    }
+
+    private void discardImage(IOException cause) {
+        logger.fine("Discarding the rotated image of " + tabFile.getAbsolutePath() + "; " + cause.getMessage());
+        imageWriter.abort();
+        imageWriter = null;
+    }
+}
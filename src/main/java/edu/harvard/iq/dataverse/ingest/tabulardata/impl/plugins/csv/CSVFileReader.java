@@ -26,6 +26,7 @@ import edu.harvard.iq.dataverse.DataTable;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
 
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileReader;
+import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileWriter;
 import edu.harvard.iq.dataverse.ingest.tabulardata.spi.TabularDataFileReaderSpi;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
 import edu.harvard.iq.dataverse.util.BundleUtil;
@@ -74,14 +75,14 @@ public class CSVFileReader extends TabularDataFileReader {
     //private final Set<Character> firstNumCharSet = new HashSet<>();
 
     // DATE FORMATS
-    private static SimpleDateFormat[] DATE_FORMATS = new SimpleDateFormat[]{
+    private SimpleDateFormat[] DATE_FORMATS = new SimpleDateFormat[]{
         new SimpleDateFormat("yyyy-MM-dd"), //new SimpleDateFormat("yyyy/MM/dd"),
     //new SimpleDateFormat("MM/dd/yyyy"),
     //new SimpleDateFormat("MM-dd-yyyy"),
     };
 
     // TIME FORMATS
-    private static SimpleDateFormat[] TIME_FORMATS = new SimpleDateFormat[]{
+    private SimpleDateFormat[] TIME_FORMATS = new SimpleDateFormat[]{
         // Date-time up to seconds with timezone, e.g. 2013-04-08 13:14:23 -0500
         new SimpleDateFormat("yyyy-MM-dd HH:mm:ss z"),
         // Date-time up to seconds and no timezone, e.g. 2013-04-08 13:14:23
@@ -122,7 +123,7 @@ public class CSVFileReader extends TabularDataFileReader {
         BufferedReader localBufferedReader = new BufferedReader(new InputStreamReader(stream));
 
         File tabFileDestination = File.createTempFile("data-", ".tab");
-        PrintWriter tabFileWriter = new PrintWriter(tabFileDestination.getAbsolutePath());
+        PrintWriter tabFileWriter = new TabularDataFileWriter(tabFileDestination);
 
         int lineCount = readFile(localBufferedReader, dataTable, tabFileWriter);
 
@@ -57,6 +57,7 @@ import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import edu.harvard.iq.dataverse.datavariable.VariableCategory;
 
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileReader;
+import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileWriter;
 import edu.harvard.iq.dataverse.ingest.tabulardata.spi.TabularDataFileReaderSpi;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
 import org.apache.commons.lang3.StringUtils;
@@ -298,16 +299,25 @@ public class DTAFileReader extends TabularDataFileReader{
 
     private Set<Double> DOUBLE_MISSING_VALUE_SET = new HashSet<>(DOUBLE_MISSING_VALUE_LIST);
 
-    private static SimpleDateFormat sdf_ymdhmsS = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS"); // sdf
+    private SimpleDateFormat sdf_ymdhmsS = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS"); // sdf
 
 
-    private static SimpleDateFormat sdf_ymd = new SimpleDateFormat("yyyy-MM-dd"); // sdf2
+    private SimpleDateFormat sdf_ymd = new SimpleDateFormat("yyyy-MM-dd"); // sdf2
 
 
-    private static SimpleDateFormat sdf_hms = new SimpleDateFormat("HH:mm:ss"); // stf
+    private SimpleDateFormat sdf_hms = new SimpleDateFormat("HH:mm:ss"); // stf
 
 
-    private static SimpleDateFormat sdf_yw = new SimpleDateFormat("yyyy-'W'ww");
+    private SimpleDateFormat sdf_yw = new SimpleDateFormat("yyyy-'W'ww");
+
+    // (the formats are not thread-safe, so every reader gets its own;
+    // several files may be ingested at the same time)
+    {
+        sdf_ymdhmsS.setTimeZone(TimeZone.getTimeZone("GMT"));
+        sdf_ymd.setTimeZone(TimeZone.getTimeZone("GMT"));
+        sdf_hms.setTimeZone(TimeZone.getTimeZone("GMT"));
+        sdf_yw.setTimeZone(TimeZone.getTimeZone("GMT"));
+    }
 
 
 
@@ -331,10 +341,6 @@ public class DTAFileReader extends TabularDataFileReader{
 
     static {
      
-        sdf_ymdhmsS.setTimeZone(TimeZone.getTimeZone("GMT"));
-        sdf_ymd.setTimeZone(TimeZone.getTimeZone("GMT"));
-        sdf_hms.setTimeZone(TimeZone.getTimeZone("GMT"));
-        sdf_yw.setTimeZone(TimeZone.getTimeZone("GMT"));
 
         // set stata's calendar
         GCO_STATA.set(1, 1960);// year
@@ -1701,7 +1707,7 @@ public class DTAFileReader extends TabularDataFileReader{
         ingesteddata.setTabDelimitedFile(tabDelimitedDataFile);
 
         fileOutTab = new FileOutputStream(tabDelimitedDataFile);
-        pwout = new PrintWriter(new OutputStreamWriter(fileOutTab, "utf8"), true);
+        pwout = new TabularDataFileWriter(new OutputStreamWriter(fileOutTab, "utf8"), tabDelimitedDataFile, true);
 
         /* Should we lose this dateFormat thing in 4.0? 
          * the UNF should be calculatable on the app side solely from the data
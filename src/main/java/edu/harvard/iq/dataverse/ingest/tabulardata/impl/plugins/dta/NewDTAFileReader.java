@@ -31,6 +31,7 @@ import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import edu.harvard.iq.dataverse.datavariable.VariableCategory;
 
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileReader;
+import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileWriter;
 import edu.harvard.iq.dataverse.ingest.tabulardata.spi.TabularDataFileReaderSpi;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
 import org.apache.commons.lang3.StringUtils;
@@ -191,13 +192,22 @@ public class NewDTAFileReader extends TabularDataFileReader {
     private Set<Double> DOUBLE_MISSING_VALUE_SET =
             new HashSet<>(DOUBLE_MISSING_VALUE_LIST);
 
-    private static SimpleDateFormat sdf_ymdhmsS = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS"); // sdf
+    private SimpleDateFormat sdf_ymdhmsS = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS"); // sdf
 
-    private static SimpleDateFormat sdf_ymd = new SimpleDateFormat("yyyy-MM-dd"); // sdf2
+    private SimpleDateFormat sdf_ymd = new SimpleDateFormat("yyyy-MM-dd"); // sdf2
 
-    private static SimpleDateFormat sdf_hms = new SimpleDateFormat("HH:mm:ss"); // stf
+    private SimpleDateFormat sdf_hms = new SimpleDateFormat("HH:mm:ss"); // stf
 
-    private static SimpleDateFormat sdf_yw = new SimpleDateFormat("yyyy-'W'ww");
+    private SimpleDateFormat sdf_yw = new SimpleDateFormat("yyyy-'W'ww");
+
+    // (the formats are not thread-safe, so every reader gets its own;
+    // several files may be ingested at the same time)
+    {
+        sdf_ymdhmsS.setTimeZone(TimeZone.getTimeZone("GMT"));
+        sdf_ymd.setTimeZone(TimeZone.getTimeZone("GMT"));
+        sdf_hms.setTimeZone(TimeZone.getTimeZone("GMT"));
+        sdf_yw.setTimeZone(TimeZone.getTimeZone("GMT"));
+    }
 
     // stata's calendar
     private static Calendar GCO_STATA = new GregorianCalendar(TimeZone.getTimeZone("GMT"));
@@ -219,10 +229,6 @@ public class NewDTAFileReader extends TabularDataFileReader {
 
     static {
 
-        sdf_ymdhmsS.setTimeZone(TimeZone.getTimeZone("GMT"));
-        sdf_ymd.setTimeZone(TimeZone.getTimeZone("GMT"));
-        sdf_hms.setTimeZone(TimeZone.getTimeZone("GMT"));
-        sdf_yw.setTimeZone(TimeZone.getTimeZone("GMT"));
 
         // set stata's calendar
         GCO_STATA.set(1, 1960);// year
@@ -729,7 +735,11 @@ public class NewDTAFileReader extends TabularDataFileReader {
         ingesteddata.setTabDelimitedFile(tabDelimitedDataFile);
 
         FileOutputStream fileOutTab = new FileOutputStream(tabDelimitedDataFile);
-        PrintWriter pwout = new PrintWriter(new OutputStreamWriter(fileOutTab, "utf8"), true);
+        // (if there are STRLs, this is only an intermediate file; the final 
+        // tab file, and its rotated image, are written in readSTRLs())
+        PrintWriter pwout = hasSTRLs
+                ? new PrintWriter(new OutputStreamWriter(fileOutTab, "utf8"), true)
+                : new TabularDataFileWriter(new OutputStreamWriter(fileOutTab, "utf8"), tabDelimitedDataFile, true);
 
         logger.fine("Beginning to read data stream.");
 
@@ -990,7 +1000,7 @@ public class NewDTAFileReader extends TabularDataFileReader {
 
             File finalTabFile = File.createTempFile("finalTabfile.", ".tab");
             FileOutputStream fileOutTab = new FileOutputStream(finalTabFile);
-            PrintWriter pwout = new PrintWriter(new OutputStreamWriter(fileOutTab, "utf8"), true);
+            PrintWriter pwout = new TabularDataFileWriter(new OutputStreamWriter(fileOutTab, "utf8"), finalTabFile, true);
 
             logger.fine("Setting the tab-delimited file to " + finalTabFile.getName());
             ingesteddata.setTabDelimitedFile(finalTabFile);
@@ -44,6 +44,7 @@ import edu.harvard.iq.dataverse.datavariable.VariableCategory;
 
 import edu.harvard.iq.dataverse.ingest.plugin.spi.*;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileReader;
+import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileWriter;
 import edu.harvard.iq.dataverse.ingest.tabulardata.spi.TabularDataFileReaderSpi;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
 import edu.harvard.iq.dataverse.rserve.*;
@@ -96,12 +97,12 @@ public class RDATAFileReader extends TabularDataFileReader {
   // TODO: 
   // we're not using these time/data formats for anything, are we?
   // DATE FORMATS
-  private static SimpleDateFormat[] DATE_FORMATS = new SimpleDateFormat[] {
+  private SimpleDateFormat[] DATE_FORMATS = new SimpleDateFormat[] {
     new SimpleDateFormat("yyyy-MM-dd")
   };
   
   // TIME FORMATS
-  private static SimpleDateFormat[] TIME_FORMATS = new SimpleDateFormat[] {
+  private SimpleDateFormat[] TIME_FORMATS = new SimpleDateFormat[] {
     // Date-time up to milliseconds with timezone, e.g. 2013-04-08 13:14:23.102 -0500
     new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS z"),
     // Date-time up to milliseconds, e.g. 2013-04-08 13:14:23.102
@@ -517,7 +518,7 @@ public class RDATAFileReader extends TabularDataFileReader {
             BufferedReader localBufferedReader = new BufferedReader(new InputStreamReader(new FileInputStream(localCsvFile), "UTF-8"));
 
             File tabFileDestination = File.createTempFile("data-", ".tab");
-            PrintWriter tabFileWriter = new PrintWriter(tabFileDestination.getAbsolutePath(), "UTF-8");
+            PrintWriter tabFileWriter = new TabularDataFileWriter(tabFileDestination, "UTF-8");
         
             int lineCount = csvFileReader.read(localBufferedReader, dataTable, tabFileWriter);
 
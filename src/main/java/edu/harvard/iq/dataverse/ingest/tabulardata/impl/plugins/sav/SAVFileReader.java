@@ -63,6 +63,7 @@ import edu.harvard.iq.dataverse.datavariable.VariableCategory;
 import edu.harvard.iq.dataverse.datavariable.VariableRange;
 
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileReader;
+import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileWriter;
 import edu.harvard.iq.dataverse.ingest.tabulardata.spi.TabularDataFileReaderSpi;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
 import edu.harvard.iq.dataverse.ingest.tabulardata.InvalidData;
@@ -2347,7 +2348,7 @@ public class SAVFileReader  extends TabularDataFileReader{
 
             fileOutTab = new FileOutputStream(tabDelimitedDataFile);
             
-            pwout = new PrintWriter(new OutputStreamWriter(fileOutTab, "utf8"), true);
+            pwout = new TabularDataFileWriter(new OutputStreamWriter(fileOutTab, "utf8"), tabDelimitedDataFile, true);
 
         } catch (FileNotFoundException ex) {
             ex.printStackTrace();
@@ -29,6 +29,7 @@ import edu.harvard.iq.dataverse.DataTable;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
 
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileReader;
+import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileWriter;
 import edu.harvard.iq.dataverse.ingest.tabulardata.spi.TabularDataFileReaderSpi;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
 
@@ -108,7 +109,7 @@ public class XLSXFileReader extends TabularDataFileReader {
         // 2nd pass:
         
         File tabFileDestination = File.createTempFile("data-", ".tab");
-        PrintWriter finalWriter = new PrintWriter(tabFileDestination.getAbsolutePath());
+        PrintWriter finalWriter = new TabularDataFileWriter(tabFileDestination);
         
         BufferedReader secondPassReader = new BufferedReader(new FileReader(firstPassTempFile));
         
@@ -0,0 +1,291 @@
+package edu.harvard.iq.dataverse.makedatacount;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Appends the Make Data Count log entries to the log file of their day,
+ * without a file being opened for every entry, nor the request logging the
+ * entry waiting for it to be written: {@link #append(Path, String)} adds the
+ * entry to an in-memory buffer, and a background thread appends the entries
+ * buffered - every {@code flushIntervalMillis}, or as soon as the buffer is
+ * half full - to the log file, which it keeps open until the entries go to
+ * another file (the one of the next day).
+ *
+ * A new log file starts with the header. When the buffer is full, the
+ * caller appends the entry itself. Whether the file is synced to the disk
+ * after every write, only when it is closed, or never, is up to the
+ * {@link SyncPolicy}.
+ */
+public class MakeDataCountLogWriter {
+
+    private static final Logger logger = Logger.getLogger(MakeDataCountLogWriter.class.getCanonicalName());
+
+    public enum SyncPolicy {
+        /** the file is synced after the entries buffered are written */
+        FLUSH,
+        /** the file is synced when closed, i.e. when the day changes */
+        ROTATE,
+        /** the file is left for the OS to sync */
+        NONE
+    }
+
+    private static class Entry {
+        final Path file;
+        final String line;
+
+        Entry(Path file, String line) {
+            this.file = file;
+            this.line = line;
+        }
+    }
+
+    private final String header;
+    private final SyncPolicy syncPolicy;
+    private final int capacity;
+    private final long flushIntervalNanos;
+    private final BlockingQueue<Entry> buffer;
+    private volatile boolean running = false;
+    private Thread flusher;
+
+    // the file being appended to; guarded by this
+    private Path currentFile;
+    private FileChannel channel;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong writtenByCaller = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong rotations = new AtomicLong();
+
+    public MakeDataCountLogWriter(String header, SyncPolicy syncPolicy, int capacity, long flushIntervalMillis) {
+        this.header = header;
+        this.syncPolicy = syncPolicy;
+        this.capacity = capacity;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        flusher = new Thread(this::run, "mdc-log-writer");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Stops the background thread, writes the entries still buffered, and
+     * closes the log file.
+     */
+    public void stop() {
+        Thread stopping;
+        synchronized (this) {
+            running = false;
+            stopping = flusher;
+            flusher = null;
+        }
+        if (stopping != null) {
+            LockSupport.unpark(stopping);
+            try {
+                stopping.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            flush();
+            close();
+        }
+    }
+
+    /**
+     * Appends the line - a complete log entry, ending with a new line - to
+     * the file, shortly; or right away if the buffer is full or the writer
+     * is not running.
+     */
+    public void append(Path file, String line) {
+        Entry entry = new Entry(file, line);
+        if (running && buffer.offer(entry)) {
+            appended.incrementAndGet();
+            if (buffer.size() == capacity / 2) {
+                Thread current = flusher;
+                if (current != null) {
+                    LockSupport.unpark(current);
+                }
+            }
+            return;
+        }
+        synchronized (this) {
+            // (the entries buffered before it go first)
+            flush();
+            List<Entry> entries = new ArrayList<>(1);
+            entries.add(entry);
+            write(entries);
+            writtenByCaller.incrementAndGet();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            long deadline = System.nanoTime() + flushIntervalNanos;
+            long remaining;
+            while (running && buffer.size() < capacity / 2 && (remaining = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, remaining);
+            }
+            try {
+                synchronized (this) {
+                    flush();
+                }
+            } catch (RuntimeException ex) {
+                logger.log(Level.SEVERE, "Unexpected failure writing the Make Data Count log", ex);
+            }
+        }
+    }
+
+    /**
+     * Writes the entries buffered right away.
+     */
+    public synchronized void flush() {
+        List<Entry> entries = new ArrayList<>(buffer.size());
+        buffer.drainTo(entries);
+        if (!entries.isEmpty()) {
+            write(entries);
+        }
+    }
+
+    private void write(List<Entry> entries) {
+        int start = 0;
+        while (start < entries.size()) {
+            // the entries for the same file, written at once
+            Path file = entries.get(start).file;
+            int end = start;
+            StringBuilder lines = new StringBuilder();
+            while (end < entries.size() && entries.get(end).file.equals(file)) {
+                lines.append(entries.get(end).line);
+                end++;
+            }
+            try {
+                writeToFile(file, lines.toString());
+                written.addAndGet(end - start);
+            } catch (IOException ex) {
+                lost.addAndGet(end - start);
+                logger.log(Level.SEVERE, "Error saving log report: " + file + " " + ex.getMessage());
+                close();
+            }
+            start = end;
+        }
+    }
+
+    private void writeToFile(Path file, String lines) throws IOException {
+        if (!file.equals(currentFile)) {
+            if (currentFile != null) {
+                rotations.incrementAndGet();
+            }
+            close();
+            Path directory = file.toAbsolutePath().getParent();
+            if (directory != null) {
+                Files.createDirectories(directory);
+            }
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            currentFile = file;
+            if (channel.size() == 0 && header != null) {
+                writeFully(header);
+            }
+        }
+        writeFully(lines);
+        writes.incrementAndGet();
+        if (syncPolicy == SyncPolicy.FLUSH) {
+            channel.force(false);
+        }
+    }
+
+    private void writeFully(String text) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    private void close() {
+        if (channel != null) {
+            try {
+                if (syncPolicy != SyncPolicy.NONE) {
+                    channel.force(false);
+                }
+                channel.close();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Error closing log report: " + currentFile + " " + ex.getMessage());
+            }
+        }
+        channel = null;
+        currentFile = null;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public SyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    public int getBuffered() {
+        return buffer.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of entries buffered since the writer was created
+     */
+    public long getAppended() {
+        return appended.get();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * @return the number of entries written by the caller, because the
+     * buffer was full
+     */
+    public long getWrittenByCaller() {
+        return writtenByCaller.get();
+    }
+
+    /**
+     * @return the number of entries that could not be written
+     */
+    public long getLost() {
+        return lost.get();
+    }
+
+    public long getWrites() {
+        return writes.get();
+    }
+
+    public long getRotations() {
+        return rotations.get();
+    }
+}
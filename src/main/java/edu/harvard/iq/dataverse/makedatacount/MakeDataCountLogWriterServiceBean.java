@@ -0,0 +1,63 @@
+package edu.harvard.iq.dataverse.makedatacount;
+
+import static edu.harvard.iq.dataverse.makedatacount.MakeDataCountUtil.LOG_HEADER;
+import edu.harvard.iq.dataverse.util.SystemConfig;
+import java.nio.file.Path;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.EJB;
+import javax.ejb.Lock;
+import javax.ejb.LockType;
+import javax.ejb.Singleton;
+import javax.ejb.TransactionManagement;
+import javax.ejb.TransactionManagementType;
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+
+/**
+ * Holds the {@link MakeDataCountLogWriter} of this server, which appends
+ * the entries logged by {@link MakeDataCountLoggingServiceBean} to the log
+ * files; it writes the entries still buffered when the application stops.
+ */
+@Singleton
+@TransactionManagement(value = TransactionManagementType.BEAN)
+public class MakeDataCountLogWriterServiceBean {
+
+    static final int BUFFER_SIZE = 65536;
+    static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+    @EJB
+    SystemConfig systemConfig;
+
+    private MakeDataCountLogWriter writer;
+
+    @PostConstruct
+    void startWriter() {
+        writer = new MakeDataCountLogWriter(LOG_HEADER, systemConfig.getMDCLogSyncPolicy(), BUFFER_SIZE, FLUSH_INTERVAL_MILLIS);
+        writer.start();
+    }
+
+    @PreDestroy
+    void stopWriter() {
+        writer.stop();
+    }
+
+    @Lock(LockType.READ)
+    public void append(Path file, String line) {
+        writer.append(file, line);
+    }
+
+    @Lock(LockType.READ)
+    public JsonObjectBuilder getStatistics() {
+        return Json.createObjectBuilder()
+                .add("syncPolicy", writer.getSyncPolicy().toString().toLowerCase())
+                .add("buffered", writer.getBuffered())
+                .add("capacity", writer.getCapacity())
+                .add("appended", writer.getAppended())
+                .add("written", writer.getWritten())
+                .add("writtenByCaller", writer.getWrittenByCaller())
+                .add("lost", writer.getLost())
+                .add("writes", writer.getWrites())
+                .add("rotations", writer.getRotations());
+    }
+}
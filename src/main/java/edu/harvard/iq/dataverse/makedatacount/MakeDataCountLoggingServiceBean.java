@@ -9,13 +9,15 @@ import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetVersion;
 import edu.harvard.iq.dataverse.DataverseRequestServiceBean;
-import edu.harvard.iq.dataverse.batch.util.LoggingUtil;
-import static edu.harvard.iq.dataverse.makedatacount.MakeDataCountUtil.LOG_HEADER;
 import edu.harvard.iq.dataverse.util.SystemConfig;
-import java.sql.Timestamp;
-import java.text.SimpleDateFormat;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
-import java.util.TimeZone;
 import javax.ejb.EJB;
 import javax.enterprise.context.RequestScoped;
 import javax.faces.context.FacesContext;
@@ -36,15 +38,29 @@ public class MakeDataCountLoggingServiceBean {
     
     @EJB
     SystemConfig systemConfig;
-
+    
+    @EJB
+    MakeDataCountLogWriterServiceBean logWriter;
+
+    // (formatters are thread safe, unlike SimpleDateFormat)
+    private static final DateTimeFormatter LOG_FILE_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter EVENT_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ");
+    private static final DateTimeFormatter PUBLICATION_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'").withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter PUBLICATION_YEAR_FORMAT = DateTimeFormatter.ofPattern("yyyy");
+
+    /**
+     * Appends the entry to the log file of the day - shortly, see
+     * {@link MakeDataCountLogWriter}.
+     */
     public void logEntry(MakeDataCountEntry entry) {
-        if(systemConfig.getMDCLogPath() != null) {
-            LoggingUtil.saveLogFileAppendWithHeader(entry.toString(), systemConfig.getMDCLogPath(), getLogFileName() , LOG_HEADER);
+        String logPath = systemConfig.getMDCLogPath();
+        if(logPath != null) {
+            logWriter.append(Paths.get(logPath, getLogFileName()), entry.toString());
         }
     }
     
     public String getLogFileName() {
-        return "counter_"+new SimpleDateFormat("yyyy-MM-dd").format(new Timestamp(new Date().getTime()))+".log";
+        return "counter_" + LocalDate.now().format(LOG_FILE_DATE_FORMAT) + ".log";
     }
     
     public static class MakeDataCountEntry {
@@ -101,11 +117,9 @@ public class MakeDataCountLoggingServiceBean {
                 if(null == releaseTime) { //Seems to be null when called from Datasets api
                     releaseTime = publishedVersion.getLastUpdateTime();
                 }
-                setPublicationYear(new SimpleDateFormat("yyyy").format(releaseTime));
-                
-                SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");     
-                    format.setTimeZone(TimeZone.getTimeZone("GMT"));
-                setPublicationDate(format.format(releaseTime));
+                Instant releaseInstant = Instant.ofEpochMilli(releaseTime.getTime());
+                setPublicationYear(PUBLICATION_YEAR_FORMAT.format(releaseInstant.atZone(ZoneId.systemDefault())));
+                setPublicationDate(PUBLICATION_DATE_FORMAT.format(releaseInstant));
             }
 
             if(dvRequestService != null) {
@@ -113,7 +127,7 @@ public class MakeDataCountLoggingServiceBean {
                 setUserId(dvRequestService.getDataverseRequest().getUser().getIdentifier());
             }
 
-            setEventTime(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(new Timestamp(new Date().getTime())));
+            setEventTime(ZonedDateTime.now().format(EVENT_TIME_FORMAT));
         }
 
         //This version of the constructor is for the downloads tracked in FileDownloadServiceBean
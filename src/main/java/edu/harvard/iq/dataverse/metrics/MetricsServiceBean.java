@@ -10,7 +10,6 @@ import static edu.harvard.iq.dataverse.metrics.MetricsUtil.*;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import java.io.Serializable;
 import java.math.BigDecimal;
-import java.sql.Timestamp;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.time.LocalDate;
@@ -405,33 +404,49 @@ public class MetricsServiceBean implements Serializable {
         
     }
     /** Downloads 
+     * 
+     * The download counts (rather than the unique ones) are read from the
+     * counts by file, dataset and month maintained as the guestbook responses
+     * are written (see GuestbookResponseWriterServiceBean), in which the
+     * historic responses without a date are counted in -infinity.
+     * 
      * @param d
      * @throws ParseException */
 
     
     public JsonArray downloadsTimeSeries(Dataverse d) {
         // ToDo - published only?
-        Query earlyDateQuery = em.createNativeQuery(""
-                + "select responsetime from guestbookresponse\n"
-                + "ORDER BY responsetime LIMIT 1;");
-
-        Timestamp earlyDateTimestamp = (Timestamp) earlyDateQuery.getSingleResult();
-        LocalDate earliestDate = earlyDateTimestamp.toLocalDateTime().toLocalDate().minusMonths(1);
+        LocalDate earliestDate = getEarliestDownloadMonth().toLocalDate().minusMonths(1);
         String earliest = earliestDate.format(DateTimeFormatter.ofPattern(YEAR_AND_MONTH_PATTERN));
 
         // Counts historic guestbook records without date as occurring in the month
         // prior to the first dated counts
         Query query = em.createNativeQuery(""
-                + "select  distinct COALESCE(to_char(responsetime, 'YYYY-MM'),'" + earliest + "') as date, count(id)\n"
-                + "from guestbookresponse\n"
+                + "select COALESCE(to_char(month, 'YYYY-MM'),'" + earliest + "') as date, CAST(sum(count) AS bigint)\n"
+                + "from datasetdownloadcount\n"
                 + ((d == null) ? "" : "where dataset_id in (" + getCommaSeparatedIdStringForSubtree(d, "Dataset") + ")")
-                + " group by COALESCE(to_char(responsetime, 'YYYY-MM'),'" + earliest + "') order by  COALESCE(to_char(responsetime, 'YYYY-MM'),'" + earliest + "');");
+                + " group by COALESCE(to_char(month, 'YYYY-MM'),'" + earliest + "') order by  COALESCE(to_char(month, 'YYYY-MM'),'" + earliest + "');");
 
         logger.log(Level.FINE, "Metric query: {0}", query);
         List<Object[]> results = query.getResultList();
         return MetricsUtil.timeSeriesToJson(results);
     }
     
+    /**
+     * @return the first month with dated downloads
+     * @throws NoResultException if there are none
+     */
+    private java.sql.Date getEarliestDownloadMonth() {
+        Query earlyDateQuery = em.createNativeQuery(""
+                + "select min(month) from datasetdownloadcount\n"
+                + "where month > '-infinity';");
+        java.sql.Date earliestMonth = (java.sql.Date) earlyDateQuery.getSingleResult();
+        if (earliestMonth == null) {
+            throw new NoResultException("No dated downloads");
+        }
+        return earliestMonth;
+    }
+    
     /*
      * This includes getting historic download without a timestamp if query
      * is earlier than earliest timestamped record
@@ -440,23 +455,16 @@ public class MetricsServiceBean implements Serializable {
      */
     public long downloadsToMonth(String yyyymm, Dataverse d) throws ParseException {
         // ToDo - published only?
-        Query earlyDateQuery = em.createNativeQuery(""
-                + "select responsetime from guestbookresponse\n"
-               + "ORDER BY responsetime LIMIT 1;"
-        );
-
         try {
-            Timestamp earlyDateTimestamp = (Timestamp) earlyDateQuery.getSingleResult();
-            Date earliestDate = new Date(earlyDateTimestamp.getTime());
+            Date earliestDate = getEarliestDownloadMonth();
 
             Date dateQueried = yyyymmFormat.parse(yyyymm);
 
             if (!dateQueried.before(earliestDate)) {
                 Query query = em.createNativeQuery(""
-                        + "select count(id)\n"
-                        + "from guestbookresponse\n"
-                        + "where date_trunc('month', responsetime) <=  to_date('" + yyyymm + "','YYYY-MM')"
-                        + "or responsetime is NULL\n" // includes historic guestbook records without date
+                        + "select CAST(COALESCE(sum(count), 0) AS bigint)\n"
+                        + "from datasetdownloadcount\n"
+                        + "where month <=  to_date('" + yyyymm + "','YYYY-MM')\n" // includes historic guestbook records without date
                     + ((d==null) ? ";": "AND dataset_id in (" + getCommaSeparatedIdStringForSubtree(d, "Dataset") + ");") 
                 );
                 logger.log(Level.FINE, "Metric query: {0}", query);
@@ -466,7 +474,7 @@ public class MetricsServiceBean implements Serializable {
                 return 0L;
             }
         } catch (NoResultException e) {
-            //If earlyDateQuery.getSingleResult is null, then there are no guestbooks and we can return 0
+            //If there are no dated downloads, then there are no guestbooks and we can return 0
             return 0L;
         }
 
@@ -486,11 +494,20 @@ public class MetricsServiceBean implements Serializable {
     }
     
     public JsonArray fileDownloadsTimeSeries(Dataverse d, boolean uniqueCounts) {
-        Query query = em.createNativeQuery("select distinct to_char(gb.responsetime, 'YYYY-MM') as date, ob.id, ob.protocol || ':' || ob.authority || '/' || ob.identifier as pid, count(" + (uniqueCounts ? "distinct email" : "*") + ") "
+        Query query;
+        if (uniqueCounts) {
+            query = em.createNativeQuery("select distinct to_char(gb.responsetime, 'YYYY-MM') as date, ob.id, ob.protocol || ':' || ob.authority || '/' || ob.identifier as pid, count(distinct email) "
                 + " FROM guestbookresponse gb, DvObject ob"
                 + " where ob.id = gb.datafile_id "
                 + ((d == null) ? "" : " and ob.owner_id in (" + getCommaSeparatedIdStringForSubtree(d, "Dataset") + ")\n")
                 + "group by gb.datafile_id, ob.id, ob.protocol, ob.authority, ob.identifier, to_char(gb.responsetime, 'YYYY-MM') order by to_char(gb.responsetime, 'YYYY-MM');");
+        } else {
+            query = em.createNativeQuery("select to_char(c.month, 'YYYY-MM') as date, ob.id, ob.protocol || ':' || ob.authority || '/' || ob.identifier as pid, c.count "
+                + " FROM datafiledownloadcount c, DvObject ob"
+                + " where ob.id = c.datafile_id "
+                + ((d == null) ? "" : " and ob.owner_id in (" + getCommaSeparatedIdStringForSubtree(d, "Dataset") + ")\n")
+                + "order by to_char(c.month, 'YYYY-MM');");
+        }
 
         logger.log(Level.FINE, "Metric query: {0}", query);
         List<Object[]> results = query.getResultList();
@@ -499,12 +516,23 @@ public class MetricsServiceBean implements Serializable {
     }
     
     public JsonArray fileDownloads(String yyyymm, Dataverse d, boolean uniqueCounts) {
-        Query query = em.createNativeQuery("select ob.id, ob.protocol || ':' || ob.authority || '/' || ob.identifier as pid, count(" + (uniqueCounts ? "distinct email" : "*") + ") "
+        Query query;
+        if (uniqueCounts) {
+            query = em.createNativeQuery("select ob.id, ob.protocol || ':' || ob.authority || '/' || ob.identifier as pid, count(distinct email) "
                 + " FROM guestbookresponse gb, DvObject ob"
                 + " where ob.id = gb.datafile_id "
                 + ((d == null) ? "" : " and ob.owner_id in (" + getCommaSeparatedIdStringForSubtree(d, "Dataset") + ")\n")
                 + " and date_trunc('month', gb.responsetime) <=  to_date('" + yyyymm + "','YYYY-MM')\n"
                 + "group by gb.datafile_id, ob.id, ob.protocol, ob.authority, ob.identifier order by count desc;");
+        } else {
+            // (the downloads without a date are left out, as they always were)
+            query = em.createNativeQuery("select ob.id, ob.protocol || ':' || ob.authority || '/' || ob.identifier as pid, CAST(sum(c.count) AS bigint) as count "
+                + " FROM datafiledownloadcount c, DvObject ob"
+                + " where ob.id = c.datafile_id "
+                + ((d == null) ? "" : " and ob.owner_id in (" + getCommaSeparatedIdStringForSubtree(d, "Dataset") + ")\n")
+                + " and c.month > '-infinity' and c.month <=  to_date('" + yyyymm + "','YYYY-MM')\n"
+                + "group by c.datafile_id, ob.id, ob.protocol, ob.authority, ob.identifier order by count desc;");
+        }
 
         logger.log(Level.FINE, "Metric query: {0}", query);
         JsonArrayBuilder jab = Json.createArrayBuilder();
@@ -2,6 +2,7 @@ package edu.harvard.iq.dataverse.search;
 
 import edu.harvard.iq.dataverse.DatasetServiceBean;
 import edu.harvard.iq.dataverse.Dataverse;
+import edu.harvard.iq.dataverse.DataverseAncestorCache;
 import edu.harvard.iq.dataverse.DataverseServiceBean;
 import edu.harvard.iq.dataverse.DvObjectServiceBean;
 import edu.harvard.iq.dataverse.util.SystemConfig;
@@ -45,6 +46,11 @@ public class IndexBatchServiceBean {
     DvObjectServiceBean dvObjectService;
     @EJB
     SystemConfig systemConfig;
+    @EJB
+    SolrClientService solrClientService;
+    
+    // Throughput of the last bulk index run on this node; reported by indexStatus().
+    private static volatile JsonObject lastBulkIndexStats = null;
     
     @Asynchronous
     public Future<JsonObjectBuilder> indexStatus() {
@@ -71,6 +77,15 @@ public class IndexBatchServiceBean {
                 .add("contentInIndexButNotDatabase", contentInSolrButNotDatabase)
                 .add("permissionsInDatabaseButStaleInOrMissingFromIndex", permissionsInDatabaseButStaleInOrMissingFromSolr)
                 .add("permissionsInIndexButNotDatabase", permissionsInSolrButNotDatabase);
+        if (lastBulkIndexStats != null) {
+            data.add("lastBulkIndex", lastBulkIndexStats);
+        }
+        DataverseAncestorCache ancestorCache = DataverseServiceBean.ancestorCache;
+        data.add("ancestorPathCache", Json.createObjectBuilder()
+                .add("size", ancestorCache.size())
+                .add("hits", ancestorCache.getHits())
+                .add("misses", ancestorCache.getMisses())
+                .add("hitRate", ancestorCache.getHitRate()));
 
         logger.log(Level.INFO, "contentInDatabaseButStaleInOrMissingFromIndex: {0}", contentInDatabaseButStaleInOrMissingFromSolr);
         logger.log(Level.INFO, "contentInIndexButNotDatabase: {0}", contentInSolrButNotDatabase);
@@ -108,8 +123,24 @@ public class IndexBatchServiceBean {
     
     @Asynchronous
     public Future<JsonObjectBuilder> indexAllOrSubset(long numPartitions, long partitionId, boolean skipIndexed, boolean previewOnly) {
+        return indexAllOrSubset(numPartitions, partitionId, skipIndexed, previewOnly, false);
+    }
+
+    /**
+     * @param bulk if true, the Solr documents are buffered across objects and
+     * sent in batches, relying on commitWithin, with a single hard commit at 
+     * the end (see {@link SolrBulkIndexer}); instead of an add and a commit
+     * for every object. 
+     */
+    @Asynchronous
+    public Future<JsonObjectBuilder> indexAllOrSubset(long numPartitions, long partitionId, boolean skipIndexed, boolean previewOnly, boolean bulk) {
         JsonObjectBuilder response = Json.createObjectBuilder();
-        indexAllOrSubset(numPartitions, partitionId, skipIndexed);
+        SolrBulkIndexer bulkIndexer = null;
+        if (bulk) {
+            bulkIndexer = new SolrBulkIndexer(solrClientService.getSolrClient());
+            bulkIndexer.setIndexTimeRecorder(dvObjectService::updateIndexTimes, SolrBulkIndexer.DEFAULT_MAX_UNCOMMITTED_OBJECTS);
+        }
+        indexAllOrSubset(numPartitions, partitionId, skipIndexed, bulkIndexer);
         String status = "indexAllOrSubset has begun";
         response.add("responseFromIndexAllOrSubset", status);
         return new AsyncResult<>(response);
@@ -145,6 +176,10 @@ public class IndexBatchServiceBean {
     }
 
     public Future<String> indexAllOrSubset(long numPartitions, long partitionId, boolean skipIndexed) {
+        return indexAllOrSubset(numPartitions, partitionId, skipIndexed, null);
+    }
+
+    public Future<String> indexAllOrSubset(long numPartitions, long partitionId, boolean skipIndexed, SolrBulkIndexer bulkIndexer) {
         long indexAllTimeBegin = System.currentTimeMillis();
         String status;
 
@@ -176,56 +211,90 @@ public class IndexBatchServiceBean {
             resultOfClearingIndexTimes = "Solr index was not cleared before indexing.";
         }
 
-        // List<Dataverse> dataverses = dataverseService.findAllOrSubset(numPartitions, partitionId, skipIndexed);
-        // Note: no support for "partitions" in this experimental branch. 
-        // The method below returns the ids of all the unindexed dataverses.
-        List<Long> dataverseIds = dataverseIds = dataverseService.findDataverseIdsForIndexing(skipIndexed);
+        if (bulkIndexer != null) {
+            logger.info("running in bulk mode; Solr documents will be sent in batches and committed at the end");
+            bulkIndexer.bindToCurrentThread();
+        }
         
         int dataverseIndexCount = 0;
         int dataverseFailureCount = 0;
-        //for (Dataverse dataverse : dataverses) {
-        for (Long id : dataverseIds) {
-            try {
-                dataverseIndexCount++;
-                Dataverse dataverse = dataverseService.find(id);
-                logger.info("indexing dataverse " + dataverseIndexCount + " of " + dataverseIds.size() + " (id=" + id + ", persistentId=" + dataverse.getAlias() + ")");
-                Future<String> result = indexService.indexDataverseInNewTransaction(dataverse);
-                dataverse = null;
-            } catch (Exception e) {
-                //We want to keep running even after an exception so throw some more info into the log
-                dataverseFailureCount++;
-                logger.info("FAILURE indexing dataverse " + dataverseIndexCount + " of " + dataverseIds.size() + " (id=" + id + ") Exception info: " + e.getMessage());
-            }
-        }
-
         int datasetIndexCount = 0;
         int datasetFailureCount = 0;
-        List<Long> datasetIds = datasetService.findAllOrSubset(numPartitions, partitionId, skipIndexed);
-        for (Long id : datasetIds) {
-            try {
-                datasetIndexCount++;
-                logger.info("indexing dataset " + datasetIndexCount + " of " + datasetIds.size() + " (id=" + id + ")");
-                Future<String> result = indexService.indexDatasetInNewTransaction(id);
-            } catch (Exception e) {
-                //We want to keep running even after an exception so throw some more info into the log
-                datasetFailureCount++;
-                logger.info("FAILURE indexing dataset " + datasetIndexCount + " of " + datasetIds.size() + " (id=" + id + ") Exception info: " + e.getMessage());
+        try {
+            // List<Dataverse> dataverses = dataverseService.findAllOrSubset(numPartitions, partitionId, skipIndexed);
+            // Note: no support for "partitions" in this experimental branch. 
+            // The method below returns the ids of all the unindexed dataverses.
+            List<Long> dataverseIds = dataverseIds = dataverseService.findDataverseIdsForIndexing(skipIndexed);
+        
+            //for (Dataverse dataverse : dataverses) {
+            for (Long id : dataverseIds) {
+                try {
+                    dataverseIndexCount++;
+                    Dataverse dataverse = dataverseService.find(id);
+                    logger.info("indexing dataverse " + dataverseIndexCount + " of " + dataverseIds.size() + " (id=" + id + ", persistentId=" + dataverse.getAlias() + ")");
+                    Future<String> result = indexService.indexDataverseInNewTransaction(dataverse);
+                    dataverse = null;
+                } catch (Exception e) {
+                    //We want to keep running even after an exception so throw some more info into the log
+                    dataverseFailureCount++;
+                    logger.info("FAILURE indexing dataverse " + dataverseIndexCount + " of " + dataverseIds.size() + " (id=" + id + ") Exception info: " + e.getMessage());
+                }
+            }
+
+            List<Long> datasetIds = datasetService.findAllOrSubset(numPartitions, partitionId, skipIndexed);
+            for (Long id : datasetIds) {
+                try {
+                    datasetIndexCount++;
+                    logger.info("indexing dataset " + datasetIndexCount + " of " + datasetIds.size() + " (id=" + id + ")");
+                    Future<String> result = indexService.indexDatasetInNewTransaction(id);
+                } catch (Exception e) {
+                    //We want to keep running even after an exception so throw some more info into the log
+                    datasetFailureCount++;
+                    logger.info("FAILURE indexing dataset " + datasetIndexCount + " of " + datasetIds.size() + " (id=" + id + ") Exception info: " + e.getMessage());
+                }
+            }
+            logger.info("done iterating through all datasets");
+        } finally {
+            if (bulkIndexer != null) {
+                SolrBulkIndexer.unbindFromCurrentThread();
+                finishBulkIndex(bulkIndexer);
             }
         }
-        logger.info("done iterating through all datasets");
 
         long indexAllTimeEnd = System.currentTimeMillis();
         String timeElapsed = "index all took " + (indexAllTimeEnd - indexAllTimeBegin) + " milliseconds";
         logger.info(timeElapsed);
+        logger.info("ancestor path cache: " + DataverseServiceBean.ancestorCache.getHits() + " hits, " + DataverseServiceBean.ancestorCache.getMisses() + " misses since startup");
         if (datasetFailureCount + dataverseFailureCount > 0){
             String failureMessage = "There were index failures. " + dataverseFailureCount + " dataverse(s) and " + datasetFailureCount + " dataset(s) failed to index. Please check the log for more information.";
             logger.info(failureMessage);            
         }
         status = dataverseIndexCount + " dataverses and " + datasetIndexCount + " datasets indexed. " + timeElapsed + ". " + resultOfClearingIndexTimes + "\n";
+        if (bulkIndexer != null) {
+            status += bulkIndexer.getDocsSent() + " Solr documents sent in " + bulkIndexer.getBatchesSent() + " batches (" + String.format("%.1f", bulkIndexer.getDocsPerSecond()) + " docs/sec).\n";
+        }
         logger.info(status);
         return new AsyncResult<>(status);
     }
         
+    private void finishBulkIndex(SolrBulkIndexer bulkIndexer) {
+        String commitResult = "committed";
+        try {
+            bulkIndexer.finish();
+        } catch (SolrServerException | IOException ex) {
+            commitResult = "final commit failed: " + ex;
+            logger.warning("Bulk index: " + commitResult);
+        }
+        lastBulkIndexStats = Json.createObjectBuilder()
+                .add("docsSent", bulkIndexer.getDocsSent())
+                .add("batchesSent", bulkIndexer.getBatchesSent())
+                .add("elapsedMillis", bulkIndexer.getElapsedMillis())
+                .add("docsPerSecond", bulkIndexer.getDocsPerSecond())
+                .add("result", commitResult)
+                .build();
+        logger.info("Bulk index finished: " + lastBulkIndexStats);
+    }
+
     @Asynchronous
     public void indexDataverseRecursively(Dataverse dataverse) {
         long start = System.currentTimeMillis();
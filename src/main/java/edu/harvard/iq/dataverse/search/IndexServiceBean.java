@@ -38,6 +38,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -290,7 +291,7 @@ public class IndexServiceBean {
         String status;
         try {
             if (dataverse.getId() != null) {
-                solrClientService.getSolrClient().add(docs);
+                persistToSolr(docs);
             } else {
                 logger.info("WARNING: indexing of a dataverse with no id attempted");
             }
@@ -299,15 +300,20 @@ public class IndexServiceBean {
             logger.info(status);
             return new AsyncResult<>(status);
         }
-        try {
-            solrClientService.getSolrClient().commit();
-        } catch (SolrServerException | IOException ex) {
-            status = ex.toString();
-            logger.info(status);
-            return new AsyncResult<>(status);
-        }
 
-        dvObjectService.updateContentIndexTime(dataverse);
+        SolrBulkIndexer bulkIndexer = SolrBulkIndexer.getCurrent();
+        if (bulkIndexer != null) {
+            // stamped once the documents are committed
+            try {
+                bulkIndexer.indexed(dataverse.getId());
+            } catch (SolrServerException | IOException ex) {
+                status = ex.toString();
+                logger.info(status);
+                return new AsyncResult<>(status);
+            }
+        } else {
+            dvObjectService.updateContentIndexTime(dataverse);
+        }
         IndexResponse indexResponse = solrIndexService.indexPermissionsForOneDvObject(dataverse);
         String msg = "indexed dataverse " + dataverse.getId() + ":" + dataverse.getAlias() + ". Response from permission indexing: " + indexResponse.getMessage();
         return new AsyncResult<>(msg);
@@ -1225,8 +1231,7 @@ public class IndexServiceBean {
         }
         
         try {
-            solrClientService.getSolrClient().add(docs);
-            solrClientService.getSolrClient().commit();
+            persistToSolr(docs);
         } catch (SolrServerException | IOException ex) {
             if (ex.getCause() instanceof SolrServerException) {
                 throw new SolrServerException(ex);
@@ -1236,19 +1241,55 @@ public class IndexServiceBean {
         }
 
         Long dsId = dataset.getId();
-        /// Dataset updatedDataset =
-        /// (Dataset)dvObjectService.updateContentIndexTime(dataset);
-        /// updatedDataset = null;
-        // instead of making a call to dvObjectService, let's try and
-        // modify the index time stamp using the local EntityManager:
-        DvObject dvObjectToModify = em.find(DvObject.class, dsId);
-        dvObjectToModify.setIndexTime(new Timestamp(new Date().getTime()));
-        dvObjectToModify = em.merge(dvObjectToModify);
-        dvObjectToModify = null;
+        SolrBulkIndexer bulkIndexer = SolrBulkIndexer.getCurrent();
+        if (bulkIndexer != null) {
+            // stamped once the documents are committed
+            bulkIndexer.indexed(dsId);
+        } else {
+            /// Dataset updatedDataset =
+            /// (Dataset)dvObjectService.updateContentIndexTime(dataset);
+            /// updatedDataset = null;
+            // instead of making a call to dvObjectService, let's try and
+            // modify the index time stamp using the local EntityManager:
+            DvObject dvObjectToModify = em.find(DvObject.class, dsId);
+            dvObjectToModify.setIndexTime(new Timestamp(new Date().getTime()));
+            dvObjectToModify = em.merge(dvObjectToModify);
+            dvObjectToModify = null;
+        }
 
         return "indexed dataset " + dsId + " as " + datasetSolrDocId + ". filesIndexed: " + filesIndexed;
     }
 
+    /**
+     * Adds the documents to Solr and commits; or, if a bulk (re)index is 
+     * running on this thread, hands them over to the {@link SolrBulkIndexer}, 
+     * to be sent in batches, with a single commit at the end of the run.
+     */
+    private void persistToSolr(Collection<SolrInputDocument> docs) throws SolrServerException, IOException {
+        SolrBulkIndexer bulkIndexer = SolrBulkIndexer.getCurrent();
+        if (bulkIndexer != null) {
+            bulkIndexer.add(docs);
+            return;
+        }
+        solrClientService.getSolrClient().add(docs);
+        solrClientService.getSolrClient().commit();
+    }
+
+    /**
+     * Deletes the document from Solr and commits; or, if a bulk (re)index is 
+     * running on this thread, has the {@link SolrBulkIndexer} delete it, 
+     * committed with the documents it adds.
+     */
+    private UpdateResponse deleteFromSolr(String solrId) throws SolrServerException, IOException {
+        SolrBulkIndexer bulkIndexer = SolrBulkIndexer.getCurrent();
+        if (bulkIndexer != null) {
+            return bulkIndexer.deleteById(Collections.singletonList(solrId));
+        }
+        UpdateResponse updateResponse = solrClientService.getSolrClient().deleteById(solrId);
+        solrClientService.getSolrClient().commit();
+        return updateResponse;
+    }
+
     /**
      * If the "Topic Classification" has a "Vocabulary", return both the "Term"
      * and the "Vocabulary" with the latter in parentheses. For example, the
@@ -1284,20 +1325,15 @@ public class IndexServiceBean {
 
     public List<String> findPathSegments(Dataverse dataverse, List<String> segments, Dataverse topOfPath) {
         Dataverse rootDataverse = findRootDataverseCached();
-        if (topOfPath == null) {
-            topOfPath = rootDataverse;
-        }
-        if (!dataverse.equals(rootDataverse)) {
-            // important when creating root dataverse
-            if (dataverse.getOwner() != null) {
-                findPathSegments(dataverse.getOwner(), segments, topOfPath);
+        // the owner chain comes from the ancestor cache, rather than being 
+        // walked again for every document indexed
+        for (Long id : DataverseServiceBean.ancestorCache.getAncestorIds(dataverse)) {
+            // (rootDataverse is null while the root dataverse is being created)
+            if (rootDataverse == null || !id.equals(rootDataverse.getId())) {
+                segments.add(id.toString());
             }
-            segments.add(dataverse.getId().toString());
-            return segments;
-        } else {
-            // base case
-            return segments;
         }
+        return segments;
     }
         
     private boolean hasAnyLinkingDataverses(Dataverse dataverse) {
@@ -1324,26 +1360,29 @@ public class IndexServiceBean {
         Dataverse dv = null;
         Dataverse rootDataverse = findRootDataverseCached();        
         List <Dataverse>linkingDataverses = new ArrayList();
-        List<Dataverse> ancestorList = new ArrayList();
+        List<Long> ancestorIds = new ArrayList();
         
         try {
             if(dvObject.isInstanceofDataset()){
                 dataset = (Dataset) dvObject;
                 linkingDataverses = dsLinkingService.findLinkingDataverses(dataset.getId());
-                ancestorList = dataset.getOwner().getOwners();
+                // the owners of the dataset's dataverse, as in getOwners()
+                ancestorIds = DataverseServiceBean.ancestorCache.getAncestorIds(dataset.getOwner());
+                ancestorIds = ancestorIds.subList(0, ancestorIds.size() - 1);
             }
             if(dvObject.isInstanceofDataverse()){
                 dv = (Dataverse) dvObject;
                 linkingDataverses = dvLinkingService.findLinkingDataverses(dv.getId());
-                ancestorList = dv.getOwners();
+                ancestorIds = DataverseServiceBean.ancestorCache.getAncestorIds(dv);
+                ancestorIds = ancestorIds.subList(0, ancestorIds.size() - 1);
             }
         } catch (Exception ex) {
             logger.info("failed to find Linking Dataverses for " + SearchFields.SUBTREE + ": " + ex);
         }
         
-        for (Dataverse owner : ancestorList) {
-            if (!owner.equals(rootDataverse)) {
-            linkingDataverses.addAll(dvLinkingService.findLinkingDataverses(owner.getId()));
+        for (Long ownerId : ancestorIds) {
+            if (rootDataverse == null || !ownerId.equals(rootDataverse.getId())) {
+            linkingDataverses.addAll(dvLinkingService.findLinkingDataverses(ownerId));
             }
         }       
         
@@ -1506,12 +1545,7 @@ public class IndexServiceBean {
         logger.fine("deleting Solr document for dataverse " + doomed.getId());
         UpdateResponse updateResponse;
         try {
-            updateResponse = solrClientService.getSolrClient().deleteById(solrDocIdentifierDataverse + doomed.getId());
-        } catch (SolrServerException | IOException ex) {
-            return ex.toString();
-        }
-        try {
-            solrClientService.getSolrClient().commit();
+            updateResponse = deleteFromSolr(solrDocIdentifierDataverse + doomed.getId());
         } catch (SolrServerException | IOException ex) {
             return ex.toString();
         }
@@ -1531,12 +1565,7 @@ public class IndexServiceBean {
         logger.fine("deleting Solr document: " + doomed);
         UpdateResponse updateResponse;
         try {
-            updateResponse = solrClientService.getSolrClient().deleteById(doomed);
-        } catch (SolrServerException | IOException ex) {
-            return ex.toString();
-        }
-        try {
-            solrClientService.getSolrClient().commit();
+            updateResponse = deleteFromSolr(doomed);
         } catch (SolrServerException | IOException ex) {
             return ex.toString();
         }
@@ -0,0 +1,99 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.util.SystemConfig;
+import java.util.logging.Logger;
+import javax.ejb.EJB;
+import javax.ejb.Lock;
+import javax.ejb.LockType;
+import javax.ejb.Singleton;
+import javax.inject.Named;
+
+/**
+ * Coordinates a full (or "continue") reindex that is spread over a number of
+ * workers on this server, instead of the single thread used by
+ * {@link IndexBatchServiceBean#indexAllOrSubset(long, long, boolean, boolean)}.
+ * The dataverse and dataset ids are split into as many partitions as there
+ * are workers, and every partition is indexed by its own
+ * {@link ReindexWorkerServiceBean} invocation. Only one such reindex can run
+ * at a time; its progress is kept in memory and reported by
+ * /api/admin/index/parallel/status.
+ */
+@Named
+@Singleton
+public class ReindexCoordinatorServiceBean {
+
+    private static final Logger logger = Logger.getLogger(ReindexCoordinatorServiceBean.class.getCanonicalName());
+
+    @EJB
+    ReindexWorkerServiceBean reindexWorker;
+    @EJB
+    SystemConfig systemConfig;
+
+    private ReindexJob job = null;
+
+    /**
+     * @param workers number of partitions (and concurrent workers); if null,
+     * the :ReindexWorkerThreads setting is used.
+     * @throws IllegalStateException if a reindex is already running or paused.
+     */
+    @Lock(LockType.WRITE)
+    public ReindexJob start(Integer workers, boolean skipIndexed, boolean bulk) {
+        if (job != null && job.getState() != ReindexJob.State.DONE) {
+            throw new IllegalStateException("A reindex is already " + job.getState().toString().toLowerCase() + ". Resume it, or wait for it to finish.");
+        }
+        int numPartitions = workers != null ? workers : systemConfig.getReindexWorkerThreads();
+        if (numPartitions < 1) {
+            throw new IllegalArgumentException("workers must be 1 or higher but was " + numPartitions);
+        }
+        job = new ReindexJob(numPartitions, skipIndexed, bulk);
+        logger.info("starting reindex with " + numPartitions + " workers (skipIndexed: " + skipIndexed + ", bulk: " + bulk + ")");
+        for (ReindexJob.Partition partition : job.getPartitions()) {
+            reindexWorker.indexPartition(job, partition);
+        }
+        return job;
+    }
+
+    /**
+     * Asks the workers to stop after the object each of them is currently
+     * indexing. The partitions report PAUSED once their worker has stopped.
+     */
+    @Lock(LockType.WRITE)
+    public ReindexJob pause() {
+        if (job == null || job.getState() != ReindexJob.State.RUNNING) {
+            throw new IllegalStateException("There is no reindex running.");
+        }
+        logger.info("pausing reindex");
+        job.setPauseRequested(true);
+        return job;
+    }
+
+    /**
+     * Starts a new worker for every paused partition; each of them picks up
+     * after the last dataverse and dataset its partition had indexed.
+     */
+    @Lock(LockType.WRITE)
+    public ReindexJob resume() {
+        if (job == null || !job.isPauseRequested() && job.getState() != ReindexJob.State.PAUSED) {
+            throw new IllegalStateException("There is no paused reindex.");
+        }
+        logger.info("resuming reindex");
+        job.setPauseRequested(false);
+        for (ReindexJob.Partition partition : job.getPartitions()) {
+            if (partition.getState() == ReindexJob.State.PAUSED) {
+                // workers that had not stopped yet simply carry on
+                partition.setState(ReindexJob.State.PENDING);
+                reindexWorker.indexPartition(job, partition);
+            }
+        }
+        return job;
+    }
+
+    /**
+     * @return the current (or last) reindex, or null if none has been started
+     * since the server was started.
+     */
+    @Lock(LockType.READ)
+    public ReindexJob getJob() {
+        return job;
+    }
+}
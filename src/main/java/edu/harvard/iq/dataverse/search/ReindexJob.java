@@ -0,0 +1,281 @@
+package edu.harvard.iq.dataverse.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObjectBuilder;
+
+/**
+ * The state of a partitioned full reindex run by the
+ * {@link ReindexCoordinatorServiceBean}: the dataverse and dataset id space is
+ * split into partitions (by id modulo the number of partitions), and each
+ * partition is indexed, in id order, by its own worker. Every partition keeps
+ * track of the last id it has indexed, so that a paused reindex can be resumed
+ * where each worker left off.
+ *
+ * The partitions are updated by their worker threads and read by the status
+ * API, so all the counters are atomic or volatile.
+ */
+public class ReindexJob {
+
+    public enum State {
+        PENDING, RUNNING, PAUSED, DONE
+    }
+
+    private final long startTime = System.currentTimeMillis();
+    private final boolean skipIndexed;
+    private final boolean bulk;
+    private final List<Partition> partitions;
+    private volatile boolean pauseRequested = false;
+
+    public ReindexJob(int numPartitions, boolean skipIndexed, boolean bulk) {
+        this.skipIndexed = skipIndexed;
+        this.bulk = bulk;
+        List<Partition> list = new ArrayList<>();
+        for (int i = 0; i < numPartitions; i++) {
+            list.add(new Partition(i, numPartitions));
+        }
+        this.partitions = Collections.unmodifiableList(list);
+    }
+
+    public boolean isSkipIndexed() {
+        return skipIndexed;
+    }
+
+    public boolean isBulk() {
+        return bulk;
+    }
+
+    public List<Partition> getPartitions() {
+        return partitions;
+    }
+
+    public int getNumPartitions() {
+        return partitions.size();
+    }
+
+    public boolean isPauseRequested() {
+        return pauseRequested;
+    }
+
+    public void setPauseRequested(boolean pauseRequested) {
+        this.pauseRequested = pauseRequested;
+    }
+
+    /**
+     * @return RUNNING as long as any of the partitions is still running (or
+     * waiting for a worker); PAUSED if the remaining partitions are paused.
+     */
+    public State getState() {
+        boolean anyPaused = false;
+        for (Partition partition : partitions) {
+            State state = partition.getState();
+            if (state == State.RUNNING || state == State.PENDING) {
+                return State.RUNNING;
+            }
+            if (state == State.PAUSED) {
+                anyPaused = true;
+            }
+        }
+        return anyPaused ? State.PAUSED : State.DONE;
+    }
+
+    public long getTotal() {
+        long total = 0;
+        for (Partition partition : partitions) {
+            total += partition.getTotal();
+        }
+        return total;
+    }
+
+    public long getProcessed() {
+        long processed = 0;
+        for (Partition partition : partitions) {
+            processed += partition.getProcessed();
+        }
+        return processed;
+    }
+
+    /**
+     * The partitions run concurrently, so the reindex is done when the slowest
+     * partition is done.
+     *
+     * @return the estimated number of seconds left, or null if there is no
+     * estimate yet.
+     */
+    public Long getEtaSeconds(long now) {
+        Long eta = null;
+        for (Partition partition : partitions) {
+            Long partitionEta = partition.getEtaSeconds(now);
+            if (partitionEta == null) {
+                if (partition.getState() == State.RUNNING) {
+                    return null;
+                }
+            } else if (eta == null || partitionEta > eta) {
+                eta = partitionEta;
+            }
+        }
+        return eta;
+    }
+
+    public JsonObjectBuilder toJson() {
+        long now = System.currentTimeMillis();
+        JsonObjectBuilder job = Json.createObjectBuilder()
+                .add("state", getState().toString())
+                .add("numPartitions", getNumPartitions())
+                .add("skipIndexed", skipIndexed)
+                .add("bulk", bulk)
+                .add("startTime", startTime)
+                .add("elapsedSeconds", (now - startTime) / 1000)
+                .add("total", getTotal())
+                .add("processed", getProcessed());
+        Long eta = getEtaSeconds(now);
+        if (eta != null) {
+            job.add("etaSeconds", eta);
+        }
+        JsonArrayBuilder partitionsJson = Json.createArrayBuilder();
+        for (Partition partition : partitions) {
+            partitionsJson.add(partition.toJson(now));
+        }
+        job.add("partitions", partitionsJson);
+        return job;
+    }
+
+    public static class Partition {
+
+        private final int partitionId;
+        private final int numPartitions;
+
+        private volatile State state = State.PENDING;
+        private volatile boolean loaded = false;
+        private volatile long dataverseTotal = 0;
+        private volatile long datasetTotal = 0;
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private volatile Long lastIndexedDataverseId = null;
+        private volatile Long lastIndexedDatasetId = null;
+
+        // the rate used for the ETA is measured since the last (re)start of the partition
+        private volatile long runStartTime = 0L;
+        private volatile long processedAtRunStart = 0L;
+
+        Partition(int partitionId, int numPartitions) {
+            this.partitionId = partitionId;
+            this.numPartitions = numPartitions;
+        }
+
+        public int getPartitionId() {
+            return partitionId;
+        }
+
+        public boolean contains(long id) {
+            return id % numPartitions == partitionId;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public void setState(State state) {
+            this.state = state;
+        }
+
+        public void markRunning(long now) {
+            runStartTime = now;
+            processedAtRunStart = processed.get();
+            state = State.RUNNING;
+        }
+
+        public boolean isLoaded() {
+            return loaded;
+        }
+
+        public void setTotals(long dataverseTotal, long datasetTotal) {
+            this.dataverseTotal = dataverseTotal;
+            this.datasetTotal = datasetTotal;
+            this.loaded = true;
+        }
+
+        public long getTotal() {
+            return dataverseTotal + datasetTotal;
+        }
+
+        public long getProcessed() {
+            return processed.get();
+        }
+
+        public long getFailed() {
+            return failed.get();
+        }
+
+        public Long getLastIndexedDataverseId() {
+            return lastIndexedDataverseId;
+        }
+
+        public Long getLastIndexedDatasetId() {
+            return lastIndexedDatasetId;
+        }
+
+        public void dataverseProcessed(long id, boolean success) {
+            lastIndexedDataverseId = id;
+            countProcessed(success);
+        }
+
+        public void datasetProcessed(long id, boolean success) {
+            lastIndexedDatasetId = id;
+            countProcessed(success);
+        }
+
+        private void countProcessed(boolean success) {
+            processed.incrementAndGet();
+            if (!success) {
+                failed.incrementAndGet();
+            }
+        }
+
+        /**
+         * @return the estimated number of seconds left for this partition, 0
+         * if it is done, or null while nothing has been processed since it
+         * was (re)started.
+         */
+        public Long getEtaSeconds(long now) {
+            if (state == State.DONE) {
+                return 0L;
+            }
+            if (state != State.RUNNING) {
+                return null;
+            }
+            long processedThisRun = processed.get() - processedAtRunStart;
+            long elapsed = now - runStartTime;
+            if (processedThisRun <= 0 || elapsed <= 0) {
+                return null;
+            }
+            long remaining = Math.max(0L, getTotal() - processed.get());
+            return remaining * elapsed / processedThisRun / 1000;
+        }
+
+        JsonObjectBuilder toJson(long now) {
+            JsonObjectBuilder json = Json.createObjectBuilder()
+                    .add("partitionId", partitionId)
+                    .add("state", state.toString())
+                    .add("dataverses", dataverseTotal)
+                    .add("datasets", datasetTotal)
+                    .add("processed", processed.get())
+                    .add("failed", failed.get());
+            if (lastIndexedDataverseId != null) {
+                json.add("lastIndexedDataverseId", lastIndexedDataverseId);
+            }
+            if (lastIndexedDatasetId != null) {
+                json.add("lastIndexedDatasetId", lastIndexedDatasetId);
+            }
+            Long eta = getEtaSeconds(now);
+            if (eta != null) {
+                json.add("etaSeconds", eta);
+            }
+            return json;
+        }
+    }
+}
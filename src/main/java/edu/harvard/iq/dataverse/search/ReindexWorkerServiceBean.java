@@ -0,0 +1,127 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.DatasetServiceBean;
+import edu.harvard.iq.dataverse.Dataverse;
+import edu.harvard.iq.dataverse.DataverseServiceBean;
+import edu.harvard.iq.dataverse.DvObjectServiceBean;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
+import javax.ejb.EJB;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import static javax.ejb.TransactionAttributeType.NOT_SUPPORTED;
+import org.apache.solr.client.solrj.SolrServerException;
+
+/**
+ * Indexes one partition of a {@link ReindexJob}. Every partition runs as its
+ * own asynchronous invocation, on a thread of the container's async pool, and
+ * outside of any long-running transaction: each dataverse and dataset is
+ * indexed in a new transaction of its own.
+ */
+@Stateless
+public class ReindexWorkerServiceBean {
+
+    private static final Logger logger = Logger.getLogger(ReindexWorkerServiceBean.class.getCanonicalName());
+
+    @EJB
+    IndexServiceBean indexService;
+    @EJB
+    DataverseServiceBean dataverseService;
+    @EJB
+    DatasetServiceBean datasetService;
+    @EJB
+    SolrClientService solrClientService;
+    @EJB
+    DvObjectServiceBean dvObjectService;
+
+    @Asynchronous
+    @TransactionAttribute(NOT_SUPPORTED)
+    public Future<String> indexPartition(ReindexJob job, ReindexJob.Partition partition) {
+        partition.markRunning(System.currentTimeMillis());
+        int partitionId = partition.getPartitionId();
+
+        SolrBulkIndexer bulkIndexer = null;
+        if (job.isBulk()) {
+            bulkIndexer = new SolrBulkIndexer(solrClientService.getSolrClient());
+            bulkIndexer.setIndexTimeRecorder(dvObjectService::updateIndexTimes, SolrBulkIndexer.DEFAULT_MAX_UNCOMMITTED_OBJECTS);
+            bulkIndexer.bindToCurrentThread();
+        }
+        try {
+            List<Long> dataverseIds = new ArrayList<>();
+            Long lastDataverseId = partition.getLastIndexedDataverseId();
+            for (Long id : dataverseService.findDataverseIdsForIndexing(job.isSkipIndexed())) {
+                if (partition.contains(id) && (lastDataverseId == null || id > lastDataverseId)) {
+                    dataverseIds.add(id);
+                }
+            }
+            List<Long> datasetIds = new ArrayList<>();
+            Long lastDatasetId = partition.getLastIndexedDatasetId();
+            for (Long id : datasetService.findAllOrSubset(job.getNumPartitions(), partitionId, job.isSkipIndexed())) {
+                if (lastDatasetId == null || id > lastDatasetId) {
+                    datasetIds.add(id);
+                }
+            }
+            if (!partition.isLoaded()) {
+                partition.setTotals(dataverseIds.size(), datasetIds.size());
+            }
+            logger.info("reindex partition " + partitionId + ": " + dataverseIds.size() + " dataverses and " + datasetIds.size() + " datasets to index");
+
+            for (Long id : dataverseIds) {
+                if (job.isPauseRequested()) {
+                    return paused(partition);
+                }
+                boolean success = true;
+                try {
+                    Dataverse dataverse = dataverseService.find(id);
+                    indexService.indexDataverseInNewTransaction(dataverse);
+                } catch (Exception e) {
+                    success = false;
+                    logger.info("reindex partition " + partitionId + ": FAILURE indexing dataverse " + id + " Exception info: " + e.getMessage());
+                }
+                partition.dataverseProcessed(id, success);
+            }
+            for (Long id : datasetIds) {
+                if (job.isPauseRequested()) {
+                    return paused(partition);
+                }
+                boolean success = true;
+                try {
+                    indexService.indexDatasetInNewTransaction(id);
+                } catch (Exception e) {
+                    success = false;
+                    logger.info("reindex partition " + partitionId + ": FAILURE indexing dataset " + id + " Exception info: " + e.getMessage());
+                }
+                partition.datasetProcessed(id, success);
+            }
+            partition.setState(ReindexJob.State.DONE);
+        } finally {
+            if (partition.getState() == ReindexJob.State.RUNNING) {
+                // something unexpected went wrong; leave the partition resumable
+                partition.setState(ReindexJob.State.PAUSED);
+            }
+            if (bulkIndexer != null) {
+                SolrBulkIndexer.unbindFromCurrentThread();
+                try {
+                    bulkIndexer.finish();
+                } catch (SolrServerException | IOException ex) {
+                    logger.warning("reindex partition " + partitionId + ": final commit failed: " + ex);
+                }
+            }
+        }
+        String status = "reindex partition " + partitionId + " done: " + partition.getProcessed() + " indexed, " + partition.getFailed() + " failures";
+        logger.info(status);
+        return new AsyncResult<>(status);
+    }
+
+    private Future<String> paused(ReindexJob.Partition partition) {
+        partition.setState(ReindexJob.State.PAUSED);
+        String status = "reindex partition " + partition.getPartitionId() + " paused after dataverse " + partition.getLastIndexedDataverseId() + ", dataset " + partition.getLastIndexedDatasetId();
+        logger.info(status);
+        return new AsyncResult<>(status);
+    }
+}
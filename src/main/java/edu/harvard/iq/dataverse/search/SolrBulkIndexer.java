@@ -0,0 +1,240 @@
+package edu.harvard.iq.dataverse.search;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Logger;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.UpdateResponse;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+
+/**
+ * Buffers Solr documents across the objects indexed during a bulk (re)index
+ * and sends them in batches bounded by document count and (approximate) size.
+ * The batches are sent with commitWithin, instead of the hard commit that
+ * follows every add during normal, interactive indexing; {@link #finish()}
+ * issues the one hard commit at the end of the run.
+ *
+ * A bulk indexer is bound to the thread running the batch job (the indexing
+ * EJB methods are invoked synchronously, on the same thread), so that
+ * IndexServiceBean and SolrIndexServiceBean can route their adds through it
+ * without the bulk state having to be passed down every indexing method.
+ * Deletes made during the run go through {@link #deleteById(List)}, which
+ * sends the buffered adds first, so that they never end up being applied
+ * after a subsequent delete of the same document, and defers the commit of
+ * the delete like that of the adds.
+ *
+ * The objects indexed are only stamped as such (their index times set) once
+ * their documents are committed: they are reported with {@link #indexed(Long)}
+ * and {@link #permissionsIndexed(Long)}, and handed to the
+ * {@link IndexTimeRecorder} after the next hard commit - at the end of the
+ * run, or once {@link #DEFAULT_MAX_UNCOMMITTED_OBJECTS} objects are waiting
+ * for one. Objects whose documents never made it to Solr keep their old index
+ * times, and are indexed again by the next "continue" run.
+ */
+public class SolrBulkIndexer {
+
+    private static final Logger logger = Logger.getLogger(SolrBulkIndexer.class.getCanonicalName());
+
+    public static final int DEFAULT_MAX_BATCH_DOCS = 1000;
+    public static final long DEFAULT_MAX_BATCH_BYTES = 8L * 1024 * 1024;
+    public static final int DEFAULT_COMMIT_WITHIN_MS = 60000;
+    public static final int DEFAULT_MAX_UNCOMMITTED_OBJECTS = 1000;
+
+    /**
+     * Sets the index times of objects whose documents have been committed.
+     */
+    public interface IndexTimeRecorder {
+
+        /**
+         * @param indexedIds the objects whose content was indexed
+         * @param permissionsIndexedIds the objects whose permissions were indexed
+         * @param indexTime when the oldest of these documents was built
+         */
+        void record(List<Long> indexedIds, List<Long> permissionsIndexedIds, Timestamp indexTime);
+    }
+
+    private static final ThreadLocal<SolrBulkIndexer> current = new ThreadLocal<>();
+
+    private final SolrClient solrClient;
+    private final int maxBatchDocs;
+    private final long maxBatchBytes;
+    private final int commitWithinMs;
+
+    private final List<SolrInputDocument> buffer = new ArrayList<>();
+    private long bufferedBytes = 0L;
+
+    private IndexTimeRecorder indexTimeRecorder;
+    private int maxUncommittedObjects = DEFAULT_MAX_UNCOMMITTED_OBJECTS;
+    private final List<Long> uncommittedIndexedIds = new ArrayList<>();
+    private final List<Long> uncommittedPermissionsIndexedIds = new ArrayList<>();
+    private long uncommittedSince = 0L;
+
+    private long docsSent = 0L;
+    private long batchesSent = 0L;
+    private final long startTime = System.currentTimeMillis();
+    private long finishTime = 0L;
+
+    public SolrBulkIndexer(SolrClient solrClient) {
+        this(solrClient, DEFAULT_MAX_BATCH_DOCS, DEFAULT_MAX_BATCH_BYTES, DEFAULT_COMMIT_WITHIN_MS);
+    }
+
+    public SolrBulkIndexer(SolrClient solrClient, int maxBatchDocs, long maxBatchBytes, int commitWithinMs) {
+        this.solrClient = solrClient;
+        this.maxBatchDocs = maxBatchDocs;
+        this.maxBatchBytes = maxBatchBytes;
+        this.commitWithinMs = commitWithinMs;
+    }
+
+    /**
+     * @return the bulk indexer bound to the current thread, or null if the
+     * current thread is not running a bulk index.
+     */
+    public static SolrBulkIndexer getCurrent() {
+        return current.get();
+    }
+
+    public void setIndexTimeRecorder(IndexTimeRecorder indexTimeRecorder, int maxUncommittedObjects) {
+        this.indexTimeRecorder = indexTimeRecorder;
+        this.maxUncommittedObjects = maxUncommittedObjects;
+    }
+
+    public void bindToCurrentThread() {
+        current.set(this);
+    }
+
+    public static void unbindFromCurrentThread() {
+        current.remove();
+    }
+
+    /**
+     * Sends out whatever is buffered by the bulk indexer of the current
+     * thread, if there is one.
+     */
+    public static void flushCurrent() throws SolrServerException, IOException {
+        SolrBulkIndexer bulkIndexer = getCurrent();
+        if (bulkIndexer != null) {
+            bulkIndexer.flush();
+        }
+    }
+
+    public void add(Collection<SolrInputDocument> docs) throws SolrServerException, IOException {
+        for (SolrInputDocument doc : docs) {
+            buffer.add(doc);
+            bufferedBytes += estimateSize(doc);
+            if (buffer.size() >= maxBatchDocs || bufferedBytes >= maxBatchBytes) {
+                flush();
+            }
+        }
+    }
+
+    public void flush() throws SolrServerException, IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        logger.fine("sending batch of " + buffer.size() + " documents (~" + bufferedBytes + " bytes) to Solr");
+        solrClient.add(buffer, commitWithinMs);
+        docsSent += buffer.size();
+        batchesSent++;
+        buffer.clear();
+        bufferedBytes = 0L;
+    }
+
+    /**
+     * Reports that the documents of an object were handed to {@link #add},
+     * for its index time to be set once they are committed.
+     */
+    public void indexed(Long dvObjectId) throws SolrServerException, IOException {
+        uncommitted(uncommittedIndexedIds, dvObjectId);
+    }
+
+    /**
+     * Same as {@link #indexed(Long)}, for the permission documents of the
+     * object.
+     */
+    public void permissionsIndexed(Long dvObjectId) throws SolrServerException, IOException {
+        uncommitted(uncommittedPermissionsIndexedIds, dvObjectId);
+    }
+
+    private void uncommitted(List<Long> ids, Long dvObjectId) throws SolrServerException, IOException {
+        if (uncommittedIndexedIds.isEmpty() && uncommittedPermissionsIndexedIds.isEmpty()) {
+            uncommittedSince = System.currentTimeMillis();
+        }
+        ids.add(dvObjectId);
+        if (uncommittedIndexedIds.size() + uncommittedPermissionsIndexedIds.size() >= maxUncommittedObjects) {
+            commit();
+        }
+    }
+
+    /**
+     * Deletes the documents, with commitWithin, after sending the buffered
+     * ones.
+     */
+    public UpdateResponse deleteById(List<String> ids) throws SolrServerException, IOException {
+        flush();
+        logger.fine("deleting " + ids.size() + " documents from Solr");
+        return solrClient.deleteById(ids, commitWithinMs);
+    }
+
+    /**
+     * Sends the remaining buffered documents and makes everything visible with
+     * a single hard commit.
+     */
+    public void finish() throws SolrServerException, IOException {
+        commit();
+        finishTime = System.currentTimeMillis();
+    }
+
+    private void commit() throws SolrServerException, IOException {
+        flush();
+        solrClient.commit();
+        if (indexTimeRecorder != null && !(uncommittedIndexedIds.isEmpty() && uncommittedPermissionsIndexedIds.isEmpty())) {
+            try {
+                indexTimeRecorder.record(new ArrayList<>(uncommittedIndexedIds), new ArrayList<>(uncommittedPermissionsIndexedIds),
+                        new Timestamp(uncommittedSince));
+            } catch (RuntimeException ex) {
+                // (the objects will just be indexed again)
+                logger.warning("could not set the index times of " + (uncommittedIndexedIds.size() + uncommittedPermissionsIndexedIds.size()) + " objects: " + ex);
+            }
+        }
+        uncommittedIndexedIds.clear();
+        uncommittedPermissionsIndexedIds.clear();
+    }
+
+    public long getDocsSent() {
+        return docsSent;
+    }
+
+    public long getBatchesSent() {
+        return batchesSent;
+    }
+
+    public long getElapsedMillis() {
+        return (finishTime > 0L ? finishTime : System.currentTimeMillis()) - startTime;
+    }
+
+    public double getDocsPerSecond() {
+        long elapsed = getElapsedMillis();
+        return elapsed > 0L ? docsSent * 1000.0 / elapsed : 0.0;
+    }
+
+    /**
+     * A rough estimate of the size of the document on the wire; only used to
+     * keep the batches from growing too large when documents carry big
+     * values (full text of files, long variable lists).
+     */
+    static long estimateSize(SolrInputDocument doc) {
+        long size = 0L;
+        for (SolrInputField field : doc) {
+            size += field.getName().length();
+            for (Object value : field) {
+                size += value == null ? 0 : value.toString().length();
+            }
+        }
+        return size;
+    }
+}
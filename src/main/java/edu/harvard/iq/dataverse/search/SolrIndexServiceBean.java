@@ -312,7 +312,7 @@ public class SolrIndexServiceBean {
              * Probably. Update it here.
              */
             for (DvObject dvObject : all) {
-                dvObjectService.updatePermissionIndexTime(dvObject);
+                updatePermissionIndexTime(dvObject);
             }
             return new IndexResponse("indexed all permissions");
         } catch (SolrServerException | IOException ex) {
@@ -338,7 +338,7 @@ public class SolrIndexServiceBean {
             persistToSolr(docs);
             boolean updatePermissionTimeSuccessful = false;
             if (dvObject != null) {
-                DvObject savedDvObject = dvObjectService.updatePermissionIndexTime(dvObject);
+                DvObject savedDvObject = updatePermissionIndexTime(dvObject);
                 if (savedDvObject != null) {
                     updatePermissionTimeSuccessful = true;
                 }
@@ -350,6 +350,20 @@ public class SolrIndexServiceBean {
 
     }
 
+    /**
+     * Sets the permission index time of the object; or, if a bulk (re)index
+     * is running on this thread, has the {@link SolrBulkIndexer} set it once
+     * the permission documents are committed.
+     */
+    private DvObject updatePermissionIndexTime(DvObject dvObject) throws SolrServerException, IOException {
+        SolrBulkIndexer bulkIndexer = SolrBulkIndexer.getCurrent();
+        if (bulkIndexer != null) {
+            bulkIndexer.permissionsIndexed(dvObject.getId());
+            return dvObject;
+        }
+        return dvObjectService.updatePermissionIndexTime(dvObject);
+    }
+
     private void persistToSolr(Collection<SolrInputDocument> docs) throws SolrServerException, IOException {
         if (docs.isEmpty()) {
             // This method is routinely called with an empty list of docs.
@@ -357,6 +371,13 @@ public class SolrIndexServiceBean {
             return;
         }
         logger.fine("persisting to Solr...");
+        SolrBulkIndexer bulkIndexer = SolrBulkIndexer.getCurrent();
+        if (bulkIndexer != null) {
+            // a bulk (re)index is running; the documents will be sent in 
+            // batches, and committed at the end of the run
+            bulkIndexer.add(docs);
+            return;
+        }
         /**
          * @todo Do something with these responses from Solr.
          */
@@ -500,14 +521,22 @@ public class SolrIndexServiceBean {
         if (solrIdsToDelete.isEmpty()) {
             return new IndexResponse("nothing to delete");
         }
+        SolrBulkIndexer bulkIndexer = SolrBulkIndexer.getCurrent();
         try {
-            solrClientService.getSolrClient().deleteById(solrIdsToDelete);
+            if (bulkIndexer != null) {
+                bulkIndexer.deleteById(solrIdsToDelete);
+            } else {
+                solrClientService.getSolrClient().deleteById(solrIdsToDelete);
+            }
         } catch (SolrServerException | IOException ex) {
             /**
              * @todo mark these for re-deletion
              */
             return new IndexResponse("problem deleting the following documents from Solr: " + solrIdsToDelete);
         }
+        if (bulkIndexer != null) {
+            return new IndexResponse("no known problem deleting the following documents from Solr (commit deferred to the end of the bulk index):" + solrIdsToDelete);
+        }
         try {
             solrClientService.getSolrClient().commit();
         } catch (SolrServerException | IOException ex) {
@@ -0,0 +1,124 @@
+package edu.harvard.iq.dataverse.settings;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caches the values of the settings (including the settings that are not
+ * set, which are looked up just as often), so that the settings read many
+ * times for every page and API call don't each cost a query.
+ *
+ * The cache is emptied whenever a setting is changed on this server (once
+ * the transaction that changed it is over). Changes made on other servers
+ * of a cluster are picked up by comparing the version of the settings, a
+ * counter in the database that every change increments, with the version
+ * the cache was filled with - at most once every
+ * {@link #getVersionCheckIntervalMillis()} milliseconds.
+ */
+public class SettingsCache {
+
+    public static final long DEFAULT_VERSION_CHECK_INTERVAL_MILLIS = 2000;
+
+    private final ConcurrentHashMap<String, Optional<String>> values = new ConcurrentHashMap<>();
+    private final long versionCheckIntervalMillis;
+
+    // incremented whenever the cache is emptied; a value loaded while that
+    // happened may be stale, and is not kept
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong lastVersionCheck = new AtomicLong(Long.MIN_VALUE);
+    private volatile Long version = null;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public SettingsCache() {
+        this(DEFAULT_VERSION_CHECK_INTERVAL_MILLIS);
+    }
+
+    public SettingsCache(long versionCheckIntervalMillis) {
+        this.versionCheckIntervalMillis = versionCheckIntervalMillis;
+    }
+
+    /**
+     * @param lang the language of the setting, or null
+     * @param loader looks the setting up in the database, on a miss; returns
+     * null if it isn't set
+     * @return the value of the setting, or null if it isn't set
+     */
+    public String get(String name, String lang, Supplier<String> loader) {
+        String key = lang == null ? name : name + "\u0000" + lang;
+        Optional<String> cached = values.get(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached.orElse(null);
+        }
+        misses.incrementAndGet();
+        long loadedGeneration = generation.get();
+        String value = loader.get();
+        values.put(key, Optional.ofNullable(value));
+        if (generation.get() != loadedGeneration) {
+            values.remove(key);
+        }
+        return value;
+    }
+
+    /**
+     * @return true if it is time to compare the version of the settings in
+     * the database with that of the cache; only one of the threads calling
+     * at the same time gets true.
+     */
+    public boolean isVersionCheckDue(long now) {
+        long last = lastVersionCheck.get();
+        if (last != Long.MIN_VALUE && now - last < versionCheckIntervalMillis) {
+            return false;
+        }
+        return lastVersionCheck.compareAndSet(last, now);
+    }
+
+    /**
+     * Empties the cache if the settings have changed since it was filled.
+     *
+     * @param currentVersion the version of the settings in the database
+     */
+    public void checkVersion(long currentVersion) {
+        Long cachedVersion = version;
+        if (cachedVersion == null || cachedVersion != currentVersion) {
+            invalidate();
+            version = currentVersion;
+        }
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+        values.clear();
+        invalidations.incrementAndGet();
+    }
+
+    public long getVersionCheckIntervalMillis() {
+        return versionCheckIntervalMillis;
+    }
+
+    public long size() {
+        return values.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    public double getHitRate() {
+        long lookups = hits.get() + misses.get();
+        return lookups > 0 ? (double) hits.get() / lookups : 0.0;
+    }
+}
@@ -13,13 +13,17 @@ import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.annotation.Resource;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.inject.Named;
 import javax.json.Json;
 import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 /**
  * Service bean accessing a persistent hash map, used as settings in the application.
@@ -393,6 +397,12 @@ public class SettingsServiceBean {
         /** Make Data Count Logging and Display */
         MDCLogPath, 
         DisplayMDCMetrics,
+        /**
+         * When the Make Data Count log files are synced to the disk: "flush"
+         * (after the entries buffered are written, about every second; the
+         * default), "rotate" (when the file of the day is closed) or "none".
+         */
+        MDCLogSyncPolicy,
 
         /**
          * Allow CORS flag (true or false). It is true by default
@@ -446,7 +456,82 @@ public class SettingsServiceBean {
          * datasetContact, and contributor, but additional fields such as depositor, grantNumber, and
          * publication might also need to be included.
          */
-        AnonymizedFieldTypeNames
+        AnonymizedFieldTypeNames,
+        /**
+         * Number of concurrent GetRecord requests made by a harvesting client
+         * while the fetched records are being imported. Default is 1 (the
+         * records are fetched and imported one at a time).
+         */
+        HarvestingClientFetchThreads,
+        /**
+         * Number of workers (and partitions) used by a parallel reindex
+         * (api/admin/index/parallel) when none is specified. Defaults to the
+         * number of processors available to the server.
+         */
+        ReindexWorkerThreads,
+        /**
+         * Number of threads used to calculate the summary statistics and
+         * UNFs of the variables of an ingested tabular file. Defaults to the
+         * number of processors available to the server.
+         */
+        IngestStatisticsThreads,
+        /**
+         * Number of files opened and read ahead, concurrently, while a
+         * multi-file zip download is being written. Defaults to 4.
+         */
+        ZipDownloadPrefetchThreads,
+        /**
+         * Number of small tabular files that are ingested at the same time.
+         * Defaults to 4.
+         */
+        IngestParallelFiles,
+        /**
+         * Budget, in bytes, for the sum of the sizes of the small tabular
+         * files that are ingested at the same time. Defaults to a quarter
+         * of the maximum heap size.
+         */
+        IngestParallelSizeBudget,
+        /**
+         * Size, in bytes (weighted by format), above which a tabular file is
+         * ingested in the lane of the large files. Defaults to 1 GB.
+         */
+        IngestLargeFileThreshold,
+        /**
+         * Number of large tabular files that are ingested at the same time.
+         * Defaults to 1.
+         */
+        IngestLargeFileConcurrency,
+        /**
+         * Number of seconds the user an API token belongs to is cached for;
+         * 0 to not cache API tokens. Defaults to 60.
+         */
+        ApiTokenCacheTimeToLive,
+        /**
+         * Number of API tokens cached. Defaults to 10000.
+         */
+        ApiTokenCacheSize,
+        /**
+         * Whether the action log is written behind: queued in memory and
+         * written in batches by a background thread, instead of in a
+         * transaction of its own for every record. Defaults to false.
+         */
+        ActionLogWriteBehind,
+        /**
+         * Number of action log records that can wait to be written, when
+         * the action log is written behind. Defaults to 10000.
+         */
+        ActionLogQueueSize,
+        /**
+         * Whether guestbook responses are written behind: queued in memory
+         * and written in batches by a background thread, instead of in a
+         * transaction of their own for every download. Defaults to false.
+         */
+        GuestbookResponseWriteBehind,
+        /**
+         * Number of guestbook responses that can wait to be written, when
+         * they are written behind. Defaults to 10000.
+         */
+        GuestbookResponseQueueSize
         ;
 
         @Override
@@ -461,20 +546,28 @@ public class SettingsServiceBean {
     @EJB
     ActionLogServiceBean actionLogSvc;
     
+    @Resource
+    TransactionSynchronizationRegistry transactionRegistry;
+    
+    /**
+     * The values of the settings, shared by all the instances of this bean.
+     * See {@link SettingsCache} for how it is kept up to date.
+     */
+    public static final SettingsCache cache = new SettingsCache();
+    
     /**
      * Basic functionality - get the name, return the setting, or {@code null}.
      * @param name of the setting
      * @return the actual setting, or {@code null}.
      */
     public String get( String name ) {
-        List<Setting> tokens = em.createNamedQuery("Setting.findByName", Setting.class)
-                .setParameter("name", name )
-                .getResultList();
-        String val = null;
-        if(tokens.size() > 0) {
-            val = tokens.get(0).getContent();
-        }
-        return (val!=null) ? val : null;
+        checkCacheVersion();
+        return cache.get(name, null, () -> {
+            List<Setting> tokens = em.createNamedQuery("Setting.findByName", Setting.class)
+                    .setParameter("name", name )
+                    .getResultList();
+            return tokens.size() > 0 ? tokens.get(0).getContent() : null;
+        });
     }
     
     /**
@@ -567,14 +660,14 @@ public class SettingsServiceBean {
     }
 
     public String get(String name, String lang, String defaultValue ) {
-        List<Setting> tokens = em.createNamedQuery("Setting.findByNameAndLang", Setting.class)
-                .setParameter("name", name )
-                .setParameter("lang", lang )
-                .getResultList();
-        String val = null;
-        if(tokens.size() > 0) {
-            val = tokens.get(0).getContent();
-        }
+        checkCacheVersion();
+        String val = cache.get(name, lang, () -> {
+            List<Setting> tokens = em.createNamedQuery("Setting.findByNameAndLang", Setting.class)
+                    .setParameter("name", name )
+                    .setParameter("lang", lang )
+                    .getResultList();
+            return tokens.size() > 0 ? tokens.get(0).getContent() : null;
+        });
         return (val!=null) ? val : defaultValue;
     }
     
@@ -604,6 +697,7 @@ public class SettingsServiceBean {
         }
         
         s = em.merge(s);
+        settingsChanged();
         actionLogSvc.log( new ActionLogRecord(ActionLogRecord.ActionType.Setting, "set")
                             .setInfo(name + ": " + content));
         return s;
@@ -628,6 +722,7 @@ public class SettingsServiceBean {
         }
         
         em.merge(s);
+        settingsChanged();
         actionLogSvc.log( new ActionLogRecord(ActionLogRecord.ActionType.Setting, "set")
                 .setInfo(name + ": " +lang + ": " + content));
         return s;
@@ -667,6 +762,7 @@ public class SettingsServiceBean {
         em.createNamedQuery("Setting.deleteByName")
                 .setParameter("name", name)
                 .executeUpdate();
+        settingsChanged();
     }
 
     public void delete( String name, String lang ) {
@@ -676,11 +772,71 @@ public class SettingsServiceBean {
                 .setParameter("name", name)
                 .setParameter("lang", lang)
                 .executeUpdate();
+        settingsChanged();
     }
     
     public Set<Setting> listAll() {
         return new HashSet<>(em.createNamedQuery("Setting.findAll", Setting.class).getResultList());
     }
     
+    /**
+     * Empties the cache of this server if the settings were changed on
+     * another server (or directly in the database, if the version was
+     * incremented too) - at most once every few seconds, so that this costs
+     * next to nothing.
+     */
+    private void checkCacheVersion() {
+        if (!cache.isVersionCheckDue(System.currentTimeMillis())) {
+            return;
+        }
+        try {
+            Number version = (Number) em.createNativeQuery("SELECT version FROM settingsversion WHERE id = 1")
+                    .getSingleResult();
+            cache.checkVersion(version.longValue());
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Could not check the version of the settings: {0}", ex.getMessage());
+            cache.invalidate();
+        }
+    }
+    
+    /**
+     * Increments the version of the settings, so that the other servers
+     * empty their caches, and empties the cache of this server - right away,
+     * and again once the transaction is over (a value read by another
+     * transaction in between is the value from before the change).
+     */
+    private void settingsChanged() {
+        em.createNativeQuery("UPDATE settingsversion SET version = version + 1 WHERE id = 1").executeUpdate();
+        cache.invalidate();
+        transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                cache.invalidate();
+            }
+        });
+    }
+    
+    /**
+     * Empties the caches of all the servers; for when the settings were
+     * changed directly in the database.
+     */
+    public void clearCache() {
+        settingsChanged();
+    }
+    
+    public JsonObjectBuilder getCacheStatistics() {
+        return Json.createObjectBuilder()
+                .add("size", cache.size())
+                .add("hits", cache.getHits())
+                .add("misses", cache.getMisses())
+                .add("hitRate", cache.getHitRate())
+                .add("invalidations", cache.getInvalidations())
+                .add("versionCheckIntervalMillis", cache.getVersionCheckIntervalMillis());
+    }
+    
     
 }
@@ -1,17 +1,76 @@
 package edu.harvard.iq.dataverse.sitemap;
 
-import edu.harvard.iq.dataverse.Dataset;
-import edu.harvard.iq.dataverse.Dataverse;
-import java.util.List;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import javax.annotation.Resource;
 import javax.ejb.Asynchronous;
 import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.sql.DataSource;
 
 @Stateless
 public class SiteMapServiceBean {
 
+    // how many dataverses and datasets are read at a time
+    private static final int PAGE_SIZE = 10000;
+
+    /**
+     * The published dataverses, and the published datasets that are neither
+     * harvested nor deaccessioned (every version deaccessioned, none released
+     * or draft), from the id after {@code ?} on.
+     */
+    private static final String QUERY_SITEMAP_ENTRIES = "SELECT o.id, o.dtype, dv.alias, o.protocol, o.authority, o.identifier, "
+            + "COALESCE(o.modificationtime, o.publicationdate) "
+            + "FROM dvobject o "
+            + "LEFT JOIN dataverse dv ON dv.id = o.id "
+            + "LEFT JOIN dataset ds ON ds.id = o.id "
+            + "WHERE o.id > ? AND o.publicationdate IS NOT NULL "
+            + "AND (o.dtype = 'Dataverse' "
+            + "OR (o.dtype = 'Dataset' AND ds.harvestingclient_id IS NULL "
+            + "AND (NOT EXISTS (SELECT 1 FROM datasetversion v WHERE v.dataset_id = o.id AND v.versionstate = 'DEACCESSIONED') "
+            + "OR EXISTS (SELECT 1 FROM datasetversion v WHERE v.dataset_id = o.id AND v.versionstate IN ('RELEASED', 'DRAFT'))))) "
+            + "ORDER BY o.id LIMIT ?";
+
+    @Resource(lookup = "java:app/jdbc/dataverse")
+    private DataSource dataSource;
+
     @Asynchronous
-    public void updateSiteMap(List<Dataverse> dataverses, List<Dataset> datasets) {
-        SiteMapUtil.updateSiteMap(dataverses, datasets);
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void updateSiteMap(boolean full) {
+        SiteMapUtil.updateSiteMap(this::writeEntries, full);
+    }
+
+    /**
+     * Reads the dataverses and datasets a page at a time, by id - only what
+     * the sitemap shows of them - and adds them to the sitemap as they are
+     * read.
+     */
+    private void writeEntries(SiteMapWriter writer) throws Exception {
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement query = connection.prepareStatement(QUERY_SITEMAP_ENTRIES)) {
+            long lastId = 0;
+            int read;
+            do {
+                read = 0;
+                query.setLong(1, lastId);
+                query.setInt(2, PAGE_SIZE);
+                try (ResultSet results = query.executeQuery()) {
+                    while (results.next()) {
+                        read++;
+                        lastId = results.getLong(1);
+                        Timestamp lastModified = results.getTimestamp(7);
+                        if ("Dataverse".equals(results.getString(2))) {
+                            writer.addDataverse(lastId, results.getString(3), lastModified);
+                        } else {
+                            writer.addDataset(lastId, results.getString(4) + ":" + results.getString(5) + "/" + results.getString(6), lastModified);
+                        }
+                    }
+                }
+            } while (read == PAGE_SIZE);
+        }
     }
 
 }
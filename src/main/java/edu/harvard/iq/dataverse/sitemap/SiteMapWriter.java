@@ -0,0 +1,357 @@
+package edu.harvard.iq.dataverse.sitemap;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes the sitemap as it is read, one URL at a time, in order of the ids of
+ * the dataverses and datasets: the URLs are split into files ("shards") of at
+ * most 50,000 of them, the limit of the sitemap protocol, and the sitemap
+ * itself ({@value SiteMapUtil#SITEMAP_FILENAME_FINAL}) is the sitemap index
+ * listing them. https://www.sitemaps.org/protocol.html
+ *
+ * Each shard holds the URLs of a range of ids, named after its first id, and
+ * the shards of the last update are listed in a manifest with their number of
+ * URLs and their last modification. The ranges of the last update are kept,
+ * and a shard is only written again when its number of URLs or last
+ * modification changed - a dataverse or dataset of its range was published,
+ * modified, or removed - unless the update is a full one. A range that grows
+ * past the limit is split.
+ *
+ * Only the URLs of the shard being read are kept in memory. The files are
+ * written staged, for {@link #commit()} to put them in place.
+ */
+public class SiteMapWriter {
+
+    private static final Logger logger = Logger.getLogger(SiteMapWriter.class.getCanonicalName());
+
+    /**
+     * "each Sitemap file that you provide must have no more than 50,000 URLs"
+     */
+    static final int MAX_URLS = 50000;
+    static final String SHARD_FILENAME_PREFIX = "sitemap-";
+    static final String SHARD_FILENAME_SUFFIX = ".xml";
+    static final String MANIFEST_FILENAME = "sitemap-shards.txt";
+    static final String STAGED_SUFFIX = ".staged";
+
+    private static final String NAMESPACE = "http://www.sitemaps.org/schemas/sitemap/0.9";
+    // TODO: Decide if YYYY-MM-DD is enough. https://www.sitemaps.org/protocol.html
+    // says "The date of last modification of the file. This date should be in W3C Datetime format.
+    // This format allows you to omit the time portion, if desired, and use YYYY-MM-DD."
+    private static final DateTimeFormatter LASTMOD_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd").withZone(ZoneId.systemDefault());
+
+    /**
+     * A file of the sitemap: the URLs from the id {@code start} on.
+     */
+    static class Shard {
+
+        final long start;
+        int count;
+        long lastModified;
+        boolean written;
+
+        Shard(long start) {
+            this.start = start;
+        }
+
+        Shard(long start, int count, long lastModified) {
+            this.start = start;
+            this.count = count;
+            this.lastModified = lastModified;
+        }
+
+        String getFileName() {
+            return SHARD_FILENAME_PREFIX + start + SHARD_FILENAME_SUFFIX;
+        }
+    }
+
+    private static class Url {
+
+        final String loc;
+        final long lastModified;
+
+        Url(String loc, long lastModified) {
+            this.loc = loc;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private final XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
+    private final Path directory;
+    private final String siteUrl;
+    private final int maxUrls;
+    private final boolean full;
+
+    // the shards of the last update, by start
+    private final TreeMap<Long, Shard> previous;
+    private final List<Shard> shards = new ArrayList<>();
+    private final List<Path> staged = new ArrayList<>();
+    private Shard current;
+    private final List<Url> urls = new ArrayList<>();
+    private long lastId = Long.MIN_VALUE;
+    private long count = 0;
+
+    /**
+     * @param directory where the sitemap is written
+     * @param siteUrl the URL of the installation, the URLs are relative to
+     * @param full whether to write every shard, changed or not
+     */
+    public SiteMapWriter(Path directory, String siteUrl, boolean full) {
+        this(directory, siteUrl, full, MAX_URLS);
+    }
+
+    SiteMapWriter(Path directory, String siteUrl, boolean full, int maxUrls) {
+        this.directory = directory;
+        this.siteUrl = siteUrl;
+        this.maxUrls = maxUrls;
+        this.previous = new TreeMap<>();
+        // (the URLs of all the shards change with the URL of the site)
+        this.full = !readManifest(previous) || full;
+    }
+
+    public void addDataverse(long id, String alias, Date lastModified) throws IOException, XMLStreamException {
+        add(id, siteUrl + "/dataverse/" + alias, lastModified);
+    }
+
+    /**
+     * @param globalId the persistent id of the dataset, as a string
+     */
+    public void addDataset(long id, String globalId, Date lastModified) throws IOException, XMLStreamException {
+        add(id, siteUrl + "/dataset.xhtml?persistentId=" + globalId, lastModified);
+    }
+
+    /**
+     * Adds the URL of the dataverse or dataset of the id; the ids are to be
+     * added in ascending order.
+     */
+    void add(long id, String loc, Date lastModified) throws IOException, XMLStreamException {
+        if (id <= lastId) {
+            throw new IllegalArgumentException("The sitemap is written in the order of the ids: " + id + " after " + lastId);
+        }
+        lastId = id;
+        // into the range of the next shard of the last update?
+        Long next;
+        while ((next = previous.higherKey(current == null ? Long.MIN_VALUE : current.start)) != null && id >= next) {
+            closeShard();
+            current = new Shard(next);
+        }
+        if (current == null || current.count == maxUrls) {
+            closeShard();
+            current = new Shard(id);
+        }
+        urls.add(new Url(loc, lastModified.getTime()));
+        current.count++;
+        current.lastModified = Math.max(current.lastModified, lastModified.getTime());
+        count++;
+    }
+
+    private void closeShard() throws IOException, XMLStreamException {
+        if (current == null || current.count == 0) {
+            current = null;
+            return;
+        }
+        Shard before = previous.get(current.start);
+        if (full || before == null || before.count != current.count || before.lastModified != current.lastModified
+                || !Files.exists(directory.resolve(current.getFileName()))) {
+            writeShard(current);
+        }
+        shards.add(current);
+        urls.clear();
+        current = null;
+    }
+
+    private void writeShard(Shard shard) throws IOException, XMLStreamException {
+        Path path = directory.resolve(shard.getFileName() + STAGED_SUFFIX);
+        staged.add(path);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+            XMLStreamWriter xml = xmlOutputFactory.createXMLStreamWriter(out, "UTF-8");
+            xml.writeStartDocument("UTF-8", "1.0");
+            xml.writeCharacters("\n");
+            xml.writeStartElement("urlset");
+            xml.writeDefaultNamespace(NAMESPACE);
+            xml.writeNamespace("xhtml", "http://www.w3.org/1999/xhtml");
+            for (Url url : urls) {
+                writeEntry(xml, "url", url.loc, url.lastModified);
+            }
+            xml.writeCharacters("\n");
+            xml.writeEndElement();
+            xml.writeEndDocument();
+            xml.close();
+        }
+        shard.written = true;
+    }
+
+    private static void writeEntry(XMLStreamWriter xml, String element, String loc, long lastModified) throws XMLStreamException {
+        xml.writeCharacters("\n  ");
+        xml.writeStartElement(element);
+        xml.writeCharacters("\n    ");
+        xml.writeStartElement("loc");
+        xml.writeCharacters(loc);
+        xml.writeEndElement();
+        xml.writeCharacters("\n    ");
+        xml.writeStartElement("lastmod");
+        xml.writeCharacters(LASTMOD_FORMAT.format(Instant.ofEpochMilli(lastModified)));
+        xml.writeEndElement();
+        xml.writeCharacters("\n  ");
+        xml.writeEndElement();
+    }
+
+    /**
+     * Writes the last shard, and the sitemap index listing all of them.
+     */
+    public void finish() throws IOException, XMLStreamException {
+        closeShard();
+        if (shards.isEmpty()) {
+            // (an index lists at least one sitemap)
+            current = new Shard(0);
+            writeShard(current);
+            shards.add(current);
+            current = null;
+        }
+        Path path = directory.resolve(SiteMapUtil.SITEMAP_FILENAME_STAGED);
+        staged.add(path);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+            XMLStreamWriter xml = xmlOutputFactory.createXMLStreamWriter(out, "UTF-8");
+            xml.writeStartDocument("UTF-8", "1.0");
+            xml.writeCharacters("\n");
+            xml.writeStartElement("sitemapindex");
+            xml.writeDefaultNamespace(NAMESPACE);
+            for (Shard shard : shards) {
+                // Note that the shards are served from the "sitemap" directory, as is the index.
+                writeEntry(xml, "sitemap", siteUrl + "/sitemap/" + shard.getFileName(), shard.lastModified);
+            }
+            xml.writeCharacters("\n");
+            xml.writeEndElement();
+            xml.writeEndDocument();
+            xml.close();
+        }
+    }
+
+    /**
+     * Puts the staged files in place - the shards first, the index last -
+     * removes the shards no longer listed, and records the shards in the
+     * manifest.
+     */
+    public void commit() throws IOException {
+        for (Path path : staged) {
+            String fileName = path.getFileName().toString();
+            Files.move(path, directory.resolve(fileName.substring(0, fileName.length() - STAGED_SUFFIX.length())), StandardCopyOption.REPLACE_EXISTING);
+        }
+        staged.clear();
+        Map<Long, Shard> removed = new TreeMap<>(previous);
+        for (Shard shard : shards) {
+            removed.remove(shard.start);
+        }
+        for (Shard shard : removed.values()) {
+            Files.deleteIfExists(directory.resolve(shard.getFileName()));
+        }
+        writeManifest();
+    }
+
+    /**
+     * Removes the staged files, leaving the sitemap as it was.
+     */
+    public void abort() {
+        staged.add(directory.resolve(SiteMapUtil.SITEMAP_FILENAME_STAGED));
+        for (Path path : staged) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ex) {
+                logger.warning("Unable to delete staged sitemap file " + path + ": " + ex.getLocalizedMessage());
+            }
+        }
+        staged.clear();
+    }
+
+    /**
+     * The manifest: the URL of the site on the first line, then a line per
+     * shard with its start, number of URLs and last modification (in
+     * milliseconds).
+     *
+     * @return whether the shards of the manifest, if any, were written for the
+     * same URL of the site
+     */
+    private boolean readManifest(Map<Long, Shard> shards) {
+        try (BufferedReader reader = Files.newBufferedReader(directory.resolve(MANIFEST_FILENAME), StandardCharsets.UTF_8)) {
+            boolean sameSite = siteUrl.equals(reader.readLine());
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] values = line.split("\t");
+                Shard shard = new Shard(Long.parseLong(values[0]), Integer.parseInt(values[1]), Long.parseLong(values[2]));
+                shards.put(shard.start, shard);
+            }
+            return sameSite;
+        } catch (NoSuchFileException ex) {
+            return true;
+        } catch (IOException | RuntimeException ex) {
+            logger.warning("Unable to read the sitemap manifest, writing every shard of the sitemap: " + ex.getLocalizedMessage());
+            shards.clear();
+            return false;
+        }
+    }
+
+    private void writeManifest() throws IOException {
+        Path path = directory.resolve(MANIFEST_FILENAME + STAGED_SUFFIX);
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write(siteUrl);
+            writer.newLine();
+            for (Shard shard : shards) {
+                writer.write(shard.start + "\t" + shard.count + "\t" + shard.lastModified);
+                writer.newLine();
+            }
+        }
+        Files.move(path, directory.resolve(MANIFEST_FILENAME), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return the staged files, the index last once {@link #finish()}ed
+     */
+    public List<Path> getStagedFiles() {
+        return Collections.unmodifiableList(staged);
+    }
+
+    /**
+     * @return the number of URLs in the sitemap
+     */
+    public long getCount() {
+        return count;
+    }
+
+    List<Shard> getShards() {
+        return Collections.unmodifiableList(shards);
+    }
+
+    /**
+     * @return the number of shards written, because they changed
+     */
+    public int getShardsWritten() {
+        int written = 0;
+        for (Shard shard : shards) {
+            if (shard.written) {
+                written++;
+            }
+        }
+        return written;
+    }
+}
@@ -65,6 +65,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.sql.Timestamp;
@@ -659,13 +660,7 @@ public class FileUtil implements java.io.Serializable  {
 
     // from MD5Checksum.java
     public static String calculateChecksum(InputStream in, ChecksumType checksumType) {
-        MessageDigest md = null;
-        try {
-            // Use "SHA-1" (toString) rather than "SHA1", for example.
-            md = MessageDigest.getInstance(checksumType.toString());
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        }
+        MessageDigest md = getChecksumDigest(checksumType);
 
         byte[] dataBytes = new byte[1024];
 
@@ -687,13 +682,7 @@ public class FileUtil implements java.io.Serializable  {
     }
     
     public static String calculateChecksum(byte[] dataBytes, ChecksumType checksumType) {
-        MessageDigest md = null;
-        try {
-            // Use "SHA-1" (toString) rather than "SHA1", for example.
-            md = MessageDigest.getInstance(checksumType.toString());
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        }
+        MessageDigest md = getChecksumDigest(checksumType);
 
         md.update(dataBytes);
 
@@ -701,6 +690,28 @@ public class FileUtil implements java.io.Serializable  {
         
     }
     
+    /**
+     * Copies the stream into the file, computing its checksum as the bytes go
+     * by - so that the file does not have to be read again, once saved, to
+     * compute it. The stream is read to its end, but not closed.
+     *
+     * @return the checksum of the bytes copied
+     */
+    public static String copyAndCalculateChecksum(InputStream in, Path file, ChecksumType checksumType) throws IOException {
+        MessageDigest md = getChecksumDigest(checksumType);
+        Files.copy(new DigestInputStream(in, md), file, StandardCopyOption.REPLACE_EXISTING);
+        return checksumDigestToString(md.digest());
+    }
+
+    private static MessageDigest getChecksumDigest(ChecksumType checksumType) {
+        try {
+            // Use "SHA-1" (toString) rather than "SHA1", for example.
+            return MessageDigest.getInstance(checksumType.toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public static String checksumDigestToString(byte[] digestBytes) {
         StringBuilder sb = new StringBuilder("");
         for (int i = 0; i < digestBytes.length; i++) {
@@ -756,6 +767,8 @@ public class FileUtil implements java.io.Serializable  {
 
         // save the file, in the temporary location for now: 
         Path tempFile = null;
+        // computed while the upload is being saved:
+        String tempFileChecksum = null;
 
         Long fileSizeLimit = systemConfig.getMaxFileUploadSizeForStore(version.getDataset().getEffectiveStorageDriverId());
         String finalType = null;
@@ -767,7 +780,10 @@ public class FileUtil implements java.io.Serializable  {
                 // temp files will always be stored on the local filesystem.
                 // -- L.A. Jul. 2014
                 logger.fine("Will attempt to save the file as: " + tempFile.toString());
-                Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+                long copyStart = System.currentTimeMillis();
+                tempFileChecksum = copyAndCalculateChecksum(inputStream, tempFile, newCheckSumType);
+                logger.fine("Saved and computed the " + newCheckSumType + " of " + tempFile.toString() + " in "
+                        + (System.currentTimeMillis() - copyStart) + " ms");
 
                 // A file size check, before we do anything else:
                 // (note that "no size limit set" = "unlimited")
@@ -796,8 +812,10 @@ public class FileUtil implements java.io.Serializable  {
             String recognizedType = null;
 
             try {
+                long typeStart = System.currentTimeMillis();
                 recognizedType = determineFileType(tempFile.toFile(), fileName);
-                logger.fine("File utility recognized the file as " + recognizedType);
+                logger.fine("File utility recognized the file as " + recognizedType + " in "
+                        + (System.currentTimeMillis() - typeStart) + " ms");
                 if (recognizedType != null && !recognizedType.equals("")) {
                     if (useRecognizedType(suppliedContentType, recognizedType)) {
                         finalType = recognizedType;
@@ -830,8 +848,9 @@ public class FileUtil implements java.io.Serializable  {
                 DataFile datafile = null;
                 try {
                     uncompressedIn = new GZIPInputStream(new FileInputStream(tempFile.toFile()));
-                    File unZippedTempFile = saveInputStreamInTempFile(uncompressedIn, fileSizeLimit);
-                    datafile = createSingleDataFile(version, unZippedTempFile, finalFileName, MIME_TYPE_UNDETERMINED_DEFAULT, systemConfig.getFileFixityChecksumAlgorithm());
+                    MessageDigest md = getChecksumDigest(systemConfig.getFileFixityChecksumAlgorithm());
+                    File unZippedTempFile = saveInputStreamInTempFile(uncompressedIn, fileSizeLimit, md);
+                    datafile = createSingleDataFile(version, unZippedTempFile, null, finalFileName, MIME_TYPE_UNDETERMINED_DEFAULT, systemConfig.getFileFixityChecksumAlgorithm(), checksumDigestToString(md.digest()));
                 } catch (IOException | FileExceedsMaxSizeException ioex) {
                     datafile = null;
                 } finally {
@@ -943,10 +962,11 @@ public class FileUtil implements java.io.Serializable  {
                                     // OK, this seems like an OK file entry - we'll try
                                     // to read it and create a DataFile with it:
 
-                                    File unZippedTempFile = saveInputStreamInTempFile(unZippedIn, fileSizeLimit);
+                                    MessageDigest md = getChecksumDigest(systemConfig.getFileFixityChecksumAlgorithm());
+                                    File unZippedTempFile = saveInputStreamInTempFile(unZippedIn, fileSizeLimit, md);
                                     DataFile datafile = createSingleDataFile(version, unZippedTempFile, null, shortName,
                                             MIME_TYPE_UNDETERMINED_DEFAULT,
-                                            systemConfig.getFileFixityChecksumAlgorithm(), null, false);
+                                            systemConfig.getFileFixityChecksumAlgorithm(), checksumDigestToString(md.digest()), false);
 
                                     if (!fileEntryName.equals(shortName)) {
                                         // If the filename looks like a hierarchical folder name (i.e., contains slashes and backslashes),
@@ -1061,8 +1081,9 @@ public class FileUtil implements java.io.Serializable  {
                             continue;
                         }
 
-                        File unZippedShapeTempFile = saveInputStreamInTempFile(finalFileInputStream, fileSizeLimit);
-                        DataFile new_datafile = createSingleDataFile(version, unZippedShapeTempFile, finalFile.getName(), finalType, systemConfig.getFileFixityChecksumAlgorithm());
+                        MessageDigest md = getChecksumDigest(systemConfig.getFileFixityChecksumAlgorithm());
+                        File unZippedShapeTempFile = saveInputStreamInTempFile(finalFileInputStream, fileSizeLimit, md);
+                        DataFile new_datafile = createSingleDataFile(version, unZippedShapeTempFile, null, finalFile.getName(), finalType, systemConfig.getFileFixityChecksumAlgorithm(), checksumDigestToString(md.digest()));
                         String directoryName = null;
                         String absolutePathName = finalFile.getParent();
                         if (absolutePathName != null) {
@@ -1138,6 +1159,9 @@ public class FileUtil implements java.io.Serializable  {
         }
         
 
+        if (StringUtils.isEmpty(newCheckSum)) {
+            newCheckSum = tempFileChecksum;
+        }
         DataFile datafile = createSingleDataFile(version, newFile, newStorageIdentifier, fileName, finalType, newCheckSumType, newCheckSum);
         File f = null;
         if (tempFile != null) {
@@ -1193,12 +1217,16 @@ public class FileUtil implements java.io.Serializable  {
 		return false;
 	}
 
-	private static File saveInputStreamInTempFile(InputStream inputStream, Long fileSizeLimit)
+	/**
+	 * Saves the stream in a new temp file, updating {@code md} with the bytes
+	 * saved.
+	 */
+	private static File saveInputStreamInTempFile(InputStream inputStream, Long fileSizeLimit, MessageDigest md)
             throws IOException, FileExceedsMaxSizeException {
         Path tempFile = Files.createTempFile(Paths.get(getFilesTempDirectory()), "tmp", "upload");
         
         if (inputStream != null && tempFile != null) {
-            Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            Files.copy(new DigestInputStream(inputStream, md), tempFile, StandardCopyOption.REPLACE_EXISTING);
             
             // size check: 
             // (note that "no size limit set" = "unlimited")
@@ -1223,10 +1251,6 @@ public class FileUtil implements java.io.Serializable  {
      * been figured out. 
     */
 
-    private static DataFile createSingleDataFile(DatasetVersion version, File tempFile, String fileName, String contentType, DataFile.ChecksumType checksumType) {
-        return createSingleDataFile(version, tempFile, null, fileName, contentType, checksumType, null, false);
-    }
-    
     private static DataFile createSingleDataFile(DatasetVersion version, File tempFile, String storageIdentifier,  String fileName, String contentType, DataFile.ChecksumType checksumType, String checksum) {
         return createSingleDataFile(version, tempFile, storageIdentifier, fileName, contentType, checksumType, checksum, false);
     }
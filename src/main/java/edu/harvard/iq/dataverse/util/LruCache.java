@@ -2,6 +2,7 @@ package edu.harvard.iq.dataverse.util;
 
 import java.util.LinkedHashMap;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
 
 /**
  * A thread-safe implementation of a capped-size cache, where the removal is done 
@@ -80,6 +81,17 @@ public class LruCache<K,V> {
         } finally { cacheLock.unlock(); }
     }
     
+    /**
+     * Removes the entries that match {@code p}.
+     * @param p the test of the key and value of an entry
+     */
+    public void invalidateIf( BiPredicate<K,V> p ) {
+        try {
+            cacheLock.lock();
+            cache.entrySet().removeIf( e -> p.test(e.getKey(), e.getValue()) );
+        } finally { cacheLock.unlock(); }
+    }
+    
     private void shrinkToMaxSize() {
         while( cache.size() > getMaxSize() ) {
             cache.remove( cache.entrySet().iterator().next().getKey() );
@@ -21,6 +21,7 @@
 package edu.harvard.iq.dataverse.util;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -59,6 +60,60 @@ public class SumStatCalculator {
         double[] newx = prepareForSummaryStatsAlternative(x, x.length - invalid);
         logger.fine("prepared double vector for summary stats calculation ("+newx.length+" double values);");        
         
+        return calculateSummaryStatistics(nx, newx);
+    }
+    
+    /**
+     * Primitive version of the method above; the values flagged in the 
+     * missing value bitmap are treated the same way as nulls are in the 
+     * Number[] vector. 
+     */
+    public static double[] calculateSummaryStatistics(double[] x, BitSet missing) {
+        logger.fine("entering calculate summary statistics ("+x.length+" double values);");
+        
+        int valid = 0;
+        for (int i = 0; i < x.length; i++) {
+            if (!missing.get(i) && !Double.isNaN(x[i])) {
+                valid++;
+            }
+        }
+        
+        double[] newx = new double[valid];
+        int c = 0;
+        for (int i = 0; i < x.length; i++) {
+            if (!missing.get(i) && !Double.isNaN(x[i])) {
+                newx[c++] = x[i];
+            }
+        }
+        
+        double[] nx = new double[8];
+        nx[4] = x.length - valid;
+        nx[3] = valid;
+        
+        return calculateSummaryStatistics(nx, newx);
+    }
+    
+    public static double[] calculateSummaryStatistics(float[] x, BitSet missing) {
+        double[] dx = new double[x.length];
+        for (int i = 0; i < x.length; i++) {
+            dx[i] = x[i];
+        }
+        return calculateSummaryStatistics(dx, missing);
+    }
+    
+    public static double[] calculateSummaryStatistics(long[] x, BitSet missing) {
+        double[] dx = new double[x.length];
+        for (int i = 0; i < x.length; i++) {
+            dx[i] = x[i];
+        }
+        return calculateSummaryStatistics(dx, missing);
+    }
+    
+    /*
+     * Calculates the remaining statistics on the valid values; the valid 
+     * and invalid counts (nx[3] and nx[4]) have already been filled in.
+     */
+    private static double[] calculateSummaryStatistics(double[] nx, double[] newx) {
         ////nx[0] = StatUtils.mean(newx);
         nx[0] = calculateMean(newx);
         logger.fine("calculated mean: "+nx[0]);
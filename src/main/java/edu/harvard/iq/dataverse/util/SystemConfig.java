@@ -5,9 +5,13 @@ import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DataverseServiceBean;
 import edu.harvard.iq.dataverse.DvObjectContainer;
+import edu.harvard.iq.dataverse.authorization.ApiTokenCache;
 import edu.harvard.iq.dataverse.authorization.AuthenticationServiceBean;
 import edu.harvard.iq.dataverse.authorization.providers.builtin.BuiltinAuthenticationProvider;
 import edu.harvard.iq.dataverse.authorization.providers.oauth2.AbstractOAuth2AuthenticationProvider;
+import edu.harvard.iq.dataverse.dataaccess.DataFileZipper;
+import edu.harvard.iq.dataverse.ingest.IngestScheduler;
+import edu.harvard.iq.dataverse.makedatacount.MakeDataCountLogWriter;
 import static edu.harvard.iq.dataverse.datasetutility.FileSizeChecker.bytesToHumanReadable;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.validation.PasswordValidatorUtil;
@@ -1034,6 +1038,106 @@ public class SystemConfig {
         return retVal;
     }
     
+    public int getHarvestingClientFetchThreads() {
+        return getIntSetting(SettingsServiceBean.Key.HarvestingClientFetchThreads, 1);
+    }
+    
+    public int getReindexWorkerThreads() {
+        return getIntSetting(SettingsServiceBean.Key.ReindexWorkerThreads, Runtime.getRuntime().availableProcessors());
+    }
+    
+    public int getIngestStatisticsThreads() {
+        return getIntSetting(SettingsServiceBean.Key.IngestStatisticsThreads, Runtime.getRuntime().availableProcessors());
+    }
+    
+    public int getZipDownloadPrefetchThreads() {
+        return getIntSetting(SettingsServiceBean.Key.ZipDownloadPrefetchThreads, DataFileZipper.DEFAULT_PREFETCH_THREADS);
+    }
+    
+    public int getIngestParallelFiles() {
+        return getIntSetting(SettingsServiceBean.Key.IngestParallelFiles, 4);
+    }
+    
+    /**
+     * The budget, in bytes, for the sum of the sizes of the small files that
+     * are ingested at the same time. (A file larger than the budget is
+     * ingested on its own.)
+     */
+    public long getIngestParallelSizeBudget() {
+        return getLongSetting(SettingsServiceBean.Key.IngestParallelSizeBudget, Runtime.getRuntime().maxMemory() / 4, 1);
+    }
+    
+    public long getIngestLargeFileThreshold() {
+        return getLongSetting(SettingsServiceBean.Key.IngestLargeFileThreshold, IngestScheduler.DEFAULT_LARGE_FILE_THRESHOLD, 0);
+    }
+    
+    public int getIngestLargeFileConcurrency() {
+        return getIntSetting(SettingsServiceBean.Key.IngestLargeFileConcurrency, IngestScheduler.DEFAULT_LARGE_FILE_CONCURRENCY);
+    }
+    
+    /**
+     * @return the number of milliseconds the user an API token belongs to
+     * is cached for; 0 if API tokens are not cached
+     */
+    public long getApiTokenCacheTimeToLive() {
+        // (set in seconds)
+        return getLongSetting(SettingsServiceBean.Key.ApiTokenCacheTimeToLive, ApiTokenCache.DEFAULT_TIME_TO_LIVE_MILLIS / 1000L, 0, Long.MAX_VALUE / 1000L) * 1000L;
+    }
+    
+    public int getApiTokenCacheSize() {
+        return getIntSetting(SettingsServiceBean.Key.ApiTokenCacheSize, ApiTokenCache.DEFAULT_MAX_SIZE);
+    }
+    
+    public boolean isActionLogWriteBehind() {
+        return settingsService.isTrueForKey(SettingsServiceBean.Key.ActionLogWriteBehind, false);
+    }
+    
+    public int getActionLogQueueSize() {
+        return getIntSetting(SettingsServiceBean.Key.ActionLogQueueSize, 10000);
+    }
+    
+    public boolean isGuestbookResponseWriteBehind() {
+        return settingsService.isTrueForKey(SettingsServiceBean.Key.GuestbookResponseWriteBehind, false);
+    }
+    
+    public int getGuestbookResponseQueueSize() {
+        return getIntSetting(SettingsServiceBean.Key.GuestbookResponseQueueSize, 10000);
+    }
+    
+    /**
+     * @return the value of the setting, or the default value if it is not
+     * set or is not an integer greater than zero
+     */
+    private int getIntSetting(SettingsServiceBean.Key key, int defaultValue) {
+        return (int) getLongSetting(key, defaultValue, 1, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * @return the value of the setting, or the default value if it is not
+     * set or is not a number of at least {@code minValue}
+     */
+    private long getLongSetting(SettingsServiceBean.Key key, long defaultValue, long minValue) {
+        return getLongSetting(key, defaultValue, minValue, Long.MAX_VALUE);
+    }
+    
+    private long getLongSetting(SettingsServiceBean.Key key, long defaultValue, long minValue, long maxValue) {
+        String valueString = settingsService.getValueForKey(key);
+        if (valueString != null) {
+            try {
+                long value = Long.parseLong(valueString.trim());
+                if (value >= minValue && value <= maxValue) {
+                    return value;
+                } else {
+                    String range = maxValue == Long.MAX_VALUE ? "at least " + minValue : "between " + minValue + " and " + maxValue;
+                    logger.info("Returning " + defaultValue + " for " + key + " because value must be " + range + ", not \"" + valueString + "\".");
+                }
+            } catch (NumberFormatException ex) {
+                logger.info("Returning " + defaultValue + " for " + key + " because value must be a whole number, not \"" + valueString + "\".");
+            }
+        }
+        return defaultValue;
+    }
+    
     public boolean isFilePIDsEnabled() {
         boolean safeDefaultIfKeyNotFound = true;
         return settingsService.isTrueForKey(SettingsServiceBean.Key.FilePIDsEnabled, safeDefaultIfKeyNotFound);
@@ -1055,6 +1159,20 @@ public class SystemConfig {
         return mDCLogPath;
     }
     
+    public MakeDataCountLogWriter.SyncPolicy getMDCLogSyncPolicy() {
+        MakeDataCountLogWriter.SyncPolicy defaultValue = MakeDataCountLogWriter.SyncPolicy.FLUSH;
+        SettingsServiceBean.Key key = SettingsServiceBean.Key.MDCLogSyncPolicy;
+        String policyString = settingsService.getValueForKey(key);
+        if (policyString != null) {
+            try {
+                return MakeDataCountLogWriter.SyncPolicy.valueOf(policyString.trim().toUpperCase());
+            } catch (IllegalArgumentException ex) {
+                logger.info("Returning " + defaultValue + " for " + key + " because value must be flush, rotate or none, not \"" + policyString + "\".");
+            }
+        }
+        return defaultValue;
+    }
+    
     public boolean isDatafileValidationOnPublishEnabled() {
         boolean safeDefaultIfKeyNotFound = true;
         return settingsService.isTrueForKey(SettingsServiceBean.Key.FileValidationOnPublishEnabled, safeDefaultIfKeyNotFound);
@@ -0,0 +1,237 @@
+package edu.harvard.iq.dataverse.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes rows behind the back of the code producing them: {@link #offer}
+ * only adds the row to a bounded queue, and a background thread hands the
+ * queued rows to the {@link Sink} in batches - once {@code batchSize} of them
+ * are waiting, or every {@code flushIntervalMillis}.
+ *
+ * What becomes of a batch the sink could not write is up to the subclass,
+ * see {@link #batchFailed(List, Exception)}.
+ *
+ * When the queue is full, {@code offer()} refuses the row, for the caller to
+ * write it right away instead.
+ *
+ * @param <T> the rows
+ */
+public abstract class WriteBehindQueue<T> {
+
+    private static final Logger logger = Logger.getLogger(WriteBehindQueue.class.getCanonicalName());
+
+    /**
+     * Writes a batch of rows, all or none of them.
+     */
+    public interface Sink<T> {
+        void write(List<T> rows) throws Exception;
+    }
+
+    protected final Sink<T> sink;
+    private final String name;
+    private final int capacity;
+    protected final int batchSize;
+    private final long flushIntervalNanos;
+
+    private final Queue<T> queue = new ConcurrentLinkedQueue<>();
+    // rows in the queue, or about to be added to it
+    private final AtomicInteger queued = new AtomicInteger();
+    private volatile boolean running = false;
+    private Thread worker;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong refused = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+
+    /**
+     * @param name of the background thread
+     */
+    protected WriteBehindQueue(String name, Sink<T> sink, int capacity, int batchSize, long flushIntervalMillis) {
+        this.name = name;
+        this.sink = sink;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+    }
+
+    /**
+     * Starts the background thread.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Stops the background thread, and writes the rows still in the queue.
+     */
+    public void stop() {
+        Thread stopping;
+        synchronized (this) {
+            running = false;
+            stopping = worker;
+            worker = null;
+        }
+        if (stopping != null) {
+            LockSupport.unpark(stopping);
+            try {
+                stopping.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Queues the row, to be written by the background thread.
+     *
+     * @return {@code false} if the row was not queued - because the queue is
+     * full, or the writer is not running - and is to be written by the caller
+     */
+    public boolean offer(T row) {
+        if (!running) {
+            return false;
+        }
+        int size = queued.incrementAndGet();
+        if (size > capacity) {
+            queued.decrementAndGet();
+            refused.incrementAndGet();
+            return false;
+        }
+        queue.offer(row);
+        accepted.incrementAndGet();
+        if (size == batchSize) {
+            Thread current = worker;
+            if (current != null) {
+                LockSupport.unpark(current);
+            }
+        }
+        return true;
+    }
+
+    private void run() {
+        while (running) {
+            long deadline = System.nanoTime() + flushIntervalNanos;
+            long remaining;
+            while (running && queued.get() < batchSize && (remaining = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, remaining);
+            }
+            try {
+                // (woken up by a full batch, the rest waits for the next one)
+                writeQueued(running && deadline - System.nanoTime() > 0);
+            } catch (RuntimeException ex) {
+                logger.log(Level.SEVERE, "Unexpected failure in " + name, ex);
+            }
+        }
+    }
+
+    /**
+     * Writes every row queued, right away.
+     */
+    public void flush() {
+        writeQueued(false);
+    }
+
+    private synchronized void writeQueued(boolean fullBatchesOnly) {
+        beforeBatches();
+        while (!fullBatchesOnly || queued.get() >= batchSize) {
+            List<T> batch = new ArrayList<>(batchSize);
+            T row;
+            while (batch.size() < batchSize && (row = queue.poll()) != null) {
+                queued.decrementAndGet();
+                batch.add(row);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            write(batch);
+        }
+    }
+
+    private void write(List<T> batch) {
+        try {
+            sink.write(batch);
+            written.addAndGet(batch.size());
+            batches.incrementAndGet();
+        } catch (Exception ex) {
+            failedBatches.incrementAndGet();
+            batchFailed(batch, ex);
+        }
+    }
+
+    /**
+     * Called, by the thread writing, before the queued rows are written.
+     */
+    protected void beforeBatches() {
+    }
+
+    /**
+     * Called, by the thread writing, with a batch the sink could not write.
+     */
+    protected abstract void batchFailed(List<T> batch, Exception ex);
+
+    /**
+     * Counts rows written other than as a queued batch.
+     */
+    protected void countWritten(long count) {
+        written.addAndGet(count);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return the number of rows waiting in the queue
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of rows queued since the writer was created
+     */
+    public long getAccepted() {
+        return accepted.get();
+    }
+
+    /**
+     * @return the number of rows refused because the queue was full
+     */
+    public long getRefused() {
+        return refused.get();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public long getFailedBatches() {
+        return failedBatches.get();
+    }
+}
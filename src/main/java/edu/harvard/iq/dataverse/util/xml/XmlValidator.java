@@ -24,10 +24,18 @@ public class XmlValidator {
     private static final Logger logger = Logger.getLogger(XmlValidator.class.getCanonicalName());
 
     public static boolean validateXmlSchema(String fileToValidate, URL schemaToValidateAgainst) throws MalformedURLException, SAXException, IOException {
-        Source xmlFile = new StreamSource(new File(fileToValidate));
         SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
         Schema schema = schemaFactory.newSchema(schemaToValidateAgainst);
-        Validator validator = schema.newValidator();
+        return validateXmlSchema(fileToValidate, schema);
+    }
+
+    /**
+     * @param schemaToValidateAgainst the schema, read once for validating
+     * several files against it.
+     */
+    public static boolean validateXmlSchema(String fileToValidate, Schema schemaToValidateAgainst) throws SAXException, IOException {
+        Source xmlFile = new StreamSource(new File(fileToValidate));
+        Validator validator = schemaToValidateAgainst.newValidator();
         try {
             validator.validate(xmlFile);
             logger.info(xmlFile.getSystemId() + " is valid");
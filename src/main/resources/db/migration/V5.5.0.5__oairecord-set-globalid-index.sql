@@ -0,0 +1,2 @@
+-- supports the keyset (globalid-ordered) paging of ListRecords/ListIdentifiers
+CREATE INDEX IF NOT EXISTS index_oairecord_setname_globalid ON oairecord (setname, globalid);
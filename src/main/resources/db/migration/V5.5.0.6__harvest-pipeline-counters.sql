@@ -0,0 +1,4 @@
+ALTER TABLE clientharvestrun ADD COLUMN IF NOT EXISTS listedidentifiercount BIGINT DEFAULT 0;
+ALTER TABLE clientharvestrun ADD COLUMN IF NOT EXISTS fetchtime BIGINT DEFAULT 0;
+ALTER TABLE clientharvestrun ADD COLUMN IF NOT EXISTS importtime BIGINT DEFAULT 0;
+ALTER TABLE clientharvestrun ADD COLUMN IF NOT EXISTS fetchthreads INTEGER DEFAULT 1;
@@ -0,0 +1,7 @@
+-- The version of the settings: incremented whenever a setting is changed, so
+-- that every server of a cluster knows when to empty its cache of settings.
+CREATE TABLE IF NOT EXISTS settingsversion (
+    id INTEGER PRIMARY KEY,
+    version BIGINT NOT NULL
+);
+INSERT INTO settingsversion (id, version) VALUES (1, 0) ON CONFLICT DO NOTHING;
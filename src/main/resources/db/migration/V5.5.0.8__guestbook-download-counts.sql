@@ -0,0 +1,22 @@
+-- The download counts of the files and datasets, by month of the guestbook
+-- responses; the responses without a time are counted in -infinity.
+CREATE TABLE IF NOT EXISTS datafiledownloadcount (
+    datafile_id BIGINT NOT NULL,
+    month DATE NOT NULL,
+    count BIGINT NOT NULL,
+    PRIMARY KEY (datafile_id, month)
+);
+CREATE TABLE IF NOT EXISTS datasetdownloadcount (
+    dataset_id BIGINT NOT NULL,
+    month DATE NOT NULL,
+    count BIGINT NOT NULL,
+    PRIMARY KEY (dataset_id, month)
+);
+INSERT INTO datafiledownloadcount (datafile_id, month, count)
+    SELECT datafile_id, COALESCE(CAST(date_trunc('month', responsetime) AS date), '-infinity'), count(*)
+    FROM guestbookresponse WHERE datafile_id IS NOT NULL GROUP BY 1, 2
+    ON CONFLICT DO NOTHING;
+INSERT INTO datasetdownloadcount (dataset_id, month, count)
+    SELECT dataset_id, COALESCE(CAST(date_trunc('month', responsetime) AS date), '-infinity'), count(*)
+    FROM guestbookresponse WHERE dataset_id IS NOT NULL GROUP BY 1, 2
+    ON CONFLICT DO NOTHING;
@@ -0,0 +1,114 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.mocks.MocksFactory;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DataverseAncestorCacheTest {
+
+    private DataverseAncestorCache cache;
+    private Dataverse root;
+    private Dataverse child;
+    private Dataverse grandchild;
+
+    @Before
+    public void setUp() {
+        cache = new DataverseAncestorCache();
+        root = MocksFactory.makeDataverse();
+        child = MocksFactory.makeDataverse();
+        child.setOwner(root);
+        grandchild = MocksFactory.makeDataverse();
+        grandchild.setOwner(child);
+    }
+
+    @Test
+    public void testAncestorIds() {
+        assertEquals(Arrays.asList(root.getId()), cache.getAncestorIds(root));
+        assertEquals(Arrays.asList(root.getId(), child.getId(), grandchild.getId()), cache.getAncestorIds(grandchild));
+    }
+
+    @Test
+    public void testOwnersAreOnlyWalkedOnce() {
+        cache.getAncestorIds(grandchild);
+        // grandchild, child and root were all computed
+        assertEquals(0, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(3, cache.size());
+
+        Dataverse sibling = MocksFactory.makeDataverse();
+        sibling.setOwner(child);
+        cache.getAncestorIds(sibling);
+        // only the sibling itself was computed; its owner chain came from the cache
+        assertEquals(1, cache.getHits());
+        assertEquals(4, cache.getMisses());
+
+        cache.getAncestorIds(grandchild);
+        assertEquals(2, cache.getHits());
+        assertEquals(0.333, cache.getHitRate(), 0.001);
+    }
+
+    @Test
+    public void testInvalidate() {
+        Dataverse otherChild = MocksFactory.makeDataverse();
+        otherChild.setOwner(root);
+        assertEquals(Arrays.asList(root.getId(), child.getId(), grandchild.getId()), cache.getAncestorIds(grandchild));
+
+        // a move is not seen until the cache is invalidated
+        grandchild.setOwner(otherChild);
+        assertEquals(Arrays.asList(root.getId(), child.getId(), grandchild.getId()), cache.getAncestorIds(grandchild));
+        cache.invalidate();
+        assertEquals(0, cache.size());
+        assertEquals(Arrays.asList(root.getId(), otherChild.getId(), grandchild.getId()), cache.getAncestorIds(grandchild));
+    }
+
+    @Test
+    public void testInvalidateSubtree() {
+        Dataverse otherChild = MocksFactory.makeDataverse();
+        otherChild.setOwner(root);
+        cache.getAncestorIds(grandchild);
+        cache.getAncestorIds(otherChild);
+        assertEquals(4, cache.size());
+
+        grandchild.setOwner(otherChild);
+        cache.invalidateSubtree(child.getId());
+        // only the chains through child are gone
+        assertEquals(2, cache.size());
+        assertEquals(Arrays.asList(root.getId(), otherChild.getId(), grandchild.getId()), cache.getAncestorIds(grandchild));
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void testMaxAge() {
+        long[] now = {1000L};
+        cache = new DataverseAncestorCache(100, () -> now[0]);
+        Dataverse otherChild = MocksFactory.makeDataverse();
+        otherChild.setOwner(root);
+        cache.getAncestorIds(grandchild);
+
+        // moved on another server: seen here once the chain is too old
+        grandchild.setOwner(otherChild);
+        now[0] += 100;
+        assertEquals(Arrays.asList(root.getId(), child.getId(), grandchild.getId()), cache.getAncestorIds(grandchild));
+        now[0] += 1;
+        assertEquals(Arrays.asList(root.getId(), otherChild.getId(), grandchild.getId()), cache.getAncestorIds(grandchild));
+    }
+
+    @Test
+    public void testChainComputedWhileInvalidatedIsNotKept() {
+        Dataverse moving = new Dataverse() {
+            @Override
+            public Dataverse getOwner() {
+                // (invalidated by another transaction while the chain is computed)
+                cache.invalidate();
+                return super.getOwner();
+            }
+        };
+        moving.setId(child.getId() + 1000);
+        moving.setOwner(child);
+
+        assertEquals(Arrays.asList(root.getId(), child.getId(), moving.getId()), cache.getAncestorIds(moving));
+        assertEquals(0, cache.size());
+    }
+}
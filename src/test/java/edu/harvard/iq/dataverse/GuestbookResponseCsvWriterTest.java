@@ -0,0 +1,129 @@
+package edu.harvard.iq.dataverse;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GuestbookResponseCsvWriterTest {
+
+    /**
+     * The rows of the query for downloading the responses, read one at a
+     * time, and made up as they are read when there are many of them.
+     */
+    private static ResultSet results(Iterator<Object[]> rows) {
+        Object[][] current = new Object[1][];
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "next":
+                            current[0] = rows.hasNext() ? rows.next() : null;
+                            return current[0] != null;
+                        case "getLong":
+                            return ((Number) current[0][(Integer) args[0] - 1]).longValue();
+                        case "getString":
+                        case "getTimestamp":
+                        case "getObject":
+                            return current[0][(Integer) args[0] - 1];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static Object[] row(int id, String question, String answer) {
+        return new Object[]{id, "Guestbook, Default", "Dataset, Title", Timestamp.valueOf(LocalDateTime.of(2021, 6, 1, 12, 0)),
+            "Download", "data.csv", 10 + id, "Guest", "guest@example.com", "Institution", null,
+            "doi", "10.5072", "FK2/ABC", null, null, null, question, answer};
+    }
+
+    @Test
+    public void testWritesOneLinePerResponse() throws Exception {
+        StringWriter out = new StringWriter();
+        GuestbookResponseCsvWriter writer = new GuestbookResponseCsvWriter(out);
+        writer.writeHeader();
+
+        long count = writer.writeResponses(results(Arrays.asList(
+                row(3, "Question 1", "Answer, 1"),
+                row(3, "Question 2", null),
+                row(2, null, null),
+                row(1, "Question 1", "Answer 1")).iterator()));
+
+        assertEquals(3, count);
+        String[] lines = out.toString().split("\n");
+        assertEquals(4, lines.length);
+        assertEquals(GuestbookResponseCsvWriter.HEADER.trim(), lines[0]);
+        assertEquals("Guestbook  Default,Dataset  Title,doi:10.5072/FK2/ABC,06/1/2021,Download,data.csv,13,N/A,Guest,guest@example.com,Institution,"
+                + ",Question 1,Answer  1,Question 2,", lines[1]);
+        assertEquals("Guestbook  Default,Dataset  Title,doi:10.5072/FK2/ABC,06/1/2021,Download,data.csv,12,N/A,Guest,guest@example.com,Institution,", lines[2]);
+        assertTrue(lines[3].endsWith(",Question 1,Answer 1"));
+    }
+
+    @Test
+    public void testNoResponses() throws Exception {
+        StringWriter out = new StringWriter();
+
+        assertEquals(0, new GuestbookResponseCsvWriter(out).writeResponses(results(new ArrayList<Object[]>().iterator())));
+        assertEquals("", out.toString());
+    }
+
+    /**
+     * A million responses with two answers each are written as they are
+     * read: what is written does not pile up in the writer.
+     */
+    @Test
+    public void testStreamsManyResponses() throws SQLException, IOException {
+        int responses = 1000000;
+        Iterator<Object[]> rows = new Iterator<Object[]>() {
+            int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < responses * 2;
+            }
+
+            @Override
+            public Object[] next() {
+                int id = responses - next / 2;
+                return row(id, "Question " + (next++ % 2), "Answer");
+            }
+        };
+        long[] lines = new long[1];
+        long[] characters = new long[1];
+        Writer out = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) {
+                for (int i = offset; i < offset + length; i++) {
+                    if (buffer[i] == '\n') {
+                        lines[0]++;
+                    }
+                }
+                characters[0] += length;
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        long count = new GuestbookResponseCsvWriter(out).writeResponses(results(rows));
+
+        assertEquals(responses, count);
+        assertEquals(responses, lines[0]);
+        assertTrue(characters[0] > responses * 100L);
+    }
+}
@@ -0,0 +1,122 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.authorization.Permission;
+import edu.harvard.iq.dataverse.authorization.RoleAssignee;
+import edu.harvard.iq.dataverse.authorization.groups.Group;
+import edu.harvard.iq.dataverse.authorization.groups.impl.builtin.AllUsers;
+import edu.harvard.iq.dataverse.authorization.users.GuestUser;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PermissionMemoTest {
+
+    private PermissionMemo memo;
+    private Set<RoleAssignee> guest;
+    private Set<RoleAssignee> guestAndAllUsers;
+
+    @Before
+    public void setUp() {
+        memo = new PermissionMemo();
+        guest = Collections.singleton(GuestUser.get());
+        guestAndAllUsers = new HashSet<>(Arrays.asList(GuestUser.get(), AllUsers.get()));
+    }
+
+    @Test
+    public void testRemembersPermissions() {
+        assertNull(memo.get(guest, 1L));
+
+        memo.put(guest, 1L, EnumSet.of(Permission.DownloadFile));
+
+        assertEquals(EnumSet.of(Permission.DownloadFile), memo.get(guest, 1L));
+        assertNull(memo.get(guest, 2L));
+        assertEquals(1, memo.getHits());
+        assertEquals(2, memo.getMisses());
+    }
+
+    @Test
+    public void testKeyedByRoleAssignees() {
+        memo.put(guest, 1L, EnumSet.noneOf(Permission.class));
+        memo.put(guestAndAllUsers, 1L, EnumSet.of(Permission.DownloadFile));
+
+        assertEquals(EnumSet.noneOf(Permission.class), memo.get(guest, 1L));
+        assertEquals(EnumSet.of(Permission.DownloadFile), memo.get(new HashSet<>(guestAndAllUsers), 1L));
+    }
+
+    @Test
+    public void testReturnsCopies() {
+        memo.put(guest, 1L, EnumSet.of(Permission.DownloadFile));
+
+        memo.get(guest, 1L).add(Permission.EditDataset);
+
+        assertEquals(EnumSet.of(Permission.DownloadFile), memo.get(guest, 1L));
+    }
+
+    @Test
+    public void testObjectsWithoutIdAreNotRemembered() {
+        memo.put(guest, null, EnumSet.of(Permission.DownloadFile));
+
+        assertNull(memo.get(guest, null));
+        assertEquals(0, memo.size());
+    }
+
+    @Test
+    public void testGroupsAreLoadedOnce() {
+        AtomicInteger loads = new AtomicInteger();
+        Set<Group> groups = Collections.singleton(AllUsers.get());
+
+        for (int check = 0; check < 10; check++) {
+            assertEquals(groups, memo.getGroups(() -> {
+                loads.incrementAndGet();
+                return groups;
+            }));
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testForgetsWhenAssignmentsChange() {
+        AtomicInteger loads = new AtomicInteger();
+        memo.put(guest, 1L, EnumSet.of(Permission.DownloadFile));
+        memo.getGroups(() -> {
+            loads.incrementAndGet();
+            return Collections.emptySet();
+        });
+
+        PermissionMemo.assignmentsChanged();
+
+        assertNull(memo.get(guest, 1L));
+        memo.getGroups(() -> {
+            loads.incrementAndGet();
+            return Collections.emptySet();
+        });
+        assertEquals(2, loads.get());
+    }
+
+    /**
+     * A dataset page with 5,000 files, checking each of them from three
+     * places: the role assignments are only looked up once per file.
+     */
+    @Test
+    public void testLookupsPerRender() {
+        AtomicInteger lookups = new AtomicInteger();
+
+        for (int place = 0; place < 3; place++) {
+            for (long fileId = 1; fileId <= 5000; fileId++) {
+                if (memo.get(guestAndAllUsers, fileId) == null) {
+                    lookups.incrementAndGet();
+                    memo.put(guestAndAllUsers, fileId, EnumSet.of(Permission.DownloadFile));
+                }
+            }
+        }
+
+        assertEquals(5000, lookups.get());
+        assertEquals(10000, memo.getHits());
+    }
+}
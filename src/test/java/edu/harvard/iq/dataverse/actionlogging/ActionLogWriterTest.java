@@ -0,0 +1,245 @@
+package edu.harvard.iq.dataverse.actionlogging;
+
+import edu.harvard.iq.dataverse.actionlogging.ActionLogRecord.ActionType;
+import edu.harvard.iq.dataverse.actionlogging.ActionLogRecord.Result;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ActionLogWriterTest {
+
+    private Path directory;
+    private Path spillFile;
+    private List<ActionLogRecord> written;
+    private AtomicInteger roundTrips;
+    private volatile boolean databaseDown;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("actionlog");
+        spillFile = directory.resolve("spill.tsv");
+        written = Collections.synchronizedList(new ArrayList<>());
+        roundTrips = new AtomicInteger();
+        databaseDown = false;
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(spillFile);
+        Files.deleteIfExists(directory);
+    }
+
+    private ActionLogWriter writer(int capacity, int batchSize, long flushIntervalMillis) {
+        return new ActionLogWriter(records -> {
+            roundTrips.incrementAndGet();
+            if (databaseDown) {
+                throw new IllegalStateException("database is down");
+            }
+            for (ActionLogRecord rec : records) {
+                // (as the INSERT ... ON CONFLICT DO NOTHING does)
+                if (!written.contains(rec)) {
+                    written.add(rec);
+                }
+            }
+        }, spillFile, capacity, batchSize, flushIntervalMillis);
+    }
+
+    private static ActionLogRecord record(int number) {
+        ActionLogRecord rec = new ActionLogRecord(ActionType.Command, "Command" + number);
+        rec.setId(UUID.randomUUID().toString());
+        rec.setEndTime(new Date());
+        rec.setUserIdentifier("@user" + number);
+        return rec;
+    }
+
+    private static void awaitWritten(ActionLogWriter writer, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (writer.getWritten() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testWritesInBatches() throws Exception {
+        ActionLogWriter writer = writer(10000, 500, 60000);
+        writer.start();
+        try {
+            List<ActionLogRecord> records = new ArrayList<>();
+            for (int i = 0; i < 1200; i++) {
+                records.add(record(i));
+                assertTrue(writer.offer(records.get(i)));
+            }
+            writer.flush();
+
+            assertEquals(records, written);
+            assertEquals(3, writer.getBatches());
+            assertEquals(0, writer.getQueued());
+        } finally {
+            writer.stop();
+        }
+    }
+
+    @Test
+    public void testBackgroundThreadWrites() throws Exception {
+        ActionLogWriter writer = writer(10000, 500, 50);
+        writer.start();
+        try {
+            for (int i = 0; i < 10; i++) {
+                writer.offer(record(i));
+            }
+            awaitWritten(writer, 10);
+
+            assertEquals(10, written.size());
+        } finally {
+            writer.stop();
+        }
+    }
+
+    @Test
+    public void testRefusesWhenFull() {
+        ActionLogWriter writer = writer(5, 100, 60000);
+        writer.start();
+        try {
+            for (int i = 0; i < 5; i++) {
+                assertTrue(writer.offer(record(i)));
+            }
+            assertFalse(writer.offer(record(5)));
+            assertEquals(1, writer.getRefused());
+            assertEquals(5, writer.getQueued());
+        } finally {
+            writer.stop();
+        }
+        assertEquals(5, written.size());
+    }
+
+    @Test
+    public void testRefusesWhenStopped() {
+        ActionLogWriter writer = writer(10, 100, 60000);
+
+        assertFalse(writer.offer(record(0)));
+    }
+
+    @Test
+    public void testSpillsWhileTheDatabaseIsDown() throws Exception {
+        ActionLogWriter writer = writer(10000, 10, 60000);
+        writer.start();
+        try {
+            databaseDown = true;
+            for (int i = 0; i < 25; i++) {
+                writer.offer(record(i));
+            }
+            writer.flush();
+
+            assertTrue(written.isEmpty());
+            assertEquals(3, writer.getFailedBatches());
+            assertEquals(25, writer.getSpilled());
+            assertEquals(25, Files.readAllLines(spillFile).size());
+
+            databaseDown = false;
+            writer.offer(record(25));
+            writer.flush();
+
+            assertEquals(26, written.size());
+            assertFalse(Files.exists(spillFile));
+            assertEquals(0, writer.getDropped());
+        } finally {
+            writer.stop();
+        }
+    }
+
+    @Test
+    public void testSpillFileWrittenInPartIsWrittenAgain() throws Exception {
+        ActionLogWriter writer = writer(10000, 10, 60000);
+        List<ActionLogRecord> records = new ArrayList<>();
+        StringBuilder spill = new StringBuilder();
+        for (int i = 0; i < 25; i++) {
+            records.add(record(i));
+            spill.append(ActionLogWriter.toLine(records.get(i))).append('\n');
+        }
+        Files.write(spillFile, spill.toString().getBytes("UTF-8"));
+        written.addAll(records.subList(0, 10));
+
+        writer.flush();
+
+        assertEquals(records, written);
+        assertFalse(Files.exists(spillFile));
+    }
+
+    @Test
+    public void testStopWritesTheQueue() {
+        ActionLogWriter writer = writer(10000, 500, 60000);
+        writer.start();
+        for (int i = 0; i < 100; i++) {
+            writer.offer(record(i));
+        }
+
+        writer.stop();
+
+        assertEquals(100, written.size());
+        assertFalse(writer.isRunning());
+    }
+
+    @Test
+    public void testSpillLine() {
+        ActionLogRecord rec = record(1);
+        rec.setActionResult(Result.InternalError);
+        rec.setInfo("tab\there\nnew line\r\\N back\\slash");
+        rec.setActionSubType(null);
+
+        ActionLogRecord read = ActionLogWriter.fromLine(ActionLogWriter.toLine(rec));
+
+        assertEquals(rec.getId(), read.getId());
+        assertEquals(rec.getStartTime(), read.getStartTime());
+        assertEquals(rec.getEndTime(), read.getEndTime());
+        assertEquals(rec.getActionResult(), read.getActionResult());
+        assertEquals(rec.getUserIdentifier(), read.getUserIdentifier());
+        assertEquals(rec.getActionType(), read.getActionType());
+        assertNull(read.getActionSubType());
+        assertEquals(rec.getInfo(), read.getInfo());
+        assertFalse(ActionLogWriter.toLine(rec).contains("\n"));
+    }
+
+    /**
+     * 1000 commands, logged from 4 threads: written behind, they cost the
+     * database 2 round trips instead of 1000, and the commands themselves
+     * none.
+     */
+    @Test
+    public void testRoundTripsPerThousandCommands() throws Exception {
+        ActionLogWriter writer = writer(10000, 500, 60000);
+        writer.start();
+        try {
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int first = t * 250;
+                threads.add(new Thread(() -> {
+                    for (int i = first; i < first + 250; i++) {
+                        assertTrue(writer.offer(record(i)));
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            awaitWritten(writer, 1000);
+
+            assertEquals(1000, written.size());
+            assertEquals(2, roundTrips.get());
+        } finally {
+            writer.stop();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package edu.harvard.iq.dataverse.api;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.dataaccess.DataAccessOption;
+import edu.harvard.iq.dataverse.dataaccess.FileAccessIO;
+import edu.harvard.iq.dataverse.mocks.MocksFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ByteRangeTest {
+
+    private static final String CONTENT = "0123456789abcdefghij";
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(new File("/tmp/files/range/dataset"));
+    }
+
+    @Test
+    public void testParse() {
+        assertEquals(Arrays.asList(new ByteRange(0, 499)), ByteRange.parse("bytes=0-499", 10000));
+        assertEquals(Arrays.asList(new ByteRange(9500, 9999)), ByteRange.parse("bytes=9500-", 10000));
+        assertEquals(Arrays.asList(new ByteRange(9500, 9999)), ByteRange.parse("bytes=-500", 10000));
+        // (ranges reaching past the end of the content are truncated)
+        assertEquals(Arrays.asList(new ByteRange(0, 9999)), ByteRange.parse("bytes=-20000", 10000));
+        assertEquals(Arrays.asList(new ByteRange(9000, 9999)), ByteRange.parse("bytes=9000-20000", 10000));
+        // several ranges are kept in the order requested
+        assertEquals(Arrays.asList(new ByteRange(500, 599), new ByteRange(0, 99)), ByteRange.parse("bytes= 500-599 , 0-99", 10000));
+    }
+
+    @Test
+    public void testParseMergesOverlappingRanges() {
+        assertEquals(Arrays.asList(new ByteRange(0, 199), new ByteRange(500, 599)), ByteRange.parse("bytes=500-599,100-199,0-150", 10000));
+        assertEquals(Arrays.asList(new ByteRange(0, 9999)), ByteRange.parse("bytes=0-5000,5001-", 10000));
+    }
+
+    @Test
+    public void testParseInvalid() {
+        assertNull(ByteRange.parse(null, 10000));
+        assertNull(ByteRange.parse("items=0-10", 10000));
+        assertNull(ByteRange.parse("bytes=10-5", 10000));
+        assertNull(ByteRange.parse("bytes=abc", 10000));
+        assertNull(ByteRange.parse("bytes=-", 10000));
+        assertNull(ByteRange.parse("bytes=+1-5", 10000));
+    }
+
+    @Test
+    public void testParseUnsatisfiable() {
+        assertTrue(ByteRange.parse("bytes=10000-", 10000).isEmpty());
+        assertTrue(ByteRange.parse("bytes=-0", 10000).isEmpty());
+        assertEquals(1, ByteRange.parse("bytes=20000-,0-0", 10000).size());
+    }
+
+    @Test
+    public void testEntityTagMatching() {
+        String etag = "\"abc\"";
+        assertTrue(ByteRange.matchesIfNoneMatch("\"abc\"", etag));
+        assertTrue(ByteRange.matchesIfNoneMatch("\"xyz\", W/\"abc\"", etag));
+        assertTrue(ByteRange.matchesIfNoneMatch("*", etag));
+        assertFalse(ByteRange.matchesIfNoneMatch("\"xyz\"", etag));
+        assertFalse(ByteRange.matchesIfNoneMatch(null, etag));
+
+        assertTrue(ByteRange.matchesIfRange(null, etag));
+        assertTrue(ByteRange.matchesIfRange("\"abc\"", etag));
+        assertFalse(ByteRange.matchesIfRange("W/\"abc\"", etag));
+        assertFalse(ByteRange.matchesIfRange("Wed, 21 Oct 2015 07:28:00 GMT", etag));
+        assertFalse(ByteRange.matchesIfRange("\"abc\"", null));
+    }
+
+    @Test
+    public void testSingleRangeOutput() throws IOException {
+        FileAccessIO<DataFile> storageIO = openDataFile();
+        byte[] varHeader = "a\tb\n".getBytes(StandardCharsets.UTF_8);
+        // the range spans the variable header and the stored file:
+        ByteRangeOutput output = new ByteRangeOutput(storageIO, varHeader, Arrays.asList(new ByteRange(2, 7)), 24, "text/plain");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        output.write(out);
+
+        assertFalse(output.isMultipart());
+        assertEquals("text/plain", output.getResponseContentType());
+        assertEquals(6, output.getResponseContentLength());
+        assertEquals("b\n0123", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void testMultipartOutput() throws IOException {
+        FileAccessIO<DataFile> storageIO = openDataFile();
+        List<ByteRange> ranges = ByteRange.parse("bytes=10-12,-3", CONTENT.length());
+        ByteRangeOutput output = new ByteRangeOutput(storageIO, null, ranges, CONTENT.length(), "text/plain");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        output.write(out);
+
+        assertTrue(output.isMultipart());
+        String contentType = output.getResponseContentType();
+        assertTrue(contentType.startsWith("multipart/byteranges; boundary="));
+        String boundary = contentType.substring(contentType.indexOf('=') + 1);
+        String expected = "\r\n--" + boundary + "\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "Content-Range: bytes 10-12/20\r\n"
+                + "\r\n"
+                + "abc"
+                + "\r\n--" + boundary + "\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "Content-Range: bytes 17-19/20\r\n"
+                + "\r\n"
+                + "hij"
+                + "\r\n--" + boundary + "--\r\n";
+        assertEquals(expected, out.toString("UTF-8"));
+        assertEquals(out.size(), output.getResponseContentLength());
+    }
+
+    private FileAccessIO<DataFile> openDataFile() throws IOException {
+        Dataset dataset = MocksFactory.makeDataset();
+        dataset.setAuthority("range");
+        dataset.setIdentifier("dataset");
+        DataFile dataFile = MocksFactory.makeDataFile();
+        dataFile.setOwner(dataset);
+        dataFile.setStorageIdentifier("RangeFile");
+
+        File file = new File("/tmp/files/range/dataset/RangeFile");
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+
+        FileAccessIO<DataFile> storageIO = new FileAccessIO<>(dataFile, null, "dummmy");
+        storageIO.open(DataAccessOption.READ_ACCESS);
+        storageIO.closeInputStream();
+        return storageIO;
+    }
+}
@@ -0,0 +1,104 @@
+package edu.harvard.iq.dataverse.authorization;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ApiTokenCacheTest {
+
+    private ApiTokenCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ApiTokenCache();
+        cache.setLimits(100, 1000);
+    }
+
+    @Test
+    public void testHitWithinTimeToLive() {
+        cache.put("token", 7L, null, 0);
+
+        assertEquals(Long.valueOf(7), cache.getUserId("token", 999));
+        assertEquals(1, cache.getHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void testMissAfterTimeToLive() {
+        cache.put("token", 7L, null, 0);
+
+        assertNull(cache.getUserId("token", 1000));
+        assertEquals(1, cache.getExpirations());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testMissAfterTokenExpires() {
+        cache.put("token", 7L, new Date(500), 0);
+
+        assertEquals(Long.valueOf(7), cache.getUserId("token", 499));
+        assertNull(cache.getUserId("token", 500));
+    }
+
+    @Test
+    public void testInvalidateUser() {
+        cache.put("token1", 7L, null, 0);
+        cache.put("token2", 7L, null, 0);
+        cache.put("token3", 8L, null, 0);
+
+        cache.invalidateUser(7L);
+
+        assertNull(cache.getUserId("token1", 1));
+        assertNull(cache.getUserId("token2", 1));
+        assertEquals(Long.valueOf(8), cache.getUserId("token3", 1));
+    }
+
+    @Test
+    public void testDisabled() {
+        cache.put("token", 7L, null, 0);
+
+        cache.setLimits(100, 0);
+        assertFalse(cache.isEnabled());
+        assertEquals(0, cache.size());
+
+        cache.put("token", 7L, null, 0);
+        assertNull(cache.getUserId("token", 0));
+    }
+
+    @Test
+    public void testMaxSize() {
+        cache.setLimits(2, 1000);
+        cache.put("token1", 1L, null, 0);
+        cache.put("token2", 2L, null, 0);
+        cache.put("token3", 3L, null, 0);
+
+        assertEquals(2, cache.size());
+        assertNull(cache.getUserId("token1", 1));
+    }
+
+    /**
+     * A client making 10,000 calls over 100 seconds with one token, as
+     * lookupUser() does it: with a time to live of 60 seconds, the token is
+     * only looked up in the database twice.
+     */
+    @Test
+    public void testLookupsPerRequest() {
+        cache.setLimits(100, 60 * 1000L);
+        AtomicInteger tokenLookups = new AtomicInteger();
+
+        for (int call = 0; call < 10000; call++) {
+            long now = call * 10L;
+            Long userId = cache.getUserId("token", now);
+            if (userId == null) {
+                tokenLookups.incrementAndGet();
+                cache.put("token", 7L, new Date(Long.MAX_VALUE), now);
+            }
+        }
+
+        assertEquals(2, tokenLookups.get());
+        assertEquals(9998, cache.getHits());
+        assertTrue(cache.getHitRate() > 0.999);
+    }
+}
@@ -0,0 +1,104 @@
+package edu.harvard.iq.dataverse.authorization.groups.impl.explicit;
+
+import static edu.harvard.iq.dataverse.authorization.groups.impl.explicit.ExplicitGroupGraph.groupKey;
+import static edu.harvard.iq.dataverse.authorization.groups.impl.explicit.ExplicitGroupGraph.identifierKey;
+import static edu.harvard.iq.dataverse.authorization.groups.impl.explicit.ExplicitGroupGraph.userKey;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ExplicitGroupGraphTest {
+
+    private ExplicitGroupGraph sut;
+
+    @Before
+    public void setUp() {
+        // 3 contains 2, which contains 1; 1 contains user 7 and :authenticated-users
+        sut = new ExplicitGroupGraph();
+        sut.addMember(1L, userKey(7L));
+        sut.addMember(1L, identifierKey(":authenticated-users"));
+        sut.addMember(2L, groupKey(1L));
+        sut.addMember(3L, groupKey(2L));
+        sut.addMember(4L, userKey(8L));
+    }
+
+    private static Set<Long> ids(Long... ids) {
+        return new HashSet<>(Arrays.asList(ids));
+    }
+
+    @Test
+    public void testDirectGroups() {
+        assertEquals(ids(1L), sut.findDirectGroupIds(userKey(7L)));
+        assertEquals(ids(2L), sut.findDirectGroupIds(groupKey(1L)));
+        assertEquals(ids(), sut.findDirectGroupIds(userKey(9L)));
+    }
+
+    @Test
+    public void testClosure() {
+        assertEquals(ids(1L, 2L, 3L), sut.findGroupIds(userKey(7L)));
+        assertEquals(ids(1L, 2L, 3L), sut.findGroupIds(identifierKey(":authenticated-users")));
+        assertEquals(ids(2L, 3L), sut.findGroupIds(groupKey(1L)));
+        assertEquals(ids(4L), sut.findGroupIds(userKey(8L)));
+        assertEquals(Collections.emptySet(), sut.findGroupIds(userKey(9L)));
+    }
+
+    @Test
+    public void testSetMembers() {
+        assertEquals(ids(1L, 2L, 3L), sut.findGroupIds(userKey(7L)));
+
+        // 2 no longer contains 1, but user 7 directly
+        sut.setMembers(2L, Arrays.asList(userKey(7L)));
+
+        assertEquals(ids(1L, 2L, 3L), sut.findGroupIds(userKey(7L)));
+        assertEquals(ids(), sut.findGroupIds(groupKey(1L)));
+        assertEquals(ids(1L), sut.findGroupIds(identifierKey(":authenticated-users")));
+
+        sut.setMembers(1L, Collections.emptyList());
+        assertEquals(ids(2L, 3L), sut.findGroupIds(userKey(7L)));
+    }
+
+    @Test
+    public void testRemoveGroup() {
+        sut.removeGroup(2L);
+
+        assertEquals(ids(1L), sut.findGroupIds(userKey(7L)));
+        assertEquals(ids(), sut.findDirectGroupIds(groupKey(2L)));
+        assertEquals(3, sut.getGroupCount());
+    }
+
+    @Test
+    public void testCycle() {
+        sut.addMember(1L, groupKey(3L));
+
+        assertEquals(ids(1L, 2L, 3L), sut.findGroupIds(userKey(7L)));
+        assertEquals(ids(1L, 2L, 3L), sut.findGroupIds(groupKey(3L)));
+    }
+
+    /**
+     * A user in the innermost of 1000 nested groups: the groups are walked
+     * once, and every permission check after that is a single lookup - the
+     * same set, until the memberships change.
+     */
+    @Test
+    public void testDeeplyNestedGroups() {
+        ExplicitGroupGraph graph = new ExplicitGroupGraph();
+        int depth = 1000;
+        graph.addMember(1L, userKey(7L));
+        for (long id = 2; id <= depth; id++) {
+            graph.addMember(id, groupKey(id - 1));
+        }
+
+        Set<Long> groups = graph.findGroupIds(userKey(7L));
+        assertEquals(depth, groups.size());
+        for (int check = 0; check < 100000; check++) {
+            assertSame(groups, graph.findGroupIds(userKey(7L)));
+        }
+
+        graph.setMembers(500L, Collections.emptyList());
+        assertEquals(499, graph.findGroupIds(userKey(7L)).size());
+    }
+}
@@ -0,0 +1,199 @@
+package edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress;
+
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IPv4Address;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IPv6Address;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IpAddress;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IpAddressRange;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class IpRangeIndexTest {
+
+    private static IpAddressRange range(String bottom, String top) {
+        return IpAddressRange.make(IpAddress.valueOf(bottom), IpAddress.valueOf(top));
+    }
+
+    private static Set<Long> ids(Long... ids) {
+        return new HashSet<>(Arrays.asList(ids));
+    }
+
+    @Test
+    public void testEmpty() {
+        IpRangeIndex sut = new IpRangeIndex.Builder().build();
+
+        assertEquals(Collections.emptySet(), sut.findGroupIds(IpAddress.valueOf("1.2.3.4")));
+        assertEquals(Collections.emptySet(), sut.findGroupIds(IpAddress.valueOf("11::fff")));
+    }
+
+    @Test
+    public void testIPv4Bounds() {
+        IpRangeIndex sut = new IpRangeIndex.Builder()
+                .add(range("10.0.0.10", "10.0.0.20"), 1L)
+                .build();
+
+        assertEquals(ids(), sut.findGroupIds(IpAddress.valueOf("10.0.0.9")));
+        assertEquals(ids(1L), sut.findGroupIds(IpAddress.valueOf("10.0.0.10")));
+        assertEquals(ids(1L), sut.findGroupIds(IpAddress.valueOf("10.0.0.15")));
+        assertEquals(ids(1L), sut.findGroupIds(IpAddress.valueOf("10.0.0.20")));
+        assertEquals(ids(), sut.findGroupIds(IpAddress.valueOf("10.0.0.21")));
+    }
+
+    @Test
+    public void testIPv4HighAddresses() {
+        IpRangeIndex sut = new IpRangeIndex.Builder()
+                .add(range("127.0.0.0", "200.0.0.0"), 1L)
+                .add(range("250.0.0.0", "255.255.255.255"), 2L)
+                .build();
+
+        assertEquals(ids(1L), sut.findGroupIds(IpAddress.valueOf("128.103.1.1")));
+        assertEquals(ids(), sut.findGroupIds(IpAddress.valueOf("200.0.0.1")));
+        assertEquals(ids(2L), sut.findGroupIds(IpAddress.valueOf("255.255.255.255")));
+        assertEquals(ids(), sut.findGroupIds(IpAddress.valueOf("10.0.0.1")));
+    }
+
+    @Test
+    public void testSingleAddress() {
+        IpRangeIndex sut = new IpRangeIndex.Builder()
+                .add(IpAddressRange.makeSingle(IpAddress.valueOf("1.2.3.4")), 1L)
+                .build();
+
+        assertEquals(ids(), sut.findGroupIds(IpAddress.valueOf("1.2.3.3")));
+        assertEquals(ids(1L), sut.findGroupIds(IpAddress.valueOf("1.2.3.4")));
+        assertEquals(ids(), sut.findGroupIds(IpAddress.valueOf("1.2.3.5")));
+    }
+
+    @Test
+    public void testOverlappingRanges() {
+        IpRangeIndex sut = new IpRangeIndex.Builder()
+                .add(range("10.0.0.0", "10.0.255.255"), 1L)
+                .add(range("10.0.1.0", "10.0.1.255"), 2L)
+                .add(range("10.0.1.128", "10.0.2.255"), 3L)
+                // two ranges of the same group, overlapping
+                .add(range("10.0.1.100", "10.0.1.200"), 2L)
+                .build();
+
+        assertEquals(ids(1L), sut.findGroupIds(IpAddress.valueOf("10.0.0.1")));
+        assertEquals(ids(1L, 2L), sut.findGroupIds(IpAddress.valueOf("10.0.1.1")));
+        assertEquals(ids(1L, 2L, 3L), sut.findGroupIds(IpAddress.valueOf("10.0.1.150")));
+        assertEquals(ids(1L, 2L, 3L), sut.findGroupIds(IpAddress.valueOf("10.0.1.255")));
+        assertEquals(ids(1L, 3L), sut.findGroupIds(IpAddress.valueOf("10.0.2.0")));
+        assertEquals(ids(1L), sut.findGroupIds(IpAddress.valueOf("10.0.3.0")));
+        assertEquals(ids(), sut.findGroupIds(IpAddress.valueOf("10.1.0.0")));
+    }
+
+    @Test
+    public void testIPv6() {
+        IpRangeIndex sut = new IpRangeIndex.Builder()
+                .add(range("0:0:0:0:0:0:0:0", "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff"), 1L)
+                .add(range("2001:db8:0:0:0:0:0:0", "2001:db8:0:0:ffff:ffff:ffff:ffff"), 2L)
+                .add(range("10.0.0.0", "10.0.255.255"), 3L)
+                .build();
+
+        assertEquals(ids(1L), sut.findGroupIds(IpAddress.valueOf("11::fff")));
+        assertEquals(ids(1L, 2L), sut.findGroupIds(IpAddress.valueOf("2001:db8::1")));
+        assertEquals(ids(1L, 2L), sut.findGroupIds(IpAddress.valueOf("2001:db8:0:0:ffff:ffff:ffff:ffff")));
+        assertEquals(ids(1L), sut.findGroupIds(IpAddress.valueOf("2001:db8:0:1::")));
+        assertEquals(ids(1L), sut.findGroupIds(IpAddress.valueOf("ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff")));
+        // (IPv4 and IPv6 ranges are kept apart)
+        assertEquals(ids(3L), sut.findGroupIds(IpAddress.valueOf("10.0.0.1")));
+    }
+
+    /**
+     * Addresses that differ only in their first words are told apart.
+     */
+    @Test
+    public void testIPv6FirstWords() {
+        IpRangeIndex sut = new IpRangeIndex.Builder()
+                .add(range("2001:db8::0", "2001:db8::ff"), 1L)
+                .build();
+
+        assertEquals(ids(1L), sut.findGroupIds(IpAddress.valueOf("2001:db8::1")));
+        assertEquals(ids(), sut.findGroupIds(IpAddress.valueOf("2002:db8::1")));
+        assertEquals(ids(), sut.findGroupIds(IpAddress.valueOf("fe80:db8::1")));
+        assertEquals(ids(), sut.findGroupIds(IpAddress.valueOf("2001:0:db8::1")));
+        assertEquals(ids(), sut.findGroupIds(IpAddress.valueOf("2001:db9::1")));
+        assertEquals(ids(), sut.findGroupIds(IpAddress.valueOf("2001:db8:0:0:0:1::1")));
+    }
+
+    /**
+     * Thousands of random, overlapping, ranges: the index finds the same
+     * groups as testing every range.
+     */
+    @Test
+    public void testSameAsEveryRange() {
+        Random random = new Random(42);
+        List<IpAddressRange> ranges = new ArrayList<>();
+        List<Long> owners = new ArrayList<>();
+        IpRangeIndex.Builder builder = new IpRangeIndex.Builder();
+        for (int i = 0; i < 5000; i++) {
+            IpAddressRange range;
+            if (i % 2 == 0) {
+                long bottom = random.nextInt(1 << 24) + (128L << 24);
+                long top = bottom + random.nextInt(1 << 12);
+                range = IpAddressRange.make(new IPv4Address(bottom), new IPv4Address(top));
+            } else {
+                int[] bottom = randomIPv6(random);
+                int[] top = Arrays.copyOf(bottom, 8);
+                top[7] = Math.min(0xffff, top[7] + random.nextInt(1 << 12));
+                range = IpAddressRange.make(new IPv6Address(bottom), new IPv6Address(top));
+            }
+            Long owner = (long) random.nextInt(500);
+            ranges.add(range);
+            owners.add(owner);
+            builder.add(range, owner);
+        }
+        IpRangeIndex sut = builder.build();
+        assertEquals(5000, sut.getRangeCount());
+
+        for (int i = 0; i < 20000; i++) {
+            IpAddress address;
+            if (i % 2 == 0) {
+                // (half of them near a range)
+                IpAddressRange near = ranges.get(random.nextInt(ranges.size() / 2) * 2);
+                address = i % 4 == 0
+                        ? new IPv4Address(((IPv4Address) near.getBottom()).toBigInteger().longValue() + random.nextInt(1 << 12) - 16)
+                        : new IPv4Address(random.nextInt(1 << 24) + (128L << 24));
+            } else if (i % 4 == 1) {
+                // (near a range, or in a range but for one of the first words)
+                IpAddressRange near = ranges.get(random.nextInt(ranges.size() / 2) * 2 + 1);
+                int[] words = new int[8];
+                for (int w = 0; w < 8; w++) {
+                    words[w] = ((IPv6Address) near.getBottom()).get(w);
+                }
+                words[7] = Math.min(0xffff, words[7] + random.nextInt(1 << 12));
+                if (random.nextBoolean()) {
+                    words[random.nextInt(7)] = IPV6_WORDS[random.nextInt(IPV6_WORDS.length)];
+                }
+                address = new IPv6Address(words);
+            } else {
+                address = new IPv6Address(randomIPv6(random));
+            }
+            Set<Long> expected = new HashSet<>();
+            for (int r = 0; r < ranges.size(); r++) {
+                if (Boolean.TRUE.equals(ranges.get(r).contains(address))) {
+                    expected.add(owners.get(r));
+                }
+            }
+            assertEquals("groups of " + address, expected, sut.findGroupIds(address));
+        }
+    }
+
+    private static int[] randomIPv6(Random random) {
+        // (every word random, but from few values, so that the ranges overlap)
+        int[] words = new int[8];
+        for (int i = 0; i < 7; i++) {
+            words[i] = IPV6_WORDS[random.nextInt(IPV6_WORDS.length)];
+        }
+        words[7] = random.nextInt(1 << 16);
+        return words;
+    }
+
+    private static final int[] IPV6_WORDS = {0, 0xdb8, 0x2001, 0xfe80};
+}
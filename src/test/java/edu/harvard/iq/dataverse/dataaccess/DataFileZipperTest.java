@@ -0,0 +1,156 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.mocks.MocksFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DataFileZipperTest {
+
+    private static final String DRIVER_ID = "ziptest";
+    private static final File FILES_DIRECTORY = new File("/tmp/files-ziptest");
+
+    private Dataset dataset;
+    private final Map<String, byte[]> contents = new LinkedHashMap<>();
+
+    @Before
+    public void setUp() {
+        System.setProperty("dataverse.files." + DRIVER_ID + ".type", "file");
+        System.setProperty("dataverse.files." + DRIVER_ID + ".directory", FILES_DIRECTORY.getAbsolutePath());
+        dataset = MocksFactory.makeDataset();
+        dataset.setAuthority("zip");
+        dataset.setIdentifier("dataset");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        System.clearProperty("dataverse.files." + DRIVER_ID + ".type");
+        System.clearProperty("dataverse.files." + DRIVER_ID + ".directory");
+        FileUtils.deleteDirectory(FILES_DIRECTORY);
+    }
+
+    @Test
+    public void testIsCompressedMimeType() {
+        assertTrue(DataFileZipper.isCompressedMimeType("application/zip"));
+        assertTrue(DataFileZipper.isCompressedMimeType("image/jpeg"));
+        assertTrue(DataFileZipper.isCompressedMimeType("video/mp4"));
+        assertTrue(DataFileZipper.isCompressedMimeType("Application/GZIP; charset=binary"));
+        assertFalse(DataFileZipper.isCompressedMimeType("text/plain"));
+        assertFalse(DataFileZipper.isCompressedMimeType("text/tab-separated-values"));
+        assertFalse(DataFileZipper.isCompressedMimeType(null));
+    }
+
+    @Test
+    public void testPrefetchingZipper() throws IOException {
+        assertZippedFiles(makeFiles(), 4);
+    }
+
+    @Test
+    public void testSequentialZipper() throws IOException {
+        assertZippedFiles(makeFiles(), 1);
+    }
+
+    private List<DataFile> makeFiles() throws IOException {
+        Random random = new Random(42);
+        List<DataFile> dataFiles = new ArrayList<>();
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append("line ").append(i % 100).append("\n");
+        }
+        dataFiles.add(makeFile("text.txt", "text/plain", null, text.toString().getBytes(StandardCharsets.UTF_8)));
+
+        byte[] smallImage = new byte[5000];
+        random.nextBytes(smallImage);
+        dataFiles.add(makeFile("small.png", "image/png", "images", smallImage));
+
+        // larger than the prefetch buffer:
+        byte[] largeArchive = new byte[DataFileZipper.PREFETCH_BUFFER_SIZE + 12345];
+        random.nextBytes(largeArchive);
+        dataFiles.add(makeFile("large.zip", "application/zip", "images", largeArchive));
+
+        for (int i = 0; i < 6; i++) {
+            dataFiles.add(makeFile("file" + i + ".txt", "text/plain", null, ("file " + i).getBytes(StandardCharsets.UTF_8)));
+        }
+        // a duplicate name:
+        dataFiles.add(makeFile("text.txt", "text/plain", null, "another text".getBytes(StandardCharsets.UTF_8)));
+        return dataFiles;
+    }
+
+    private DataFile makeFile(String label, String contentType, String folder, byte[] content) throws IOException {
+        DataFile dataFile = MocksFactory.makeDataFile();
+        dataFile.setOwner(dataset);
+        dataFile.setContentType(contentType);
+        dataFile.setStorageIdentifier(DRIVER_ID + "://" + dataFile.getId());
+        dataFile.getFileMetadata().setLabel(label);
+        dataFile.getFileMetadata().setDirectoryLabel(folder);
+
+        File file = new File(FILES_DIRECTORY, "zip/dataset/" + dataFile.getId());
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content);
+
+        String entryName = (folder == null ? "" : folder + "/") + label;
+        if (contents.containsKey(entryName)) {
+            entryName = entryName.replace(".txt", "_1.txt");
+        }
+        contents.put(entryName, content);
+        return dataFile;
+    }
+
+    private void assertZippedFiles(List<DataFile> dataFiles, int prefetchThreads) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataFileZipper zipper = new DataFileZipper(out);
+        zipper.setPrefetchThreads(prefetchThreads);
+        long byteSize = zipper.addFilesToZipStream(dataFiles, false);
+        zipper.finalizeZipStream();
+
+        long expectedSize = 0;
+        for (byte[] content : contents.values()) {
+            expectedSize += content.length;
+        }
+        assertEquals(expectedSize, byteSize);
+        assertEquals(expectedSize, zipper.getBytesZipped());
+
+        List<String> entryNames = new ArrayList<>();
+        try (ZipInputStream zipIn = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zipIn.getNextEntry()) != null) {
+                byte[] content = zipIn.readAllBytes();
+                if (entry.isDirectory()) {
+                    assertEquals("images/", entry.getName());
+                    continue;
+                }
+                entryNames.add(entry.getName());
+                if (entry.getName().equals("MANIFEST.TXT")) {
+                    continue;
+                }
+                assertArrayEquals(entry.getName(), contents.get(entry.getName()), content);
+                if (entry.getName().equals("images/small.png")) {
+                    assertEquals(ZipEntry.STORED, entry.getMethod());
+                } else {
+                    assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+                }
+            }
+        }
+        List<String> expectedNames = new ArrayList<>(contents.keySet());
+        expectedNames.add("MANIFEST.TXT");
+        assertEquals(expectedNames, entryNames);
+    }
+}
@@ -100,6 +100,29 @@ public class FileAccessIOTest {
         assertEquals(false, dataFileAccess.canWrite());
     }
 
+    /**
+     * Test of getRangeInputStream method, of class FileAccessIO.
+     *
+     * @throws java.io.IOException if test is broken
+     */
+    @Test
+    public void testGetRangeInputStream() throws IOException {
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter("/tmp/files/tmp/dataset/DataFile"))) {
+            bw.write("This is a test string");
+        }
+        assertEquals(false, dataFileAccess.isRangeReadSupported());
+        dataFileAccess.open(DataAccessOption.READ_ACCESS);
+        assertEquals(true, dataFileAccess.isRangeReadSupported());
+        try (InputStream in = dataFileAccess.getRangeInputStream(10, 4)) {
+            assertEquals("test", new String(in.readAllBytes()));
+        }
+        // (past the end of the file, the stream is simply shorter)
+        try (InputStream in = dataFileAccess.getRangeInputStream(15, 100)) {
+            assertEquals("string", new String(in.readAllBytes()));
+        }
+        dataFileAccess.closeInputStream();
+    }
+
     /**
      * Test of savePath method, of class FileAccessIO.
      *
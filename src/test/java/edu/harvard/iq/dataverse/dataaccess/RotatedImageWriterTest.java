@@ -0,0 +1,71 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RotatedImageWriterTest {
+
+    private File tabFile;
+    private File rotatedImageFile;
+    private List<String> lines;
+
+    @Before
+    public void setUp() throws IOException {
+        tabFile = File.createTempFile("rotated", ".tab");
+        rotatedImageFile = new File(tabFile.getAbsolutePath() + ".90d");
+        lines = new ArrayList<>();
+        StringBuilder longToken = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            longToken.append((char) ('a' + i % 26));
+        }
+        for (int i = 0; i < 1000; i++) {
+            // (a few tokens longer than the column buffer, to make sure
+            // they are spilled into the temp files correctly)
+            String text = i % 100 == 7 ? longToken.toString() : "\"value " + i + "\"";
+            lines.add(i + "\t" + (i * 0.5) + "\t" + text + "\t");
+        }
+        Files.write(tabFile.toPath(), (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    @After
+    public void tearDown() {
+        tabFile.delete();
+        rotatedImageFile.delete();
+    }
+
+    @Test
+    public void testImageMatchesTheOneGeneratedFromTheTabFile() throws IOException {
+        RotatedImageWriter imageWriter = new RotatedImageWriter(rotatedImageFile);
+        for (String line : lines) {
+            imageWriter.addRow(line.split("\t", -1));
+        }
+        assertEquals(4, imageWriter.getVarCount());
+        assertEquals(lines.size(), imageWriter.getCaseCount());
+        byte[] written = Files.readAllBytes(imageWriter.finish().toPath());
+        rotatedImageFile.delete();
+
+        byte[] generated = Files.readAllBytes(new TabularSubsetGenerator().getRotatedImage(tabFile, 4, lines.size()).toPath());
+        assertArrayEquals(generated, written);
+    }
+
+    @Test
+    public void testInconsistentRowIsRejected() throws IOException {
+        RotatedImageWriter imageWriter = new RotatedImageWriter(rotatedImageFile);
+        imageWriter.addRow(new String[]{"1", "2"});
+        try {
+            imageWriter.addRow(new String[]{"1", "2", "3"});
+            fail("a row with an extra token should be rejected");
+        } catch (IOException expected) {
+        }
+        imageWriter.abort();
+        assertFalse(rotatedImageFile.exists());
+    }
+}
@@ -5,6 +5,9 @@
 package edu.harvard.iq.dataverse.dataaccess;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
 import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.api.UtilIT;
@@ -13,6 +16,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import static org.junit.jupiter.api.Assertions.*;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
@@ -20,8 +24,10 @@ import org.mockito.quality.Strictness;
 import static org.mockito.Mockito.*;
 import static org.mockito.BDDMockito.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 
 @ExtendWith(MockitoExtension.class)
 @MockitoSettings(strictness = Strictness.STRICT_STUBS)
@@ -120,4 +126,34 @@ public class S3AccessIOTest {
         assertEquals(60, dataFileAccess.getUrlExpirationMinutes());
     }
     
+    @Test
+    void rangedGet_getRangeInputStream() throws IOException {
+        // given
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(100);
+        given(s3client.getObjectMetadata(any(), any())).willReturn(metadata);
+        S3Object s3object = new S3Object();
+        s3object.setObjectContent(new ByteArrayInputStream("56789".getBytes()));
+        given(s3client.getObject(any(GetObjectRequest.class))).willReturn(s3object);
+        dataFileAccess.open(DataAccessOption.READ_ACCESS);
+        
+        // when
+        InputStream in = dataFileAccess.getRangeInputStream(5, 5);
+        
+        // then
+        assertTrue(dataFileAccess.isRangeReadSupported());
+        assertEquals("56789", new String(in.readAllBytes()));
+        ArgumentCaptor<GetObjectRequest> request = ArgumentCaptor.forClass(GetObjectRequest.class);
+        verify(s3client).getObject(request.capture());
+        assertArrayEquals(new long[]{5, 9}, request.getValue().getRange());
+        assertEquals(dataFileAccess.getMainFileKey(), request.getValue().getKey());
+    }
+    
+    @Test
+    void notOpen_getRangeInputStream() {
+        // when & then
+        assertFalse(dataFileAccess.isRangeReadSupported());
+        assertThrows(UnsupportedDataAccessOperationException.class, () -> {dataFileAccess.getRangeInputStream(0, 1); });
+    }
+    
 }
@@ -0,0 +1,271 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class S3StreamUploaderTest {
+
+    private static final int PART_SIZE = 1024;
+
+    private InMemoryS3 s3;
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() {
+        s3 = new InMemoryS3();
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private S3StreamUploader uploader(int partsInFlight) {
+        return new S3StreamUploader(s3, "bucket", "key", PART_SIZE, partsInFlight, executor);
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    void shortStreamIsSavedWithOnePut() throws Exception {
+        byte[] data = randomBytes(PART_SIZE - 1);
+
+        assertEquals(data.length, uploader(4).upload(new ByteArrayInputStream(data)));
+
+        assertArrayEquals(data, s3.objects.get("key"));
+        assertEquals(0, s3.multipartUploads.get());
+    }
+
+    @Test
+    void emptyStream() throws Exception {
+        assertEquals(0, uploader(4).upload(new ByteArrayInputStream(new byte[0])));
+
+        assertArrayEquals(new byte[0], s3.objects.get("key"));
+    }
+
+    @Test
+    void longStreamIsSavedInParts() throws Exception {
+        byte[] data = randomBytes(PART_SIZE * 7 + PART_SIZE / 2);
+
+        assertEquals(data.length, uploader(3).upload(new ByteArrayInputStream(data)));
+
+        assertArrayEquals(data, s3.objects.get("key"));
+        assertEquals(1, s3.multipartUploads.get());
+        assertEquals(8, s3.partsUploaded.get());
+    }
+
+    @Test
+    void streamOfWholeParts() throws Exception {
+        byte[] data = randomBytes(PART_SIZE * 3);
+
+        assertEquals(data.length, uploader(2).upload(new ByteArrayInputStream(data)));
+
+        assertArrayEquals(data, s3.objects.get("key"));
+        assertEquals(3, s3.partsUploaded.get());
+    }
+
+    /**
+     * With parts larger than the buffer a stream is first read into, the
+     * buffer grows until the stream ends or it holds a whole part.
+     */
+    @Test
+    void bufferGrowsToAPart() throws Exception {
+        int partSize = S3StreamUploader.INITIAL_BUFFER_SIZE * 4;
+        int[] lengths = {S3StreamUploader.INITIAL_BUFFER_SIZE, S3StreamUploader.INITIAL_BUFFER_SIZE * 3 + 5, partSize, partSize + 1};
+        int[] partsUploaded = {0, 0, 1, 3};
+        for (int i = 0; i < lengths.length; i++) {
+            byte[] data = randomBytes(lengths[i]);
+
+            assertEquals(data.length, new S3StreamUploader(s3, "bucket", "key", partSize, 2, executor).upload(new ByteArrayInputStream(data)));
+
+            assertArrayEquals(data, s3.objects.get("key"));
+            assertEquals(partsUploaded[i], s3.partsUploaded.get());
+        }
+    }
+
+    /**
+     * The parts are uploaded in parallel, but never more of them at once
+     * than there are buffers.
+     */
+    @Test
+    void partsInFlightAreBounded() throws Exception {
+        s3.partDelayMillis = 20;
+        byte[] data = randomBytes(PART_SIZE * 20);
+
+        uploader(3).upload(new ByteArrayInputStream(data));
+
+        assertArrayEquals(data, s3.objects.get("key"));
+        assertTrue(s3.maxConcurrentParts.get() > 1, "parts were not uploaded in parallel");
+        assertTrue(s3.maxConcurrentParts.get() <= 3, "more parts in flight than buffers: " + s3.maxConcurrentParts.get());
+    }
+
+    @Test
+    void failedPartAbortsTheUpload() {
+        s3.failPart = 4;
+        byte[] data = randomBytes(PART_SIZE * 10);
+
+        assertThrows(IOException.class, () -> uploader(2).upload(new ByteArrayInputStream(data)));
+
+        assertNull(s3.objects.get("key"));
+        assertEquals(1, s3.aborted.get());
+    }
+
+    @Test
+    void failedReadAbortsTheUpload() {
+        byte[] data = randomBytes(PART_SIZE * 10);
+        InputStream failing = new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                if (pos >= PART_SIZE * 5) {
+                    throw new IllegalStateException("broken stream");
+                }
+                return super.read(b, off, len);
+            }
+        };
+
+        assertThrows(IOException.class, () -> uploader(2).upload(failing));
+
+        assertNull(s3.objects.get("key"));
+        assertEquals(1, s3.aborted.get());
+    }
+
+    /**
+     * A local stand-in for an S3 bucket, supporting single and multipart
+     * uploads, checking the MD5 of what is sent as S3 does.
+     */
+    static class InMemoryS3 extends AbstractAmazonS3 {
+
+        final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+        final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+        final AtomicInteger multipartUploads = new AtomicInteger();
+        final AtomicInteger partsUploaded = new AtomicInteger();
+        final AtomicInteger aborted = new AtomicInteger();
+        final AtomicInteger concurrentParts = new AtomicInteger();
+        final AtomicInteger maxConcurrentParts = new AtomicInteger();
+        volatile int partDelayMillis = 0;
+        volatile int failPart = -1;
+
+        @Override
+        public PutObjectResult putObject(PutObjectRequest request) {
+            byte[] content = read(request.getInputStream());
+            checkMd5(content, request.getMetadata().getContentMD5());
+            objects.put(request.getKey(), content);
+            return new PutObjectResult();
+        }
+
+        @Override
+        public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+            String uploadId = "upload-" + multipartUploads.incrementAndGet();
+            uploads.put(uploadId, new ConcurrentHashMap<>());
+            InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+            result.setUploadId(uploadId);
+            return result;
+        }
+
+        @Override
+        public UploadPartResult uploadPart(UploadPartRequest request) {
+            maxConcurrentParts.accumulateAndGet(concurrentParts.incrementAndGet(), Math::max);
+            try {
+                if (request.getPartNumber() == failPart) {
+                    throw new AmazonServiceException("part " + failPart + " failed");
+                }
+                if (partDelayMillis > 0) {
+                    try {
+                        Thread.sleep(partDelayMillis);
+                    } catch (InterruptedException e) {
+                        throw new SdkClientException(e);
+                    }
+                }
+                byte[] content = read(request.getInputStream());
+                assertEquals(request.getPartSize(), content.length);
+                checkMd5(content, request.getMd5Digest());
+                uploads.get(request.getUploadId()).put(request.getPartNumber(), content);
+                partsUploaded.incrementAndGet();
+                UploadPartResult result = new UploadPartResult();
+                result.setPartNumber(request.getPartNumber());
+                result.setETag("etag-" + request.getPartNumber());
+                return result;
+            } finally {
+                concurrentParts.decrementAndGet();
+            }
+        }
+
+        @Override
+        public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+            Map<Integer, byte[]> parts = new TreeMap<>(uploads.remove(request.getUploadId()));
+            assertEquals(parts.size(), request.getPartETags().size());
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            for (PartETag partETag : request.getPartETags()) {
+                assertEquals("etag-" + partETag.getPartNumber(), partETag.getETag());
+                byte[] part = parts.get(partETag.getPartNumber());
+                content.write(part, 0, part.length);
+            }
+            objects.put(request.getKey(), content.toByteArray());
+            return new CompleteMultipartUploadResult();
+        }
+
+        @Override
+        public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+            uploads.remove(request.getUploadId());
+            aborted.incrementAndGet();
+        }
+
+        private static byte[] read(InputStream inputStream) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[256];
+            int read;
+            try {
+                while ((read = inputStream.read(buffer)) != -1) {
+                    content.write(buffer, 0, read);
+                }
+            } catch (IOException e) {
+                throw new SdkClientException(e);
+            }
+            return content.toByteArray();
+        }
+
+        private static void checkMd5(byte[] content, String md5Base64) {
+            try {
+                String actual = Base64.getEncoder().encodeToString(MessageDigest.getInstance("MD5").digest(content));
+                if (!actual.equals(md5Base64)) {
+                    throw new AmazonServiceException("Content-MD5 does not match");
+                }
+            } catch (java.security.NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.BitSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TabularColumnarImageTest {
+
+    private static final int[] COLUMN_TYPES = {
+        TabularColumnarImage.COLUMN_TYPE_LONG,
+        TabularColumnarImage.COLUMN_TYPE_DOUBLE,
+        TabularColumnarImage.COLUMN_TYPE_FLOAT,
+        TabularColumnarImage.COLUMN_TYPE_STRING,
+        TabularColumnarImage.COLUMN_TYPE_STRING
+    };
+
+    private static final String[] LINES = {
+        "1\t1.5\t0.25\t\"a\"\t\"first\"",
+        "2\tinf\t-inf\t\"b\"\t\"tab\\there\"",
+        "\tNaN\t\t\"a\"\t\"quote \\\"q\\\"\"",
+        "x\t\t3\t\t\"\"",
+        "-7\t-2.0E10\t1e-3\t\"b\"\t\"last\""
+    };
+
+    private File tabFile;
+    private File imageFile;
+
+    @Before
+    public void setUp() throws IOException {
+        tabFile = File.createTempFile("columnar", ".tab");
+        Files.write(tabFile.toPath(), (String.join("\n", LINES) + "\n").getBytes(StandardCharsets.UTF_8));
+        imageFile = TabularColumnarImage.getImageFile(tabFile);
+        TabularColumnarImage.generate(tabFile, LINES.length, COLUMN_TYPES, imageFile);
+    }
+
+    @After
+    public void tearDown() {
+        tabFile.delete();
+        imageFile.delete();
+    }
+
+    @Test
+    public void testRotatedImageIsRemoved() {
+        assertTrue(imageFile.exists());
+        assertFalse(new File(tabFile.getAbsolutePath() + ".90d").exists());
+    }
+
+    @Test
+    public void testVectorsMatchTheTabFile() throws IOException {
+        try (TabularColumnarImage image = TabularColumnarImage.open(imageFile.toPath())) {
+            assertEquals(5, image.getVarCount());
+            assertEquals(LINES.length, image.getCaseCount());
+            for (int column = 0; column < COLUMN_TYPES.length; column++) {
+                assertArrayEquals(TabularSubsetGenerator.subsetLongVector(new FileInputStream(tabFile), column, LINES.length), image.getLongVector(column));
+                assertArrayEquals(TabularSubsetGenerator.subsetDoubleVector(new FileInputStream(tabFile), column, LINES.length), image.getDoubleVector(column));
+                assertArrayEquals(TabularSubsetGenerator.subsetFloatVector(new FileInputStream(tabFile), column, LINES.length), image.getFloatVector(column));
+                assertArrayEquals(TabularSubsetGenerator.subsetStringVector(new FileInputStream(tabFile), column, LINES.length), image.getStringVector(column));
+            }
+        }
+    }
+
+    @Test
+    public void testPrimitiveValuesMatchTheTabFile() throws IOException {
+        try (TabularColumnarImage image = TabularColumnarImage.open(imageFile.toPath())) {
+            for (int column = 0; column < 3; column++) {
+                Double[] doubles = TabularSubsetGenerator.subsetDoubleVector(new FileInputStream(tabFile), column, LINES.length);
+                BitSet missing = new BitSet();
+                double[] values = image.getDoubleValues(column, missing);
+                BitSet subsetMissing = new BitSet();
+                double[] subsetValues = TabularSubsetGenerator.subsetDoubleVector(new FileInputStream(tabFile), column, LINES.length, subsetMissing);
+                assertArrayEquals(values, subsetValues, 0.0);
+                assertEquals(missing, subsetMissing);
+                for (int i = 0; i < LINES.length; i++) {
+                    assertEquals(doubles[i] == null, missing.get(i));
+                    if (doubles[i] != null) {
+                        assertEquals(doubles[i], values[i], 0.0);
+                    }
+                }
+
+                Long[] longs = TabularSubsetGenerator.subsetLongVector(new FileInputStream(tabFile), column, LINES.length);
+                missing = new BitSet();
+                long[] longValues = image.getLongValues(column, missing);
+                for (int i = 0; i < LINES.length; i++) {
+                    assertEquals(longs[i] == null, missing.get(i));
+                    assertEquals(longs[i] == null ? 0L : longs[i], longValues[i]);
+                }
+
+                Float[] floats = TabularSubsetGenerator.subsetFloatVector(new FileInputStream(tabFile), column, LINES.length);
+                missing = new BitSet();
+                float[] floatValues = image.getFloatValues(column, missing);
+                for (int i = 0; i < LINES.length; i++) {
+                    assertEquals(floats[i] == null, missing.get(i));
+                    assertEquals(floats[i] == null ? 0.0f : floats[i], floatValues[i], 0.0f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testColumns() throws IOException {
+        try (TabularColumnarImage image = TabularColumnarImage.open(imageFile.toPath())) {
+            TabularColumnarImage.Column longs = image.getColumn(0);
+            assertEquals(TabularColumnarImage.COLUMN_TYPE_LONG, longs.getType());
+            assertEquals(-7L, longs.getLong(4));
+            assertTrue(longs.isMissing(2));
+            assertTrue(longs.isMissing(3));
+            assertEquals("x", longs.getToken(3));
+
+            TabularColumnarImage.Column doubles = image.getColumn(1);
+            assertEquals(Double.POSITIVE_INFINITY, doubles.getDouble(1), 0.0);
+            assertTrue(Double.isNaN(doubles.getDouble(2)));
+            assertFalse(doubles.isMissing(2));
+            assertTrue(doubles.isMissing(3));
+
+            TabularColumnarImage.Column strings = image.getColumn(4);
+            assertEquals("\"tab\\there\"", strings.getToken(1));
+            assertEquals(0, image.getColumn(3).getTokenLength(3));
+        }
+    }
+
+    @Test
+    public void testDictionaryEncoding() throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            lines.append(i % 3).append("\t\"value ").append(i).append("\"\n");
+        }
+        Files.write(tabFile.toPath(), lines.toString().getBytes(StandardCharsets.UTF_8));
+        TabularColumnarImage.generate(tabFile, 100, new int[]{TabularColumnarImage.COLUMN_TYPE_LONG, TabularColumnarImage.COLUMN_TYPE_STRING}, imageFile);
+
+        try (TabularColumnarImage image = TabularColumnarImage.open(imageFile.toPath())) {
+            // few distinct values: stored as a dictionary
+            TabularColumnarImage.Column codes = image.getColumn(0);
+            assertTrue(codes.isDictionaryEncoded());
+            assertEquals("2", codes.getToken(98));
+            assertEquals(2L, codes.getLong(98));
+            // all values distinct: stored as they are
+            TabularColumnarImage.Column strings = image.getColumn(1);
+            assertFalse(strings.isDictionaryEncoded());
+            assertEquals("\"value 42\"", strings.getToken(42));
+            assertArrayEquals(TabularSubsetGenerator.subsetStringVector(new FileInputStream(tabFile), 0, 100), image.getStringVector(0));
+        }
+    }
+
+    @Test
+    public void testMismatchedRotatedImageIsRegenerated() throws IOException {
+        // a rotated image missing the last row, as if the ingest plugin had
+        // written it out of step with the tab file:
+        File rotatedImageFile = new File(tabFile.getAbsolutePath() + ".90d");
+        RotatedImageWriter imageWriter = new RotatedImageWriter(rotatedImageFile);
+        for (int i = 0; i < LINES.length - 1; i++) {
+            imageWriter.addRow(LINES[i].split("\t", -1));
+        }
+        imageWriter.finish();
+
+        TabularColumnarImage.generate(tabFile, LINES.length, COLUMN_TYPES, imageFile);
+        assertFalse(rotatedImageFile.exists());
+        try (TabularColumnarImage image = TabularColumnarImage.open(imageFile.toPath())) {
+            assertArrayEquals(TabularSubsetGenerator.subsetStringVector(new FileInputStream(tabFile), 4, LINES.length), image.getStringVector(4));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testStringColumnHasNoValues() throws IOException {
+        try (TabularColumnarImage image = TabularColumnarImage.open(imageFile.toPath())) {
+            image.getColumn(3).isMissing(0);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenRejectsOtherFiles() throws IOException {
+        TabularColumnarImage.open(tabFile.toPath());
+    }
+}
@@ -0,0 +1,197 @@
+package edu.harvard.iq.dataverse.harvest.client;
+
+import com.lyncode.xoai.model.oaipmh.Header;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Runs the harvest pipeline against a local mock OAI server, serially and
+ * with several fetcher threads, and checks that the records are processed
+ * in the same order and with the same content either way.
+ */
+public class HarvestPipelineTest {
+
+    private static final int RECORD_COUNT = 50;
+
+    private HttpServer oaiServer;
+    private ExecutorService oaiServerExecutor;
+    private String baseUrl;
+
+    @Before
+    public void startMockOaiServer() throws IOException {
+        oaiServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        oaiServer.createContext("/oai", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            String identifier = query.replaceAll(".*identifier=([^&]*).*", "$1");
+            try {
+                // random latency, so that the fetches complete out of order:
+                Thread.sleep(ThreadLocalRandom.current().nextInt(20));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            if (identifier.endsWith("7")) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            byte[] body = getRecordResponse(identifier).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/xml");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        oaiServerExecutor = Executors.newFixedThreadPool(8);
+        oaiServer.setExecutor(oaiServerExecutor);
+        oaiServer.start();
+        baseUrl = "http://127.0.0.1:" + oaiServer.getAddress().getPort() + "/oai";
+    }
+
+    @After
+    public void stopMockOaiServer() {
+        oaiServer.stop(0);
+        oaiServerExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testPipelinedHarvestMatchesSerialHarvest() throws Exception {
+        HarvestPipeline<FastGetRecord> serial = new HarvestPipeline<>(1, this::getRecord);
+        List<String> serialResults = harvest(serial);
+
+        HarvestPipeline<FastGetRecord> pipelined = new HarvestPipeline<>(6, 8, this::getRecord);
+        List<String> pipelinedResults = harvest(pipelined);
+
+        assertEquals(RECORD_COUNT, serialResults.size());
+        assertEquals(serialResults, pipelinedResults);
+
+        assertEquals(RECORD_COUNT, pipelined.getIdentifiersListed());
+        assertEquals(RECORD_COUNT, pipelined.getRecordsFetched());
+        assertEquals(RECORD_COUNT, pipelined.getRecordsProcessed());
+        assertEquals(6, pipelined.getFetchThreads());
+    }
+
+    @Test
+    public void testFetchExceptionIsHandedToProcessor() {
+        HarvestPipeline<String> pipeline = new HarvestPipeline<>(3, identifier -> {
+            if (identifier.equals("id2")) {
+                throw new IOException("boom");
+            }
+            return identifier.toUpperCase();
+        });
+        List<String> results = new ArrayList<>();
+        pipeline.run(headers(4).iterator(), (header, record, fetchError) -> {
+            results.add(fetchError != null ? "error:" + fetchError.getMessage() : record);
+        });
+        assertEquals("[ID0, ID1, error:boom, ID3]", results.toString());
+    }
+
+    /**
+     * When the processor throws, every record fetched is either processed or
+     * discarded - once - including those fetched after the abort.
+     */
+    @Test
+    public void testAbortDiscardsTheRecordsNotProcessed() throws Exception {
+        Set<String> fetched = ConcurrentHashMap.newKeySet();
+        Set<String> discarded = ConcurrentHashMap.newKeySet();
+        List<String> processed = new ArrayList<>();
+        HarvestPipeline<String> pipeline = new HarvestPipeline<>(4, 8, identifier -> {
+            Thread.sleep(ThreadLocalRandom.current().nextInt(5));
+            fetched.add(identifier);
+            return identifier;
+        }, record -> assertTrue("discarded twice: " + record, discarded.add(record)));
+
+        try {
+            pipeline.run(headers(RECORD_COUNT).iterator(), (header, record, fetchError) -> {
+                processed.add(record);
+                if (record.equals("id10")) {
+                    // (with the next record fetched, waiting to be processed)
+                    long deadline = System.currentTimeMillis() + 5000;
+                    while (!fetched.contains("id11") && System.currentTimeMillis() < deadline) {
+                        Thread.yield();
+                    }
+                    throw new IllegalStateException("import failed");
+                }
+            });
+            fail("the run should have been aborted");
+        } catch (IllegalStateException expected) {
+        }
+
+        // (the fetches under way at the abort discard their records as they end)
+        long deadline = System.currentTimeMillis() + 5000;
+        while (processed.size() + discarded.size() < fetched.size() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(11, processed.size());
+        assertFalse(discarded.isEmpty());
+        Set<String> handled = new HashSet<>(processed);
+        handled.addAll(discarded);
+        assertEquals(fetched, handled);
+        assertEquals(processed.size() + discarded.size(), handled.size());
+    }
+
+    private FastGetRecord getRecord(String identifier) throws Exception {
+        return new FastGetRecord(baseUrl, identifier, "oai_dc");
+    }
+
+    private List<String> harvest(HarvestPipeline<FastGetRecord> pipeline) {
+        List<String> results = new ArrayList<>();
+        pipeline.run(headers(RECORD_COUNT).iterator(), (header, record, fetchError) -> {
+            assertNull(fetchError);
+            String result = header.getIdentifier() + ":";
+            if (record.getErrorMessage() != null) {
+                result += "failed";
+            } else {
+                try {
+                    result += new String(Files.readAllBytes(record.getMetadataFile().toPath()), StandardCharsets.UTF_8).trim();
+                } catch (IOException ioe) {
+                    fail(ioe.getMessage());
+                }
+            }
+            if (record.getMetadataFile() != null) {
+                record.getMetadataFile().delete();
+            }
+            results.add(result);
+        });
+        return results;
+    }
+
+    private static List<Header> headers(int count) {
+        List<Header> headers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            headers.add(new Header().withIdentifier("id" + i).withDatestamp(new Date()));
+        }
+        return headers;
+    }
+
+    private static String getRecordResponse(String identifier) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<OAI-PMH xmlns=\"http://www.openarchives.org/OAI/2.0/\">\n"
+                + "<responseDate>2021-06-01T00:00:00Z</responseDate>\n"
+                + "<request verb=\"GetRecord\">http://localhost/oai</request>\n"
+                + "<GetRecord><record><header><identifier>" + identifier + "</identifier>"
+                + "<datestamp>2021-06-01T00:00:00Z</datestamp></header>\n"
+                + "<metadata>\n"
+                + "<oai_dc:dc xmlns:oai_dc=\"http://www.openarchives.org/OAI/2.0/oai_dc/\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\">\n"
+                + "<dc:title>Title of " + identifier + "</dc:title>\n"
+                + "</oai_dc:dc>\n"
+                + "</metadata>\n"
+                + "</record></GetRecord></OAI-PMH>\n";
+    }
+}
@@ -0,0 +1,107 @@
+package edu.harvard.iq.dataverse.harvest.server;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OAIRecordServiceBeanTest {
+
+    private OAIRecordServiceBean recordService;
+    private TypedQuery<OAIRecord> query;
+    private final ArgumentCaptor<String> queryString = ArgumentCaptor.forClass(String.class);
+
+    @Before
+    public void setUp() {
+        recordService = new OAIRecordServiceBean();
+        recordService.em = mock(EntityManager.class);
+        query = mock(TypedQuery.class);
+        when(recordService.em.createQuery(queryString.capture(), eq(OAIRecord.class))).thenReturn(query);
+    }
+
+    @Test
+    public void testFirstPage() {
+        List<OAIRecord> page = Arrays.asList(new OAIRecord("set", "doi:10.5072/FK2/A", new Date()));
+        when(query.getResultList()).thenReturn(page);
+
+        assertSame(page, recordService.findOaiRecordsPageBySetName("set", null, null, null, 0, 3));
+
+        assertFalse(queryString.getValue().contains(":afterGlobalId"));
+        assertTrue(queryString.getValue().endsWith(" order by h.globalId"));
+        verify(query).setParameter("setName", "set");
+        verify(query, never()).setFirstResult(anyInt());
+        verify(query).setMaxResults(3);
+    }
+
+    /**
+     * A page resumed from a cursor starts past its global id, whatever the
+     * offset; the records before it are never read.
+     */
+    @Test
+    public void testPageAfterCursor() {
+        recordService.findOaiRecordsPageBySetName("set", null, null, "doi:10.5072/FK2/B", 2, 3);
+
+        assertTrue(queryString.getValue().contains(" and h.globalId > :afterGlobalId"));
+        verify(query).setParameter("afterGlobalId", "doi:10.5072/FK2/B");
+        verify(query, never()).setFirstResult(anyInt());
+        verify(query).setMaxResults(3);
+    }
+
+    /**
+     * Without a cursor (evicted, or issued by another server) the page is
+     * found by its offset.
+     */
+    @Test
+    public void testPageWithoutCursor() {
+        recordService.findOaiRecordsPageBySetName("set", null, null, null, 2, 3);
+
+        assertFalse(queryString.getValue().contains(":afterGlobalId"));
+        verify(query).setFirstResult(2);
+        verify(query).setMaxResults(3);
+    }
+
+    @Test
+    public void testExtraSetsOfThePage() {
+        List<String> globalIds = Arrays.asList("doi:10.5072/FK2/A", "doi:10.5072/FK2/B");
+        recordService.findOaiRecordsNotInThisSet("set", null, null, globalIds);
+
+        assertTrue(queryString.getValue().contains(" and h.setName != :setName"));
+        assertTrue(queryString.getValue().contains(" and h.globalId in :globalIds"));
+        verify(query).setParameter("globalIds", globalIds);
+        verify(query, never()).setMaxResults(anyInt());
+
+        // (no records on the page, nothing to look up)
+        assertNull(recordService.findOaiRecordsNotInThisSet("set", null, null, Collections.emptyList()));
+    }
+
+    @Test
+    public void testInclusiveUntilPlainDate() {
+        // 2016-10-23T00:00:00Z
+        Date until = new Date(1477180800000L);
+        Date adjusted = OAIRecordServiceBean.getInclusiveUntilDate(until);
+        assertEquals(1477180800000L + 24 * 3600 * 1000, adjusted.getTime());
+        // the supplied date must not be modified, it is reused for every page
+        assertEquals(1477180800000L, until.getTime());
+    }
+
+    @Test
+    public void testInclusiveUntilDateAndTime() {
+        // 2016-10-23T17:35:45Z
+        Date until = new Date(1477244145000L);
+        Date adjusted = OAIRecordServiceBean.getInclusiveUntilDate(until);
+        assertEquals(1477244145000L + 1000, adjusted.getTime());
+        assertEquals(1477244145000L, until.getTime());
+    }
+}
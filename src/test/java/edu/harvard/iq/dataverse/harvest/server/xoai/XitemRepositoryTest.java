@@ -0,0 +1,168 @@
+package edu.harvard.iq.dataverse.harvest.server.xoai;
+
+import com.lyncode.xoai.dataprovider.handlers.results.ListItemIdentifiersResult;
+import com.lyncode.xoai.dataprovider.model.ItemIdentifier;
+import edu.harvard.iq.dataverse.harvest.server.OAIRecord;
+import edu.harvard.iq.dataverse.harvest.server.OAIRecordServiceBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class XitemRepositoryTest {
+
+    private static final Date FROM = new Date(1477180800000L);
+
+    private InMemoryRecordService recordService;
+    private XitemRepository repository;
+
+    @Before
+    public void setUp() {
+        recordService = new InMemoryRecordService();
+        repository = new XitemRepository(recordService, null);
+    }
+
+    private static List<String> identifiers(ListItemIdentifiersResult result) {
+        List<String> identifiers = new ArrayList<>();
+        for (ItemIdentifier item : result.getResults()) {
+            identifiers.add(item.getIdentifier());
+        }
+        return identifiers;
+    }
+
+    /**
+     * Every page ends at the boundary, with one more record read to tell
+     * whether another page follows; the pages after the first resume from
+     * the last record of the previous one.
+     */
+    @Test
+    public void testPageBoundaries() throws Exception {
+        recordService.add("set", "A", "B", "C", "D", "E");
+
+        ListItemIdentifiersResult page = repository.getItemIdentifiers(null, 0, 2, "set");
+        assertEquals(Arrays.asList("A", "B"), identifiers(page));
+        assertTrue(page.hasMore());
+        assertEquals(Arrays.asList(3), recordService.maxResults);
+
+        page = repository.getItemIdentifiers(null, 2, 2, "set");
+        assertEquals(Arrays.asList("C", "D"), identifiers(page));
+        assertTrue(page.hasMore());
+        assertEquals("B", recordService.afterGlobalIds.get(1));
+
+        page = repository.getItemIdentifiers(null, 4, 2, "set");
+        assertEquals(Arrays.asList("E"), identifiers(page));
+        assertFalse(page.hasMore());
+        assertEquals("D", recordService.afterGlobalIds.get(2));
+    }
+
+    /**
+     * A set that fills its last page exactly: that page says no more follow,
+     * and a page asked for past it is empty.
+     */
+    @Test
+    public void testEmptyLastPage() throws Exception {
+        recordService.add("set", "A", "B", "C", "D");
+
+        repository.getItemIdentifiers(null, 0, 2, "set");
+        ListItemIdentifiersResult page = repository.getItemIdentifiers(null, 2, 2, "set");
+        assertEquals(Arrays.asList("C", "D"), identifiers(page));
+        assertFalse(page.hasMore());
+
+        page = repository.getItemIdentifiers(null, 4, 2, "set");
+        assertTrue(identifiers(page).isEmpty());
+        assertFalse(page.hasMore());
+        // (no cursor was kept for a page that was not announced)
+        assertNull(recordService.afterGlobalIds.get(2));
+    }
+
+    /**
+     * A cursor is only used by the list it was made for: the same set, from
+     * and until, at the offset of the page that follows. Otherwise, as with
+     * a token issued by another server, the page is found by its offset -
+     * and is the same.
+     */
+    @Test
+    public void testCursorRoundTrip() throws Exception {
+        recordService.add("set", "A", "B", "C", "D", "E");
+        recordService.add("other", "C", "D", "E");
+
+        repository.getItemIdentifiers(null, 0, 2, "set");
+        assertEquals(Arrays.asList("C", "D"), identifiers(repository.getItemIdentifiers(null, 2, 2, "set")));
+        assertEquals("B", recordService.afterGlobalIds.get(1));
+
+        assertEquals(Arrays.asList("E"), identifiers(repository.getItemIdentifiers(null, 2, 2, "other")));
+        assertNull(recordService.afterGlobalIds.get(2));
+        repository.getItemIdentifiers(null, 2, 2, "set", FROM);
+        assertNull(recordService.afterGlobalIds.get(3));
+        repository.getItemIdentifiers(null, 3, 2, "set");
+        assertNull(recordService.afterGlobalIds.get(4));
+
+        XitemRepository otherServer = new XitemRepository(recordService, null);
+        assertEquals(Arrays.asList("C", "D"), identifiers(otherServer.getItemIdentifiers(null, 2, 2, "set")));
+        assertNull(recordService.afterGlobalIds.get(5));
+        assertEquals(Integer.valueOf(2), recordService.offsets.get(5));
+    }
+
+    @Test
+    public void testExtraSets() throws Exception {
+        recordService.add("set", "A", "B");
+        recordService.add("other", "B");
+
+        List<ItemIdentifier> items = repository.getItemIdentifiers(null, 0, 2, "set").getResults();
+        assertEquals(1, items.get(0).getSets().size());
+        assertEquals(2, items.get(1).getSets().size());
+        assertEquals("other", items.get(1).getSets().get(1).getSpec());
+    }
+
+    /**
+     * The records of the sets, in memory, paged as the queries of
+     * {@link OAIRecordServiceBean} do; remembers how every page was asked for.
+     */
+    private static class InMemoryRecordService extends OAIRecordServiceBean {
+
+        final List<OAIRecord> records = new ArrayList<>();
+        final List<String> afterGlobalIds = new ArrayList<>();
+        final List<Integer> offsets = new ArrayList<>();
+        final List<Integer> maxResults = new ArrayList<>();
+
+        void add(String setName, String... globalIds) {
+            for (String globalId : globalIds) {
+                records.add(new OAIRecord(setName, globalId, FROM));
+            }
+            records.sort((a, b) -> a.getGlobalId().compareTo(b.getGlobalId()));
+        }
+
+        @Override
+        public List<OAIRecord> findOaiRecordsPageBySetName(String setName, Date from, Date until, String afterGlobalId, int offset, int maxResults) {
+            afterGlobalIds.add(afterGlobalId);
+            offsets.add(offset);
+            this.maxResults.add(maxResults);
+            List<OAIRecord> page = new ArrayList<>();
+            int skip = afterGlobalId == null ? offset : 0;
+            for (OAIRecord record : records) {
+                if (record.getSetName().equals(setName)
+                        && (afterGlobalId == null || record.getGlobalId().compareTo(afterGlobalId) > 0)
+                        && skip-- <= 0 && page.size() < maxResults) {
+                    page.add(record);
+                }
+            }
+            return page;
+        }
+
+        @Override
+        public List<OAIRecord> findOaiRecordsNotInThisSet(String setName, Date from, Date until, Collection<String> globalIds) {
+            List<OAIRecord> extra = new ArrayList<>();
+            for (OAIRecord record : records) {
+                if (!record.getSetName().equals(setName) && globalIds.contains(record.getGlobalId())) {
+                    extra.add(record);
+                }
+            }
+            return extra.isEmpty() ? Collections.emptyList() : extra;
+        }
+    }
+}
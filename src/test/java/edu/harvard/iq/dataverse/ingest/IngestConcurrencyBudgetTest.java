@@ -0,0 +1,61 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class IngestConcurrencyBudgetTest {
+
+    @Test
+    public void testMaxFiles() {
+        IngestConcurrencyBudget budget = new IngestConcurrencyBudget(2, 1000);
+        assertTrue(budget.canStart(100));
+        budget.started(100);
+        assertTrue(budget.canStart(100));
+        budget.started(100);
+        assertFalse(budget.canStart(100));
+        budget.finished(100);
+        assertTrue(budget.canStart(100));
+        assertEquals(1, budget.getFilesInProgress());
+        assertEquals(100, budget.getBytesInProgress());
+    }
+
+    @Test
+    public void testSizeBudget() {
+        IngestConcurrencyBudget budget = new IngestConcurrencyBudget(8, 1000);
+        budget.started(600);
+        assertTrue(budget.canStart(400));
+        assertFalse(budget.canStart(401));
+        budget.started(400);
+        assertTrue(budget.canStart(0));
+        assertFalse(budget.canStart(1));
+        budget.finished(600);
+        assertTrue(budget.canStart(600));
+    }
+
+    @Test
+    public void testLargeFileRunsAlone() {
+        IngestConcurrencyBudget budget = new IngestConcurrencyBudget(8, 1000);
+        // a file larger than the budget can only start when nothing else runs:
+        assertTrue(budget.canStart(5000));
+        budget.started(5000);
+        assertFalse(budget.canStart(1));
+        budget.finished(5000);
+        budget.started(10);
+        assertFalse(budget.canStart(5000));
+    }
+
+    @Test
+    public void testUnknownSizeAndSequential() {
+        // (files of unknown size, -1, don't count against the budget)
+        IngestConcurrencyBudget budget = new IngestConcurrencyBudget(3, 10);
+        budget.started(-1);
+        budget.started(-1);
+        assertEquals(0, budget.getBytesInProgress());
+        assertTrue(budget.canStart(10));
+
+        IngestConcurrencyBudget sequential = new IngestConcurrencyBudget(1, Long.MAX_VALUE);
+        assertTrue(sequential.canStart(1));
+        sequential.started(1);
+        assertFalse(sequential.canStart(1));
+    }
+}
@@ -0,0 +1,39 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class IngestJobTest {
+
+    @Test
+    public void testOutcomesInMessageOrder() {
+        IngestJob job = new IngestJob(1L, 3L);
+        IngestJob.Task first = job.addTask(1L, "first.csv", 10, "text/csv");
+        IngestJob.Task second = job.addTask(2L, "second.csv", 10, "text/csv");
+        IngestJob.Task third = job.addTask(3L, "third.csv", 10, "text/csv");
+
+        assertFalse(job.finished(third, "<li>third.csv</li>", false));
+        assertFalse(job.finished(first, "<li>first.csv (Error)</li>", true));
+        assertTrue(job.finished(second, null, false));
+
+        assertTrue(job.isIngestWithErrors());
+        assertEquals("<ul><li>first.csv (Error)</li><li>third.csv</li></ul>", job.getIngestedFilesList());
+    }
+
+    @Test
+    public void testAwaitDone() throws Exception {
+        IngestJob job = new IngestJob(1L, 2L);
+        IngestJob.Task first = job.addTask(1L, "first.csv", 10, "text/csv");
+        IngestJob.Task second = job.addTask(2L, "second.csv", 10, "text/csv");
+        job.finished(first, "<li>first.csv</li>", false);
+
+        Thread worker = new Thread(() -> job.finished(second, "<li>second.csv</li>", false));
+        worker.start();
+        job.awaitDone();
+        worker.join();
+
+        assertEquals("<ul><li>first.csv</li><li>second.csv</li></ul>", job.getIngestedFilesList());
+        // (a job without files is done right away)
+        new IngestJob(1L, null).awaitDone();
+    }
+}
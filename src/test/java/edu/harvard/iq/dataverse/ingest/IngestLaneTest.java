@@ -0,0 +1,85 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import javax.json.JsonObject;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class IngestLaneTest {
+
+    private static final Long ALICE = 1L;
+    private static final Long BOB = 2L;
+
+    @Test
+    public void testUsersTakeTurns() {
+        IngestLane lane = new IngestLane("small", 2, Long.MAX_VALUE);
+        IngestJob aliceJob = new IngestJob(ALICE, null);
+        for (int i = 0; i < 10; i++) {
+            lane.add(aliceJob.addTask((long) i, "alice" + i + ".csv", 100, "text/csv"), 1000);
+        }
+        IngestJob bobJob = new IngestJob(BOB, null);
+        lane.add(bobJob.addTask(100L, "bob.csv", 100, "text/csv"), 2000);
+
+        // Bob's file, queued after all of Alice's, is the second one to start:
+        IngestJob.Task first = lane.next(3000);
+        assertEquals(Long.valueOf(0), first.getFileId());
+        IngestJob.Task second = lane.next(3000);
+        assertEquals(Long.valueOf(100), second.getFileId());
+        assertNull(lane.next(3000));
+        assertEquals(9, lane.getWaiting());
+        assertEquals(2, lane.getRunning());
+
+        // ... and Alice's files then follow in the order they were queued:
+        lane.finished(second, 4000);
+        assertEquals(Long.valueOf(1), lane.next(4000).getFileId());
+        lane.finished(first, 5000);
+        assertEquals(Long.valueOf(2), lane.next(5000).getFileId());
+    }
+
+    @Test
+    public void testLongestWaitingUserGoesFirst() {
+        IngestLane lane = new IngestLane("small", 1, Long.MAX_VALUE);
+        lane.add(new IngestJob(BOB, null).addTask(1L, "bob.csv", 10, "text/csv"), 2000);
+        lane.add(new IngestJob(ALICE, null).addTask(2L, "alice.csv", 10, "text/csv"), 1000);
+        assertEquals(ALICE, lane.next(3000).getUserId());
+    }
+
+    @Test
+    public void testSizeBudget() {
+        IngestLane lane = new IngestLane("small", 4, 1000);
+        IngestJob job = new IngestJob(ALICE, null);
+        lane.add(job.addTask(1L, "a.csv", 600, "text/csv"), 0);
+        lane.add(job.addTask(2L, "b.csv", 600, "text/csv"), 0);
+        IngestJob.Task a = lane.next(0);
+        assertNotNull(a);
+        assertNull(lane.next(0));
+        lane.finished(a, 10);
+        assertEquals(Long.valueOf(2), lane.next(10).getFileId());
+
+        // the limits can be changed while files are queued:
+        lane.add(job.addTask(3L, "c.csv", 600, "text/csv"), 20);
+        lane.setLimits(4, 2000);
+        assertEquals(Long.valueOf(3), lane.next(20).getFileId());
+    }
+
+    @Test
+    public void testMetrics() {
+        IngestLane lane = new IngestLane("large", 1, Long.MAX_VALUE);
+        IngestJob job = new IngestJob(ALICE, null);
+        lane.add(job.addTask(1L, "a.dta", 5000, "application/x-stata"), 1000);
+        lane.add(job.addTask(2L, "b.dta", 3000, "application/x-stata"), 1000);
+        IngestJob.Task a = lane.next(1500);
+        lane.finished(a, 4500);
+        lane.next(4500);
+
+        JsonObject json = lane.toJson(5000).build();
+        assertEquals(1, json.getInt("running"));
+        assertEquals(3000, json.getJsonNumber("runningBytes").longValue());
+        assertEquals(0, json.getInt("waiting"));
+        assertEquals(2, json.getJsonNumber("started").longValue());
+        assertEquals(1, json.getJsonNumber("finished").longValue());
+        assertEquals(2000, json.getJsonNumber("averageWaitMillis").longValue());
+        assertEquals(3500, json.getJsonNumber("maxWaitMillis").longValue());
+        assertEquals(3000, json.getJsonNumber("averageIngestMillis").longValue());
+        assertEquals(1, json.getJsonArray("users").size());
+    }
+}
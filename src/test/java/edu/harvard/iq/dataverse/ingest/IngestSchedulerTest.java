@@ -0,0 +1,19 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import edu.harvard.iq.dataverse.util.FileUtil;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class IngestSchedulerTest {
+
+    @Test
+    public void testLargeFiles() {
+        long threshold = 1000;
+        assertFalse(IngestScheduler.isLargeFile(1000, FileUtil.MIME_TYPE_CSV, threshold));
+        assertTrue(IngestScheduler.isLargeFile(1001, FileUtil.MIME_TYPE_CSV, threshold));
+        assertTrue(IngestScheduler.isLargeFile(600, FileUtil.MIME_TYPE_STATA14, threshold));
+        assertTrue(IngestScheduler.isLargeFile(200, FileUtil.MIME_TYPE_XLSX, threshold));
+        assertFalse(IngestScheduler.isLargeFile(200, FileUtil.MIME_TYPE_RDATA, threshold));
+        assertFalse(IngestScheduler.isLargeFile(-1, null, threshold));
+    }
+}
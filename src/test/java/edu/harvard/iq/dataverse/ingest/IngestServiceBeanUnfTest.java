@@ -0,0 +1,64 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.dataverse.unf.UNFUtil;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class IngestServiceBeanUnfTest {
+
+    @Test
+    public void testNumericUnfsMatchUnfUtil() throws Exception {
+        Random random = new Random(42);
+        List<double[]> vectors = new ArrayList<>();
+        List<BitSet> missing = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int v = 0; v < 16; v++) {
+            double[] values = new double[5000];
+            BitSet missingValues = new BitSet();
+            Double[] boxed = new Double[values.length];
+            for (int i = 0; i < values.length; i++) {
+                if (i % 37 == v) {
+                    missingValues.set(i);
+                } else {
+                    values[i] = random.nextGaussian() * Math.pow(10, v % 8);
+                    boxed[i] = values[i];
+                }
+            }
+            vectors.add(values);
+            missing.add(missingValues);
+            expected.add(UNFUtil.calculateUNF(boxed));
+        }
+
+        // the UNFs are the same, whether they are calculated one at a time, 
+        // or several at once:
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> unfs = new ArrayList<>();
+            for (int v = 0; v < vectors.size(); v++) {
+                final int varnum = v;
+                unfs.add(executor.submit(() -> IngestServiceBean.calculateUNF(varnum, vectors.get(varnum), missing.get(varnum))));
+            }
+            for (int v = 0; v < vectors.size(); v++) {
+                assertEquals(expected.get(v), IngestServiceBean.calculateUNF(v, vectors.get(v), missing.get(v)));
+                assertEquals(expected.get(v), unfs.get(v).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDiscreteUnfMatchesUnfUtil() throws Exception {
+        long[] values = {1L, 2L, 0L, -7L, 1000000L};
+        BitSet missing = new BitSet();
+        missing.set(2);
+        assertEquals(UNFUtil.calculateUNF(new Double[]{1.0, 2.0, null, -7.0, 1000000.0}), IngestServiceBean.calculateUNF(0, values, missing));
+    }
+}
@@ -0,0 +1,31 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import java.util.Arrays;
+import java.util.ArrayList;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class IngestTimingsTest {
+
+    @Test
+    public void testPhasesAreRecordedInOrder() throws InterruptedException {
+        IngestTimings timings = new IngestTimings();
+        timings.start(IngestTimings.PHASE_READ);
+        Thread.sleep(5);
+        timings.start(IngestTimings.PHASE_SUMMARY_STATISTICS);
+        timings.start(IngestTimings.PHASE_READ);
+        timings.stop();
+        // stopping again is harmless:
+        timings.stop();
+
+        assertEquals(Arrays.asList(IngestTimings.PHASE_READ, IngestTimings.PHASE_SUMMARY_STATISTICS), new ArrayList<>(timings.getDurations().keySet()));
+        assertTrue(timings.getDurations().get(IngestTimings.PHASE_READ) >= 5);
+        assertEquals(timings.getDurations().get(IngestTimings.PHASE_READ) + timings.getDurations().get(IngestTimings.PHASE_SUMMARY_STATISTICS), timings.getTotal());
+        assertTrue(timings.toString().startsWith("Ingest completed in " + timings.getTotal() + " ms (read: "));
+    }
+
+    @Test
+    public void testNoPhases() {
+        assertEquals("Ingest completed in 0 ms", new IngestTimings().toString());
+    }
+}
@@ -0,0 +1,137 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import edu.harvard.iq.dataverse.DataTable;
+import edu.harvard.iq.dataverse.dataaccess.TabularSubsetGenerator;
+import edu.harvard.iq.dataverse.datavariable.DataVariable;
+import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileReader;
+import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
+import edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.csv.CSVFileReader;
+import edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.csv.CSVFileReaderSpi;
+import edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.dta.NewDTAFileReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.io.FileUtils;
+import org.dataverse.unf.UNFUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Files ingested at the same time (as the IngestScheduler does, with
+ * :IngestParallelFiles greater than 1) produce the same DataTables, tab
+ * files and UNFs as files ingested one by one.
+ */
+public class ParallelTabularIngestTest {
+
+    private static final String DTA_FILE = "src/test/java/edu/harvard/iq/dataverse/ingest/tabulardata/impl/plugins/dta/dates.dta";
+
+    private File directory;
+    private final List<File> files = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("parallel-ingest").toFile();
+        for (int i = 0; i < 12; i++) {
+            files.add(makeCsvFile(i));
+            if (i % 3 == 0) {
+                files.add(new File(DTA_FILE));
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testParallelIngestMatchesSequentialIngest() throws Exception {
+        List<String> expected = new ArrayList<>();
+        for (File file : files) {
+            expected.add(ingest(file));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (File file : files) {
+                results.add(executor.submit(() -> ingest(file)));
+            }
+            for (int i = 0; i < files.size(); i++) {
+                assertEquals(files.get(i).getName(), expected.get(i), results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private File makeCsvFile(int seed) throws IOException {
+        Random random = new Random(seed);
+        StringBuilder csv = new StringBuilder("id,measure,label,day,moment\n");
+        for (int row = 0; row < 2000; row++) {
+            csv.append(row).append(',')
+                    .append(random.nextGaussian() * 1000).append(',')
+                    .append("\"label ").append(random.nextInt(50)).append("\",")
+                    .append(String.format("20%02d-%02d-%02d", random.nextInt(30), 1 + random.nextInt(12), 1 + random.nextInt(28))).append(',')
+                    .append(String.format("2018-06-20 %02d:%02d:%02d", random.nextInt(24), random.nextInt(60), random.nextInt(60)))
+                    .append('\n');
+        }
+        File file = new File(directory, "synthetic" + seed + ".csv");
+        Files.write(file.toPath(), csv.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * Ingests a file, the way IngestServiceBean does, and describes the
+     * result: the variables of the DataTable, the UNFs of the variables and
+     * the content of the tab file.
+     */
+    private static String ingest(File file) throws Exception {
+        TabularDataFileReader reader = file.getName().endsWith(".dta")
+                ? new NewDTAFileReader(null, 118)
+                : new CSVFileReader(new CSVFileReaderSpi(), ',');
+        TabularDataIngest result;
+        try (BufferedInputStream stream = new BufferedInputStream(new FileInputStream(file))) {
+            result = reader.read(stream, null);
+        }
+        DataTable table = result.getDataTable();
+        File tabFile = result.getTabDelimitedFile();
+        int numCases = table.getCaseQuantity().intValue();
+
+        StringBuilder description = new StringBuilder();
+        description.append(table.getCaseQuantity()).append(" cases\n");
+        for (int i = 0; i < table.getDataVariables().size(); i++) {
+            DataVariable variable = table.getDataVariables().get(i);
+            description.append(variable.getName()).append(' ')
+                    .append(variable.getType()).append(' ')
+                    .append(variable.getInterval()).append(' ')
+                    .append(variable.getFormat()).append(' ')
+                    .append(variable.getFormatCategory()).append(' ');
+            try (InputStream in = new FileInputStream(tabFile)) {
+                if (variable.isIntervalContinuous()) {
+                    description.append(UNFUtil.calculateUNF(TabularSubsetGenerator.subsetDoubleVector(in, i, numCases)));
+                } else if (variable.isTypeNumeric()) {
+                    description.append(UNFUtil.calculateUNF(TabularSubsetGenerator.subsetLongVector(in, i, numCases)));
+                } else {
+                    description.append(UNFUtil.calculateUNF(TabularSubsetGenerator.subsetStringVector(in, i, numCases)));
+                }
+            }
+            description.append('\n');
+        }
+        description.append(FileUtils.readFileToString(tabFile, StandardCharsets.UTF_8));
+        tabFile.delete();
+        return description.toString();
+    }
+}
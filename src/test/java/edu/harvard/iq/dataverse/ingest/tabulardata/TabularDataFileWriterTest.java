@@ -0,0 +1,50 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TabularDataFileWriterTest {
+
+    private File tabFile;
+
+    @Before
+    public void setUp() throws IOException {
+        tabFile = File.createTempFile("data-", ".tab");
+    }
+
+    @After
+    public void tearDown() {
+        tabFile.delete();
+        TabularDataFileWriter.getRotatedImageFile(tabFile).delete();
+    }
+
+    @Test
+    public void testRotatedImageIsWrittenWithTheTabFile() throws IOException {
+        try (TabularDataFileWriter writer = new TabularDataFileWriter(tabFile, "UTF-8")) {
+            writer.println("1\t\"a\"");
+            writer.println("2\t\"b\"");
+        }
+        assertEquals(Arrays.asList("1\t\"a\"", "2\t\"b\""), Files.readAllLines(tabFile.toPath()));
+
+        File rotatedImageFile = TabularDataFileWriter.getRotatedImageFile(tabFile);
+        assertTrue(rotatedImageFile.exists());
+        // 2 column end offsets, followed by the 2 columns:
+        assertEquals(16 + "1\n2\n".length() + "\"a\"\n\"b\"\n".length(), rotatedImageFile.length());
+    }
+
+    @Test
+    public void testRotatedImageIsDiscardedOnInconsistentRows() throws IOException {
+        try (TabularDataFileWriter writer = new TabularDataFileWriter(tabFile, "UTF-8")) {
+            writer.println("1\t\"a\"");
+            writer.println("2");
+        }
+        assertEquals(Arrays.asList("1\t\"a\"", "2"), Files.readAllLines(tabFile.toPath()));
+        assertFalse(TabularDataFileWriter.getRotatedImageFile(tabFile).exists());
+    }
+}
@@ -0,0 +1,76 @@
+package edu.harvard.iq.dataverse.search;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ReindexJobTest {
+
+    @Test
+    public void testPartitionsSplitTheIdSpace() {
+        ReindexJob job = new ReindexJob(3, false, false);
+        assertEquals(3, job.getNumPartitions());
+        for (long id = 1; id <= 30; id++) {
+            int owners = 0;
+            for (ReindexJob.Partition partition : job.getPartitions()) {
+                if (partition.contains(id)) {
+                    owners++;
+                    assertEquals(id % 3, partition.getPartitionId());
+                }
+            }
+            assertEquals(1, owners);
+        }
+    }
+
+    @Test
+    public void testProgressAndEta() {
+        ReindexJob job = new ReindexJob(2, false, false);
+        ReindexJob.Partition p0 = job.getPartitions().get(0);
+        ReindexJob.Partition p1 = job.getPartitions().get(1);
+        assertEquals(ReindexJob.State.RUNNING, job.getState());
+
+        p0.markRunning(0L);
+        p0.setTotals(2, 8);
+        p1.markRunning(0L);
+        p1.setTotals(0, 4);
+        assertNull(job.getEtaSeconds(1000L));
+
+        p0.dataverseProcessed(2L, true);
+        p0.dataverseProcessed(4L, false);
+        // 2 of 10 in 10 seconds: 8 left, 40 seconds
+        assertEquals(Long.valueOf(40L), p0.getEtaSeconds(10000L));
+        assertEquals(Long.valueOf(4L), p0.getLastIndexedDataverseId());
+        assertEquals(1, p0.getFailed());
+
+        // the job is only done when the slowest partition is
+        p1.datasetProcessed(1L, true);
+        p1.datasetProcessed(3L, true);
+        p1.datasetProcessed(5L, true);
+        p1.datasetProcessed(7L, true);
+        p1.setState(ReindexJob.State.DONE);
+        assertEquals(Long.valueOf(0L), p1.getEtaSeconds(10000L));
+        assertEquals(Long.valueOf(40L), job.getEtaSeconds(10000L));
+        assertEquals(14, job.getTotal());
+        assertEquals(6, job.getProcessed());
+    }
+
+    @Test
+    public void testPauseAndResumeRestartsTheRate() {
+        ReindexJob job = new ReindexJob(1, true, true);
+        ReindexJob.Partition partition = job.getPartitions().get(0);
+        partition.markRunning(0L);
+        partition.setTotals(0, 4);
+        partition.datasetProcessed(10L, true);
+        partition.setState(ReindexJob.State.PAUSED);
+        assertEquals(ReindexJob.State.PAUSED, job.getState());
+        assertNull(job.getEtaSeconds(5000L));
+
+        partition.markRunning(100000L);
+        assertEquals(ReindexJob.State.RUNNING, job.getState());
+        // nothing processed since the restart yet
+        assertNull(partition.getEtaSeconds(101000L));
+        partition.datasetProcessed(11L, true);
+        // 1 processed in 2 seconds since resuming, 2 left
+        assertEquals(Long.valueOf(4L), partition.getEtaSeconds(102000L));
+        assertEquals(Long.valueOf(11L), partition.getLastIndexedDatasetId());
+    }
+}
@@ -0,0 +1,192 @@
+package edu.harvard.iq.dataverse.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.response.UpdateResponse;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SolrBulkIndexerTest {
+
+    @After
+    public void tearDown() {
+        SolrBulkIndexer.unbindFromCurrentThread();
+    }
+
+    @Test
+    public void testBatchesAreBoundedByDocCount() throws Exception {
+        RecordingSolrClient solrClient = new RecordingSolrClient();
+        SolrBulkIndexer bulkIndexer = new SolrBulkIndexer(solrClient, 3, Long.MAX_VALUE, 1000);
+
+        bulkIndexer.add(docs(2));
+        assertEquals(0, solrClient.batchSizes.size());
+        bulkIndexer.add(docs(5));
+        assertEquals(Arrays.asList(3, 3), solrClient.batchSizes);
+        assertEquals(0, solrClient.commits);
+
+        bulkIndexer.finish();
+        assertEquals(Arrays.asList(3, 3, 1), solrClient.batchSizes);
+        assertEquals(Arrays.asList(1000, 1000, 1000), solrClient.commitWithins);
+        assertEquals(1, solrClient.commits);
+        assertEquals(7, bulkIndexer.getDocsSent());
+        assertEquals(3, bulkIndexer.getBatchesSent());
+    }
+
+    @Test
+    public void testBatchesAreBoundedBySize() throws Exception {
+        RecordingSolrClient solrClient = new RecordingSolrClient();
+        List<SolrInputDocument> docs = docs(4);
+        long oneDoc = SolrBulkIndexer.estimateSize(docs.get(0));
+        SolrBulkIndexer bulkIndexer = new SolrBulkIndexer(solrClient, 1000, oneDoc * 2, 1000);
+
+        bulkIndexer.add(docs);
+        assertEquals(Arrays.asList(2, 2), solrClient.batchSizes);
+    }
+
+    @Test
+    public void testFlushCurrent() throws Exception {
+        RecordingSolrClient solrClient = new RecordingSolrClient();
+        // nothing bound; a no-op
+        SolrBulkIndexer.flushCurrent();
+        assertNull(SolrBulkIndexer.getCurrent());
+
+        SolrBulkIndexer bulkIndexer = new SolrBulkIndexer(solrClient);
+        bulkIndexer.bindToCurrentThread();
+        assertSame(bulkIndexer, SolrBulkIndexer.getCurrent());
+        bulkIndexer.add(docs(2));
+        SolrBulkIndexer.flushCurrent();
+        assertEquals(Arrays.asList(2), solrClient.batchSizes);
+
+        SolrBulkIndexer.unbindFromCurrentThread();
+        assertNull(SolrBulkIndexer.getCurrent());
+    }
+
+    @Test
+    public void testDeleteSendsTheBufferedDocsFirst() throws Exception {
+        RecordingSolrClient solrClient = new RecordingSolrClient();
+        SolrBulkIndexer bulkIndexer = new SolrBulkIndexer(solrClient, 1000, Long.MAX_VALUE, 1000);
+
+        bulkIndexer.add(docs(2));
+        bulkIndexer.deleteById(Arrays.asList("datafile_100"));
+        assertEquals(Arrays.asList("add 2", "delete [datafile_100]"), solrClient.requests);
+        assertEquals(Arrays.asList(1000, 1000), solrClient.commitWithins);
+        assertEquals(0, solrClient.commits);
+
+        bulkIndexer.finish();
+        assertEquals(1, solrClient.commits);
+    }
+
+    @Test
+    public void testIndexTimesAreRecordedAfterTheCommit() throws Exception {
+        RecordingSolrClient solrClient = new RecordingSolrClient();
+        SolrBulkIndexer bulkIndexer = new SolrBulkIndexer(solrClient, 2, Long.MAX_VALUE, 1000);
+        List<String> recorded = new ArrayList<>();
+        bulkIndexer.setIndexTimeRecorder((indexedIds, permissionsIndexedIds, indexTime)
+                -> recorded.add(indexedIds + " " + permissionsIndexedIds + " after " + solrClient.commits + " commits"), 3);
+
+        bulkIndexer.add(docs(2));
+        bulkIndexer.indexed(1L);
+        bulkIndexer.permissionsIndexed(1L);
+        // sent, but not committed yet
+        assertEquals(Arrays.asList(2), solrClient.batchSizes);
+        assertEquals(0, recorded.size());
+
+        bulkIndexer.add(docs(1));
+        bulkIndexer.indexed(2L);
+        // too many objects waiting: committed, then recorded
+        assertEquals(Arrays.asList(2, 1), solrClient.batchSizes);
+        assertEquals(Arrays.asList("[1, 2] [1] after 1 commits"), recorded);
+
+        bulkIndexer.add(docs(1));
+        bulkIndexer.permissionsIndexed(2L);
+        bulkIndexer.finish();
+        assertEquals(Arrays.asList("[1, 2] [1] after 1 commits", "[] [2] after 2 commits"), recorded);
+    }
+
+    @Test
+    public void testIndexTimesAreNotRecordedIfTheCommitFails() throws Exception {
+        RecordingSolrClient solrClient = new RecordingSolrClient() {
+            @Override
+            public UpdateResponse commit() {
+                throw new IllegalStateException("Solr is down");
+            }
+        };
+        SolrBulkIndexer bulkIndexer = new SolrBulkIndexer(solrClient);
+        List<Long> recorded = new ArrayList<>();
+        bulkIndexer.setIndexTimeRecorder((indexedIds, permissionsIndexedIds, indexTime) -> recorded.addAll(indexedIds), 1000);
+
+        bulkIndexer.add(docs(1));
+        bulkIndexer.indexed(1L);
+        try {
+            bulkIndexer.finish();
+            fail("the commit should have failed");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(0, recorded.size());
+    }
+
+    @Test
+    public void testEstimateSize() {
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.addField("id", "dataset_1");
+        doc.addField("name", "abc");
+        doc.addField("name", "de");
+        assertEquals("id".length() + "dataset_1".length() + "name".length() + "abc".length() + "de".length(), SolrBulkIndexer.estimateSize(doc));
+    }
+
+    private static List<SolrInputDocument> docs(int count) {
+        List<SolrInputDocument> docs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            SolrInputDocument doc = new SolrInputDocument();
+            doc.addField("id", "datafile_" + (100 + i));
+            doc.addField("name", "file" + (100 + i) + ".tab");
+            docs.add(doc);
+        }
+        return docs;
+    }
+
+    private static class RecordingSolrClient extends SolrClient {
+
+        List<Integer> batchSizes = new ArrayList<>();
+        List<Integer> commitWithins = new ArrayList<>();
+        List<String> requests = new ArrayList<>();
+        int commits = 0;
+
+        @Override
+        public UpdateResponse add(Collection<SolrInputDocument> docs, int commitWithinMs) {
+            batchSizes.add(docs.size());
+            commitWithins.add(commitWithinMs);
+            requests.add("add " + docs.size());
+            return new UpdateResponse();
+        }
+
+        @Override
+        public UpdateResponse deleteById(List<String> ids, int commitWithinMs) {
+            commitWithins.add(commitWithinMs);
+            requests.add("delete " + ids);
+            return new UpdateResponse();
+        }
+
+        @Override
+        public UpdateResponse commit() {
+            commits++;
+            return new UpdateResponse();
+        }
+
+        @Override
+        public NamedList<Object> request(SolrRequest request, String collection) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package edu.harvard.iq.dataverse.settings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SettingsCacheTest {
+
+    @Test
+    public void testReadThrough() {
+        SettingsCache cache = new SettingsCache();
+        AtomicInteger queries = new AtomicInteger();
+
+        assertEquals("value", cache.get(":Setting", null, () -> { queries.incrementAndGet(); return "value"; }));
+        assertEquals("value", cache.get(":Setting", null, () -> { queries.incrementAndGet(); return "other"; }));
+        assertEquals(1, queries.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.getHitRate(), 0.0);
+    }
+
+    @Test
+    public void testSettingsNotSetAreCached() {
+        SettingsCache cache = new SettingsCache();
+        AtomicInteger queries = new AtomicInteger();
+
+        assertNull(cache.get(":NotSet", null, () -> { queries.incrementAndGet(); return null; }));
+        assertNull(cache.get(":NotSet", null, () -> { queries.incrementAndGet(); return null; }));
+        assertEquals(1, queries.get());
+    }
+
+    @Test
+    public void testLanguagesAreCachedSeparately() {
+        SettingsCache cache = new SettingsCache();
+
+        assertEquals("none", cache.get(":Text", null, () -> "none"));
+        assertEquals("en", cache.get(":Text", "en", () -> "en"));
+        assertEquals("fr", cache.get(":Text", "fr", () -> "fr"));
+        assertEquals("en", cache.get(":Text", "en", () -> "wrong"));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void testInvalidate() {
+        SettingsCache cache = new SettingsCache();
+        cache.get(":Setting", null, () -> "old");
+
+        cache.invalidate();
+
+        assertEquals("new", cache.get(":Setting", null, () -> "new"));
+        assertEquals(1, cache.getInvalidations());
+    }
+
+    @Test
+    public void testValueLoadedWhileInvalidatedIsNotKept() {
+        SettingsCache cache = new SettingsCache();
+
+        // (the setting is changed while its old value is being read)
+        assertEquals("old", cache.get(":Setting", null, () -> { cache.invalidate(); return "old"; }));
+
+        assertEquals("new", cache.get(":Setting", null, () -> "new"));
+    }
+
+    @Test
+    public void testVersionCheck() {
+        SettingsCache cache = new SettingsCache(1000);
+
+        assertTrue(cache.isVersionCheckDue(0));
+        cache.checkVersion(7);
+        cache.get(":Setting", null, () -> "old");
+
+        assertFalse(cache.isVersionCheckDue(999));
+        assertTrue(cache.isVersionCheckDue(1000));
+        cache.checkVersion(7);
+        assertEquals("old", cache.get(":Setting", null, () -> "new"));
+
+        // changed on another server:
+        assertTrue(cache.isVersionCheckDue(2000));
+        cache.checkVersion(8);
+        assertEquals("new", cache.get(":Setting", null, () -> "new"));
+    }
+
+    @Test
+    public void testOneVersionCheckAtATime() {
+        SettingsCache cache = new SettingsCache(1000);
+
+        assertTrue(cache.isVersionCheckDue(5000));
+        assertFalse(cache.isVersionCheckDue(5000));
+        assertFalse(cache.isVersionCheckDue(5500));
+    }
+
+    /**
+     * Reads 20 settings 100,000 times from 8 threads, as the pages and API
+     * calls do: only the first read of each setting, and the first read
+     * after a change, goes to the database.
+     */
+    @Test
+    public void testQueriesUnderLoad() throws Exception {
+        SettingsCache cache = new SettingsCache();
+        AtomicInteger queries = new AtomicInteger();
+        int threads = 8;
+        int readsPerThread = 100_000;
+        int settings = 20;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < readsPerThread; i++) {
+                        String name = ":Setting" + (i % settings);
+                        assertEquals(name + "-value", cache.get(name, null, () -> {
+                            queries.incrementAndGet();
+                            return name + "-value";
+                        }));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        long reads = (long) threads * readsPerThread;
+        assertEquals(reads, cache.getHits() + cache.getMisses());
+        assertEquals(queries.get(), cache.getMisses());
+        // (a few threads may read the same setting at the same time, the
+        // first time it is read)
+        assertTrue("queries: " + queries.get(), queries.get() <= settings * threads);
+        assertTrue(cache.getHitRate() > 0.99);
+
+        cache.invalidate();
+        int before = queries.get();
+        for (int i = 0; i < settings * 10; i++) {
+            String name = ":Setting" + (i % settings);
+            cache.get(name, null, () -> {
+                queries.incrementAndGet();
+                return name + "-value";
+            });
+        }
+        assertEquals(settings, queries.get() - before);
+    }
+}
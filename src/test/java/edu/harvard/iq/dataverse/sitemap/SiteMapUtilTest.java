@@ -1,10 +1,5 @@
 package edu.harvard.iq.dataverse.sitemap;
 
-import edu.harvard.iq.dataverse.Dataset;
-import edu.harvard.iq.dataverse.DatasetVersion;
-import edu.harvard.iq.dataverse.Dataverse;
-import edu.harvard.iq.dataverse.GlobalId;
-import edu.harvard.iq.dataverse.harvest.client.HarvestingClient;
 import edu.harvard.iq.dataverse.util.xml.XmlPrinter;
 import edu.harvard.iq.dataverse.util.xml.XmlValidator;
 import java.io.File;
@@ -17,9 +12,7 @@ import java.nio.file.Paths;
 import java.sql.Timestamp;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -31,49 +24,18 @@ public class SiteMapUtilTest {
     @Test
     public void testUpdateSiteMap() throws IOException, ParseException {
 
-        List<Dataverse> dataverses = new ArrayList<>();
         String publishedDvString = "publishedDv1";
-        Dataverse publishedDataverse = new Dataverse();
-        publishedDataverse.setAlias(publishedDvString);
         SimpleDateFormat dateFmt = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
         Date dvModifiedDate = dateFmt.parse("1955-11-12 22:04:00");
-        publishedDataverse.setModificationTime(new Timestamp(dvModifiedDate.getTime()));
-        publishedDataverse.setPublicationDate(new Timestamp(dvModifiedDate.getTime()));
-        dataverses.add(publishedDataverse);
 
-        List<Dataset> datasets = new ArrayList<>();
-
-        Dataset published = new Dataset();
         String publishedPid = "doi:10.666/FAKE/published1";
-        published.setGlobalId(new GlobalId(publishedPid));
-        published.setPublicationDate(new Timestamp(new Date().getTime()));
-        published.setModificationTime(new Timestamp(new Date().getTime()));
-        datasets.add(published);
-
-        Dataset unpublished = new Dataset();
-        String unpublishedPid = "doi:10.666/FAKE/unpublished1";
-        unpublished.setGlobalId(new GlobalId(unpublishedPid));
-        Timestamp nullPublicationDateToIndicateNotPublished = null;
-        unpublished.setPublicationDate(nullPublicationDateToIndicateNotPublished);
-        datasets.add(unpublished);
-
-        Dataset harvested = new Dataset();
-        String harvestedPid = "doi:10.666/FAKE/harvested1";
-        harvested.setGlobalId(new GlobalId(harvestedPid));
-        harvested.setPublicationDate(new Timestamp(new Date().getTime()));
-        harvested.setHarvestedFrom(new HarvestingClient());
-        datasets.add(harvested);
-
-        Dataset deaccessioned = new Dataset();
-        String deaccessionedPid = "doi:10.666/FAKE/harvested1";
-        deaccessioned.setGlobalId(new GlobalId(deaccessionedPid));
-        deaccessioned.setPublicationDate(new Timestamp(new Date().getTime()));
-        List<DatasetVersion> datasetVersions = new ArrayList<>();
-        DatasetVersion datasetVersion = new DatasetVersion();
-        datasetVersion.setVersionState(DatasetVersion.VersionState.DEACCESSIONED);
-        datasetVersions.add(datasetVersion);
-        deaccessioned.setVersions(datasetVersions);
-        datasets.add(deaccessioned);
+
+        // (which dataverses and datasets are published, and not harvested or
+        // deaccessioned, is up to the query of SiteMapServiceBean)
+        SiteMapUtil.Entries entries = writer -> {
+            writer.addDataverse(1L, publishedDvString, new Timestamp(dvModifiedDate.getTime()));
+            writer.addDataset(2L, publishedPid, new Timestamp(new Date().getTime()));
+        };
 
         Path tmpDirPath = Files.createTempDirectory(null);
         String tmpDir = tmpDirPath.toString();
@@ -81,14 +43,16 @@ public class SiteMapUtilTest {
         docroot.mkdirs();
         System.setProperty("com.sun.aas.instanceRoot", tmpDir);
 
-        SiteMapUtil.updateSiteMap(dataverses, datasets);
+        SiteMapUtil.updateSiteMap(entries, false);
 
         String pathToTest = tmpDirPath + File.separator + "docroot" + File.separator + "sitemap";
         String pathToSiteMap = pathToTest + File.separator + "sitemap.xml";
+        String pathToShard = pathToTest + File.separator + "sitemap-1.xml";
 
         Exception wellFormedXmlException = null;
         try {
             assertTrue(XmlValidator.validateXmlWellFormed(pathToSiteMap));
+            assertTrue(XmlValidator.validateXmlWellFormed(pathToShard));
         } catch (Exception ex) {
             System.out.println("Exception caught checking that XML is well formed: " + ex);
             wellFormedXmlException = ex;
@@ -97,22 +61,25 @@ public class SiteMapUtilTest {
 
         Exception notValidAgainstSchemaException = null;
         try {
-            assertTrue(XmlValidator.validateXmlSchema(pathToSiteMap, new URL("https://www.sitemaps.org/schemas/sitemap/0.9/sitemap.xsd")));
+            assertTrue(XmlValidator.validateXmlSchema(pathToSiteMap, new URL("https://www.sitemaps.org/schemas/sitemap/0.9/siteindex.xsd")));
+            assertTrue(XmlValidator.validateXmlSchema(pathToShard, new URL("https://www.sitemaps.org/schemas/sitemap/0.9/sitemap.xsd")));
         } catch (MalformedURLException | SAXException ex) {
             System.out.println("Exception caught validating XML against the sitemap schema: " + ex);
             notValidAgainstSchemaException = ex;
         }
         assertNull(notValidAgainstSchemaException);
 
-        File sitemapFile = new File(pathToSiteMap);
-        String sitemapString = XmlPrinter.prettyPrintXml(new String(Files.readAllBytes(Paths.get(sitemapFile.getAbsolutePath()))));
+        String sitemapString = XmlPrinter.prettyPrintXml(new String(Files.readAllBytes(Paths.get(pathToSiteMap))));
         System.out.println("sitemap: " + sitemapString);
+        assertTrue(sitemapString.contains("/sitemap/sitemap-1.xml"));
+
+        String shardString = XmlPrinter.prettyPrintXml(new String(Files.readAllBytes(Paths.get(pathToShard))));
+        System.out.println("sitemap shard: " + shardString);
 
-        assertTrue(sitemapString.contains("1955-11-12"));
-        assertTrue(sitemapString.contains(publishedPid));
-        assertFalse(sitemapString.contains(unpublishedPid));
-        assertFalse(sitemapString.contains(harvestedPid));
-        assertFalse(sitemapString.contains(deaccessionedPid));
+        assertTrue(shardString.contains("1955-11-12"));
+        assertTrue(shardString.contains("/dataverse/" + publishedDvString));
+        assertTrue(shardString.contains(publishedPid));
+        assertFalse(Files.exists(Paths.get(pathToTest, "sitemap.xml.staged")));
 
         System.clearProperty("com.sun.aas.instanceRoot");
 
@@ -0,0 +1,204 @@
+package edu.harvard.iq.dataverse.sitemap;
+
+import edu.harvard.iq.dataverse.NonEssentialTests;
+import edu.harvard.iq.dataverse.sitemap.SiteMapWriter.Shard;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import javax.xml.stream.XMLStreamException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+public class SiteMapWriterTest {
+
+    private static final String SITE_URL = "https://demo.dataverse.org";
+    private static final Date MODIFIED = new Date(1000000000000L);
+    private static final Date MODIFIED_LATER = new Date(1600000000000L);
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("sitemap");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Writes the datasets of the ids, a shard per {@code maxUrls} of them,
+     * and puts the sitemap in place.
+     */
+    private SiteMapWriter update(boolean full, int maxUrls, long... ids) throws IOException, XMLStreamException {
+        return update(SITE_URL, full, maxUrls, 0, ids);
+    }
+
+    private SiteMapWriter update(String siteUrl, boolean full, int maxUrls, long modifiedId, long... ids) throws IOException, XMLStreamException {
+        SiteMapWriter writer = new SiteMapWriter(directory, siteUrl, full, maxUrls);
+        for (long id : ids) {
+            writer.addDataset(id, "doi:10.5072/FK2/" + id, id == modifiedId ? MODIFIED_LATER : MODIFIED);
+        }
+        writer.finish();
+        writer.commit();
+        return writer;
+    }
+
+    private static List<Long> starts(SiteMapWriter writer) {
+        List<Long> starts = new ArrayList<>();
+        for (Shard shard : writer.getShards()) {
+            starts.add(shard.start);
+        }
+        return starts;
+    }
+
+    private String read(String fileName) throws IOException {
+        return new String(Files.readAllBytes(directory.resolve(fileName)), "UTF-8");
+    }
+
+    @Test
+    public void testShardsAndIndex() throws Exception {
+        SiteMapWriter writer = update(false, 3, 1, 2, 3, 4, 5, 6, 7);
+
+        assertEquals(7, writer.getCount());
+        assertEquals(List.of(1L, 4L, 7L), starts(writer));
+        assertEquals(3, writer.getShardsWritten());
+        assertTrue(writer.getStagedFiles().isEmpty());
+
+        String index = read(SiteMapUtil.SITEMAP_FILENAME_FINAL);
+        assertTrue(index.contains("<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"));
+        assertTrue(index.contains("<loc>" + SITE_URL + "/sitemap/sitemap-4.xml</loc>"));
+        String shard = read("sitemap-4.xml");
+        assertTrue(shard.contains("<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\""));
+        assertTrue(shard.contains("<loc>" + SITE_URL + "/dataset.xhtml?persistentId=doi:10.5072/FK2/6</loc>"));
+        assertFalse(shard.contains("FK2/7<"));
+        assertEquals(3, shard.split("<url>").length - 1);
+        assertFalse(Files.exists(directory.resolve(SiteMapUtil.SITEMAP_FILENAME_STAGED)));
+    }
+
+    @Test
+    public void testEscapesUrls() throws Exception {
+        SiteMapWriter writer = new SiteMapWriter(directory, SITE_URL, false);
+        writer.addDataverse(1L, "a&b", MODIFIED);
+        writer.finish();
+        writer.commit();
+
+        assertTrue(read("sitemap-1.xml").contains("<loc>" + SITE_URL + "/dataverse/a&amp;b</loc>"));
+    }
+
+    @Test
+    public void testOnlyChangedShardsAreWritten() throws Exception {
+        update(false, 3, 1, 2, 3, 4, 5, 6, 7);
+        Files.write(directory.resolve("sitemap-1.xml"), "unchanged".getBytes("UTF-8"));
+
+        SiteMapWriter writer = update(SITE_URL, false, 3, 5, 1, 2, 3, 4, 5, 6, 7);
+
+        assertEquals(List.of(1L, 4L, 7L), starts(writer));
+        assertEquals(1, writer.getShardsWritten());
+        assertEquals("unchanged", read("sitemap-1.xml"));
+        assertTrue(read("sitemap-4.xml").contains("<lastmod>2020-09-"));
+        assertEquals(0, update(SITE_URL, false, 3, 5, 1, 2, 3, 4, 5, 6, 7).getShardsWritten());
+    }
+
+    @Test
+    public void testRangesAreKeptAndSplit() throws Exception {
+        update(false, 3, 1, 2, 3, 4, 5, 6, 7);
+
+        // 2 removed, 8, 9 and 10 added:
+        SiteMapWriter writer = update(false, 3, 1, 3, 4, 5, 6, 7, 8, 9, 10);
+
+        assertEquals(List.of(1L, 4L, 7L, 10L), starts(writer));
+        assertEquals(3, writer.getShardsWritten());
+        assertEquals(2, writer.getShards().get(0).count);
+        assertTrue(read(SiteMapUtil.SITEMAP_FILENAME_FINAL).contains("/sitemap/sitemap-10.xml"));
+    }
+
+    @Test
+    public void testRemovedShardsAreDeleted() throws Exception {
+        update(false, 3, 1, 2, 3, 4, 5, 6, 7);
+
+        SiteMapWriter writer = update(false, 3, 1, 2, 3, 7);
+
+        assertEquals(List.of(1L, 7L), starts(writer));
+        assertEquals(0, writer.getShardsWritten());
+        assertFalse(Files.exists(directory.resolve("sitemap-4.xml")));
+        assertFalse(read(SiteMapUtil.SITEMAP_FILENAME_FINAL).contains("sitemap-4.xml"));
+    }
+
+    @Test
+    public void testFullUpdateWritesEveryShard() throws Exception {
+        update(false, 3, 1, 2, 3, 4, 5, 6, 7);
+
+        assertEquals(3, update(true, 3, 1, 2, 3, 4, 5, 6, 7).getShardsWritten());
+        // (the URLs of the site change with it)
+        assertEquals(3, update("https://dataverse.example.edu", false, 3, 0, 1, 2, 3, 4, 5, 6, 7).getShardsWritten());
+    }
+
+    @Test
+    public void testEmptySitemap() throws Exception {
+        SiteMapWriter writer = update(false, 3);
+
+        assertEquals(0, writer.getCount());
+        assertEquals(1, writer.getShards().size());
+        assertTrue(read(SiteMapUtil.SITEMAP_FILENAME_FINAL).contains("/sitemap/sitemap-0.xml"));
+        assertFalse(read("sitemap-0.xml").contains("<url>"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIdsInOrder() throws Exception {
+        update(false, 3, 1, 3, 2);
+    }
+
+    @Test
+    public void testAbortLeavesTheSitemap() throws Exception {
+        update(false, 3, 1, 2, 3);
+        String index = read(SiteMapUtil.SITEMAP_FILENAME_FINAL);
+
+        SiteMapWriter writer = new SiteMapWriter(directory, SITE_URL, true, 3);
+        writer.addDataset(1L, "doi:10.5072/FK2/1", MODIFIED_LATER);
+        writer.finish();
+        writer.abort();
+
+        assertEquals(index, read(SiteMapUtil.SITEMAP_FILENAME_FINAL));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.filter(file -> file.toString().endsWith(SiteMapWriter.STAGED_SUFFIX)).count());
+        }
+    }
+
+    /**
+     * A million datasets: written as they are read, in 20 shards, and updated
+     * again after one of them is modified by writing only its shard.
+     */
+    @Test
+    @Category(NonEssentialTests.class)
+    public void testMillionDatasets() throws Exception {
+        long[] ids = LongStream.rangeClosed(1, 1000000).toArray();
+
+        SiteMapWriter writer = update(false, SiteMapWriter.MAX_URLS, ids);
+
+        assertEquals(1000000, writer.getCount());
+        assertEquals(20, writer.getShards().size());
+        assertEquals(20, writer.getShardsWritten());
+        String lastShard = read("sitemap-950001.xml");
+        assertEquals(SiteMapWriter.MAX_URLS, lastShard.split("<url>").length - 1);
+
+        writer = update(SITE_URL, false, SiteMapWriter.MAX_URLS, 123456, ids);
+
+        assertEquals(1, writer.getShardsWritten());
+        assertEquals(lastShard, read("sitemap-950001.xml"));
+    }
+}
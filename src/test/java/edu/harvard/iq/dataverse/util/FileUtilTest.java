@@ -9,13 +9,18 @@ import edu.harvard.iq.dataverse.Guestbook;
 import edu.harvard.iq.dataverse.TermsOfUseAndAccess;
 import edu.harvard.iq.dataverse.util.FileUtil.FileCitationExtension;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.fail;
 
@@ -297,5 +302,22 @@ public class FileUtilTest {
             filewBogusContentType.setStorageIdentifier("");
             assertFalse(FileUtil.isThumbnailSupported(filewBogusContentType));
         }
+
+        @Test
+        public void testCopyAndCalculateChecksum() throws IOException {
+            byte[] data = new byte[100000];
+            new Random(1).nextBytes(data);
+            Path file = Files.createTempFile("copy", "test");
+            try {
+                for (DataFile.ChecksumType checksumType : DataFile.ChecksumType.values()) {
+                    String checksum = FileUtil.copyAndCalculateChecksum(new ByteArrayInputStream(data), file, checksumType);
+
+                    assertArrayEquals(data, Files.readAllBytes(file));
+                    assertEquals(FileUtil.calculateChecksum(data, checksumType), checksum);
+                }
+            } finally {
+                Files.delete(file);
+            }
+        }
     }
 }
@@ -105,4 +105,17 @@ public class LruCacheTest {
         assertEquals("verify that value 1 is no longer here", null, sut.get(key1));
         assertEquals("verify that value 2 still exists", value2, sut.get(key2));
     }
+
+    @Test
+    public void testInvalidateIf() {
+        sut.put(1l, "odd");
+        sut.put(2l, "even");
+        sut.put(3l, "odd");
+
+        sut.invalidateIf((k, v) -> v.equals("odd"));
+
+        assertEquals(1, sut.size());
+        assertNull(sut.get(1l));
+        assertEquals("even", sut.get(2l));
+    }
 }
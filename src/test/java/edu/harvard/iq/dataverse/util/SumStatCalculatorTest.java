@@ -0,0 +1,42 @@
+package edu.harvard.iq.dataverse.util;
+
+import java.util.BitSet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SumStatCalculatorTest {
+
+    @Test
+    public void testPrimitiveDoublesMatchBoxed() {
+        Double[] boxed = {1.5, null, 3.0, Double.NaN, -2.25, 10.0, null};
+        double[] values = new double[boxed.length];
+        BitSet missing = new BitSet();
+        for (int i = 0; i < boxed.length; i++) {
+            if (boxed[i] == null) {
+                missing.set(i);
+            } else {
+                values[i] = boxed[i];
+            }
+        }
+
+        double[] expected = SumStatCalculator.calculateSummaryStatistics(boxed);
+        assertArrayEquals(expected, SumStatCalculator.calculateSummaryStatistics(values, missing), 0.0);
+        // 4 valid values, 3 invalid ones (the nulls and the NaN)
+        assertEquals(4.0, expected[3], 0.0);
+        assertEquals(3.0, expected[4], 0.0);
+    }
+
+    @Test
+    public void testPrimitiveLongsAndFloatsMatchBoxed() {
+        Long[] boxedLongs = {7L, null, -3L, 12L};
+        long[] longs = {7L, 0L, -3L, 12L};
+        Float[] boxedFloats = {0.1f, 2.5f, null, Float.NaN};
+        float[] floats = {0.1f, 2.5f, 0.0f, Float.NaN};
+        BitSet missing = new BitSet();
+        missing.set(1);
+        assertArrayEquals(SumStatCalculator.calculateSummaryStatistics(boxedLongs), SumStatCalculator.calculateSummaryStatistics(longs, missing), 0.0);
+        missing.clear();
+        missing.set(2);
+        assertArrayEquals(SumStatCalculator.calculateSummaryStatistics(boxedFloats), SumStatCalculator.calculateSummaryStatistics(floats, missing), 0.0);
+    }
+}